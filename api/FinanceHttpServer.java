@@ -0,0 +1,700 @@
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.MetricsRegistry;
+import service.impl.AccountManager;
+import service.impl.AutoContributionManager;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.CategoryRuleManager;
+import service.impl.FinancialGoalManager;
+import service.impl.GoalProjectionEngine;
+import service.impl.ReportGenerator;
+import service.impl.SpendingAnomalyDetector;
+import service.impl.StatementImportResult;
+import service.impl.StatementImporter;
+import service.impl.TransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP API over the service managers, built on the JDK's
+ * com.sun.net.httpserver (no external dependencies).
+ *
+ * Routes (bodies and responses are JSON):
+ * POST /users
+ * GET|POST /users/{userId}/accounts, GET|PUT|DELETE /users/{userId}/accounts/{accountId}
+ * GET /users/{userId}/accounts/{accountId}/balance?date=
+ * POST /users/{userId}/accounts/{accountId}/import?format=csv|ofx (body is the raw statement file)
+ * GET|POST /users/{userId}/transactions (GET accepts start, end and q)
+ * GET|PUT|DELETE /users/{userId}/transactions/{transactionId}
+ * GET|POST /categories, GET|PUT|DELETE /categories/{categoryId}
+ * POST /categories/{categoryId}/merge (body {"into": categoryId}; deleting a category in use is refused)
+ * GET|POST /users/{userId}/budgets, GET|DELETE /users/{userId}/budgets/{budgetId}
+ * GET /users/{userId}/budgets/{budgetId}/spending
+ * GET|POST /users/{userId}/categoryRules, DELETE /users/{userId}/categoryRules/{ruleId}
+ * POST /users/{userId}/categoryRules/apply?start=&end= (re-files recorded transactions by the current rules)
+ * GET|POST /users/{userId}/goals, GET|DELETE /users/{userId}/goals/{goalId}
+ * POST /users/{userId}/goals/{goalId}/contributions
+ * GET|POST /users/{userId}/goals/{goalId}/rules, DELETE /users/{userId}/goals/{goalId}/rules/{ruleId}
+ * GET /users/{userId}/goals/{goalId}/projection?historyMonths=&paths=
+ * GET /users/{userId}/anomalies (most recent unusual expenses first)
+ * GET /users/{userId}/reports/{reportType}?start=&end= (other query params are passed to the report)
+ * GET /metrics (Prometheus text format)
+ *
+ * In read-only mode (a replica) only GET requests are served.
+ *
+ * Accounts take an optional "currency" (ISO 4217, default the base currency).
+ * Categories take an optional "parentId", in which case "type" is the parent's.
+ * Transactions take an optional "description"; without a "categoryName" the
+ * user's category rules pick the category from it (see CategoryRuleManager).
+ * Reports are in the base currency; main's optional third argument is a
+ * file of dated exchange rates (see ExchangeRateTable.load).
+ *
+ * NOTE: Targets Java 17, so requests run on a fixed platform-thread pool
+ * rather than virtual threads.
+ */
+public class FinanceHttpServer {
+
+    private final AccountManager accountManager;
+    private final CategoryManager categoryManager;
+    private final TransactionManager transactionManager;
+    private final BudgetManager budgetManager;
+    private final FinancialGoalManager financialGoalManager;
+    private final ReportGenerator reportGenerator;
+    private final StatementImporter statementImporter;
+    private final GoalProjectionEngine goalProjectionEngine;
+    private final AutoContributionManager autoContributionManager;
+    private final SpendingAnomalyDetector spendingAnomalyDetector;
+    private final CategoryRuleManager categoryRuleManager;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean readOnly;
+
+    // Outcome of a routed request
+    private static class ApiResponse {
+        final int status;
+        final Object body;
+
+        ApiResponse(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // Largest amount, balance, target or percentage a request may carry
+    private static final BigDecimal MAX_DECIMAL = new BigDecimal("1E13");
+
+    // One reusable response buffer per worker thread
+    private static final ThreadLocal<JsonWriter> RESPONSE_WRITER = ThreadLocal.withInitial(JsonWriter::new);
+
+    private static final ApiResponse METHOD_NOT_ALLOWED = new ApiResponse(405,
+            Map.of("error", "Method not allowed."));
+    private static final ApiResponse READ_ONLY = new ApiResponse(405,
+            Map.of("error", "Read-only replica: send changes to the leader."));
+
+    public FinanceHttpServer(AccountManager accountManager, CategoryManager categoryManager,
+            TransactionManager transactionManager, BudgetManager budgetManager,
+            FinancialGoalManager financialGoalManager, ReportGenerator reportGenerator) {
+        this(accountManager, categoryManager, transactionManager, budgetManager, financialGoalManager,
+                reportGenerator, new CategoryRuleManager(accountManager, categoryManager, transactionManager),
+                new AutoContributionManager(financialGoalManager, categoryManager, transactionManager));
+    }
+
+    // With rule managers of their own, e.g. a ReplicaNode's, whose rules arrive in the leader's journal
+    public FinanceHttpServer(AccountManager accountManager, CategoryManager categoryManager,
+            TransactionManager transactionManager, BudgetManager budgetManager,
+            FinancialGoalManager financialGoalManager, ReportGenerator reportGenerator,
+            CategoryRuleManager categoryRuleManager, AutoContributionManager autoContributionManager) {
+        this.accountManager = accountManager;
+        this.categoryManager = categoryManager;
+        this.transactionManager = transactionManager;
+        this.budgetManager = budgetManager;
+        this.financialGoalManager = financialGoalManager;
+        this.reportGenerator = reportGenerator;
+        this.categoryRuleManager = categoryRuleManager;
+        this.statementImporter = new StatementImporter(accountManager, categoryManager, transactionManager,
+                categoryRuleManager);
+        this.goalProjectionEngine = new GoalProjectionEngine(financialGoalManager, transactionManager);
+        this.autoContributionManager = autoContributionManager;
+        this.spendingAnomalyDetector = new SpendingAnomalyDetector(accountManager, transactionManager);
+    }
+
+    /**
+     * Registers the gauges of every manager this server uses. Left to the
+     * caller, since the managers may belong to a replica or share the
+     * process with others; labels tell their series apart.
+     */
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        accountManager.registerGauges(metrics, labels);
+        categoryManager.registerGauges(metrics, labels);
+        transactionManager.registerGauges(metrics, labels);
+        budgetManager.registerGauges(metrics, labels);
+        financialGoalManager.registerGauges(metrics, labels);
+        categoryRuleManager.registerGauges(metrics, labels);
+        autoContributionManager.registerGauges(metrics, labels);
+        spendingAnomalyDetector.registerGauges(metrics, labels);
+    }
+
+    public void start(int port, int workerThreads) throws IOException {
+        // Without TCP_NODELAY small JSON responses stall ~40 ms on delayed ACKs;
+        // the JDK server only reads this flag when its first instance is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        executor = Executors.newFixedThreadPool(workerThreads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    // Rejects every request but GET, e.g. when serving a replica (see service.impl.ReplicaNode)
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int workerThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors() * 4;
+        AccountManager accountManager = new AccountManager();
+        if (args.length > 2) { // Optional exchange rate file: date,currency,rate
+            int rates = accountManager.getExchangeRateTable().load(Path.of(args[2]));
+            System.out.println("Loaded " + rates + " exchange rates from " + args[2]);
+        }
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        FinanceHttpServer httpServer = new FinanceHttpServer(accountManager, categoryManager, transactionManager,
+                new BudgetManager(categoryManager, transactionManager), new FinancialGoalManager(),
+                new ReportGenerator(accountManager, transactionManager));
+        httpServer.registerGauges(MetricsRegistry.getDefault(), "");
+        httpServer.start(port, workerThreads);
+        System.out.println("Finance HTTP API listening on port " + httpServer.getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().equals("/metrics")) {
+            sendMetrics(exchange);
+            return;
+        }
+        ApiResponse response;
+        try {
+            response = readOnly && !exchange.getRequestMethod().equals("GET") ? READ_ONLY : route(exchange);
+        } catch (ValidationException e) {
+            response = new ApiResponse(400, Map.of("error", e.getMessage()));
+        } catch (NotFoundException e) {
+            response = new ApiResponse(404, Map.of("error", e.getMessage()));
+        } catch (SecurityException e) {
+            response = new ApiResponse(403, Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            response = new ApiResponse(500, Map.of("error", String.valueOf(e.getMessage())));
+        }
+
+        JsonWriter writer = RESPONSE_WRITER.get().reset();
+        writer.value(response.body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, writer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            writer.writeTo(out);
+        }
+    }
+
+    // Prometheus text exposition of the default metrics registry
+    private void sendMetrics(HttpExchange exchange) throws IOException {
+        byte[] bytes = MetricsRegistry.getDefault().toPrometheusText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private ApiResponse route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String[] path = splitPath(exchange.getRequestURI().getRawPath());
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.length >= 1 && path[0].equals("categories")) {
+            return routeCategories(exchange, method, path);
+        }
+        if (path.length == 1 && path[0].equals("users")) {
+            if (!method.equals("POST")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            UUID userId = UUID.randomUUID();
+            accountManager.addUser(userId);
+            budgetManager.addUser(userId);
+            financialGoalManager.addUser(userId);
+            return new ApiResponse(201, Map.of("id", userId));
+        }
+        if (path.length >= 3 && path[0].equals("users")) {
+            UUID userId = parseUuid(path[1], "userId");
+            switch (path[2]) {
+                case "accounts":
+                    return routeAccounts(exchange, method, path, query, userId);
+                case "transactions":
+                    return routeTransactions(exchange, method, path, query, userId);
+                case "budgets":
+                    return routeBudgets(exchange, method, path, userId);
+                case "goals":
+                    return routeGoals(exchange, method, path, query, userId);
+                case "categoryRules":
+                    return routeCategoryRules(exchange, method, path, query, userId);
+                case "reports":
+                    return routeReports(method, path, query, userId);
+                case "anomalies":
+                    if (path.length != 3 || !method.equals("GET")) {
+                        return METHOD_NOT_ALLOWED;
+                    }
+                    return new ApiResponse(200, spendingAnomalyDetector.getRecentAnomalies(userId));
+                default:
+                    break;
+            }
+        }
+        throw new NotFoundException("No route for " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    private ApiResponse routeCategories(HttpExchange exchange, String method, String[] path) throws Exception {
+        if (path.length == 1) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, categoryManager.getCategoryList());
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                if (body.containsKey("parentId")) { // Subcategories take their parent's type
+                    return new ApiResponse(201, categoryManager.createSubcategory(
+                            parseUuid(requireString(body, "parentId"), "parentId"), requireString(body, "name")));
+                }
+                return new ApiResponse(201, categoryManager.createCategory(requireString(body, "name"),
+                        requireString(body, "type")));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID categoryId = parseUuid(path[1], "categoryId");
+        if (path.length == 3 && path[2].equals("merge")) {
+            if (!method.equals("POST")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            Map<String, Object> body = readBody(exchange);
+            long moved = categoryManager.mergeCategory(categoryId, parseUuid(requireString(body, "into"), "into"));
+            return new ApiResponse(200, Map.of("moved", moved));
+        }
+        switch (method) {
+            case "GET":
+                return new ApiResponse(200, categoryManager.getCategory(categoryId));
+            case "PUT":
+                Map<String, Object> body = readBody(exchange);
+                categoryManager.updateCategory(categoryId, requireString(body, "name"), requireString(body, "type"));
+                return new ApiResponse(200, categoryManager.getCategory(categoryId));
+            case "DELETE":
+                return new ApiResponse(200, Map.of("deleted", categoryManager.deleteCategory(categoryId)));
+            default:
+                return METHOD_NOT_ALLOWED;
+        }
+    }
+
+    private ApiResponse routeAccounts(HttpExchange exchange, String method, String[] path,
+            Map<String, String> query, UUID userId) throws Exception {
+        if (path.length == 3) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, accountManager.getAccountList(userId));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                String currency = body.containsKey("currency") ? requireString(body, "currency")
+                        : accountManager.getExchangeRateTable().getBaseCurrency();
+                return new ApiResponse(201, accountManager.createAccount(userId, requireString(body, "name"),
+                        requireDecimal(body, "balance"), requireString(body, "type"), currency));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID accountId = parseUuid(path[3], "accountId");
+        if (path.length == 5 && path[4].equals("balance") && method.equals("GET")) {
+            LocalDate date = parseDate(query.getOrDefault("date", LocalDate.now().toString()), "date");
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("accountId", accountId);
+            result.put("date", date);
+            result.put("balance", accountManager.getBalanceAsOf(accountId, userId, date));
+            return new ApiResponse(200, result);
+        }
+        if (path.length == 5 && path[4].equals("import")) {
+            return method.equals("POST") ? importStatement(exchange, query, userId, accountId) : METHOD_NOT_ALLOWED;
+        }
+        switch (method) {
+            case "GET":
+                return new ApiResponse(200, accountManager.getAccount(accountId, userId));
+            case "PUT":
+                Map<String, Object> body = readBody(exchange);
+                Object isActive = body.get("isActive");
+                accountManager.updateAccount(accountId, userId, requireString(body, "name"),
+                        requireString(body, "type"), isActive == null || Boolean.TRUE.equals(isActive));
+                return new ApiResponse(200, accountManager.getAccount(accountId, userId));
+            case "DELETE":
+                return new ApiResponse(200, Map.of("deleted", accountManager.deleteAccount(accountId, userId)));
+            default:
+                return METHOD_NOT_ALLOWED;
+        }
+    }
+
+    // Spools the upload to a temp file so the importer can stream it in chunks
+    private ApiResponse importStatement(HttpExchange exchange, Map<String, String> query, UUID userId,
+            UUID accountId) throws Exception {
+        Path upload = Files.createTempFile("statement-", ".upload");
+        try {
+            try (InputStream body = exchange.getRequestBody()) {
+                Files.copy(body, upload, StandardCopyOption.REPLACE_EXISTING);
+            }
+            StatementImportResult result = statementImporter.importStatement(userId, accountId, upload,
+                    query.getOrDefault("format", "csv"));
+            List<Map<String, Object>> errors = new ArrayList<>();
+            for (StatementImportResult.RowError error : result.getErrors()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("line", error.getLine());
+                entry.put("message", error.getMessage());
+                errors.add(entry);
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("rowsImported", result.getRowsImported());
+            response.put("rowsDuplicate", result.getRowsDuplicate());
+            response.put("rowsFailed", result.getRowsFailed());
+            response.put("elapsedMillis", result.getElapsedMillis());
+            response.put("errors", errors);
+            return new ApiResponse(200, response);
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    private ApiResponse routeTransactions(HttpExchange exchange, String method, String[] path,
+            Map<String, String> query, UUID userId) throws Exception {
+        if (path.length == 3) {
+            if (method.equals("GET")) {
+                if (query.containsKey("q")) {
+                    int limit = parseInt(query.getOrDefault("limit",
+                            String.valueOf(TransactionManager.DEFAULT_SEARCH_LIMIT)), "limit");
+                    return new ApiResponse(200, transactionManager.searchTransactions(userId, query.get("q"), limit));
+                }
+                LocalDate start = query.containsKey("start") ? parseDate(query.get("start"), "start") : null;
+                LocalDate end = query.containsKey("end") ? parseDate(query.get("end"), "end") : null;
+                return new ApiResponse(200, transactionManager.getTransactionsByUser(userId, start, end));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                UUID accountId = parseUuid(requireString(body, "accountId"), "accountId");
+                if (!body.containsKey("categoryName")) { // Filed by the user's category rules
+                    return new ApiResponse(201, categoryRuleManager.recordTransaction(userId, accountId,
+                            requireString(body, "description"), requireString(body, "type"),
+                            requireDecimal(body, "amount"), parseDate(requireString(body, "date"), "date")));
+                }
+                String description = body.containsKey("description") ? requireString(body, "description") : null;
+                return new ApiResponse(201, transactionManager.recordTransaction(userId, accountId,
+                        requireString(body, "categoryName"), requireString(body, "type"),
+                        requireDecimal(body, "amount"), parseDate(requireString(body, "date"), "date"),
+                        description));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID transactionId = parseUuid(path[3], "transactionId");
+        switch (method) {
+            case "GET":
+                return new ApiResponse(200, transactionManager.getTransaction(transactionId, userId));
+            case "PUT":
+                Map<String, Object> body = readBody(exchange);
+                transactionManager.updateTransaction(transactionId, userId,
+                        parseUuid(requireString(body, "accountId"), "accountId"),
+                        parseUuid(requireString(body, "categoryId"), "categoryId"),
+                        requireDecimal(body, "amount"), parseDate(requireString(body, "date"), "date"),
+                        requireString(body, "description"));
+                return new ApiResponse(200, transactionManager.getTransaction(transactionId, userId));
+            case "DELETE":
+                return new ApiResponse(200,
+                        Map.of("deleted", transactionManager.deleteTransaction(transactionId, userId)));
+            default:
+                return METHOD_NOT_ALLOWED;
+        }
+    }
+
+    private ApiResponse routeBudgets(HttpExchange exchange, String method, String[] path, UUID userId)
+            throws Exception {
+        if (path.length == 3) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, budgetManager.getBudgetList(userId));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                List<UUID> categoryIds = new ArrayList<>();
+                Object rawIds = body.get("categoryIds");
+                if (rawIds instanceof List) {
+                    for (Object id : (List<?>) rawIds) {
+                        categoryIds.add(parseUuid(String.valueOf(id), "categoryIds"));
+                    }
+                }
+                UUID budgetId = budgetManager.createBudget(userId, requireString(body, "name"),
+                        requireDecimal(body, "amount"), parseDate(requireString(body, "startDate"), "startDate"),
+                        parseDate(requireString(body, "endDate"), "endDate"), categoryIds);
+                return new ApiResponse(201, budgetManager.getBudgetDetails(budgetId, userId));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID budgetId = parseUuid(path[3], "budgetId");
+        if (path.length == 5 && path[4].equals("spending")) {
+            if (!method.equals("GET")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            return new ApiResponse(200, Map.of("spent", budgetManager.getBudgetSpending(budgetId, userId)));
+        }
+        switch (method) {
+            case "GET":
+                return new ApiResponse(200, budgetManager.getBudgetDetails(budgetId, userId));
+            case "DELETE":
+                return new ApiResponse(200, Map.of("deleted", budgetManager.deleteBudget(budgetId, userId)));
+            default:
+                return METHOD_NOT_ALLOWED;
+        }
+    }
+
+    private ApiResponse routeGoals(HttpExchange exchange, String method, String[] path,
+            Map<String, String> query, UUID userId) throws Exception {
+        if (path.length == 3) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, financialGoalManager.getFinancialGoalList(userId));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                BigDecimal currentAmount = body.containsKey("currentAmount") ? requireDecimal(body, "currentAmount")
+                        : BigDecimal.ZERO;
+                UUID goalId = financialGoalManager.createFinancialGoal(userId, requireString(body, "name"),
+                        requireDecimal(body, "targetAmount"), currentAmount,
+                        parseDate(requireString(body, "deadline"), "deadline"));
+                return new ApiResponse(201, financialGoalManager.getFinancialGoalDetails(goalId, userId));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID goalId = parseUuid(path[3], "goalId");
+        if (path.length == 5 && path[4].equals("contributions")) {
+            if (!method.equals("POST")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            financialGoalManager.addContribution(goalId, userId, requireDecimal(readBody(exchange), "amount"));
+            return new ApiResponse(200, financialGoalManager.getFinancialGoalDetails(goalId, userId));
+        }
+        if (path.length >= 5 && path[4].equals("rules")) {
+            return routeContributionRules(exchange, method, path, userId, goalId);
+        }
+        if (path.length == 5 && path[4].equals("projection")) {
+            if (!method.equals("GET")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            int historyMonths = parseInt(query.getOrDefault("historyMonths",
+                    String.valueOf(GoalProjectionEngine.DEFAULT_HISTORY_MONTHS)), "historyMonths");
+            int paths = parseInt(query.getOrDefault("paths", String.valueOf(GoalProjectionEngine.DEFAULT_PATHS)),
+                    "paths");
+            return new ApiResponse(200, goalProjectionEngine.projectGoal(goalId, userId, LocalDate.now(),
+                    historyMonths, paths));
+        }
+        switch (method) {
+            case "GET":
+                return new ApiResponse(200, financialGoalManager.getFinancialGoalDetails(goalId, userId));
+            case "DELETE":
+                return new ApiResponse(200,
+                        Map.of("deleted", financialGoalManager.deleteFinancialGoal(goalId, userId)));
+            default:
+                return METHOD_NOT_ALLOWED;
+        }
+    }
+
+    private ApiResponse routeContributionRules(HttpExchange exchange, String method, String[] path, UUID userId,
+            UUID goalId) throws Exception {
+        if (path.length == 5) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, autoContributionManager.getContributionRuleList(goalId, userId));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                return new ApiResponse(201, autoContributionManager.createContributionRule(userId, goalId,
+                        requireString(body, "categoryName"), requireDecimal(body, "percentage")));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        if (!method.equals("DELETE")) {
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID ruleId = parseUuid(path[5], "ruleId");
+        return new ApiResponse(200,
+                Map.of("deleted", autoContributionManager.deleteContributionRule(ruleId, userId)));
+    }
+
+    private ApiResponse routeCategoryRules(HttpExchange exchange, String method, String[] path,
+            Map<String, String> query, UUID userId) throws Exception {
+        if (path.length == 3) {
+            if (method.equals("GET")) {
+                return new ApiResponse(200, categoryRuleManager.getCategoryRuleList(userId));
+            }
+            if (method.equals("POST")) {
+                Map<String, Object> body = readBody(exchange);
+                return new ApiResponse(201, categoryRuleManager.createCategoryRule(userId,
+                        requireString(body, "pattern"), requireString(body, "categoryName")));
+            }
+            return METHOD_NOT_ALLOWED;
+        }
+        if (path.length == 4 && path[3].equals("apply")) {
+            if (!method.equals("POST")) {
+                return METHOD_NOT_ALLOWED;
+            }
+            LocalDate start = query.containsKey("start") ? parseDate(query.get("start"), "start") : null;
+            LocalDate end = query.containsKey("end") ? parseDate(query.get("end"), "end") : null;
+            return new ApiResponse(200,
+                    Map.of("recategorized", categoryRuleManager.recategorizeHistory(userId, start, end)));
+        }
+        if (!method.equals("DELETE")) {
+            return METHOD_NOT_ALLOWED;
+        }
+        UUID ruleId = parseUuid(path[3], "ruleId");
+        return new ApiResponse(200, Map.of("deleted", categoryRuleManager.deleteCategoryRule(ruleId, userId)));
+    }
+
+    private ApiResponse routeReports(String method, String[] path, Map<String, String> query, UUID userId)
+            throws Exception {
+        if (path.length != 4) {
+            throw new NotFoundException("Report type is required: /users/{userId}/reports/{reportType}");
+        }
+        if (!method.equals("GET")) {
+            return METHOD_NOT_ALLOWED;
+        }
+        LocalDate end = query.containsKey("end") ? parseDate(query.get("end"), "end") : LocalDate.now();
+        LocalDate start = query.containsKey("start") ? parseDate(query.get("start"), "start")
+                : end.withDayOfMonth(1);
+        Map<String, Object> parameters = new HashMap<>(query);
+        parameters.remove("start");
+        parameters.remove("end");
+        return new ApiResponse(200, reportGenerator.generateReport(userId, path[3], start, end, parameters));
+    }
+
+    // --- Request helpers ---
+
+    private static String[] splitPath(String rawPath) {
+        String trimmed = rawPath.replaceAll("^/+|/+$", "");
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        String[] segments = trimmed.split("/+");
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = URLDecoder.decode(segments[i], StandardCharsets.UTF_8);
+        }
+        return segments;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, ValidationException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (body.trim().isEmpty()) {
+                throw new ValidationException("Request body is required.");
+            }
+            return JsonCodec.parseObject(body);
+        }
+    }
+
+    private static String requireString(Map<String, Object> body, String field) throws ValidationException {
+        Object value = body.get(field);
+        if (value == null) {
+            throw new ValidationException("Field '" + field + "' is required.");
+        }
+        return value.toString();
+    }
+
+    // Money and percentages: at most cents, below MAX_DECIMAL, so balances stay within a long of cents
+    private static BigDecimal requireDecimal(Map<String, Object> body, String field) throws ValidationException {
+        Object value = body.get(field);
+        BigDecimal decimal;
+        if (value instanceof BigDecimal) {
+            decimal = (BigDecimal) value;
+        } else {
+            try {
+                decimal = new BigDecimal(requireString(body, field));
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Field '" + field + "' must be a number.");
+            }
+        }
+        if (decimal.abs().compareTo(MAX_DECIMAL) > 0) {
+            throw new ValidationException("Field '" + field + "' must be at most " + MAX_DECIMAL.toPlainString()
+                    + " in magnitude.");
+        }
+        BigDecimal stripped = decimal.stripTrailingZeros();
+        if (stripped.scale() > 2) {
+            throw new ValidationException("Field '" + field + "' must have at most 2 decimal places.");
+        }
+        // Exponents and padding zeros, e.g. 1E+2 or 5.000, become plain cents
+        return decimal.scale() >= 0 && decimal.scale() <= 2 ? decimal : stripped.setScale(2);
+    }
+
+    private static UUID parseUuid(String value, String field) throws ValidationException {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static int parseInt(String value, String field) throws ValidationException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static LocalDate parseDate(String value, String field) throws ValidationException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("Invalid " + field + " (expected yyyy-MM-dd): " + value);
+        }
+    }
+}
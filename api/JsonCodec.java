@@ -0,0 +1,228 @@
+package api;
+
+import exception.ValidationException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON codec for the HTTP API. Parsing produces Maps, Lists, Strings,
+ * BigDecimals, Booleans and nulls; encoding is done by JsonWriter.
+ */
+public final class JsonCodec {
+
+    private JsonCodec() {
+    }
+
+    // --- Decoding ---
+
+    public static Object parse(String json) throws ValidationException {
+        Parser parser = new Parser(json);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw new ValidationException("Unexpected trailing content in JSON at position " + parser.pos);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String json) throws ValidationException {
+        Object value = parse(json);
+        if (!(value instanceof Map)) {
+            throw new ValidationException("Request body must be a JSON object.");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static class Parser {
+        private final String json;
+        private int pos;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        Object readValue() throws ValidationException {
+            skipWhitespace();
+            if (pos >= json.length()) {
+                throw new ValidationException("Unexpected end of JSON.");
+            }
+            char c = json.charAt(pos);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() throws ValidationException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++; // '{'
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw new ValidationException("Expected field name in JSON at position " + pos);
+                }
+                String key = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw new ValidationException("Expected ':' in JSON at position " + pos);
+                }
+                pos++;
+                object.put(key, readValue());
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == '}') {
+                    return object;
+                }
+                if (c != ',') {
+                    throw new ValidationException("Expected ',' or '}' in JSON at position " + (pos - 1));
+                }
+            }
+        }
+
+        private List<Object> readArray() throws ValidationException {
+            List<Object> array = new ArrayList<>();
+            pos++; // '['
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == ']') {
+                    return array;
+                }
+                if (c != ',') {
+                    throw new ValidationException("Expected ',' or ']' in JSON at position " + (pos - 1));
+                }
+            }
+        }
+
+        private String readString() throws ValidationException {
+            pos++; // Opening quote
+            StringBuilder sb = null; // Only allocated if the string has escapes
+            int start = pos;
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c == '"') {
+                    String value = sb == null ? json.substring(start, pos) : sb.append(json, start, pos).toString();
+                    pos++;
+                    return value;
+                }
+                if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(json, start, pos);
+                    if (pos + 1 >= json.length()) {
+                        break;
+                    }
+                    char escaped = json.charAt(pos + 1);
+                    switch (escaped) {
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'u':
+                            if (pos + 6 > json.length()) {
+                                throw new ValidationException("Invalid unicode escape in JSON.");
+                            }
+                            try {
+                                sb.append((char) Integer.parseInt(json.substring(pos + 2, pos + 6), 16));
+                            } catch (NumberFormatException e) {
+                                throw new ValidationException("Invalid unicode escape in JSON.");
+                            }
+                            pos += 4;
+                            break;
+                        default: // '"', '\\', '/'
+                            sb.append(escaped);
+                    }
+                    pos += 2;
+                    start = pos;
+                } else {
+                    pos++;
+                }
+            }
+            throw new ValidationException("Unterminated string in JSON.");
+        }
+
+        private BigDecimal readNumber() throws ValidationException {
+            int start = pos;
+            while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return new BigDecimal(json.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Invalid JSON value at position " + start);
+            }
+        }
+
+        private void expect(String literal) throws ValidationException {
+            if (!json.startsWith(literal, pos)) {
+                throw new ValidationException("Invalid JSON value at position " + pos);
+            }
+            pos += literal.length();
+        }
+
+        private char peek() throws ValidationException {
+            if (pos >= json.length()) {
+                throw new ValidationException("Unexpected end of JSON.");
+            }
+            return json.charAt(pos);
+        }
+    }
+
+    // --- Encoding ---
+
+    // Convenience for callers that need a String; hot paths should reuse a JsonWriter
+    public static String toJson(Object value) {
+        return new JsonWriter(256).value(value).toString();
+    }
+}
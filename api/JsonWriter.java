@@ -0,0 +1,688 @@
+package api;
+
+import domain.Account;
+import domain.Budget;
+import domain.Category;
+import domain.CategoryRule;
+import domain.ContributionRule;
+import domain.FinancialGoal;
+import domain.RecurringTransaction;
+import domain.Transaction;
+import domain.User;
+import service.impl.GoalProjection;
+import service.impl.NetWorthSeries;
+import service.impl.SpendingAnomaly;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Streaming JSON writer that encodes straight into a reusable UTF-8 byte
+ * buffer. Domain objects are written field by field with precomputed
+ * field-name bytes; UUIDs, dates and decimals are encoded digit by digit
+ * without intermediate Strings. No reflection is used.
+ * Not thread-safe: keep one instance per thread and call reset() between documents.
+ */
+public class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = bytes("null");
+    private static final byte[] TRUE = bytes("true");
+    private static final byte[] FALSE = bytes("false");
+    // Decimals scaled further than this either way are written with an exponent, e.g. 1E+2000000000
+    private static final int MAX_PLAIN_SCALE = 18;
+
+    // Precomputed field names, including quotes and colon
+    private static final byte[] F_ID = field("id");
+    private static final byte[] F_USER_ID = field("userId");
+    private static final byte[] F_ACCOUNT_ID = field("accountId");
+    private static final byte[] F_CATEGORY_ID = field("categoryId");
+    private static final byte[] F_CATEGORY_IDS = field("categoryIds");
+    private static final byte[] F_CATEGORY_NAME = field("categoryName");
+    private static final byte[] F_NAME = field("name");
+    private static final byte[] F_EMAIL = field("email");
+    private static final byte[] F_TYPE = field("type");
+    private static final byte[] F_ICON = field("icon");
+    private static final byte[] F_PARENT_ID = field("parentId");
+    private static final byte[] F_AMOUNT = field("amount");
+    private static final byte[] F_BALANCE = field("balance");
+    private static final byte[] F_DATE = field("date");
+    private static final byte[] F_DESCRIPTION = field("description");
+    private static final byte[] F_START_DATE = field("startDate");
+    private static final byte[] F_END_DATE = field("endDate");
+    private static final byte[] F_TARGET_AMOUNT = field("targetAmount");
+    private static final byte[] F_CURRENT_AMOUNT = field("currentAmount");
+    private static final byte[] F_DEADLINE = field("deadline");
+    private static final byte[] F_IS_ACTIVE = field("isActive");
+    private static final byte[] F_IS_COMPLETED = field("isCompleted");
+    private static final byte[] F_FREQUENCY = field("frequency");
+    private static final byte[] F_NEXT_DUE_DATE = field("nextDueDate");
+    private static final byte[] F_LAST_ERROR = field("lastError");
+    private static final byte[] F_INTERVAL = field("interval");
+    private static final byte[] F_DATES = field("dates");
+    private static final byte[] F_VALUES = field("values");
+    private static final byte[] F_GOAL_ID = field("goalId");
+    private static final byte[] F_REMAINING_AMOUNT = field("remainingAmount");
+    private static final byte[] F_PROBABILITY_BY_DEADLINE = field("probabilityByDeadline");
+    private static final byte[] F_ON_TRACK = field("onTrack");
+    private static final byte[] F_OPTIMISTIC_COMPLETION_DATE = field("optimisticCompletionDate");
+    private static final byte[] F_EXPECTED_COMPLETION_DATE = field("expectedCompletionDate");
+    private static final byte[] F_PESSIMISTIC_COMPLETION_DATE = field("pessimisticCompletionDate");
+    private static final byte[] F_HORIZON_END = field("horizonEnd");
+    private static final byte[] F_HISTORY_MONTHS = field("historyMonths");
+    private static final byte[] F_MEAN_MONTHLY_NET_FLOW = field("meanMonthlyNetFlow");
+    private static final byte[] F_MONTHLY_NET_FLOW_STD_DEV = field("monthlyNetFlowStdDev");
+    private static final byte[] F_PATHS = field("paths");
+    private static final byte[] F_PERCENTAGE = field("percentage");
+    private static final byte[] F_TRANSACTION_ID = field("transactionId");
+    private static final byte[] F_TYPICAL_AMOUNT = field("typicalAmount");
+    private static final byte[] F_SCORE = field("score");
+    private static final byte[] F_CURRENCY = field("currency");
+    private static final byte[] F_PATTERN = field("pattern");
+
+    private byte[] buf;
+    private int pos;
+    private boolean needsComma; // True when the next value/field in the current container needs a separator
+
+    public JsonWriter() {
+        this(8192);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] field(String name) {
+        return bytes("\"" + name + "\":");
+    }
+
+    // --- Buffer management ---
+
+    public JsonWriter reset() {
+        pos = 0;
+        needsComma = false;
+        return this;
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    public byte[] buffer() {
+        return buf; // Valid bytes are [0, size())
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, pos);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, pos, StandardCharsets.UTF_8);
+    }
+
+    private void ensure(int extra) {
+        if (pos + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+
+    private void raw(byte b) {
+        ensure(1);
+        buf[pos++] = b;
+    }
+
+    private void raw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    // --- Structure ---
+
+    private void separator() {
+        if (needsComma) {
+            raw((byte) ',');
+        }
+        needsComma = true;
+    }
+
+    public JsonWriter beginObject() {
+        separator();
+        raw((byte) '{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        raw((byte) '}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separator();
+        raw((byte) '[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        raw((byte) ']');
+        needsComma = true;
+        return this;
+    }
+
+    // Writes a precomputed "name": prefix; the following value must not add a separator
+    private JsonWriter name(byte[] fieldName) {
+        separator();
+        raw(fieldName);
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter name(String fieldName) {
+        separator();
+        writeStringBody(fieldName);
+        raw((byte) ':');
+        needsComma = false;
+        return this;
+    }
+
+    // --- Scalars ---
+
+    public JsonWriter nullValue() {
+        separator();
+        raw(NULL);
+        return this;
+    }
+
+    public JsonWriter value(boolean b) {
+        separator();
+        raw(b ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter value(long v) {
+        separator();
+        writeLong(v);
+        return this;
+    }
+
+    public JsonWriter value(String s) {
+        if (s == null) {
+            return nullValue();
+        }
+        separator();
+        writeStringBody(s);
+        return this;
+    }
+
+    public JsonWriter value(UUID id) {
+        if (id == null) {
+            return nullValue();
+        }
+        separator();
+        ensure(38);
+        buf[pos++] = '"';
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        hex(msb >>> 32, 8);
+        buf[pos++] = '-';
+        hex(msb >>> 16, 4);
+        buf[pos++] = '-';
+        hex(msb, 4);
+        buf[pos++] = '-';
+        hex(lsb >>> 48, 4);
+        buf[pos++] = '-';
+        hex(lsb, 12);
+        buf[pos++] = '"';
+        return this;
+    }
+
+    // Caller has ensured capacity; writes the low `digits` nibbles of v
+    private void hex(long v, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[pos + i] = HEX[(int) (v & 0xF)];
+            v >>>= 4;
+        }
+        pos += digits;
+    }
+
+    public JsonWriter value(LocalDate date) {
+        if (date == null) {
+            return nullValue();
+        }
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return value(date.toString()); // ISO form with sign, rare enough to take the slow path
+        }
+        separator();
+        ensure(12);
+        buf[pos++] = '"';
+        digits(year, 4);
+        buf[pos++] = '-';
+        digits(date.getMonthValue(), 2);
+        buf[pos++] = '-';
+        digits(date.getDayOfMonth(), 2);
+        buf[pos++] = '"';
+        return this;
+    }
+
+    // Caller has ensured capacity; zero-padded fixed-width decimal
+    private void digits(int v, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buf[pos + i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        pos += width;
+    }
+
+    public JsonWriter value(BigDecimal decimal) {
+        if (decimal == null) {
+            return nullValue();
+        }
+        separator();
+        if (Math.abs((long) decimal.scale()) > MAX_PLAIN_SCALE) {
+            raw(bytes(decimal.toString())); // Plain notation would be that many digits; use an exponent
+        } else if (decimal.unscaledValue().bitLength() < 63) {
+            writeDecimal(decimal.unscaledValue().longValue(), decimal.scale());
+        } else {
+            raw(bytes(decimal.toPlainString())); // Beyond long range: let BigDecimal format it
+        }
+        return this;
+    }
+
+    // Writes unscaled * 10^-scale in plain notation, e.g. (-1250, 2) -> -12.50
+    private void writeDecimal(long unscaled, int scale) {
+        if (scale <= 0) {
+            writeLong(unscaled);
+            if (unscaled != 0) {
+                ensure(-scale);
+                for (int i = 0; i < -scale; i++) {
+                    buf[pos++] = '0';
+                }
+            }
+            return;
+        }
+        if (unscaled < 0) {
+            raw((byte) '-');
+            unscaled = -unscaled; // Safe: bitLength < 63 excludes Long.MIN_VALUE
+        }
+        int digitCount = 1;
+        for (long rest = unscaled; rest >= 10; rest /= 10) {
+            digitCount++;
+        }
+        int intDigits = Math.max(digitCount - scale, 1);
+        int total = intDigits + 1 + scale;
+        ensure(total);
+        int end = pos + total;
+        int p = end - 1;
+        for (int i = 0; i < scale; i++) {
+            buf[p--] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        buf[p--] = '.';
+        for (int i = 0; i < intDigits; i++) {
+            buf[p--] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        pos = end;
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            raw(bytes(Long.toString(v)));
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        // Digits were written least-significant first; reverse in place
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte tmp = buf[i];
+            buf[i] = buf[j];
+            buf[j] = tmp;
+        }
+    }
+
+    // Quoted, escaped, UTF-8 encoded string
+    private void writeStringBody(String s) {
+        int length = s.length();
+        ensure(length + 2);
+        buf[pos++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                if (pos >= buf.length) {
+                    ensure(length - i + 1);
+                }
+                buf[pos++] = (byte) c; // ASCII fast path
+            } else {
+                writeSpecialChar(s, i, c);
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++; // Consumed as a pair
+                }
+            }
+        }
+        raw((byte) '"');
+    }
+
+    private void writeSpecialChar(String s, int i, char c) {
+        ensure(12);
+        switch (c) {
+            case '"':
+                buf[pos++] = '\\';
+                buf[pos++] = '"';
+                return;
+            case '\\':
+                buf[pos++] = '\\';
+                buf[pos++] = '\\';
+                return;
+            case '\n':
+                buf[pos++] = '\\';
+                buf[pos++] = 'n';
+                return;
+            case '\r':
+                buf[pos++] = '\\';
+                buf[pos++] = 'r';
+                return;
+            case '\t':
+                buf[pos++] = '\\';
+                buf[pos++] = 't';
+                return;
+            default:
+                break;
+        }
+        if (c < 0x20) {
+            buf[pos++] = '\\';
+            buf[pos++] = 'u';
+            hex(c, 4);
+        } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            buf[pos++] = (byte) (0xF0 | (cp >> 18));
+            buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            // Three-byte form; a lone surrogate becomes '?', as String.getBytes(UTF_8) does
+            char out = Character.isSurrogate(c) ? '?' : c;
+            buf[pos++] = (byte) (0xE0 | (out >> 12));
+            buf[pos++] = (byte) (0x80 | ((out >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (out & 0x3F));
+        }
+    }
+
+    // --- Domain objects ---
+
+    public JsonWriter value(Transaction t) {
+        beginObject();
+        name(F_ID).value(t.getId());
+        name(F_ACCOUNT_ID).value(t.getAccountId());
+        name(F_CATEGORY_ID).value(t.getCategoryId());
+        name(F_AMOUNT).value(t.getAmount());
+        name(F_DATE).value(t.getDate());
+        name(F_DESCRIPTION).value(t.getDescription());
+        name(F_TYPE).value(t.getType());
+        return endObject();
+    }
+
+    public JsonWriter value(Account a) {
+        beginObject();
+        name(F_ID).value(a.getId());
+        name(F_USER_ID).value(a.getUserId());
+        name(F_NAME).value(a.getName());
+        name(F_BALANCE).value(a.getBalance());
+        name(F_TYPE).value(a.getType());
+        name(F_CURRENCY).value(a.getCurrency());
+        name(F_IS_ACTIVE).value(a.isActive());
+        return endObject();
+    }
+
+    public JsonWriter value(Category c) {
+        beginObject();
+        name(F_ID).value(c.getId());
+        name(F_NAME).value(c.getName());
+        name(F_TYPE).value(c.getType());
+        name(F_ICON).value(c.getIcon());
+        name(F_PARENT_ID).value(c.getParentId());
+        return endObject();
+    }
+
+    public JsonWriter value(Budget b) {
+        beginObject();
+        name(F_ID).value(b.getId());
+        name(F_USER_ID).value(b.getUserId());
+        name(F_NAME).value(b.getName());
+        name(F_AMOUNT).value(b.getAmount());
+        name(F_START_DATE).value(b.getStartDate());
+        name(F_END_DATE).value(b.getEndDate());
+        name(F_CATEGORY_IDS).beginArray();
+        if (b.getCategoryIds() != null) {
+            for (UUID categoryId : b.getCategoryIds()) {
+                value(categoryId);
+            }
+        }
+        endArray();
+        name(F_IS_ACTIVE).value(b.isActive());
+        return endObject();
+    }
+
+    public JsonWriter value(FinancialGoal g) {
+        beginObject();
+        name(F_ID).value(g.getId());
+        name(F_USER_ID).value(g.getUserId());
+        name(F_NAME).value(g.getName());
+        name(F_TARGET_AMOUNT).value(g.getTargetAmount());
+        name(F_CURRENT_AMOUNT).value(g.getCurrentAmount());
+        name(F_DEADLINE).value(g.getDeadline());
+        name(F_IS_COMPLETED).value(g.isCompleted());
+        return endObject();
+    }
+
+    // Password is deliberately never serialized
+    public JsonWriter value(User u) {
+        beginObject();
+        name(F_ID).value(u.getId());
+        name(F_NAME).value(u.getName());
+        name(F_EMAIL).value(u.getEmail());
+        return endObject();
+    }
+
+    public JsonWriter value(RecurringTransaction r) {
+        beginObject();
+        name(F_ID).value(r.getId());
+        name(F_USER_ID).value(r.getUserId());
+        name(F_ACCOUNT_ID).value(r.getAccountId());
+        name(F_CATEGORY_NAME).value(r.getCategoryName());
+        name(F_TYPE).value(r.getType());
+        name(F_AMOUNT).value(r.getAmount());
+        name(F_FREQUENCY).value(r.getFrequency());
+        name(F_START_DATE).value(r.getStartDate());
+        name(F_END_DATE).value(r.getEndDate());
+        name(F_NEXT_DUE_DATE).value(r.getNextDueDate());
+        name(F_IS_ACTIVE).value(r.isActive());
+        name(F_LAST_ERROR).value(r.getLastError());
+        return endObject();
+    }
+
+    public JsonWriter value(NetWorthSeries series) {
+        beginObject();
+        name(F_INTERVAL).value(series.getInterval());
+        name(F_DATES).beginArray();
+        for (int i = 0; i < series.size(); i++) {
+            value(series.getDate(i));
+        }
+        endArray();
+        name(F_VALUES).beginArray();
+        for (long cents : series.getCents()) {
+            separator();
+            writeDecimal(cents, 2);
+        }
+        endArray();
+        return endObject();
+    }
+
+    public JsonWriter value(GoalProjection p) {
+        beginObject();
+        name(F_GOAL_ID).value(p.getGoalId());
+        name(F_REMAINING_AMOUNT).value(p.getRemainingAmount());
+        name(F_DEADLINE).value(p.getDeadline());
+        name(F_PROBABILITY_BY_DEADLINE);
+        separator();
+        writeDecimal(Math.round(p.getProbabilityByDeadline() * 10_000), 4);
+        name(F_ON_TRACK).value(p.isOnTrack());
+        name(F_OPTIMISTIC_COMPLETION_DATE).value(p.getOptimisticCompletionDate());
+        name(F_EXPECTED_COMPLETION_DATE).value(p.getExpectedCompletionDate());
+        name(F_PESSIMISTIC_COMPLETION_DATE).value(p.getPessimisticCompletionDate());
+        name(F_HORIZON_END).value(p.getHorizonEnd());
+        name(F_HISTORY_MONTHS).value(p.getHistoryMonths());
+        name(F_MEAN_MONTHLY_NET_FLOW);
+        separator();
+        writeDecimal(Math.round(p.getMeanMonthlyNetFlow() * 100), 2);
+        name(F_MONTHLY_NET_FLOW_STD_DEV);
+        separator();
+        writeDecimal(Math.round(p.getMonthlyNetFlowStdDev() * 100), 2);
+        name(F_PATHS).value(p.getPaths());
+        return endObject();
+    }
+
+    public JsonWriter value(ContributionRule r) {
+        beginObject();
+        name(F_ID).value(r.getId());
+        name(F_USER_ID).value(r.getUserId());
+        name(F_GOAL_ID).value(r.getGoalId());
+        name(F_CATEGORY_ID).value(r.getCategoryId());
+        name(F_PERCENTAGE).value(r.getPercentage());
+        return endObject();
+    }
+
+    public JsonWriter value(CategoryRule r) {
+        beginObject();
+        name(F_ID).value(r.getId());
+        name(F_USER_ID).value(r.getUserId());
+        name(F_PATTERN).value(r.getPattern());
+        name(F_CATEGORY_ID).value(r.getCategoryId());
+        return endObject();
+    }
+
+    public JsonWriter value(SpendingAnomaly a) {
+        beginObject();
+        name(F_TRANSACTION_ID).value(a.getTransactionId());
+        name(F_USER_ID).value(a.getUserId());
+        name(F_ACCOUNT_ID).value(a.getAccountId());
+        name(F_CATEGORY_ID).value(a.getCategoryId());
+        name(F_DESCRIPTION).value(a.getDescription());
+        name(F_DATE).value(a.getDate());
+        name(F_AMOUNT).value(a.getAmount());
+        name(F_TYPICAL_AMOUNT).value(a.getTypicalAmount());
+        name(F_SCORE);
+        separator();
+        writeDecimal(Math.round(a.getScore() * 100), 2);
+        return endObject();
+    }
+
+    // Writes a list of transactions without per-element dispatch
+    public JsonWriter transactions(List<Transaction> transactions) {
+        beginArray();
+        for (Transaction t : transactions) {
+            value(t);
+        }
+        return endArray();
+    }
+
+    /**
+     * Writes any supported value: domain objects, Maps, Collections, Strings,
+     * numbers, booleans, UUIDs and LocalDates. Anything else is written as its
+     * toString().
+     */
+    public JsonWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof Transaction) {
+            return value((Transaction) value);
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof BigDecimal) {
+            return value((BigDecimal) value);
+        } else if (value instanceof UUID) {
+            return value((UUID) value);
+        } else if (value instanceof LocalDate) {
+            return value((LocalDate) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if ((value instanceof Double && !Double.isFinite((Double) value))
+                || (value instanceof Float && !Float.isFinite((Float) value))) {
+            return nullValue(); // JSON has no NaN or Infinity
+        } else if (value instanceof Number) {
+            separator();
+            raw(bytes(value.toString()));
+            return this;
+        } else if (value instanceof Account) {
+            return value((Account) value);
+        } else if (value instanceof Category) {
+            return value((Category) value);
+        } else if (value instanceof Budget) {
+            return value((Budget) value);
+        } else if (value instanceof FinancialGoal) {
+            return value((FinancialGoal) value);
+        } else if (value instanceof User) {
+            return value((User) value);
+        } else if (value instanceof RecurringTransaction) {
+            return value((RecurringTransaction) value);
+        } else if (value instanceof NetWorthSeries) {
+            return value((NetWorthSeries) value);
+        } else if (value instanceof GoalProjection) {
+            return value((GoalProjection) value);
+        } else if (value instanceof ContributionRule) {
+            return value((ContributionRule) value);
+        } else if (value instanceof CategoryRule) {
+            return value((CategoryRule) value);
+        } else if (value instanceof SpendingAnomaly) {
+            return value((SpendingAnomaly) value);
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            return endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object item : (Collection<?>) value) {
+                value(item);
+            }
+            return endArray();
+        }
+        return value(value.toString());
+    }
+}
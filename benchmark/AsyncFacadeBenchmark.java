@@ -0,0 +1,109 @@
+package benchmark;
+
+import domain.Account;
+import service.impl.AccountManager;
+import service.impl.AsyncServiceFacade;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.FinancialGoalManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load harness for AsyncServiceFacade: simulates many concurrent clients, each
+ * issuing a chain of requests (70% record, 20% list, 10% report) and reports
+ * throughput and p50/p99/max latency.
+ *
+ * Usage: java -cp bin benchmark.AsyncFacadeBenchmark [clients] [requestsPerClient] [users]
+ */
+public class AsyncFacadeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        BudgetManager budgetManager = new BudgetManager(categoryManager);
+        FinancialGoalManager financialGoalManager = new FinancialGoalManager();
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        categoryManager.createCategory("Food", "expense");
+        categoryManager.createCategory("Salary", "income");
+
+        UUID[] userIds = new UUID[users];
+        UUID[] accountIds = new UUID[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = UUID.randomUUID();
+            accountManager.addUser(userIds[i]);
+            budgetManager.addUser(userIds[i]);
+            financialGoalManager.addUser(userIds[i]);
+            Account account = accountManager.createAccount(userIds[i], "Checking", BigDecimal.valueOf(1000),
+                    "Checking");
+            accountIds[i] = account.getId();
+        }
+
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger latencyCount = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(clients);
+        LocalDate today = LocalDate.now();
+
+        try (AsyncServiceFacade facade = new AsyncServiceFacade(accountManager, transactionManager, budgetManager,
+                financialGoalManager, reportGenerator)) {
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                int user = c % users;
+                runClient(facade, userIds[user], accountIds[user], today, requestsPerClient, latencies,
+                        latencyCount, errors, done);
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+
+            int n = latencyCount.get();
+            long[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            System.out.printf("clients=%d users=%d requests=%d errors=%d%n", clients, users, n, errors.get());
+            System.out.printf("throughput=%.0f req/s%n", n / (elapsed / 1e9));
+            System.out.printf("p50=%.3f ms p99=%.3f ms max=%.3f ms%n", sorted[n / 2] / 1e6,
+                    sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6);
+        }
+    }
+
+    // Issues the next request only when the previous one completes, like a real client
+    private static void runClient(AsyncServiceFacade facade, UUID userId, UUID accountId, LocalDate today,
+            int remaining, long[] latencies, AtomicInteger latencyCount, AtomicInteger errors, CountDownLatch done) {
+        if (remaining == 0) {
+            done.countDown();
+            return;
+        }
+        long issued = System.nanoTime();
+        int roll = ThreadLocalRandom.current().nextInt(10);
+        CompletableFuture<?> request;
+        if (roll < 7) {
+            request = facade.recordTransaction(userId, accountId, "Food", "expense", BigDecimal.valueOf(12),
+                    today.minusDays(ThreadLocalRandom.current().nextInt(30)));
+        } else if (roll < 9) {
+            request = facade.getTransactionsByUser(userId, today.minusDays(30), today);
+        } else {
+            request = facade.generateReport(userId, "income_vs_expense", today.minusDays(30), today, null);
+        }
+        request.whenComplete((result, error) -> {
+            latencies[latencyCount.getAndIncrement()] = System.nanoTime() - issued;
+            if (error != null) {
+                errors.incrementAndGet();
+            }
+            runClient(facade, userId, accountId, today, remaining - 1, latencies, latencyCount, errors, done);
+        });
+    }
+}
@@ -0,0 +1,93 @@
+package benchmark;
+
+import domain.Account;
+import domain.FinancialGoal;
+import service.impl.AccountManager;
+import service.impl.AutoContributionManager;
+import service.impl.CategoryManager;
+import service.impl.FinancialGoalManager;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records a stream of mixed transactions for a user with several contribution
+ * rules and reports the recording throughput with and without rules, then
+ * checks that the goals were filled up to (never past) their targets.
+ *
+ * Usage: java -cp bin benchmark.AutoContributionBenchmark [transactions]
+ */
+public class AutoContributionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        FinancialGoalManager goalManager = new FinancialGoalManager();
+        categoryManager.createCategory("Salary", "income");
+        categoryManager.createCategory("Bonus", "income");
+        categoryManager.createCategory("Food", "expense");
+
+        // Warm up and measure the plain recording path first
+        UUID plainUser = UUID.randomUUID();
+        accountManager.addUser(plainUser);
+        Account plainAccount = accountManager.createAccount(plainUser, "Checking", BigDecimal.ZERO, "checking");
+        long plainMillis = record(transactionManager, plainUser, plainAccount, transactions);
+
+        AutoContributionManager autoContributionManager = new AutoContributionManager(goalManager, categoryManager,
+                transactionManager);
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        goalManager.addUser(userId);
+        Account account = accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking");
+        LocalDate deadline = LocalDate.now().plusYears(2);
+        UUID emergencyFund = goalManager.createFinancialGoal(userId, "Emergency fund", BigDecimal.valueOf(10_000),
+                BigDecimal.ZERO, deadline);
+        UUID house = goalManager.createFinancialGoal(userId, "House deposit", BigDecimal.valueOf(100_000_000),
+                BigDecimal.ZERO, deadline);
+        autoContributionManager.createContributionRule(userId, emergencyFund, "Salary", BigDecimal.TEN);
+        autoContributionManager.createContributionRule(userId, house, "Salary", BigDecimal.valueOf(15));
+        autoContributionManager.createContributionRule(userId, house, "Bonus", BigDecimal.valueOf(50));
+
+        long ruleMillis = record(transactionManager, userId, account, transactions);
+        long flushStart = System.nanoTime();
+        autoContributionManager.flush();
+        long flushMillis = (System.nanoTime() - flushStart) / 1_000_000;
+
+        System.out.printf("without rules: %d transactions in %d ms (%.0f/s)%n", transactions, plainMillis,
+                transactions * 1000.0 / Math.max(1, plainMillis));
+        System.out.printf("with rules:    %d transactions in %d ms (%.0f/s), queue drained %d ms later%n",
+                transactions, ruleMillis, transactions * 1000.0 / Math.max(1, ruleMillis), flushMillis);
+        for (UUID goalId : new UUID[] { emergencyFund, house }) {
+            FinancialGoal goal = goalManager.getFinancialGoalDetails(goalId, userId);
+            System.out.printf("%s: %s of %s, completed=%b%n", goal.getName(), goal.getCurrentAmount(),
+                    goal.getTargetAmount(), goal.isCompleted());
+        }
+        autoContributionManager.close();
+    }
+
+    // One in ten transactions is income, mostly salary
+    private static long record(TransactionManager transactionManager, UUID userId, Account account, int count)
+            throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = LocalDate.now().minusYears(3);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = firstDay.plusDays(random.nextInt(3 * 365));
+            if (i % 10 == 0) {
+                String category = i % 50 == 0 ? "Bonus" : "Salary";
+                transactionManager.recordTransaction(userId, account.getId(), category, "income",
+                        BigDecimal.valueOf(random.nextInt(100_000, 500_000), 2), date);
+            } else {
+                transactionManager.recordTransaction(userId, account.getId(), "Food", "expense",
+                        BigDecimal.valueOf(random.nextInt(100, 10_000), 2), date);
+            }
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,167 @@
+package benchmark;
+
+import domain.Account;
+import domain.Category;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds a three-level expense category tree, records transactions against
+ * its leaves and directly against some parents, then updates and deletes a
+ * share of them, moving some between branches. It checks every category's
+ * rolled-up total over several ranges against a walk of the transactions,
+ * and compares the time of a top-level category's monthly total, a budget on
+ * it and the category_rollup report against walking the period's
+ * transactions and their categories.
+ *
+ * Usage: java -cp bin benchmark.CategoryRollupBenchmark [transactions]
+ */
+public class CategoryRollupBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        BudgetManager budgetManager = new BudgetManager(categoryManager, transactionManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+
+        List<Category> all = new ArrayList<>();
+        List<Category> top = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Category root = categoryManager.createCategory("Top" + i, "expense");
+            top.add(root);
+            all.add(root);
+            for (int j = 0; j < 4; j++) {
+                Category middle = categoryManager.createSubcategory(root.getId(), "Mid" + i + "." + j);
+                all.add(middle);
+                for (int k = 0; k < 3; k++) {
+                    all.add(categoryManager.createSubcategory(middle.getId(), "Leaf" + i + "." + j + "." + k));
+                }
+            }
+        }
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        budgetManager.addUser(userId);
+        Account account = accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking");
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = TODAY.minusYears(3);
+        int days = (int) (TODAY.toEpochDay() - firstDay.toEpochDay());
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            Category category = all.get(random.nextInt(all.size()));
+            transactionManager.recordTransaction(userId, account.getId(), category.getName(), "expense",
+                    BigDecimal.valueOf(random.nextLong(100, 50_000), 2), firstDay.plusDays(random.nextInt(days)));
+        }
+        System.out.printf("recorded %,d transactions over %d categories in %,d ms%n", transactions, all.size(),
+                (System.nanoTime() - start) / 1_000_000);
+
+        List<Transaction> stored = transactionManager.getTransactionsByUser(userId, null, null);
+        for (int i = 0; i < transactions / 20; i++) {
+            Transaction transaction = stored.get(i * 20); // Distinct, so none is already deleted
+            if (random.nextBoolean()) {
+                transactionManager.deleteTransaction(transaction.getId(), userId);
+            } else {
+                UUID categoryId = all.get(random.nextInt(all.size())).getId();
+                transactionManager.updateTransaction(transaction.getId(), userId, account.getId(), categoryId,
+                        BigDecimal.valueOf(random.nextLong(100, 50_000), 2), firstDay.plusDays(random.nextInt(days)),
+                        "Moved");
+            }
+        }
+        stored = transactionManager.getTransactionsByUser(userId, null, null);
+
+        List<UUID> ids = new ArrayList<>();
+        all.forEach(category -> ids.add(category.getId()));
+        LocalDate[][] ranges = { { null, null }, { LocalDate.of(2023, 3, 1), LocalDate.of(2023, 3, 31) },
+                { LocalDate.of(2023, 5, 17), LocalDate.of(2024, 2, 3) }, { TODAY.minusDays(9), TODAY } };
+        boolean allMatch = true;
+        for (LocalDate[] range : ranges) {
+            Map<UUID, BigDecimal> rolled = transactionManager.getCategoryTotals(userId, ids, range[0], range[1]);
+            allMatch &= rolled.equals(walk(categoryManager, stored, ids, range[0], range[1]));
+        }
+        System.out.printf("after %,d updates and deletes, every category total matches a walk: %b%n",
+                transactions / 20, allMatch);
+
+        LocalDate monthStart = LocalDate.of(2025, 6, 1);
+        LocalDate monthEnd = LocalDate.of(2025, 6, 30);
+        UUID parentId = top.get(0).getId();
+        UUID budgetId = budgetManager.createBudget(userId, "Top0 in June", BigDecimal.valueOf(5_000), monthStart,
+                monthEnd, List.of(parentId, all.get(1).getId())); // A subcategory listed too must not count twice
+        BigDecimal spent = budgetManager.getBudgetSpending(budgetId, userId);
+        BigDecimal walked = walk(categoryManager, stored, List.of(parentId), monthStart, monthEnd).get(parentId)
+                .negate();
+        System.out.printf("budget on a top-level category: spent %s, walk %s, match %b%n", spent, walked,
+                spent.equals(walked));
+
+        long[] rollupNanos = new long[50];
+        long[] walkNanos = new long[50];
+        long[] budgetNanos = new long[50];
+        long[] reportNanos = new long[50];
+        for (int i = 0; i < rollupNanos.length; i++) {
+            start = System.nanoTime();
+            transactionManager.getCategoryTotals(userId, List.of(parentId), monthStart, monthEnd);
+            rollupNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            walk(categoryManager, transactionManager.getTransactionsByUser(userId, monthStart, monthEnd),
+                    List.of(parentId), monthStart, monthEnd);
+            walkNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            budgetManager.getBudgetSpending(budgetId, userId);
+            budgetNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            reportGenerator.generateReport(userId, "category_rollup", firstDay, TODAY, Map.of("parentId", parentId));
+            reportNanos[i] = System.nanoTime() - start;
+        }
+        System.out.printf("top-level monthly total: rollup p50 %.3f ms, walking the month p50 %.3f ms%n",
+                p50(rollupNanos), p50(walkNanos));
+        System.out.printf("budget spending p50 %.3f ms; all-time category_rollup report p50 %.3f ms%n",
+                p50(budgetNanos), p50(reportNanos));
+        System.out.println("category_rollup under Top0: " + reportGenerator.generateReport(userId, "category_rollup",
+                firstDay, TODAY, Map.of("parentId", parentId)));
+    }
+
+    // Totals by walking the transactions and each one's path to the root
+    private static Map<UUID, BigDecimal> walk(CategoryManager categoryManager, List<Transaction> transactions,
+            List<UUID> categoryIds, LocalDate start, LocalDate end) {
+        Map<UUID, BigDecimal> totals = new HashMap<>();
+        for (UUID categoryId : categoryIds) {
+            totals.put(categoryId, BigDecimal.ZERO);
+        }
+        for (Transaction transaction : transactions) {
+            if ((start != null && transaction.getDate().isBefore(start))
+                    || (end != null && transaction.getDate().isAfter(end))) {
+                continue;
+            }
+            for (UUID categoryId : categoryIds) {
+                if (categoryManager.isWithin(transaction.getCategoryId(), categoryId)) {
+                    totals.merge(categoryId, transaction.getAmount(), BigDecimal::add);
+                }
+            }
+        }
+        return totals;
+    }
+
+    private static double p50(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,331 @@
+package benchmark;
+
+import domain.Account;
+import domain.Category;
+import domain.CategoryRule;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.CategoryRuleManager;
+import service.impl.ReportGenerator;
+import service.impl.StatementImporter;
+import service.impl.TransactionManager;
+import service.impl.TransactionSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records many users' transactions with payee descriptions under
+ * "Uncategorized Expense" and "Uncategorized Income", as if from before any
+ * rules existed, then gives every user a set of "description contains"
+ * rules and one user a large set. It compares classifying descriptions with
+ * the compiled automaton against testing each rule in turn, checking that
+ * both pick the same rule, and times recording by description. It then
+ * re-files all users' history in parallel, with most of it archived, and
+ * checks that every transaction ends up where the rules say, that category
+ * totals, a budget, reference counts and the spending_by_category and
+ * top_categories reports agree with a walk of the transactions, that a
+ * snapshot opened before still sees the old categories, and that a second
+ * run moves nothing.
+ *
+ * Usage: java -cp bin benchmark.CategoryRuleBenchmark [users] [transactionsPerUser] [rulesForLargeUser]
+ */
+public class CategoryRuleBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+    private static final String[] CITIES = { "SEATTLE WA", "AUSTIN TX", "DENVER CO", "BOSTON MA", "ONLINE" };
+    private static final String[] INCOME_PATTERNS = { "PAYROLL", "INTEREST PAYMENT", "REFUND" };
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int perUser = args.length > 1 ? Integer.parseInt(args[1]) : 2_500;
+        int largeRules = args.length > 2 ? Integer.parseInt(args[2])
+                : CategoryRuleManager.MAX_RULES_PER_USER - INCOME_PATTERNS.length; // As many as a user may have
+        int smallRules = 200;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        BudgetManager budgetManager = new BudgetManager(categoryManager, transactionManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        CategoryRuleManager ruleManager = new CategoryRuleManager(accountManager, categoryManager,
+                transactionManager);
+
+        List<Category> expenseLeaves = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Category top = categoryManager.createCategory("Expense" + i, "expense");
+            for (int j = 0; j < 3; j++) {
+                expenseLeaves.add(categoryManager.createSubcategory(top.getId(), "Expense" + i + "." + j));
+            }
+        }
+        List<Category> incomeCategories = new ArrayList<>();
+        for (String name : new String[] { "Salary", "Interest", "Refunds" }) {
+            incomeCategories.add(categoryManager.createCategory(name, "income"));
+        }
+        Category uncategorizedExpense = categoryManager.createCategory(StatementImporter.DEFAULT_EXPENSE_CATEGORY,
+                "expense");
+        Category uncategorizedIncome = categoryManager.createCategory(StatementImporter.DEFAULT_INCOME_CATEGORY,
+                "income");
+
+        // Merchant names; some contain another as a prefix, so the longer rule has to win
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Set<String> names = new HashSet<>();
+        List<String> merchants = new ArrayList<>();
+        while (merchants.size() < largeRules) {
+            String name = randomWord(random, 4 + random.nextInt(8));
+            if (merchants.size() % 10 == 9) {
+                name = merchants.get(random.nextInt(merchants.size())) + " " + randomWord(random, 3);
+            }
+            if (names.add(name.toLowerCase())) {
+                merchants.add(name);
+            }
+        }
+
+        UUID[] userIds = new UUID[users];
+        UUID[] accountIds = new UUID[users];
+        LocalDate firstDay = TODAY.minusYears(2);
+        int days = (int) (TODAY.toEpochDay() - firstDay.toEpochDay());
+        long start = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            userIds[u] = UUID.randomUUID();
+            accountManager.addUser(userIds[u]);
+            budgetManager.addUser(userIds[u]);
+            Account account = accountManager.createAccount(userIds[u], "Checking", BigDecimal.ZERO, "checking");
+            accountIds[u] = account.getId();
+            int known = u == 0 ? largeRules : smallRules;
+            for (int i = 0; i < perUser; i++) {
+                boolean income = i % 20 == 0;
+                String description = income ? INCOME_PATTERNS[random.nextInt(INCOME_PATTERNS.length)] + " ACME CORP"
+                        : description(random, merchants, known);
+                transactionManager.recordTransaction(userIds[u], accountIds[u],
+                        income ? uncategorizedIncome.getName() : uncategorizedExpense.getName(),
+                        income ? "income" : "expense", BigDecimal.valueOf(random.nextLong(100, 50_000), 2),
+                        firstDay.plusDays(random.nextInt(days)), description);
+            }
+        }
+        System.out.printf("recorded %,d uncategorized transactions for %d users in %,d ms%n", (long) users * perUser,
+                users, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            int count = u == 0 ? largeRules : smallRules;
+            for (int r = 0; r < count; r++) {
+                ruleManager.createCategoryRule(userIds[u], merchants.get(r).toLowerCase(),
+                        expenseLeaves.get(r % expenseLeaves.size()).getName());
+            }
+            for (int r = 0; r < INCOME_PATTERNS.length; r++) {
+                ruleManager.createCategoryRule(userIds[u], INCOME_PATTERNS[r], incomeCategories.get(r).getName());
+            }
+        }
+        System.out.printf("created %,d rules (%,d for the largest user) in %,d ms%n",
+                (long) (users - 1) * (smallRules + INCOME_PATTERNS.length) + largeRules + INCOME_PATTERNS.length,
+                largeRules + INCOME_PATTERNS.length, (System.nanoTime() - start) / 1_000_000);
+
+        // One pass per description against testing every rule in turn
+        UUID largeUser = userIds[0];
+        List<CategoryRule> rules = ruleManager.getCategoryRuleList(largeUser);
+        Map<UUID, String> typeByCategory = new HashMap<>();
+        for (Category category : categoryManager.getCategoryList()) {
+            typeByCategory.put(category.getId(), category.getType());
+        }
+        String[] descriptions = new String[200_000];
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptions[i] = description(random, merchants, largeRules);
+        }
+        int agree = 0;
+        for (String description : descriptions) {
+            Category picked = ruleManager.classify(largeUser, description, "expense");
+            UUID naive = naiveMatch(rules, typeByCategory, description, "expense");
+            agree += (picked == null ? naive == null : picked.getId().equals(naive)) ? 1 : 0;
+        }
+        long[] automatonNanos = new long[5];
+        long[] naiveNanos = new long[5];
+        for (int round = 0; round < automatonNanos.length; round++) {
+            start = System.nanoTime();
+            for (String description : descriptions) {
+                ruleManager.classify(largeUser, description, "expense");
+            }
+            automatonNanos[round] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String description : descriptions) {
+                naiveMatch(rules, typeByCategory, description, "expense");
+            }
+            naiveNanos[round] = System.nanoTime() - start;
+        }
+        System.out.printf("classify against %,d rules: automaton p50 %.2f us, rule by rule p50 %.2f us per "
+                + "description; same rule for %,d of %,d%n", rules.size(),
+                p50(automatonNanos) / descriptions.length / 1e3, p50(naiveNanos) / descriptions.length / 1e3, agree,
+                descriptions.length);
+
+        long[] recordNanos = new long[20_000];
+        int recordedRight = 0;
+        for (int i = 0; i < recordNanos.length; i++) {
+            String description = description(random, merchants, largeRules);
+            start = System.nanoTime();
+            Transaction recorded = ruleManager.recordTransaction(largeUser, accountIds[0], description, "expense",
+                    BigDecimal.valueOf(random.nextLong(100, 50_000), 2), firstDay.plusDays(random.nextInt(days)));
+            recordNanos[i] = System.nanoTime() - start;
+            UUID expected = naiveMatch(rules, typeByCategory, description, "expense");
+            recordedRight += recorded.getCategoryId().equals(expected == null ? uncategorizedExpense.getId()
+                    : expected) ? 1 : 0;
+        }
+        System.out.printf("record by description: p50 %.3f ms; filed as the rules say: %,d of %,d%n",
+                p50(recordNanos) / 1e6, recordedRight, recordNanos.length);
+
+        // Re-file history, most of it archived, with a budget and a snapshot open over it
+        LocalDate monthStart = LocalDate.of(2025, 6, 1);
+        LocalDate monthEnd = LocalDate.of(2025, 6, 30);
+        UUID budgetCategory = categoryManager.getCategoryByName("Expense0").getId();
+        UUID budgetId = budgetManager.createBudget(largeUser, "Expense0 in June", BigDecimal.valueOf(5_000),
+                monthStart, monthEnd, List.of(budgetCategory));
+        BigDecimal spentBefore = budgetManager.getBudgetSpending(budgetId, largeUser);
+        int archived = transactionManager.archiveColdTransactions(TODAY);
+        long uncategorizedBefore = countIn(transactionManager.getTransactionsByUser(largeUser, null, null),
+                uncategorizedExpense, uncategorizedIncome);
+        TransactionSnapshot before = transactionManager.snapshot(largeUser);
+        start = System.nanoTime();
+        long moved = ruleManager.recategorizeHistory(null, null);
+        long recategorizeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (UUID userId : userIds) {
+            transactionManager.getTransactionsByUser(userId, null, null);
+        }
+        long readNanos = System.nanoTime() - start;
+        System.out.printf("re-filed %,d of %,d transactions (%,d archived) across %d users in %,d ms on %d CPU(s) "
+                + "(reading them all once: %,d ms)%n", moved, transactionManager.getTransactionsByUser(largeUser,
+                null, null).size() + (long) (users - 1) * perUser, archived, users, recategorizeNanos / 1_000_000,
+                Runtime.getRuntime().availableProcessors(), readNanos / 1_000_000);
+
+        boolean allFiled = true;
+        boolean totalsMatch = true;
+        Map<UUID, Long> counted = new HashMap<>();
+        List<UUID> categoryIds = new ArrayList<>(typeByCategory.keySet());
+        for (int u = 0; u < users; u++) {
+            List<CategoryRule> userRules = ruleManager.getCategoryRuleList(userIds[u]);
+            List<Transaction> transactions = transactionManager.getTransactionsByUser(userIds[u], null, null);
+            for (Transaction transaction : transactions) {
+                String type = transaction.getAmount().signum() > 0 ? "income" : "expense";
+                UUID expected = naiveMatch(userRules, typeByCategory, transaction.getDescription(), type);
+                UUID fallback = type.equals("income") ? uncategorizedIncome.getId() : uncategorizedExpense.getId();
+                allFiled &= transaction.getCategoryId().equals(expected == null ? fallback : expected);
+                counted.merge(transaction.getCategoryId(), 1L, Long::sum);
+            }
+            if (u % 20 == 0) {
+                totalsMatch &= transactionManager.getCategoryTotals(userIds[u], categoryIds, null, null)
+                        .equals(walk(categoryManager, transactions, categoryIds, null, null));
+            }
+        }
+        boolean countsMatch = true;
+        for (UUID categoryId : categoryIds) {
+            countsMatch &= categoryManager.getTransactionReferenceCount(categoryId)
+                    == counted.getOrDefault(categoryId, 0L);
+        }
+        List<Transaction> largeHistory = transactionManager.getTransactionsByUser(largeUser, null, null);
+        BigDecimal spent = budgetManager.getBudgetSpending(budgetId, largeUser);
+        BigDecimal walked = walk(categoryManager, largeHistory, List.of(budgetCategory), monthStart, monthEnd)
+                .get(budgetCategory).negate();
+        System.out.printf("every transaction filed as the rules say %b, category totals match a walk %b, "
+                + "reference counts match %b; budget spending %s -> %s (walk %s)%n", allFiled, totalsMatch,
+                countsMatch, spentBefore, spent, walked);
+
+        @SuppressWarnings("unchecked")
+        Map<String, BigDecimal> byCategory = (Map<String, BigDecimal>) reportGenerator.generateReport(largeUser,
+                "spending_by_category", firstDay, TODAY, null);
+        Map<String, BigDecimal> expectedByCategory = new HashMap<>();
+        for (Transaction transaction : largeHistory) {
+            if (transaction.getAmount().signum() < 0) {
+                expectedByCategory.merge(categoryManager.getCategory(transaction.getCategoryId()).getName(),
+                        transaction.getAmount(), BigDecimal::add);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, BigDecimal> top = (Map<String, BigDecimal>) reportGenerator.generateReport(largeUser,
+                "top_categories", firstDay, TODAY, Map.of("limit", "5"));
+        List<String> expectedTop = new ArrayList<>();
+        expectedByCategory.entrySet().stream().sorted(Map.Entry.comparingByValue()).limit(5)
+                .forEach(entry -> expectedTop.add(entry.getKey()));
+        boolean snapshotUnchanged = countIn(before.getTransactions(null, null), uncategorizedExpense,
+                uncategorizedIncome) == uncategorizedBefore;
+        before.close();
+        System.out.printf("spending_by_category matches a walk %b, top_categories %s matches %b, earlier snapshot "
+                + "unchanged %b, second run moves %d%n", byCategory.equals(expectedByCategory), top.keySet(),
+                new ArrayList<>(top.keySet()).equals(expectedTop), snapshotUnchanged,
+                ruleManager.recategorizeHistory(null, null));
+    }
+
+    private static long countIn(List<Transaction> transactions, Category... categories) {
+        long count = 0;
+        for (Transaction transaction : transactions) {
+            for (Category category : categories) {
+                count += transaction.getCategoryId().equals(category.getId()) ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private static String description(ThreadLocalRandom random, List<String> merchants, int known) {
+        String merchant = random.nextInt(5) == 0 ? randomWord(random, 8) : merchants.get(random.nextInt(known));
+        return "POS PURCHASE " + merchant + " #" + random.nextInt(10_000) + " " + CITIES[random.nextInt(CITIES.length)];
+    }
+
+    private static String randomWord(ThreadLocalRandom random, int length) {
+        char[] letters = new char[length];
+        for (int i = 0; i < length; i++) {
+            letters[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    // Every rule tested against the description: longest pattern wins, then the earliest rule
+    private static UUID naiveMatch(List<CategoryRule> rules, Map<UUID, String> typeByCategory, String description,
+            String type) {
+        String text = description.toLowerCase();
+        CategoryRule best = null;
+        for (CategoryRule rule : rules) {
+            if (typeByCategory.get(rule.getCategoryId()).equals(type) && text.contains(rule.getPattern().toLowerCase())
+                    && (best == null || rule.getPattern().length() > best.getPattern().length())) {
+                best = rule;
+            }
+        }
+        return best == null ? null : best.getCategoryId();
+    }
+
+    // Totals by walking the transactions and each one's path to the root
+    private static Map<UUID, BigDecimal> walk(CategoryManager categoryManager, List<Transaction> transactions,
+            List<UUID> categoryIds, LocalDate start, LocalDate end) {
+        Map<UUID, BigDecimal> totals = new LinkedHashMap<>();
+        for (UUID categoryId : categoryIds) {
+            totals.put(categoryId, BigDecimal.ZERO);
+        }
+        for (Transaction transaction : transactions) {
+            if ((start != null && transaction.getDate().isBefore(start))
+                    || (end != null && transaction.getDate().isAfter(end))) {
+                continue;
+            }
+            for (UUID categoryId : categoryIds) {
+                if (categoryManager.isWithin(transaction.getCategoryId(), categoryId)) {
+                    totals.merge(categoryId, transaction.getAmount(), BigDecimal::add);
+                }
+            }
+        }
+        return totals;
+    }
+
+    private static double p50(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
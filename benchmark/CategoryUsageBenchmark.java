@@ -0,0 +1,202 @@
+package benchmark;
+
+import domain.Account;
+import domain.Budget;
+import domain.Category;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import service.impl.AccountManager;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.TransactionManager;
+import service.impl.TransactionSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records transactions and budgets for many users over a set of categories,
+ * then compares the time of an in-use check from reference counts against
+ * scanning every user's transactions and budgets, checks that deleting a
+ * used category is refused, and merges a rarely used category into another:
+ * its transactions, archived ones included, budgets and rolled-up totals
+ * move, nothing is left
+ * behind, and a snapshot opened before the merge still sees the old
+ * category. Finally it races deletions of fresh categories against
+ * transactions recorded into them and counts outcomes where a transaction
+ * was stored under a deleted category.
+ *
+ * Usage: java -cp bin benchmark.CategoryUsageBenchmark [users] [transactionsPerUser]
+ */
+public class CategoryUsageBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int perUser = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        BudgetManager budgetManager = new BudgetManager(categoryManager, transactionManager);
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            categories.add(categoryManager.createCategory("Category" + i, "expense"));
+        }
+        Category rare = categoryManager.createCategory("Rare", "expense");
+        Category unused = categoryManager.createCategory("Unused", "expense");
+        Category common = categories.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID[] userIds = new UUID[users];
+        UUID[] accountIds = new UUID[users];
+        long rareRows = 0;
+        for (int u = 0; u < users; u++) {
+            userIds[u] = UUID.randomUUID();
+            accountManager.addUser(userIds[u]);
+            budgetManager.addUser(userIds[u]);
+            Account account = accountManager.createAccount(userIds[u], "Checking", BigDecimal.ZERO, "checking");
+            accountIds[u] = account.getId();
+            boolean rareUser = u % 100 == 0;
+            for (int i = 0; i < perUser; i++) {
+                Category category = rareUser && i % 5 == 0 ? rare : categories.get(random.nextInt(categories.size()));
+                rareRows += category == rare ? 1 : 0;
+                transactionManager.recordTransaction(userIds[u], accountIds[u], category.getName(), "expense",
+                        BigDecimal.valueOf(random.nextLong(100, 50_000), 2), TODAY.minusDays(random.nextInt(730)));
+            }
+            List<UUID> budgetCategories = rareUser ? List.of(rare.getId(), common.getId())
+                    : List.of(categories.get(1 + random.nextInt(categories.size() - 1)).getId());
+            budgetManager.createBudget(userIds[u], "Monthly", BigDecimal.valueOf(500), TODAY.withDayOfMonth(1),
+                    TODAY.withDayOfMonth(1).plusMonths(1).minusDays(1), budgetCategories);
+        }
+        System.out.printf("%,d users, %,d transactions, %,d in 'Rare'%n", users, (long) users * perUser, rareRows);
+
+        // An unused category is the worst case for the scan, and the one a deletion goes through with
+        long start = System.nanoTime();
+        boolean scanned = inUseByScan(transactionManager, budgetManager, userIds, unused.getId());
+        long scanNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        boolean counted = categoryManager.getTransactionReferenceCount(unused.getId()) > 0
+                || categoryManager.getBudgetReferenceCount(unused.getId()) > 0;
+        long countNanos = System.nanoTime() - start;
+        System.out.printf("in-use check of an unused category: scan %.3f ms, reference counts %.4f ms, agree: %b%n",
+                scanNanos / 1e6, countNanos / 1e6, scanned == counted);
+        System.out.printf("'Rare' counts %d transactions and %d budgets; scan finds it in use: %b%n",
+                categoryManager.getTransactionReferenceCount(rare.getId()),
+                categoryManager.getBudgetReferenceCount(rare.getId()),
+                inUseByScan(transactionManager, budgetManager, userIds, rare.getId()));
+        try {
+            categoryManager.deleteCategory(rare.getId());
+            System.out.println("delete of a used category: allowed (WRONG)");
+        } catch (ValidationException e) {
+            System.out.println("delete of a used category: refused: " + e.getMessage());
+        }
+
+        // Most rows move to the off-heap archive first, so the merge covers both tiers
+        int archived = transactionManager.archiveColdTransactions(TODAY);
+        UUID rareUser = userIds[0];
+        BigDecimal rareTotal = total(transactionManager, rareUser, rare.getId());
+        BigDecimal commonTotal = total(transactionManager, rareUser, common.getId());
+        long commonCount = categoryManager.getTransactionReferenceCount(common.getId());
+        TransactionSnapshot before = transactionManager.snapshot(rareUser);
+        start = System.nanoTime();
+        long moved = categoryManager.mergeCategory(rare.getId(), common.getId());
+        long mergeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (UUID userId : userIds) {
+            transactionManager.getTransactionsByUser(userId, null, null).stream()
+                    .filter(t -> t.getCategoryId().equals(common.getId())).count();
+        }
+        long fullScanNanos = System.nanoTime() - start;
+        System.out.printf("merge 'Rare' into '%s' (%,d rows archived): %,d references moved in %.1f ms "
+                + "(one scan of every user: %.1f ms)%n", common.getName(), archived, moved, mergeNanos / 1e6,
+                fullScanNanos / 1e6);
+
+        boolean leftBehind = inUseByScan(transactionManager, budgetManager, userIds, rare.getId());
+        boolean totalsMoved = total(transactionManager, rareUser, common.getId())
+                .compareTo(commonTotal.add(rareTotal)) == 0
+                && total(transactionManager, rareUser, rare.getId()).signum() == 0;
+        boolean countsMoved = categoryManager.getTransactionReferenceCount(common.getId()) == commonCount + rareRows
+                && categoryManager.getTransactionReferenceCount(rare.getId()) == 0
+                && categoryManager.getBudgetReferenceCount(rare.getId()) == 0;
+        boolean snapshotUnchanged = before.getTransactions(null, null).stream()
+                .filter(t -> t.getCategoryId().equals(rare.getId())).count() > 0;
+        before.close();
+        System.out.printf("after merge: nothing left in 'Rare' %b, rolled-up totals moved %b, counts moved %b, "
+                + "earlier snapshot unchanged %b, 'Rare' deleted %b%n", !leftBehind, totalsMoved, countsMoved,
+                snapshotUnchanged, !categoryManager.getCategoryList().contains(rare));
+
+        int violations = 0;
+        int deletions = 0;
+        for (int i = 0; i < 2_000; i++) {
+            Category fresh = categoryManager.createCategory("Fresh" + i, "expense");
+            AtomicBoolean recorded = new AtomicBoolean();
+            CyclicBarrier go = new CyclicBarrier(2);
+            Thread writer = new Thread(() -> {
+                try {
+                    go.await();
+                    transactionManager.recordTransaction(userIds[1], accountIds[1], fresh.getName(), "expense",
+                            BigDecimal.ONE, TODAY);
+                    recorded.set(true);
+                } catch (NotFoundException | ValidationException e) {
+                    // Deleted first
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writer.start();
+            go.await();
+            long until = System.nanoTime() + random.nextInt(40_000); // Vary which side gets there first
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            boolean deleted;
+            try {
+                deleted = categoryManager.deleteCategory(fresh.getId());
+            } catch (ValidationException e) {
+                deleted = false;
+            }
+            writer.join();
+            deletions += deleted ? 1 : 0;
+            violations += deleted && recorded.get() ? 1 : 0;
+        }
+        System.out.printf("delete racing a new transaction: %d deletions won, %d transactions stored under a "
+                + "deleted category%n", deletions, violations);
+    }
+
+    // The check without reference counts: every user's transactions, then every user's budgets
+    private static boolean inUseByScan(TransactionManager transactionManager, BudgetManager budgetManager,
+            UUID[] userIds, UUID categoryId) throws Exception {
+        for (UUID userId : userIds) {
+            for (Transaction transaction : transactionManager.getTransactionsByUser(userId, null, null)) {
+                if (transaction.getCategoryId().equals(categoryId)) {
+                    return true;
+                }
+            }
+        }
+        for (UUID userId : userIds) {
+            for (Budget budget : budgetManager.getBudgetList(userId)) {
+                if (budget.getCategoryIds().contains(categoryId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static BigDecimal total(TransactionManager transactionManager, UUID userId, UUID categoryId)
+            throws Exception {
+        Map<UUID, BigDecimal> totals = transactionManager.getCategoryTotals(userId, List.of(categoryId), null, null);
+        return totals.get(categoryId);
+    }
+}
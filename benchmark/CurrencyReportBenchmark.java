@@ -0,0 +1,132 @@
+package benchmark;
+
+import domain.Account;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.ExchangeRateTable;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Loads three years of daily EUR and JPY rates from a file, records
+ * transactions across USD, EUR and JPY accounts, and times the converted
+ * income_vs_expense report against converting each row the straightforward
+ * way (dated map lookup plus BigDecimal division by a quoted rate).
+ *
+ * Usage: java -Xmx2g -cp bin benchmark.CurrencyReportBenchmark [transactions]
+ */
+public class CurrencyReportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        LocalDate firstDay = LocalDate.now().minusYears(3);
+        int days = (int) (LocalDate.now().toEpochDay() - firstDay.toEpochDay() + 1);
+        Path ratesFile = Files.createTempFile("rates", ".csv");
+        // Quoted as units per USD, the way they are usually published; the table wants USD per unit
+        NavigableMap<Long, BigDecimal> eurQuotes = new TreeMap<>();
+        NavigableMap<Long, BigDecimal> jpyQuotes = new TreeMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (BufferedWriter writer = Files.newBufferedWriter(ratesFile, StandardCharsets.UTF_8)) {
+            writer.write("date,currency,rate\n");
+            for (int d = 0; d < days; d++) {
+                LocalDate date = firstDay.plusDays(d);
+                BigDecimal eur = BigDecimal.valueOf(0.92 + 0.04 * Math.sin(d / 90.0) + random.nextDouble() * 0.005);
+                BigDecimal jpy = BigDecimal.valueOf(140 + 10 * Math.sin(d / 120.0) + random.nextDouble());
+                eurQuotes.put(date.toEpochDay(), eur);
+                jpyQuotes.put(date.toEpochDay(), jpy);
+                writer.write(date + ",EUR," + BigDecimal.ONE.divide(eur, MathContext.DECIMAL64) + "\n");
+                writer.write(date + ",JPY," + BigDecimal.ONE.divide(jpy, MathContext.DECIMAL64) + "\n");
+            }
+        }
+
+        ExchangeRateTable rates = new ExchangeRateTable("USD");
+        AccountManager accountManager = new AccountManager(rates);
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        categoryManager.createCategory("Salary", "income");
+        categoryManager.createCategory("Living", "expense");
+        try {
+            System.out.println("rates loaded: " + rates.load(ratesFile));
+        } finally {
+            Files.deleteIfExists(ratesFile);
+        }
+
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        Account[] accounts = {
+                accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking", "USD"),
+                accountManager.createAccount(userId, "Girokonto", BigDecimal.ZERO, "checking", "EUR"),
+                accountManager.createAccount(userId, "Futsuu", BigDecimal.ZERO, "checking", "JPY"),
+        };
+        for (int i = 0; i < transactions; i++) {
+            Account account = accounts[i % accounts.length];
+            double scale = account.getCurrency().equals("JPY") ? 150 : 1;
+            boolean income = i % 10 == 0;
+            transactionManager.recordTransaction(userId, account.getId(), income ? "Salary" : "Living",
+                    income ? "income" : "expense",
+                    BigDecimal.valueOf(Math.round(random.nextDouble(5, income ? 3000 : 300) * scale * 100), 2),
+                    firstDay.plusDays(random.nextInt(days)));
+        }
+
+        LocalDate start = firstDay;
+        LocalDate end = LocalDate.now();
+        long[] nanos = new long[10];
+        Object report = null;
+        for (int i = 0; i < nanos.length; i++) {
+            long callStart = System.nanoTime();
+            report = reportGenerator.generateReport(userId, "income_vs_expense", start, end, Map.of());
+            nanos[i] = System.nanoTime() - callStart;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("income_vs_expense (converted): p50 %.1f ms -> %s%n", nanos[nanos.length / 2] / 1e6,
+                report);
+
+        // Straightforward conversion for comparison, reading the same transactions
+        for (int i = 0; i < nanos.length; i++) {
+            long callStart = System.nanoTime();
+            List<Transaction> inRange = transactionManager.getTransactionsByUser(userId, start, end);
+            BigDecimal income = BigDecimal.ZERO;
+            BigDecimal expense = BigDecimal.ZERO;
+            for (Transaction t : inRange) {
+                BigDecimal amount = t.getAmount();
+                if (t.getAccountId().equals(accounts[1].getId())) {
+                    amount = amount.divide(eurQuotes.floorEntry(t.getDate().toEpochDay()).getValue(),
+                            MathContext.DECIMAL64);
+                } else if (t.getAccountId().equals(accounts[2].getId())) {
+                    amount = amount.divide(jpyQuotes.floorEntry(t.getDate().toEpochDay()).getValue(),
+                            MathContext.DECIMAL64);
+                }
+                if (amount.signum() > 0) {
+                    income = income.add(amount);
+                } else {
+                    expense = expense.subtract(amount);
+                }
+            }
+            nanos[i] = System.nanoTime() - callStart;
+            report = "income=" + income.setScale(2, RoundingMode.HALF_UP) + " expense="
+                    + expense.setScale(2, RoundingMode.HALF_UP);
+        }
+        Arrays.sort(nanos);
+        System.out.printf("per-row lookup and division: p50 %.1f ms -> %s%n",
+                nanos[nanos.length / 2] / 1e6, report);
+    }
+}
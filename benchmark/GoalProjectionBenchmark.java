@@ -0,0 +1,89 @@
+package benchmark;
+
+import domain.Account;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.FinancialGoalManager;
+import service.impl.GoalProjection;
+import service.impl.GoalProjectionEngine;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds two years of salary and spending history, then projects goals of
+ * increasing difficulty and reports the per-projection latency.
+ *
+ * Usage: java -cp bin benchmark.GoalProjectionBenchmark [paths] [iterations]
+ */
+public class GoalProjectionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int paths = args.length > 0 ? Integer.parseInt(args[0]) : GoalProjectionEngine.DEFAULT_PATHS;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        FinancialGoalManager goalManager = new FinancialGoalManager();
+        GoalProjectionEngine engine = new GoalProjectionEngine(goalManager, transactionManager);
+        categoryManager.createCategory("Salary", "income");
+        categoryManager.createCategory("Living", "expense");
+
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        goalManager.addUser(userId);
+        Account account = accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking");
+
+        // Salary of 4000 a month; spending averages ~3500 with a few expensive months
+        LocalDate today = LocalDate.now();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (LocalDate month = today.withDayOfMonth(1).minusMonths(24); month.isBefore(today.withDayOfMonth(1));
+                month = month.plusMonths(1)) {
+            transactionManager.recordTransaction(userId, account.getId(), "Salary", "income",
+                    BigDecimal.valueOf(4000), month.plusDays(24));
+            int purchases = 40;
+            for (int i = 0; i < purchases; i++) {
+                double spend = 3300.0 / purchases * (0.5 + random.nextDouble());
+                transactionManager.recordTransaction(userId, account.getId(), "Living", "expense",
+                        BigDecimal.valueOf(Math.round(spend * 100), 2), month.plusDays(random.nextInt(28)));
+            }
+            if (random.nextInt(6) == 0) {
+                transactionManager.recordTransaction(userId, account.getId(), "Living", "expense",
+                        BigDecimal.valueOf(1500 + random.nextInt(1500)), month.plusDays(random.nextInt(28)));
+            }
+        }
+
+        UUID[] goals = {
+                goalManager.createFinancialGoal(userId, "Emergency fund", BigDecimal.valueOf(3000), BigDecimal.ZERO,
+                        today.plusMonths(12)),
+                goalManager.createFinancialGoal(userId, "Car", BigDecimal.valueOf(8000), BigDecimal.valueOf(1000),
+                        today.plusMonths(24)),
+                goalManager.createFinancialGoal(userId, "House deposit", BigDecimal.valueOf(60000), BigDecimal.ZERO,
+                        today.plusMonths(36)),
+        };
+        for (UUID goalId : goals) {
+            System.out.println(goalManager.getFinancialGoalDetails(goalId, userId).getName() + ": "
+                    + engine.projectGoal(goalId, userId, today, GoalProjectionEngine.DEFAULT_HISTORY_MONTHS, paths));
+        }
+
+        for (UUID goalId : goals) {
+            long[] nanos = new long[iterations];
+            GoalProjection projection = null;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                projection = engine.projectGoal(goalId, userId, today, GoalProjectionEngine.DEFAULT_HISTORY_MONTHS,
+                        paths);
+                nanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("goal %s: p50 %.2f ms, p99 %.2f ms (paths=%d, probability %.3f)%n",
+                    goalManager.getFinancialGoalDetails(goalId, userId).getName(), nanos[iterations / 2] / 1e6,
+                    nanos[(int) (iterations * 0.99)] / 1e6, paths, projection.getProbabilityByDeadline());
+        }
+    }
+}
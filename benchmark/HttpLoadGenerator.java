@@ -0,0 +1,133 @@
+package benchmark;
+
+import api.FinanceHttpServer;
+import api.JsonCodec;
+import service.impl.AccountManager;
+import service.impl.BudgetManager;
+import service.impl.CategoryManager;
+import service.impl.FinancialGoalManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load generator for FinanceHttpServer. Starts the server in-process on
+ * an ephemeral port, creates users and accounts over HTTP, then drives
+ * concurrent clients (70% record, 20% list, 10% report) and reports requests
+ * per second and p50/p99/max latency.
+ *
+ * Usage: java -cp bin benchmark.HttpLoadGenerator [clients] [requestsPerClient] [users]
+ */
+public class HttpLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        FinanceHttpServer server = new FinanceHttpServer(accountManager, categoryManager, transactionManager,
+                new BudgetManager(categoryManager), new FinancialGoalManager(),
+                new ReportGenerator(accountManager, transactionManager));
+        server.start(0, Runtime.getRuntime().availableProcessors() * 4);
+        String base = "http://localhost:" + server.getPort();
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        try {
+            send(client, post(base + "/categories", "{\"name\":\"Food\",\"type\":\"expense\"}"));
+            String[] userIds = new String[users];
+            String[] accountIds = new String[users];
+            for (int i = 0; i < users; i++) {
+                userIds[i] = field(send(client, post(base + "/users", "{}")), "id");
+                accountIds[i] = field(send(client, post(base + "/users/" + userIds[i] + "/accounts",
+                        "{\"name\":\"Checking\",\"balance\":1000,\"type\":\"Checking\"}")), "id");
+            }
+
+            long[] latencies = new long[clients * requestsPerClient];
+            AtomicInteger latencyCount = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(clients);
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                String userBase = base + "/users/" + userIds[c % users];
+                runClient(client, userBase, accountIds[c % users], requestsPerClient, latencies, latencyCount,
+                        errors, done);
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+
+            int n = latencyCount.get();
+            long[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            System.out.printf("clients=%d users=%d requests=%d errors=%d%n", clients, users, n, errors.get());
+            System.out.printf("throughput=%.0f req/s%n", n / (elapsed / 1e9));
+            System.out.printf("p50=%.3f ms p99=%.3f ms max=%.3f ms%n", sorted[n / 2] / 1e6,
+                    sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6);
+        } finally {
+            server.stop();
+            System.exit(0); // HttpClient keeps non-daemon selector threads alive
+        }
+    }
+
+    private static void runClient(HttpClient client, String userBase, String accountId, int remaining,
+            long[] latencies, AtomicInteger latencyCount, AtomicInteger errors, CountDownLatch done) {
+        if (remaining == 0) {
+            done.countDown();
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        int roll = ThreadLocalRandom.current().nextInt(10);
+        HttpRequest request;
+        if (roll < 7) {
+            request = post(userBase + "/transactions", "{\"accountId\":\"" + accountId
+                    + "\",\"categoryName\":\"Food\",\"type\":\"expense\",\"amount\":12.50,\"date\":\""
+                    + today.minusDays(ThreadLocalRandom.current().nextInt(30)) + "\"}");
+        } else if (roll < 9) {
+            request = HttpRequest.newBuilder(URI.create(userBase + "/transactions?start=" + today.minusDays(7)
+                    + "&end=" + today)).build();
+        } else {
+            request = HttpRequest.newBuilder(URI.create(userBase + "/reports/income_vs_expense")).build();
+        }
+        long issued = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            latencies[latencyCount.getAndIncrement()] = System.nanoTime() - issued;
+            if (error != null || response.statusCode() >= 400) {
+                errors.incrementAndGet();
+            }
+            runClient(client, userBase, accountId, remaining - 1, latencies, latencyCount, errors, done);
+        });
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static String send(HttpClient client, HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String field(String json, String name) throws Exception {
+        Map<String, Object> object = JsonCodec.parseObject(json);
+        return String.valueOf(object.get(name));
+    }
+}
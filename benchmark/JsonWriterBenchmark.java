@@ -0,0 +1,79 @@
+package benchmark;
+
+import api.JsonWriter;
+import domain.Transaction;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares encoding a 10k-transaction list with JsonWriter (reused buffer)
+ * against the string concatenation in Transaction.toString(), both ending
+ * as UTF-8 bytes ready to send.
+ *
+ * Usage: java -cp bin benchmark.JsonWriterBenchmark [transactions] [iterations]
+ */
+public class JsonWriterBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        List<Transaction> transactions = new ArrayList<>(count);
+        String[] descriptions = { "Food", "Utilities", "Uber trip", "Rent March", "Caf\u00e9 \"Corner\"" };
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < count; i++) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            transactions.add(new Transaction(UUID.randomUUID(), UUID.randomUUID(),
+                    BigDecimal.valueOf(-random.nextInt(1, 1_000_000), 2), today.minusDays(random.nextInt(3650)),
+                    descriptions[i % descriptions.length], "expense"));
+        }
+
+        JsonWriter writer = new JsonWriter();
+        long sink = 0;
+        // Warm up both paths before measuring
+        for (int i = 0; i < iterations; i++) {
+            sink += concatenate(transactions).length;
+            sink += writer.reset().transactions(transactions).size();
+        }
+
+        long start = System.nanoTime();
+        long concatBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            concatBytes = concatenate(transactions).length;
+            sink += concatBytes;
+        }
+        double concatMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        long jsonBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            jsonBytes = writer.reset().transactions(transactions).size();
+            sink += jsonBytes;
+        }
+        double writerMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.printf("transactions=%d iterations=%d%n", count, iterations);
+        System.out.printf("toString concatenation: %.3f ms/op, %d bytes%n", concatMs, concatBytes);
+        System.out.printf("JsonWriter:             %.3f ms/op, %d bytes (%.1fx faster)%n", writerMs, jsonBytes,
+                concatMs / writerMs);
+        if (sink == 42) {
+            System.out.println(); // Keeps the results observable so the JIT cannot drop the loops
+        }
+    }
+
+    private static byte[] concatenate(List<Transaction> transactions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (Transaction t : transactions) {
+            sb.append(t.toString()).append(',');
+        }
+        sb.append(']');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
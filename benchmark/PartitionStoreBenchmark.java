@@ -0,0 +1,130 @@
+package benchmark;
+
+import domain.Account;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.PartitionStore;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+import service.impl.TransactionSnapshot;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes ten years of one user's transactions as monthly partition files,
+ * then reports the bytes per row on disk, checks that rewriting with no
+ * changes writes nothing and that one update rewrites one month, checks
+ * that decoding every month gives back the stored rows, and compares
+ * income_vs_expense and spending_by_category from partition footers and
+ * decoded edge months against the same reports from memory, in both time
+ * and result.
+ *
+ * Usage: java -cp bin benchmark.PartitionStoreBenchmark [transactions]
+ */
+public class PartitionStoreBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+    private static final String[][] CATEGORIES = { { "Salary", "income" }, { "Groceries", "expense" },
+            { "Dining", "expense" }, { "Rent", "expense" }, { "Transport", "expense" } };
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        for (String[] category : CATEGORIES) {
+            categoryManager.createCategory(category[0], category[1]);
+        }
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        Account checking = accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking");
+        Account card = accountManager.createAccount(userId, "Card", BigDecimal.ZERO, "credit");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = TODAY.minusYears(10);
+        int days = (int) (TODAY.toEpochDay() - firstDay.toEpochDay());
+        for (int i = 0; i < transactions; i++) {
+            String[] category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            transactionManager.recordTransaction(userId, random.nextBoolean() ? checking.getId() : card.getId(),
+                    category[0], category[1], BigDecimal.valueOf(random.nextLong(100, 500_000), 2),
+                    firstDay.plusDays(random.nextInt(days)));
+        }
+
+        Path directory = Files.createTempDirectory("partitions");
+        PartitionStore store = new PartitionStore(directory);
+        long start = System.nanoTime();
+        int written;
+        try (TransactionSnapshot snapshot = transactionManager.snapshot(userId)) {
+            written = store.writeUser(snapshot);
+        }
+        long bytes = store.getSizeBytes(userId);
+        System.out.printf("wrote %d monthly files in %,d ms: %,d bytes, %.1f bytes per transaction%n", written,
+                (System.nanoTime() - start) / 1_000_000, bytes, (double) bytes / transactions);
+
+        start = System.nanoTime();
+        try (TransactionSnapshot snapshot = transactionManager.snapshot(userId)) {
+            written = store.writeUser(snapshot);
+        }
+        System.out.printf("rewrite with no changes: %d files in %,d ms%n", written,
+                (System.nanoTime() - start) / 1_000_000);
+        Transaction changed = transactionManager.getTransactionsByUser(userId, firstDay, firstDay.plusDays(40)).get(0);
+        transactionManager.updateTransaction(changed.getId(), userId, changed.getAccountId(), changed.getCategoryId(),
+                changed.getAmount().abs().add(BigDecimal.ONE), changed.getDate(), "Corrected");
+        try (TransactionSnapshot snapshot = transactionManager.snapshot(userId)) {
+            written = store.writeUser(snapshot);
+        }
+        System.out.printf("rewrite after one update: %d file(s)%n", written);
+
+        int decoded = 0;
+        BigDecimal decodedTotal = BigDecimal.ZERO;
+        start = System.nanoTime();
+        for (YearMonth month : store.getMonths(userId)) {
+            for (Transaction transaction : store.readMonth(userId, month)) {
+                decoded++;
+                decodedTotal = decodedTotal.add(transaction.getAmount());
+            }
+        }
+        BigDecimal memoryTotal = transactionManager.getTransactionsByUser(userId, null, null).stream()
+                .map(Transaction::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        System.out.printf("decoded %,d rows in %,d ms; totals match memory: %b%n", decoded,
+                (System.nanoTime() - start) / 1_000_000, decoded == transactions
+                        && decodedTotal.compareTo(memoryTotal) == 0);
+
+        LocalDate reportStart = LocalDate.of(2017, 3, 15);
+        LocalDate reportEnd = LocalDate.of(2024, 9, 10);
+        for (String reportType : new String[] { "income_vs_expense", "spending_by_category" }) {
+            Object fromMemory = reportGenerator.generateReport(userId, reportType, reportStart, reportEnd, null);
+            Object fromFiles = reportGenerator.generateReport(store, userId, reportType, reportStart, reportEnd,
+                    null);
+            long[] memoryNanos = new long[10];
+            long[] fileNanos = new long[10];
+            for (int i = 0; i < memoryNanos.length; i++) {
+                start = System.nanoTime();
+                reportGenerator.generateReport(userId, reportType, reportStart, reportEnd, null);
+                memoryNanos[i] = System.nanoTime() - start;
+                start = System.nanoTime();
+                reportGenerator.generateReport(store, userId, reportType, reportStart, reportEnd, null);
+                fileNanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(memoryNanos);
+            Arrays.sort(fileNanos);
+            System.out.printf("%s: memory p50 %.2f ms, partitions p50 %.2f ms, same result: %b%n", reportType,
+                    memoryNanos[5] / 1e6, fileNanos[5] / 1e6, fromMemory.equals(fromFiles));
+        }
+
+        for (YearMonth month : store.getMonths(userId)) {
+            Files.delete(directory.resolve(userId.toString()).resolve(month + ".txp"));
+        }
+        Files.delete(directory.resolve(userId.toString()));
+        Files.delete(directory);
+    }
+}
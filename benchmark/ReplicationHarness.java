@@ -0,0 +1,164 @@
+package benchmark;
+
+import api.FinanceHttpServer;
+import domain.Account;
+import service.impl.CategoryManager;
+import service.impl.ExchangeRateTable;
+import service.impl.JournalReplicator;
+import service.impl.ReplicaNode;
+import service.impl.ShardedServiceFacade;
+
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a leader and two followers in one JVM, connected over loopback TCP,
+ * and checks replication end to end: write throughput in ASYNC and QUORUM
+ * mode, followers' reports and balances matching the leader's, QUORUM writes
+ * surviving one follower down and timing out with both down, a restarted
+ * follower catching up, and a follower serving GET but refusing POST over
+ * HTTP in read-only mode.
+ *
+ * Usage: java -cp bin benchmark.ReplicationHarness [users] [transactionsPerUser]
+ */
+public class ReplicationHarness {
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int transactionsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        for (JournalReplicator.AckMode ackMode : JournalReplicator.AckMode.values()) {
+            CategoryManager categoryManager = new CategoryManager();
+            try (ShardedServiceFacade leader = new ShardedServiceFacade(4, categoryManager,
+                    new ExchangeRateTable(ExchangeRateTable.DEFAULT_BASE_CURRENCY));
+                    JournalReplicator replicator = new JournalReplicator(categoryManager, ackMode, 3,
+                            Duration.ofSeconds(2));
+                    ReplicaNode first = new ReplicaNode();
+                    ReplicaNode second = new ReplicaNode()) {
+                categoryManager.createCategory("Salary", "income"); // Before followers connect: sent as a snapshot
+                leader.replicateTo(replicator);
+                replicator.start(InetAddress.getLoopbackAddress(), 0);
+                first.connect("localhost", replicator.getPort());
+                second.connect("localhost", replicator.getPort());
+                leader.createCategory("Groceries", "expense"); // After: sent in the stream
+
+                UUID[] userIds = new UUID[users];
+                UUID[] accountIds = new UUID[users];
+                for (int i = 0; i < users; i++) {
+                    userIds[i] = UUID.randomUUID();
+                    leader.addUser(userIds[i]).get();
+                    Account account = leader.createAccount(userIds[i], "Checking", BigDecimal.valueOf(500),
+                            "checking", "USD").get();
+                    accountIds[i] = account.getId();
+                }
+
+                long start = System.nanoTime();
+                List<CompletableFuture<?>> writes = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                LocalDate today = LocalDate.now();
+                for (int t = 0; t < transactionsPerUser; t++) {
+                    for (int i = 0; i < users; i++) {
+                        boolean income = random.nextInt(10) == 0;
+                        writes.add(leader.recordTransaction(userIds[i], accountIds[i],
+                                income ? "Salary" : "Groceries", income ? "income" : "expense",
+                                BigDecimal.valueOf(random.nextInt(100, 50_000), 2),
+                                today.minusDays(random.nextInt(365))));
+                    }
+                    if (writes.size() >= 4096) {
+                        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+                        writes.clear();
+                    }
+                }
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %.0f writes/s acknowledged%n", ackMode,
+                        users * transactionsPerUser / seconds);
+
+                long position = replicator.getPosition();
+                check(first.awaitPosition(position, 10_000) && second.awaitPosition(position, 10_000),
+                        "followers reach position " + position);
+                for (int i = 0; i < users; i++) {
+                    Object expected = leader.generateReport(userIds[i], "income_vs_expense", today.minusYears(1),
+                            today, Map.of()).get();
+                    check(expected.equals(first.generateReport(userIds[i], "income_vs_expense",
+                            today.minusYears(1), today, Map.of())), "report of user " + i + " on follower 1");
+                    check(expected.equals(second.generateReport(userIds[i], "income_vs_expense",
+                            today.minusYears(1), today, Map.of())), "report of user " + i + " on follower 2");
+                    BigDecimal balance = leader.getAccountList(userIds[i]).get().get(0).getBalance();
+                    check(Objects.equals(balance, first.getAccountList(userIds[i]).get(0).getBalance()),
+                            "balance of user " + i + " on follower 1");
+                }
+                System.out.println("  followers match the leader for " + users + " users");
+
+                if (ackMode == JournalReplicator.AckMode.QUORUM) {
+                    second.disconnect();
+                    leader.recordTransaction(userIds[0], accountIds[0], "Groceries", "expense", BigDecimal.TEN,
+                            today).get();
+                    System.out.println("  one follower down: write acknowledged by the other");
+                    first.disconnect();
+                    try {
+                        leader.recordTransaction(userIds[0], accountIds[0], "Groceries", "expense", BigDecimal.ONE,
+                                today).get();
+                        check(false, "write with no follower times out");
+                    } catch (ExecutionException e) {
+                        check(e.getCause() instanceof TimeoutException, "write with no follower times out");
+                        System.out.println("  both followers down: write timed out waiting for a quorum");
+                    }
+                    second.connect("localhost", replicator.getPort());
+                    check(second.awaitPosition(replicator.getPosition(), 10_000), "restarted follower catches up");
+                    check(leader.getAccountList(userIds[0]).get().get(0).getBalance()
+                            .equals(second.getAccountList(userIds[0]).get(0).getBalance()),
+                            "restarted follower has both writes");
+                    System.out.println("  restarted follower caught up from position " + position);
+
+                    FinanceHttpServer http = new FinanceHttpServer(second.getAccountManager(),
+                            second.getCategoryManager(), second.getTransactionManager(), second.getBudgetManager(),
+                            second.getFinancialGoalManager(), second.getReportGenerator(),
+                            second.getCategoryRuleManager(), second.getAutoContributionManager());
+                    http.setReadOnly(true);
+                    http.start(0, 2);
+                    try {
+                        String base = "http://localhost:" + http.getPort() + "/users/" + userIds[0];
+                        int get = status("GET", base + "/reports/income_vs_expense");
+                        int post = status("POST", base + "/accounts");
+                        check(get == 200 && post == 405, "read-only HTTP: GET 200, POST 405");
+                        System.out.println("  follower over HTTP: GET report " + get + ", POST account " + post);
+                    } finally {
+                        http.stop();
+                    }
+                }
+            }
+        }
+    }
+
+    private static int status(String method, String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (method.equals("POST")) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().write("{}".getBytes());
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("Failed: " + what);
+        }
+    }
+}
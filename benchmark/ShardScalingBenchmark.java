@@ -0,0 +1,100 @@
+package benchmark;
+
+import domain.Account;
+import service.impl.CategoryManager;
+import service.impl.ExchangeRateTable;
+import service.impl.ShardStats;
+import service.impl.ShardedServiceFacade;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures write throughput of ShardedServiceFacade as the shard count grows:
+ * several client threads record transactions for random users, keeping a
+ * bounded number of calls in flight. Then piles every user onto one shard and
+ * times rebalance() spreading them out again.
+ *
+ * Throughput can only scale up to the number of cores; the run prints how
+ * many are available.
+ *
+ * Usage: java -cp bin benchmark.ShardScalingBenchmark [users] [transactions] [maxShards]
+ */
+public class ShardScalingBenchmark {
+
+    private static final int CLIENTS = 8;
+    private static final int IN_FLIGHT_PER_CLIENT = 256;
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 400_000;
+        int maxShards = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+
+        for (int shardCount = 1; shardCount <= maxShards; shardCount *= 2) {
+            CategoryManager categoryManager = new CategoryManager();
+            categoryManager.createCategory("Food", "expense");
+            try (ShardedServiceFacade facade = new ShardedServiceFacade(shardCount, categoryManager,
+                    new ExchangeRateTable(ExchangeRateTable.DEFAULT_BASE_CURRENCY))) {
+                UUID[] userIds = new UUID[users];
+                UUID[] accountIds = new UUID[users];
+                for (int i = 0; i < users; i++) {
+                    userIds[i] = UUID.randomUUID();
+                    facade.addUser(userIds[i]).get();
+                    Account account = facade.createAccount(userIds[i], "Checking", BigDecimal.valueOf(1000),
+                            "checking", "USD").get();
+                    accountIds[i] = account.getId();
+                }
+
+                long start = System.nanoTime();
+                List<Thread> clients = new ArrayList<>();
+                for (int c = 0; c < CLIENTS; c++) {
+                    Thread client = new Thread(() -> runClient(facade, userIds, accountIds, transactions / CLIENTS));
+                    clients.add(client);
+                    client.start();
+                }
+                for (Thread client : clients) {
+                    client.join();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("shards=%d: %.0f transactions/s%n", shardCount,
+                        transactions / CLIENTS * CLIENTS / seconds);
+
+                if (shardCount * 2 > maxShards && shardCount > 1) {
+                    for (UUID userId : userIds) {
+                        facade.moveUser(userId, 0);
+                    }
+                    System.out.println("before rebalance: " + facade.getShardStats());
+                    long rebalanceStart = System.nanoTime();
+                    int moved = facade.rebalance(0.05);
+                    System.out.printf("rebalance moved %d users in %.1f ms%n", moved,
+                            (System.nanoTime() - rebalanceStart) / 1e6);
+                    for (ShardStats stats : facade.getShardStats()) {
+                        System.out.println("  " + stats);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void runClient(ShardedServiceFacade facade, UUID[] userIds, UUID[] accountIds, int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate today = LocalDate.now();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>(IN_FLIGHT_PER_CLIENT);
+        for (int i = 0; i < count; i++) {
+            int user = random.nextInt(userIds.length);
+            inFlight.add(facade.recordTransaction(userIds[user], accountIds[user], "Food", "expense",
+                    BigDecimal.valueOf(random.nextInt(100, 5000), 2), today.minusDays(random.nextInt(365))));
+            if (inFlight.size() == IN_FLIGHT_PER_CLIENT) {
+                CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+                inFlight.clear();
+            }
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import domain.Account;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records almost three years of expenses across a long tail of merchants for one
+ * user, then compares the sketch-backed top_merchants and
+ * transaction_size_quantiles reports for the last year against the exact
+ * answers computed by sorting the transactions in range.
+ *
+ * Usage: java -cp bin benchmark.SketchReportBenchmark [transactions]
+ */
+public class SketchReportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        categoryManager.createCategory("Shopping", "expense");
+
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        Account account = accountManager.createAccount(userId, "Card", BigDecimal.ZERO, "credit");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate firstDay = LocalDate.now().withDayOfYear(1).minusYears(2);
+        int days = (int) (LocalDate.now().toEpochDay() - firstDay.toEpochDay() + 1); // Up to today
+        for (int i = 0; i < transactions; i++) {
+            // Zipf-like popularity over 5,000 merchants
+            int merchant = (int) Math.floor(Math.pow(5000, random.nextDouble()));
+            double amount = 20 * Math.exp(0.8 * random.nextGaussian()) * (1 + merchant % 7);
+            Transaction transaction = transactionManager.recordTransaction(userId, account.getId(), "Shopping",
+                    "expense", BigDecimal.valueOf(Math.max(1, Math.round(amount * 100)), 2),
+                    firstDay.plusDays(random.nextInt(days)));
+            // Recorded transactions are described by their category; the update also marks the month stale,
+            // so the first report call below measures the rebuild
+            transactionManager.updateTransaction(transaction.getId(), userId, account.getId(),
+                    transaction.getCategoryId(), transaction.getAmount(), transaction.getDate(),
+                    "Merchant " + merchant);
+        }
+
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.withDayOfYear(1).minusYears(1);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("limit", "10");
+        for (String reportType : new String[] { "top_merchants", "transaction_size_quantiles" }) {
+            long rebuildStart = System.nanoTime();
+            Object report = reportGenerator.generateReport(userId, reportType, start, end, parameters);
+            System.out.printf("%s first call (rebuild): %.1f ms%n", reportType,
+                    (System.nanoTime() - rebuildStart) / 1e6);
+            long[] nanos = new long[50];
+            for (int i = 0; i < nanos.length; i++) {
+                long callStart = System.nanoTime();
+                report = reportGenerator.generateReport(userId, reportType, start, end, parameters);
+                nanos[i] = System.nanoTime() - callStart;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%s: p50 %.2f ms -> %s%n", reportType, nanos[nanos.length / 2] / 1e6, report);
+        }
+
+        long exactStart = System.nanoTime();
+        List<Transaction> inRange = transactionManager.getTransactionsByUser(userId, start, end);
+        Map<String, BigDecimal> byMerchant = new HashMap<>();
+        double[] sizes = new double[inRange.size()];
+        for (int i = 0; i < inRange.size(); i++) {
+            Transaction transaction = inRange.get(i);
+            byMerchant.merge(transaction.getDescription(), transaction.getAmount().negate(), BigDecimal::add);
+            sizes[i] = -transaction.getAmount().doubleValue();
+        }
+        List<Map.Entry<String, BigDecimal>> ranked = new ArrayList<>(byMerchant.entrySet());
+        ranked.sort(Map.Entry.<String, BigDecimal>comparingByValue().reversed());
+        Arrays.sort(sizes);
+        System.out.printf("exact (sort %d transactions): %.1f ms%n", inRange.size(),
+                (System.nanoTime() - exactStart) / 1e6);
+        System.out.println("exact top 10: " + ranked.subList(0, Math.min(10, ranked.size())));
+        System.out.printf("exact p25/p50/p75/p90/p99: %.2f / %.2f / %.2f / %.2f / %.2f%n",
+                sizes[(int) (0.25 * (sizes.length - 1))], sizes[(int) (0.5 * (sizes.length - 1))],
+                sizes[(int) (0.75 * (sizes.length - 1))], sizes[(int) (0.9 * (sizes.length - 1))],
+                sizes[(int) (0.99 * (sizes.length - 1))]);
+    }
+}
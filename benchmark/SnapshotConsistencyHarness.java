@@ -0,0 +1,170 @@
+package benchmark;
+
+import domain.Account;
+import domain.Category;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+import service.impl.TransactionSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that reports read from a TransactionSnapshot agree with balances
+ * read from the same snapshot while writer threads record, update and delete
+ * transactions: an all-time income_vs_expense netFlow must equal the sum of
+ * (balance - opening balance) over the user's accounts, every time. The same
+ * check against live reads (a report, then Account.getBalance) is run
+ * alongside to show the disagreement snapshots remove. Another thread keeps
+ * moving older transactions to the off-heap archive, so reads, updates and
+ * deletes cross both tiers.
+ *
+ * Usage: java -cp bin benchmark.SnapshotConsistencyHarness [seconds] [writers]
+ */
+public class SnapshotConsistencyHarness {
+
+    private static final LocalDate FIRST = LocalDate.of(2024, 1, 1);
+    private static final LocalDate REPORT_START = LocalDate.of(2000, 1, 1);
+    private static final LocalDate REPORT_END = LocalDate.of(2100, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        CategoryManager categoryManager = new CategoryManager();
+        Category salary = categoryManager.createCategory("Salary", "income");
+        Category groceries = categoryManager.createCategory("Groceries", "expense");
+        AccountManager accountManager = new AccountManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        List<Account> accounts = new ArrayList<>();
+        Map<UUID, BigDecimal> openingBalances = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            BigDecimal opening = BigDecimal.valueOf(1000 * (i + 1));
+            Account account = accountManager.createAccount(userId, "Account " + i, opening, "checking");
+            accounts.add(account);
+            openingBalances.put(account.getId(), opening);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        AtomicLong archived = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        transactionManager.setArchiveAfterDays(0);
+        Thread archiver = new Thread(() -> {
+            while (running.get()) {
+                // Everything before mid-year goes off heap; skipped while the reader holds a snapshot
+                archived.addAndGet(transactionManager.archiveColdTransactions(FIRST.plusDays(180)));
+                Thread.yield();
+            }
+        }, "archiver");
+        threads.add(archiver);
+        archiver.start();
+        for (int w = 0; w < writers; w++) {
+            Thread writer = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Transaction> own = new ArrayList<>();
+                try {
+                    while (running.get()) {
+                        int op = random.nextInt(10);
+                        Account account = accounts.get(random.nextInt(accounts.size()));
+                        BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 100_000), 2);
+                        LocalDate date = FIRST.plusDays(random.nextInt(365));
+                        if (op < 6 || own.isEmpty()) {
+                            boolean income = random.nextInt(3) == 0;
+                            own.add(transactionManager.recordTransaction(userId, account.getId(),
+                                    income ? "Salary" : "Groceries", income ? "income" : "expense", amount, date));
+                        } else if (op < 8) {
+                            int index = random.nextInt(own.size());
+                            Transaction old = own.get(index);
+                            UUID categoryId = old.getType().equals("income") ? salary.getId() : groceries.getId();
+                            transactionManager.updateTransaction(old.getId(), userId, account.getId(), categoryId,
+                                    amount, date, old.getDescription());
+                            own.set(index, transactionManager.getTransaction(old.getId(), userId));
+                        } else {
+                            Transaction old = own.remove(random.nextInt(own.size()));
+                            transactionManager.deleteTransaction(old.getId(), userId);
+                        }
+                        writes.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "writer-" + w);
+            threads.add(writer);
+            writer.start();
+        }
+
+        long snapshotChecks = 0;
+        long snapshotMismatches = 0;
+        long liveChecks = 0;
+        long liveMismatches = 0;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            try (TransactionSnapshot snapshot = transactionManager.snapshot(userId)) {
+                BigDecimal netFlow = netFlow(reportGenerator.generateReport(snapshot, "income_vs_expense",
+                        REPORT_START, REPORT_END, null));
+                BigDecimal change = BigDecimal.ZERO;
+                for (Account account : accounts) {
+                    change = change.add(snapshot.getBalance(account.getId()).subtract(openingBalances.get(account.getId())));
+                }
+                snapshotChecks++;
+                if (netFlow.compareTo(change) != 0) {
+                    snapshotMismatches++;
+                }
+            }
+
+            BigDecimal netFlow = netFlow(reportGenerator.generateReport(userId, "income_vs_expense", REPORT_START,
+                    REPORT_END, null));
+            BigDecimal change = BigDecimal.ZERO;
+            for (Account account : accounts) {
+                change = change.add(account.getBalance().subtract(openingBalances.get(account.getId())));
+            }
+            liveChecks++;
+            if (netFlow.compareTo(change) != 0) {
+                liveMismatches++;
+            }
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("%d writes by %d writers in %d s, %d transactions archived%n", writes.get(), writers,
+                seconds, archived.get());
+        System.out.printf("snapshot reads: %d checks, %d mismatches%n", snapshotChecks, snapshotMismatches);
+        System.out.printf("live reads:     %d checks, %d mismatches%n", liveChecks, liveMismatches);
+
+        try (TransactionSnapshot snapshot = transactionManager.snapshot(userId)) { // Quiescent: all views agree
+            int live = transactionManager.getTransactionsByUser(userId, null, null).size();
+            int visible = snapshot.getTransactions(null, null).size();
+            boolean balancesMatch = true;
+            for (Account account : accounts) {
+                balancesMatch &= snapshot.getBalance(account.getId()).compareTo(account.getBalance()) == 0;
+            }
+            System.out.printf("after writers stop: %d live, %d in snapshot, balances match: %b%n", live, visible,
+                    balancesMatch);
+            if (snapshotMismatches > 0 || live != visible || !balancesMatch) {
+                throw new IllegalStateException("Snapshot reads were inconsistent");
+            }
+        }
+    }
+
+    private static BigDecimal netFlow(Object report) {
+        return (BigDecimal) ((Map<?, ?>) report).get("netFlow");
+    }
+}
@@ -0,0 +1,106 @@
+package benchmark;
+
+import domain.Account;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.SpendingAnomaly;
+import service.impl.SpendingAnomalyDetector;
+import service.impl.TransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records log-normally distributed expenses for several users and categories
+ * with a small share of 5x charges mixed in, and reports the recording cost
+ * of the detector and how many of the injected charges it flagged.
+ *
+ * Usage: java -cp bin benchmark.SpendingAnomalyBenchmark [transactions]
+ */
+public class SpendingAnomalyBenchmark {
+
+    private static final String[] CATEGORIES = { "Groceries", "Fuel", "Restaurants", "Utilities" };
+    private static final double[] TYPICAL_AMOUNTS = { 60, 45, 35, 120 };
+    private static final int USERS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        for (String category : CATEGORIES) {
+            categoryManager.createCategory(category, "expense");
+        }
+
+        long plainMillis = record(accountManager, transactionManager, transactions, null).elapsedMillis;
+        SpendingAnomalyDetector detector = new SpendingAnomalyDetector(accountManager, transactionManager);
+        Run run = record(accountManager, transactionManager, transactions, detector);
+
+        System.out.printf("without detector: %d ms, with detector: %d ms (%d transactions)%n", plainMillis,
+                run.elapsedMillis, transactions);
+        System.out.printf("injected 5x charges: %d, flagged: %d (%d of them injected), recall %.1f%%%n",
+                run.injected.size(), run.flagged, run.flaggedInjected,
+                100.0 * run.flaggedInjected / Math.max(1, run.injected.size()));
+        System.out.println("example: " + run.example);
+    }
+
+    private static class Run {
+        long elapsedMillis;
+        final Set<UUID> injected = new HashSet<>();
+        int flagged;
+        int flaggedInjected;
+        SpendingAnomaly example;
+    }
+
+    private static Run record(AccountManager accountManager, TransactionManager transactionManager,
+            int transactions, SpendingAnomalyDetector detector) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID[] users = new UUID[USERS];
+        Account[] accounts = new Account[USERS];
+        for (int u = 0; u < USERS; u++) {
+            users[u] = UUID.randomUUID();
+            accountManager.addUser(users[u]);
+            accounts[u] = accountManager.createAccount(users[u], "Card", BigDecimal.ZERO, "credit");
+        }
+
+        Run run = new Run();
+        LocalDate firstDay = LocalDate.now().minusYears(2);
+        long start = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            int u = random.nextInt(USERS);
+            int c = random.nextInt(CATEGORIES.length);
+            // Typical spread of everyday spending: about +-35% around the category's norm
+            double amount = TYPICAL_AMOUNTS[c] * Math.exp(0.35 * random.nextGaussian());
+            boolean inject = i > transactions / 10 && random.nextInt(500) == 0;
+            if (inject) {
+                amount *= 5;
+            }
+            Transaction transaction = transactionManager.recordTransaction(users[u], accounts[u].getId(),
+                    CATEGORIES[c], "expense", BigDecimal.valueOf(Math.max(1, Math.round(amount * 100)), 2),
+                    firstDay.plusDays(i * 730L / transactions));
+            if (inject) {
+                run.injected.add(transaction.getId());
+            }
+        }
+        run.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        if (detector != null) {
+            for (UUID userId : users) {
+                for (SpendingAnomaly anomaly : detector.getRecentAnomalies(userId)) {
+                    run.flagged++;
+                    if (run.injected.contains(anomaly.getTransactionId())) {
+                        run.flaggedInjected++;
+                        run.example = anomaly;
+                    }
+                }
+            }
+        }
+        return run;
+    }
+}
@@ -0,0 +1,91 @@
+package benchmark;
+
+import domain.Account;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.DuplicateDetector;
+import service.impl.StatementImportResult;
+import service.impl.StatementImporter;
+import service.impl.TransactionManager;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates a CSV statement (every 1000th row deliberately invalid) and
+ * imports it through StatementImporter, reporting throughput and heap use,
+ * then imports it a second time to measure duplicate detection.
+ *
+ * Usage: java -Xmx2g -cp bin benchmark.StatementImportBenchmark [rows]
+ */
+public class StatementImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        // The statement spans five years, so track duplicates over that whole range
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager,
+                new DuplicateDetector(DuplicateDetector.DEFAULT_TOLERANCE_DAYS, 6 * 365, false));
+        StatementImporter importer = new StatementImporter(accountManager, categoryManager, transactionManager);
+
+        String[] expenseCategories = { "Food", "Utilities", "Transport", "Rent" };
+        for (String name : expenseCategories) {
+            categoryManager.createCategory(name, "expense");
+        }
+        categoryManager.createCategory("Salary", "income");
+
+        UUID userId = UUID.randomUUID();
+        accountManager.addUser(userId);
+        Account account = accountManager.createAccount(userId, "Checking", BigDecimal.ZERO, "checking");
+
+        Path file = Files.createTempFile("statement", ".csv");
+        String[] payees = { "Corner Shop", "City Power", "Uber *trip", "\"Main St\" Lettings, Ltd" };
+        LocalDate firstDay = LocalDate.now().minusYears(5);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Date,Description,Amount,Category\n");
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < rows; i++) {
+                String date = firstDay.plusDays(random.nextInt(5 * 365)).toString();
+                if (i % 1000 == 999) {
+                    writer.write(date + ",Broken row,12.3x,Food\n");
+                } else if (i % 30 == 0) {
+                    writer.write(date + ",Payroll," + (random.nextInt(100_000, 500_000) / 100.0) + ",Salary\n");
+                } else {
+                    int kind = i % expenseCategories.length;
+                    String payee = payees[kind].indexOf(',') >= 0
+                            ? "\"" + payees[kind].replace("\"", "\"\"") + "\"" : payees[kind];
+                    writer.write(date + "," + payee + ",-" + (random.nextInt(100, 50_000) / 100.0) + ","
+                            + expenseCategories[kind] + "\n");
+                }
+            }
+        }
+        System.out.printf("rows=%d file=%.1f MB%n", rows, Files.size(file) / 1e6);
+
+        try {
+            StatementImportResult result = importer.importStatement(userId, account.getId(), file);
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("imported=%d failed=%d in %d ms (%.0f rows/s)%n", result.getRowsImported(),
+                    result.getRowsFailed(), result.getElapsedMillis(),
+                    result.getRowsRead() * 1000.0 / Math.max(1, result.getElapsedMillis()));
+            System.out.println("first error: " + (result.getErrors().isEmpty() ? "-" : result.getErrors().get(0)));
+            System.out.printf("balance=%s heap used=%d MB%n", account.getBalance(),
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+
+            // Importing the same statement again must only find duplicates
+            result = importer.importStatement(userId, account.getId(), file);
+            System.out.printf("re-import: imported=%d duplicate=%d failed=%d in %d ms, balance=%s%n",
+                    result.getRowsImported(), result.getRowsDuplicate(), result.getRowsFailed(),
+                    result.getElapsedMillis(), account.getBalance());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
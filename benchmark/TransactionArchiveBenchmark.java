@@ -0,0 +1,162 @@
+package benchmark;
+
+import domain.Account;
+import domain.Transaction;
+import service.impl.AccountManager;
+import service.impl.CategoryManager;
+import service.impl.ReportGenerator;
+import service.impl.TransactionManager;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Loads ten years of history for a set of users, then measures retained heap,
+ * the latency of last-90-days and all-time reads, and GC time under a steady
+ * workload of new transactions and recent-window reads, all with history
+ * either on the heap or moved to the off-heap archive. It also checks that
+ * all-time reports match before and after archiving, and that an archived
+ * transaction can still be read, updated and deleted. Run each mode in its
+ * own JVM so their heaps do not mix.
+ *
+ * Usage: java -Xmx3g -cp bin benchmark.TransactionArchiveBenchmark [hot|archive] [users] [transactionsPerUser]
+ */
+public class TransactionArchiveBenchmark {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 1);
+    private static final LocalDate HISTORY_START = TODAY.minusYears(10);
+
+    public static void main(String[] args) throws Exception {
+        boolean archive = args.length == 0 || args[0].equals("archive");
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int perUser = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        AccountManager accountManager = new AccountManager();
+        CategoryManager categoryManager = new CategoryManager();
+        TransactionManager transactionManager = new TransactionManager(accountManager, categoryManager);
+        ReportGenerator reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        categoryManager.createCategory("Groceries", "expense");
+        categoryManager.createCategory("Salary", "income");
+
+        UUID[] userIds = new UUID[users];
+        UUID[] accountIds = new UUID[users];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int days = (int) (TODAY.toEpochDay() - HISTORY_START.toEpochDay());
+        for (int u = 0; u < users; u++) {
+            userIds[u] = UUID.randomUUID();
+            accountManager.addUser(userIds[u]);
+            Account account = accountManager.createAccount(userIds[u], "Checking", BigDecimal.ZERO, "checking");
+            accountIds[u] = account.getId();
+            for (int i = 0; i < perUser; i++) {
+                record(transactionManager, userIds[u], accountIds[u], HISTORY_START.plusDays(random.nextInt(days)));
+            }
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.printf("%s: %,d transactions for %,d users; heap %,d MB%n", archive ? "archive" : "hot",
+                (long) users * perUser, users, usedHeap(memory) >> 20);
+
+        Object[] before = new Object[Math.min(users, 20)];
+        for (int u = 0; u < before.length; u++) {
+            before[u] = allTime(reportGenerator, userIds[u]);
+        }
+        if (archive) {
+            long start = System.nanoTime();
+            int moved = transactionManager.archiveColdTransactions(TODAY);
+            System.out.printf("archived %,d transactions in %,d ms; heap %,d MB%n", moved,
+                    (System.nanoTime() - start) / 1_000_000, usedHeap(memory) >> 20);
+            for (int u = 0; u < before.length; u++) {
+                if (!before[u].equals(allTime(reportGenerator, userIds[u]))) {
+                    throw new IllegalStateException("All-time report changed after archiving");
+                }
+            }
+            checkArchivedRowsStillWork(transactionManager, userIds[0], accountIds[0]);
+        }
+
+        System.out.printf("last 90 days read: p50 %.3f ms%n", readMillis(transactionManager, userIds,
+                TODAY.minusDays(90), TODAY));
+        System.out.printf("all-time read:     p50 %.3f ms%n", readMillis(transactionManager, userIds, null, null));
+
+        long gcBefore = gcMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < 500_000; i++) {
+            int u = random.nextInt(users);
+            record(transactionManager, userIds[u], accountIds[u], TODAY.minusDays(random.nextInt(30)));
+            if (i % 100 == 0) {
+                transactionManager.getTransactionsByUser(userIds[u], TODAY.minusDays(90), TODAY);
+            }
+        }
+        System.out.printf("steady workload: %,d ms, GC %,d ms; heap %,d MB%n", (System.nanoTime() - start) / 1_000_000,
+                gcMillis() - gcBefore, usedHeap(memory) >> 20);
+    }
+
+    private static void record(TransactionManager transactionManager, UUID userId, UUID accountId, LocalDate date)
+            throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean income = random.nextInt(10) == 0;
+        transactionManager.recordTransaction(userId, accountId, income ? "Salary" : "Groceries",
+                income ? "income" : "expense", BigDecimal.valueOf(random.nextLong(100, 1_000_000), 2), date);
+    }
+
+    private static Object allTime(ReportGenerator reportGenerator, UUID userId) throws Exception {
+        return reportGenerator.generateReport(userId, "income_vs_expense", HISTORY_START, TODAY, null);
+    }
+
+    private static void checkArchivedRowsStillWork(TransactionManager transactionManager, UUID userId,
+            UUID accountId) throws Exception {
+        List<Transaction> old = transactionManager.getTransactionsByUser(userId, HISTORY_START,
+                HISTORY_START.plusYears(1));
+        Transaction updated = old.get(0);
+        Transaction deleted = old.get(1);
+        if (!transactionManager.getTransaction(updated.getId(), userId).getAmount().equals(updated.getAmount())) {
+            throw new IllegalStateException("Archived transaction read back wrong");
+        }
+        transactionManager.updateTransaction(updated.getId(), userId, accountId, updated.getCategoryId(),
+                updated.getAmount().add(BigDecimal.ONE).abs(), updated.getDate(), "Corrected");
+        transactionManager.deleteTransaction(deleted.getId(), userId);
+        List<Transaction> after = transactionManager.getTransactionsByUser(userId, HISTORY_START,
+                HISTORY_START.plusYears(1));
+        boolean sawUpdate = after.stream().anyMatch(t -> t.getId().equals(updated.getId())
+                && t.getDescription().equals("Corrected"));
+        boolean sawDeleted = after.stream().anyMatch(t -> t.getId().equals(deleted.getId()));
+        if (after.size() != old.size() - 1 || !sawUpdate || sawDeleted) {
+            throw new IllegalStateException("Update or delete of an archived transaction was lost");
+        }
+        System.out.println("archived rows: read, update and delete OK");
+    }
+
+    private static double readMillis(TransactionManager transactionManager, UUID[] userIds, LocalDate start,
+            LocalDate end) throws Exception {
+        long[] nanos = new long[Math.min(userIds.length, 200)];
+        for (int i = 0; i < nanos.length; i++) {
+            long callStart = System.nanoTime();
+            transactionManager.getTransactionsByUser(userIds[i], start, end);
+            nanos[i] = System.nanoTime() - callStart;
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1e6;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += collector.getCollectionTime();
+        }
+        return total;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import domain.Transaction;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures retained heap per Transaction. Rows are built the way an import
+ * builds them: shared account and category IDs, but a freshly parsed String
+ * per row for the description and type, a parsed BigDecimal amount and a
+ * LocalDate. Descriptions are then shared through a map, the way
+ * TransactionManager's description pool shares them. Reports retained
+ * bytes per row (the holding array excluded) and the time to sum every
+ * amount.
+ *
+ * Usage: java -Xmx4g -cp bin benchmark.TransactionFootprintBenchmark [rows]
+ */
+public class TransactionFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        UUID[] accountIds = new UUID[100];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = UUID.randomUUID();
+        }
+        UUID[] categoryIds = new UUID[20];
+        for (int i = 0; i < categoryIds.length; i++) {
+            categoryIds[i] = UUID.randomUUID();
+        }
+        String[] merchants = new String[2000];
+        for (int i = 0; i < merchants.length; i++) {
+            merchants[i] = "CARD PURCHASE MERCHANT " + i;
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Transaction[] transactions = new Transaction[rows];
+        Map<String, String> descriptions = new HashMap<>();
+        long before = usedHeap(memory);
+        long start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long firstDay = LocalDate.of(2015, 1, 1).toEpochDay();
+        for (int i = 0; i < rows; i++) {
+            String parsed = new String(merchants[random.nextInt(merchants.length)].toCharArray());
+            String description = descriptions.computeIfAbsent(parsed, k -> k);
+            String type = new String("expense".toCharArray());
+            BigDecimal amount = new BigDecimal("-" + random.nextInt(1, 100_000) / 100 + "."
+                    + String.format("%02d", random.nextInt(100)));
+            transactions[i] = new Transaction(UUID.randomUUID(), accountIds[random.nextInt(accountIds.length)],
+                    categoryIds[random.nextInt(categoryIds.length)], amount,
+                    LocalDate.ofEpochDay(firstDay + random.nextInt(3650)), description, type);
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        long after = usedHeap(memory);
+
+        start = System.nanoTime();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Transaction transaction : transactions) {
+            total = total.add(transaction.getAmount());
+        }
+        long sumMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%,d rows built in %,d ms%n", rows, buildMillis);
+        System.out.printf("retained heap: %,d MB, %.1f bytes per transaction%n", (after - before) >> 20,
+                (double) (after - before) / rows);
+        System.out.printf("sum of amounts in %,d ms (%s)%n", sumMillis, total);
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
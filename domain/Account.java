@@ -10,16 +10,27 @@ public class Account {
     private final UUID id;
     private final UUID userId; // Link to the user who owns the account
     private String name;
-    private BigDecimal balance;
+    private volatile BigDecimal balance; // Read without locking; updateBalance serializes writers
     private String type; // e.g., Checking, Savings, Credit Card
+    private final String currency; // ISO 4217 code; balance and transactions are in this currency
     private boolean isActive;
 
     public Account(UUID userId, String name, BigDecimal balance, String type) {
-        this.id = UUID.randomUUID(); // Generate unique ID for the account
+        this(userId, name, balance, type, "USD");
+    }
+
+    public Account(UUID userId, String name, BigDecimal balance, String type, String currency) {
+        this(UUID.randomUUID(), userId, name, balance, type, currency); // Generate unique ID for the account
+    }
+
+    // Recreates an account with a known ID, e.g. on a replica
+    public Account(UUID id, UUID userId, String name, BigDecimal balance, String type, String currency) {
+        this.id = id;
         this.userId = userId;
         this.name = name;
         this.balance = balance;
         this.type = type;
+        this.currency = currency;
         this.isActive = true; // Default to active
     }
 
@@ -44,6 +55,10 @@ public class Account {
         return type;
     }
 
+    public String getCurrency() {
+        return currency;
+    }
+
     public boolean isActive() {
         return isActive;
     }
@@ -61,8 +76,8 @@ public class Account {
         isActive = active;
     }
 
-    // Method to update balance (ensure thread safety if needed in concurrent environment)
-    public void updateBalance(BigDecimal amount) {
+    // Method to update balance; synchronized so concurrent writers to one account don't lose updates
+    public synchronized void updateBalance(BigDecimal amount) {
         // Consider validation or rules here (e.g., prevent overdraft for certain types)
         this.balance = this.balance.add(amount);
     }
@@ -76,6 +91,7 @@ public class Account {
                 ", name='" + name + '\'' +
                 ", balance=" + balance +
                 ", type='" + type + '\'' +
+                ", currency=" + currency +
                 ", isActive=" + isActive +
                 '}';
     }
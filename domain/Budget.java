@@ -20,7 +20,13 @@ public class Budget {
 
     public Budget(UUID userId, String name, BigDecimal amount, LocalDate startDate, LocalDate endDate,
             List<UUID> categoryIds) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), userId, name, amount, startDate, endDate, categoryIds);
+    }
+
+    // Recreates a budget with a known ID, e.g. on a replica
+    public Budget(UUID id, UUID userId, String name, BigDecimal amount, LocalDate startDate, LocalDate endDate,
+            List<UUID> categoryIds) {
+        this.id = id;
         this.userId = userId;
         this.name = name;
         this.amount = amount;
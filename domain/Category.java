@@ -7,12 +7,27 @@ public class Category {
     private String name;
     private String type; // "income" or "expense"
     private String icon; // Name or path to an icon representation
+    private final UUID parentId; // Enclosing category, or null for a top-level one
 
     public Category(String name, String type, String icon) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), name, type, icon, null);
+    }
+
+    public Category(String name, String type, String icon, UUID parentId) {
+        this(UUID.randomUUID(), name, type, icon, parentId);
+    }
+
+    // Recreates a category with a known ID, e.g. on a replica
+    public Category(UUID id, String name, String type, String icon) {
+        this(id, name, type, icon, null);
+    }
+
+    public Category(UUID id, String name, String type, String icon, UUID parentId) {
+        this.id = id;
         this.name = name;
         this.type = type;
         this.icon = icon;
+        this.parentId = parentId;
     }
 
     // Getters
@@ -32,6 +47,10 @@ public class Category {
         return icon;
     }
 
+    public UUID getParentId() {
+        return parentId;
+    }
+
     // Setters
     public void setName(String name) {
         this.name = name;
@@ -54,6 +73,7 @@ public class Category {
                 ", name=\'" + name + "\'" +
                 ", type=\'" + type + "\'" +
                 ", icon=\'" + icon + "\'" +
+                ", parentId=" + parentId +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package domain;
+
+import java.util.UUID;
+
+/**
+ * User-defined rule that files transactions by their description, e.g.
+ * "description contains 'NETFLIX' -> Entertainment". Matching ignores case,
+ * and a rule only applies to transactions of its category's type.
+ * Immutable: changing a rule means deleting it and creating a new one.
+ */
+public class CategoryRule {
+    private final UUID id;
+    private final UUID userId;
+    private final String pattern; // Text the description must contain
+    private final UUID categoryId; // Category matching transactions are filed under
+
+    public CategoryRule(UUID userId, String pattern, UUID categoryId) {
+        this(UUID.randomUUID(), userId, pattern, categoryId);
+    }
+
+    // Same rule pointing at another category, e.g. after a category merge
+    public CategoryRule(UUID id, UUID userId, String pattern, UUID categoryId) {
+        this.id = id;
+        this.userId = userId;
+        this.pattern = pattern;
+        this.categoryId = categoryId;
+    }
+
+    // Getters
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public UUID getCategoryId() {
+        return categoryId;
+    }
+
+    @Override
+    public String toString() {
+        return "CategoryRule{" +
+                "id=" + id +
+                ", userId=" + userId +
+                ", pattern='" + pattern + '\'' +
+                ", categoryId=" + categoryId +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package domain;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * User-defined rule that moves a share of every income in one category to a
+ * financial goal, e.g. "10% of every Salary income goes to Emergency fund".
+ * Immutable: changing a rule means deleting it and creating a new one.
+ */
+public class ContributionRule {
+    private final UUID id;
+    private final UUID userId;
+    private final UUID goalId;
+    private final UUID categoryId; // Income category that triggers the rule
+    private final BigDecimal percentage; // Share of the income, greater than 0 and at most 100
+
+    public ContributionRule(UUID userId, UUID goalId, UUID categoryId, BigDecimal percentage) {
+        this(UUID.randomUUID(), userId, goalId, categoryId, percentage);
+    }
+
+    // Recreates a rule with a known ID, e.g. on a replica
+    public ContributionRule(UUID id, UUID userId, UUID goalId, UUID categoryId, BigDecimal percentage) {
+        this.id = id;
+        this.userId = userId;
+        this.goalId = goalId;
+        this.categoryId = categoryId;
+        this.percentage = percentage;
+    }
+
+    // Getters
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getGoalId() {
+        return goalId;
+    }
+
+    public UUID getCategoryId() {
+        return categoryId;
+    }
+
+    public BigDecimal getPercentage() {
+        return percentage;
+    }
+
+    @Override
+    public String toString() {
+        return "ContributionRule{" +
+                "id=" + id +
+                ", userId=" + userId +
+                ", goalId=" + goalId +
+                ", categoryId=" + categoryId +
+                ", percentage=" + percentage +
+                '}';
+    }
+}
@@ -14,7 +14,13 @@ public class FinancialGoal {
     private boolean isCompleted;
 
     public FinancialGoal(UUID userId, String name, BigDecimal targetAmount, BigDecimal currentAmount, LocalDate deadline) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), userId, name, targetAmount, currentAmount, deadline);
+    }
+
+    // Recreates a goal with a known ID, e.g. on a replica
+    public FinancialGoal(UUID id, UUID userId, String name, BigDecimal targetAmount, BigDecimal currentAmount,
+            LocalDate deadline) {
+        this.id = id;
         this.userId = userId;
         this.name = name;
         this.targetAmount = targetAmount;
@@ -0,0 +1,160 @@
+package domain;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * Template for a transaction that repeats on a fixed schedule (salary, rent,
+ * subscriptions). Instances are materialized as regular Transactions.
+ */
+public class RecurringTransaction {
+    private final UUID id;
+    private final UUID userId;
+    private UUID accountId;
+    private String categoryName;
+    private final String type; // "income" or "expense"
+    private BigDecimal amount; // Absolute amount, sign is derived from type
+    private final String frequency; // "daily", "weekly", "monthly" or "yearly"
+    private final LocalDate startDate;
+    private LocalDate endDate; // Optional, null means no end
+    private int occurrencesGenerated; // Cursor: occurrences already recorded
+    private boolean isActive;
+    private String lastError; // Why its last occurrence could not be recorded, if it failed
+
+    public RecurringTransaction(UUID userId, UUID accountId, String categoryName, String type, BigDecimal amount,
+            String frequency, LocalDate startDate, LocalDate endDate) {
+        this.id = UUID.randomUUID();
+        this.userId = userId;
+        this.accountId = accountId;
+        this.categoryName = categoryName;
+        this.type = type;
+        this.amount = amount;
+        this.frequency = frequency;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.occurrencesGenerated = 0;
+        this.isActive = true;
+    }
+
+    // Getters
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getFrequency() {
+        return frequency;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public int getOccurrencesGenerated() {
+        return occurrencesGenerated;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    // Setters (for updatable fields)
+    public void setAccountId(UUID accountId) {
+        this.accountId = accountId;
+    }
+
+    public void setCategoryName(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public void setActive(boolean active) {
+        isActive = active;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    // Advances the cursor once an occurrence has been recorded
+    public void markOccurrenceGenerated() {
+        occurrencesGenerated++;
+    }
+
+    // Date of the n-th occurrence, always computed from the start date so
+    // month-end schedules (e.g. the 31st) do not drift
+    public LocalDate getOccurrenceDate(int n) {
+        switch (frequency) {
+            case "daily":
+                return startDate.plus(n, ChronoUnit.DAYS);
+            case "weekly":
+                return startDate.plus(n, ChronoUnit.WEEKS);
+            case "monthly":
+                return startDate.plus(n, ChronoUnit.MONTHS);
+            default: // yearly
+                return startDate.plus(n, ChronoUnit.YEARS);
+        }
+    }
+
+    // Next occurrence still to be recorded, or null if the schedule has ended
+    public LocalDate getNextDueDate() {
+        LocalDate next = getOccurrenceDate(occurrencesGenerated);
+        if (!isActive || (endDate != null && next.isAfter(endDate))) {
+            return null;
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return "RecurringTransaction{" +
+                "id=" + id +
+                ", userId=" + userId +
+                ", accountId=" + accountId +
+                ", categoryName='" + categoryName + '\'' +
+                ", type='" + type + '\'' +
+                ", amount=" + amount +
+                ", frequency='" + frequency + '\'' +
+                ", startDate=" + startDate +
+                ", endDate=" + endDate +
+                ", nextDueDate=" + getNextDueDate() +
+                ", isActive=" + isActive +
+                '}';
+    }
+}
@@ -4,26 +4,93 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.UUID;
 
-public class Transaction {
+/**
+ * An immutable transaction. Changing one means storing a new instance under
+ * the same ID (see TransactionManager.updateTransaction), so indexes and
+ * caches can share instances without copying them.
+ *
+ * Kept compact because there are millions: the date is held as an epoch day,
+ * the amount as an unscaled long plus scale when it fits, the type as an
+ * enum. Descriptions are stored as given; the stores that build
+ * transactions pass one shared String per distinct text (see
+ * service.impl.DescriptionPool).
+ */
+public final class Transaction {
     private final UUID id;
-    private UUID accountId;
-    private UUID categoryId;
-    private BigDecimal amount; // Should store signed amount (positive for income, negative for expense)
-    private LocalDate date;
-    private String description;
-    private final String type; // "income" or "expense", should be final after creation
+    private final UUID accountId;
+    private final UUID categoryId;
+    // Signed amount (positive for income, negative for expense): unscaled value and scale,
+    // or wideAmount when it does not fit
+    private final long unscaledAmount;
+    private final byte amountScale;
+    private final BigDecimal wideAmount;
+    private final int epochDay;
+    private final String description;
+    private final TransactionType type;
 
     public Transaction(UUID accountId, UUID categoryId, BigDecimal amount, LocalDate date, String description,
             String type) {
-        this.id = UUID.randomUUID();
+        this(UUID.randomUUID(), accountId, categoryId, amount, date, description, type);
+    }
+
+    // Recreates a transaction with a known ID, e.g. on a replica
+    public Transaction(UUID id, UUID accountId, UUID categoryId, BigDecimal amount, LocalDate date,
+            String description, String type) {
+        this(id, accountId, categoryId, amount, date, description, TransactionType.parse(type));
+    }
+
+    public Transaction(UUID id, UUID accountId, UUID categoryId, BigDecimal amount, LocalDate date,
+            String description, TransactionType type) {
+        this.id = id;
         this.accountId = accountId;
         this.categoryId = categoryId;
-        this.amount = amount; // Service layer should ensure correct sign based on type
-        this.date = date;
+        // Service layer should ensure correct sign based on type
+        if (amount.unscaledValue().bitLength() < Long.SIZE && amount.scale() == (byte) amount.scale()) {
+            this.unscaledAmount = amount.unscaledValue().longValue();
+            this.amountScale = (byte) amount.scale();
+            this.wideAmount = null;
+        } else {
+            this.unscaledAmount = 0;
+            this.amountScale = 0;
+            this.wideAmount = amount;
+        }
+        this.epochDay = Math.toIntExact(date.toEpochDay());
         this.description = description;
         this.type = type;
     }
 
+    private Transaction(UUID id, UUID accountId, UUID categoryId, long unscaledAmount, byte amountScale,
+            int epochDay, String description, TransactionType type) {
+        this.id = id;
+        this.accountId = accountId;
+        this.categoryId = categoryId;
+        this.unscaledAmount = unscaledAmount;
+        this.amountScale = amountScale;
+        this.wideAmount = null;
+        this.epochDay = epochDay;
+        this.description = description;
+        this.type = type;
+    }
+
+    /**
+     * Rebuilds a transaction from compact stored fields (see getEpochDay and
+     * BigDecimal.unscaledValue/scale), e.g. from an archive. The description
+     * is used as is, so it should be one read from a stored transaction,
+     * which is already shared.
+     */
+    public static Transaction restore(UUID id, UUID accountId, UUID categoryId, long unscaledAmount, byte amountScale,
+            int epochDay, String description, TransactionType type) {
+        return new Transaction(id, accountId, categoryId, unscaledAmount, amountScale, epochDay, description, type);
+    }
+
+    // The same transaction filed under another category
+    public Transaction withCategoryId(UUID newCategoryId) {
+        if (wideAmount != null) {
+            return new Transaction(id, accountId, newCategoryId, wideAmount, getDate(), description, type);
+        }
+        return new Transaction(id, accountId, newCategoryId, unscaledAmount, amountScale, epochDay, description, type);
+    }
+
     // Getters
     public UUID getId() {
         return id;
@@ -38,47 +105,31 @@ public class Transaction {
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return wideAmount != null ? wideAmount : BigDecimal.valueOf(unscaledAmount, amountScale);
     }
 
     public LocalDate getDate() {
-        return date;
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    // The date without allocating a LocalDate, for filters and indexes
+    public long getEpochDay() {
+        return epochDay;
     }
 
     public String getDescription() {
         return description;
     }
 
+    // "income" or "expense"
     public String getType() {
-        return type;
-    }
-
-    // Setters (for fields that might be updatable, e.g., via updateTransaction)
-    public void setAccountId(UUID accountId) {
-        this.accountId = accountId;
-    }
-
-    public void setCategoryId(UUID categoryId) {
-        this.categoryId = categoryId;
+        return type.getName();
     }
 
-    public void setAmount(BigDecimal amount) {
-        this.amount = amount;
-    }
-
-    public void setDate(LocalDate date) {
-        this.date = date;
-    }
-
-    public void setDescription(String description) {
-        this.description = description;
+    public TransactionType getTransactionType() {
+        return type;
     }
 
-    // Type is generally not updatable after creation
-    // public void setType(String type) {
-    // this.type = type;
-    // }
-
     @Override
     public String toString() {
         // Corrected toString with proper escaping for single quotes
@@ -86,10 +137,10 @@ public class Transaction {
                 "id=" + id +
                 ", accountId=" + accountId +
                 ", categoryId=" + categoryId +
-                ", amount=" + amount +
-                ", date=" + date +
+                ", amount=" + getAmount() +
+                ", date=" + getDate() +
                 ", description=\'" + description + "\\'" +
-                ", type=\'" + type + "\\'" +
+                ", type=\'" + getType() + "\\'" +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package domain;
+
+/**
+ * Whether a transaction adds to or takes from its account. Held as an enum
+ * so a transaction stores one shared reference rather than its own String.
+ */
+public enum TransactionType {
+    INCOME("income"),
+    EXPENSE("expense");
+
+    private final String name;
+
+    TransactionType(String name) {
+        this.name = name;
+    }
+
+    // Lower-case name, as used in the API, journals and category types
+    public String getName() {
+        return name;
+    }
+
+    // Case-insensitive; throws IllegalArgumentException for anything but income or expense
+    public static TransactionType parse(String type) {
+        if (INCOME.name.equalsIgnoreCase(type)) {
+            return INCOME;
+        }
+        if (EXPENSE.name.equalsIgnoreCase(type)) {
+            return EXPENSE;
+        }
+        throw new IllegalArgumentException("Invalid transaction type: " + type + ". Must be 'income' or 'expense'.");
+    }
+}
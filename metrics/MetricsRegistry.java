@@ -0,0 +1,133 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Lightweight in-process metrics: counters, latency histograms and gauges,
+ * exportable in the Prometheus text format or to a local file.
+ * Managers record counters and latencies into the shared default registry,
+ * so no wiring is needed. Gauges read one manager instance, so they are
+ * registered by whoever owns it (see AccountManager.registerGauges), with
+ * labels telling apart instances that share the process.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    // Sorted by series key so exports are stable and grouped by metric name
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, String> help = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    // Latency of one service method, exported as finance_method_latency_seconds{class,method}
+    public static LatencyHistogram methodLatency(String className, String methodName) {
+        return DEFAULT.histogram("finance_method_latency_seconds",
+                "Latency of service methods", "class=\"" + className + "\",method=\"" + methodName + "\"");
+    }
+
+    public LongAdder counter(String name, String description) {
+        return counter(name, description, "");
+    }
+
+    public LongAdder counter(String name, String description, String labels) {
+        help.putIfAbsent(name, description);
+        return counters.computeIfAbsent(seriesKey(name, labels), k -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name, String description, String labels) {
+        help.putIfAbsent(name, description);
+        return histograms.computeIfAbsent(seriesKey(name, labels), k -> new LatencyHistogram());
+    }
+
+    // Gauges are sampled at export time; registering the same series again replaces it
+    public void gauge(String name, String description, DoubleSupplier value) {
+        gauge(name, description, "", value);
+    }
+
+    public void gauge(String name, String description, String labels, DoubleSupplier value) {
+        help.putIfAbsent(name, description);
+        gauges.put(seriesKey(name, labels), value);
+    }
+
+    private static String seriesKey(String name, String labels) {
+        return labels.isEmpty() ? name : name + "{" + labels + "}";
+    }
+
+    private static String metricName(String seriesKey) {
+        int brace = seriesKey.indexOf('{');
+        return brace < 0 ? seriesKey : seriesKey.substring(0, brace);
+    }
+
+    // Splices an extra label into a series key, e.g. name{a="b"} + quantile -> name{a="b",quantile="0.5"}
+    private static String withLabel(String seriesKey, String suffix, String label) {
+        String name = metricName(seriesKey);
+        String labels = seriesKey.length() > name.length() ? seriesKey.substring(name.length() + 1,
+                seriesKey.length() - 1) : "";
+        String all = labels.isEmpty() ? label : (label.isEmpty() ? labels : labels + "," + label);
+        return name + suffix + (all.isEmpty() ? "" : "{" + all + "}");
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        String lastName = null;
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            lastName = header(out, entry.getKey(), "counter", lastName);
+            out.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, DoubleSupplier> entry : gauges.entrySet()) {
+            lastName = header(out, entry.getKey(), "gauge", lastName);
+            double value;
+            try {
+                value = entry.getValue().getAsDouble();
+            } catch (RuntimeException e) {
+                value = Double.NaN; // A failing gauge must not break the whole export
+            }
+            out.append(entry.getKey()).append(' ').append(value).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            lastName = header(out, entry.getKey(), "summary", lastName);
+            LatencyHistogram histogram = entry.getValue();
+            for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                out.append(withLabel(entry.getKey(), "", "quantile=\"" + quantile + "\"")).append(' ')
+                        .append(histogram.quantileNanos(quantile) / 1e9).append('\n');
+            }
+            out.append(withLabel(entry.getKey(), "_sum", "")).append(' ')
+                    .append(histogram.getSumNanos() / 1e9).append('\n');
+            out.append(withLabel(entry.getKey(), "_count", "")).append(' ')
+                    .append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private String header(StringBuilder out, String seriesKey, String type, String lastName) {
+        String name = metricName(seriesKey);
+        if (!name.equals(lastName)) {
+            out.append("# HELP ").append(name).append(' ').append(help.getOrDefault(name, name)).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+        return name;
+    }
+
+    // Writes the Prometheus text atomically, e.g. for a node_exporter textfile collector
+    public void writeToFile(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(toPrometheusText());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
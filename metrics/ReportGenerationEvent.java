@@ -0,0 +1,57 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event emitted by ReportGenerator for each generated or
+ * exported report, so slow reports can be correlated with GC and lock
+ * contention in the same recording.
+ */
+@Name("finance.ReportGeneration")
+@Label("Report Generation")
+@Category({ "Finance", "Reports" })
+@Description("Generating or exporting a report")
+@StackTrace(false)
+public class ReportGenerationEvent extends Event {
+
+    @Label("User ID")
+    String userId;
+
+    @Label("Report Type")
+    String reportType;
+
+    @Label("Export Format")
+    @Description("Null when the report was generated but not exported")
+    String format;
+
+    @Label("Range Days")
+    long rangeDays;
+
+    @Label("Record Count")
+    @Description("Transactions or series points the report covered")
+    int recordCount;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    // Set while the report runs; cheap plain field writes even when disabled
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public void finish(Object userId, String reportType, String format, long rangeDays, boolean succeeded) {
+        if (shouldCommit()) {
+            this.userId = String.valueOf(userId);
+            this.reportType = reportType;
+            this.format = format;
+            this.rangeDays = rangeDays;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
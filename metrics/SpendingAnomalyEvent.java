@@ -0,0 +1,56 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event emitted by SpendingAnomalyDetector when an expense
+ * is far outside the user's norm for its category. An instant event: it has
+ * no duration and is committed as soon as it is created.
+ */
+@Name("finance.SpendingAnomaly")
+@Label("Spending Anomaly")
+@Category({ "Finance", "Transactions" })
+@Description("Expense far above the user's typical amount for its category")
+@StackTrace(false)
+public class SpendingAnomalyEvent extends Event {
+
+    @Label("User ID")
+    String userId;
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    @Label("Category ID")
+    String categoryId;
+
+    @Label("Amount")
+    double amount;
+
+    @Label("Typical Amount")
+    @Description("Geometric mean of the category's recent expenses")
+    double typicalAmount;
+
+    @Label("Score")
+    @Description("Standard deviations above the mean, on a log scale")
+    double score;
+
+    // Commits the event if JFR is recording this event type
+    public static void emit(Object userId, Object transactionId, Object categoryId, double amount,
+            double typicalAmount, double score) {
+        SpendingAnomalyEvent event = new SpendingAnomalyEvent();
+        if (event.shouldCommit()) {
+            event.userId = String.valueOf(userId);
+            event.transactionId = String.valueOf(transactionId);
+            event.categoryId = String.valueOf(categoryId);
+            event.amount = amount;
+            event.typicalAmount = typicalAmount;
+            event.score = score;
+            event.commit();
+        }
+    }
+}
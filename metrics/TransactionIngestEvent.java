@@ -0,0 +1,45 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event emitted by TransactionManager for each record,
+ * update and delete. Fields are only filled in when the event will be
+ * committed, so a disabled event costs little more than its begin() call.
+ */
+@Name("finance.TransactionIngest")
+@Label("Transaction Ingest")
+@Category({ "Finance", "Transactions" })
+@Description("Recording, updating or deleting transactions")
+@StackTrace(false)
+public class TransactionIngestEvent extends Event {
+
+    @Label("User ID")
+    String userId;
+
+    @Label("Operation")
+    @Description("record, update, delete or import")
+    String operation;
+
+    @Label("Record Count")
+    int recordCount;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    // Ends the event and commits it if JFR is recording this event type
+    public void finish(Object userId, String operation, int recordCount, boolean succeeded) {
+        if (shouldCommit()) {
+            this.userId = String.valueOf(userId);
+            this.operation = operation;
+            this.recordCount = recordCount;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
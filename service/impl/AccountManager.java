@@ -3,9 +3,13 @@ package service.impl;
 import domain.Account;
 import exception.NotFoundException;
 import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -20,22 +24,89 @@ import java.util.stream.Collectors;
 // If not, this class should just be AccountManager without implements
 public class AccountManager /* implements service.AccountManager */ {
 
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_EXISTING_USERS_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "getExistingUsers");
+    private static final LatencyHistogram ADD_USER_LATENCY = MetricsRegistry.methodLatency("AccountManager", "addUser");
+    private static final LatencyHistogram USER_EXISTS_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "userExists");
+    private static final LatencyHistogram GET_ACCOUNT_LIST_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "getAccountList");
+    private static final LatencyHistogram GET_ACCOUNT_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "getAccount");
+    private static final LatencyHistogram CREATE_ACCOUNT_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "createAccount");
+    private static final LatencyHistogram UPDATE_ACCOUNT_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "updateAccount");
+    private static final LatencyHistogram DELETE_ACCOUNT_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "deleteAccount");
+    private static final LatencyHistogram RECORD_BALANCE_CHANGE_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "recordBalanceChange");
+    private static final LatencyHistogram GET_BALANCE_AS_OF_LATENCY =
+            MetricsRegistry.methodLatency("AccountManager", "getBalanceAsOf");
+
     private final Map<UUID, Map<UUID, Account>> userAccounts = new ConcurrentHashMap<>();
     private final Map<UUID, Boolean> existingUsers = new ConcurrentHashMap<>();
+    // AccountId -> date-ordered running balance, fed by TransactionManager
+    private final Map<UUID, BalanceHistory> balanceHistories = new ConcurrentHashMap<>();
+    // Rates into the base currency for accounts in other currencies, read by reports
+    private final ExchangeRateTable exchangeRateTable;
+
+    public AccountManager() {
+        this(new ExchangeRateTable(ExchangeRateTable.DEFAULT_BASE_CURRENCY));
+    }
+
+    public AccountManager(ExchangeRateTable exchangeRateTable) {
+        this.exchangeRateTable = exchangeRateTable;
+    }
+
+    /**
+     * Registers this manager's gauges. Called by whoever owns the manager,
+     * since a process may hold several (shards, replicas); labels such as
+     * shard="0" tell their series apart.
+     */
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_users", "Known users", labels, this::getUserCount);
+        metrics.gauge("finance_accounts", "Stored accounts", labels, this::getAccountCount);
+    }
+
+    int getUserCount() {
+        return existingUsers.size();
+    }
+
+    // Accounts across all users
+    int getAccountCount() {
+        return userAccounts.values().stream().mapToInt(Map::size).sum();
+    }
 
     // Getter for existingUsers map (needed by other managers)
     public Map<UUID, Boolean> getExistingUsers() {
-        return new ConcurrentHashMap<>(existingUsers); // Return a copy for safety
+        long startNanos = System.nanoTime();
+        try {
+            return new ConcurrentHashMap<>(existingUsers); // Return a copy for safety
+        } finally {
+            GET_EXISTING_USERS_LATENCY.recordSince(startNanos);
+        }
     }
 
     // Helper to simulate user existence
     public void addUser(UUID userId) {
-        existingUsers.put(userId, true);
+        long startNanos = System.nanoTime();
+        try {
+            existingUsers.put(userId, true);
+        } finally {
+            ADD_USER_LATENCY.recordSince(startNanos);
+        }
     }
 
     // Helper to check user existence (can be used by other managers)
     public boolean userExists(UUID userId) {
-        return existingUsers.containsKey(userId);
+        long startNanos = System.nanoTime();
+        try {
+            return existingUsers.containsKey(userId);
+        } finally {
+            USER_EXISTS_LATENCY.recordSince(startNanos);
+        }
     }
 
     private void checkUserExists(UUID userId) throws NotFoundException {
@@ -47,97 +118,221 @@ public class AccountManager /* implements service.AccountManager */ {
     // Method signature might need to match an interface if one exists
     // @Override
     public List<Account> getAccountList(UUID userId) throws NotFoundException {
-        checkUserExists(userId);
-        Map<UUID, Account> accounts = userAccounts.getOrDefault(userId, new ConcurrentHashMap<>());
-        return new ArrayList<>(accounts.values());
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, Account> accounts = userAccounts.getOrDefault(userId, new ConcurrentHashMap<>());
+            return new ArrayList<>(accounts.values());
+        } finally {
+            GET_ACCOUNT_LIST_LATENCY.recordSince(startNanos);
+        }
     }
 
     // Method signature might need to match an interface if one exists
     // @Override
     public Account getAccount(UUID accountId) throws NotFoundException {
-        // Find account across all users (might need refinement based on requirements)
-        for (Map<UUID, Account> userMap : userAccounts.values()) {
-            if (userMap.containsKey(accountId)) {
-                return userMap.get(accountId);
+        long startNanos = System.nanoTime();
+        try {
+            // Find account across all users (might need refinement based on requirements)
+            for (Map<UUID, Account> userMap : userAccounts.values()) {
+                if (userMap.containsKey(accountId)) {
+                    return userMap.get(accountId);
+                }
             }
+            throw new NotFoundException("Account with ID " + accountId + " not found.");
+        } finally {
+            GET_ACCOUNT_LATENCY.recordSince(startNanos);
         }
-        throw new NotFoundException("Account with ID " + accountId + " not found.");
     }
 
     // Overloaded method to get account details ensuring user ownership
     public Account getAccount(UUID accountId, UUID userId) throws NotFoundException, SecurityException {
-        checkUserExists(userId);
-        Map<UUID, Account> accounts = userAccounts.get(userId);
-        if (accounts == null || !accounts.containsKey(accountId)) {
-            throw new NotFoundException("Account with ID " + accountId + " not found for user " + userId);
-        }
-        Account account = accounts.get(accountId);
-        // Redundant check given structure, but good practice
-        if (!account.getUserId().equals(userId)) {
-            throw new SecurityException("User " + userId + " is not authorized to access account " + accountId);
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, Account> accounts = userAccounts.get(userId);
+            if (accounts == null || !accounts.containsKey(accountId)) {
+                throw new NotFoundException("Account with ID " + accountId + " not found for user " + userId);
+            }
+            Account account = accounts.get(accountId);
+            // Redundant check given structure, but good practice
+            if (!account.getUserId().equals(userId)) {
+                throw new SecurityException("User " + userId + " is not authorized to access account " + accountId);
+            }
+            return account;
+        } finally {
+            GET_ACCOUNT_LATENCY.recordSince(startNanos);
         }
-        return account;
     }
 
     // Method signature might need to match an interface if one exists
     // @Override
     public Account createAccount(UUID userId, String name, BigDecimal balance, String type)
             throws ValidationException, NotFoundException {
-        checkUserExists(userId);
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Account name cannot be empty.");
-        }
-        if (balance == null || balance.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ValidationException("Initial balance cannot be negative.");
-        }
-        if (type == null || type.trim().isEmpty()) {
-            throw new ValidationException("Account type cannot be empty.");
-        }
+        return createAccount(userId, name, balance, type, exchangeRateTable.getBaseCurrency());
+    }
 
-        Account newAccount = new Account(userId, name, balance, type);
-        userAccounts.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newAccount.getId(), newAccount);
-        addUser(userId); // Ensure user is marked as existing
-        return newAccount; // Return the created account object
+    // The currency (ISO 4217 code) is fixed for the life of the account
+    public Account createAccount(UUID userId, String name, BigDecimal balance, String type, String currency)
+            throws ValidationException, NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Account name cannot be empty.");
+            }
+            if (balance == null || balance.compareTo(BigDecimal.ZERO) < 0) {
+                throw new ValidationException("Initial balance cannot be negative.");
+            }
+            if (type == null || type.trim().isEmpty()) {
+                throw new ValidationException("Account type cannot be empty.");
+            }
+
+            Account newAccount = new Account(userId, name, balance, type,
+                    ExchangeRateTable.normalizeCurrency(currency));
+            userAccounts.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newAccount.getId(), newAccount);
+            balanceHistories.put(newAccount.getId(), new BalanceHistory(balance));
+            addUser(userId); // Ensure user is marked as existing
+            return newAccount; // Return the created account object
+        } finally {
+            CREATE_ACCOUNT_LATENCY.recordSince(startNanos);
+        }
     }
 
     // Method signature might need to match an interface if one exists
     // @Override
     public boolean updateAccount(UUID accountId, UUID userId, String name, String type, boolean isActive)
             throws ValidationException, NotFoundException, SecurityException {
-        Account account = getAccount(accountId, userId); // Use the user-specific getter
+        long startNanos = System.nanoTime();
+        try {
+            Account account = getAccount(accountId, userId); // Use the user-specific getter
 
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Account name cannot be empty.");
-        }
-        if (type == null || type.trim().isEmpty()) {
-            throw new ValidationException("Account type cannot be empty.");
-        }
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Account name cannot be empty.");
+            }
+            if (type == null || type.trim().isEmpty()) {
+                throw new ValidationException("Account type cannot be empty.");
+            }
 
-        account.setName(name);
-        account.setType(type);
-        account.setActive(isActive);
-        return true;
+            account.setName(name);
+            account.setType(type);
+            account.setActive(isActive);
+            return true;
+        } finally {
+            UPDATE_ACCOUNT_LATENCY.recordSince(startNanos);
+        }
     }
 
     // Method signature might need to match an interface if one exists
     // @Override
     public boolean deleteAccount(UUID accountId, UUID userId)
             throws NotFoundException, SecurityException, ValidationException {
-        Account account = getAccount(accountId, userId); // Use the user-specific getter
+        long startNanos = System.nanoTime();
+        try {
+            Account account = getAccount(accountId, userId); // Use the user-specific getter
+
+            if (account.getBalance().compareTo(BigDecimal.ZERO) != 0) {
+                throw new ValidationException(
+                        "Cannot delete account with non-zero balance. Balance: " + account.getBalance());
+            }
+
+            Map<UUID, Account> accounts = userAccounts.get(userId);
+            if (accounts != null) {
+                accounts.remove(accountId);
+                balanceHistories.remove(accountId);
+                // Optional: Remove user if they have no more accounts
+                // if (accounts.isEmpty()) { userAccounts.remove(userId);
+                // existingUsers.remove(userId); }
+                return true;
+            }
+            return false;
+        } finally {
+            DELETE_ACCOUNT_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Records a dated balance change; TransactionManager calls this alongside
+    // Account.updateBalance (pass a negated amount to undo a transaction)
+    public void recordBalanceChange(UUID accountId, LocalDate date, BigDecimal amount) {
+        long startNanos = System.nanoTime();
+        try {
+            BalanceHistory history = balanceHistories.get(accountId);
+            if (history != null) {
+                history.apply(date, amount);
+            }
+        } finally {
+            RECORD_BALANCE_CHANGE_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Balance at the end of the given date, in O(log n) of the account's history
+    public BigDecimal getBalanceAsOf(UUID accountId, UUID userId, LocalDate date)
+            throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            getAccount(accountId, userId); // Checks user and ownership
+            if (date == null) {
+                throw new ValidationException("Date is required.");
+            }
+            BalanceHistory history = balanceHistories.get(accountId);
+            if (history == null) {
+                throw new NotFoundException("Balance history for account " + accountId + " not found.");
+            }
+            return history.balanceAsOf(date);
+        } finally {
+            GET_BALANCE_AS_OF_LATENCY.recordSince(startNanos);
+        }
+    }
 
-        if (account.getBalance().compareTo(BigDecimal.ZERO) != 0) {
-            throw new ValidationException(
-                    "Cannot delete account with non-zero balance. Balance: " + account.getBalance());
+    public ExchangeRateTable getExchangeRateTable() {
+        return exchangeRateTable;
+    }
+
+    /**
+     * Per-day rates into the base currency for each of the user's accounts,
+     * resolved once so reports can convert rows without further lookups.
+     *
+     * @throws ValidationException if an account's currency has no rates.
+     */
+    Map<UUID, ExchangeRateTable.DailyRates> getDailyRatesByAccount(UUID userId)
+            throws NotFoundException, ValidationException {
+        checkUserExists(userId);
+        Map<UUID, ExchangeRateTable.DailyRates> rates = new HashMap<>();
+        for (Account account : userAccounts.getOrDefault(userId, new ConcurrentHashMap<>()).values()) {
+            rates.put(account.getId(), exchangeRateTable.dailyRates(account.getCurrency()));
         }
+        return rates;
+    }
 
-        Map<UUID, Account> accounts = userAccounts.get(userId);
+    // Removes the user and their accounts into the partition, for moving them to another shard
+    void detachUser(UserPartition partition) {
+        UUID userId = partition.userId;
+        Map<UUID, Account> accounts = userAccounts.remove(userId);
         if (accounts != null) {
-            accounts.remove(accountId);
-            // Optional: Remove user if they have no more accounts
-            // if (accounts.isEmpty()) { userAccounts.remove(userId);
-            // existingUsers.remove(userId); }
-            return true;
+            partition.accounts.putAll(accounts);
+            for (UUID accountId : accounts.keySet()) {
+                partition.balanceHistories.put(accountId, balanceHistories.remove(accountId));
+            }
         }
-        return false;
+        existingUsers.remove(userId);
+    }
+
+    // Installs an account created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreAccount(Account account) {
+        userAccounts.computeIfAbsent(account.getUserId(), k -> new ConcurrentHashMap<>())
+                .put(account.getId(), account);
+        balanceHistories.put(account.getId(), new BalanceHistory(account.getBalance()));
+        addUser(account.getUserId());
+    }
+
+    void attachUser(UserPartition partition) {
+        balanceHistories.putAll(partition.balanceHistories);
+        userAccounts.put(partition.userId, new ConcurrentHashMap<>(partition.accounts));
+        existingUsers.put(partition.userId, true);
+    }
+
+    // Package-private: lets ReportGenerator walk dated changes without copying them
+    BalanceHistory getBalanceHistory(UUID accountId) {
+        return balanceHistories.get(accountId);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,279 @@
+package service.impl;
+
+import domain.Account;
+import domain.Budget;
+import domain.FinancialGoal;
+import domain.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade over the service managers. Every call runs on a shared
+ * worker pool and returns a CompletableFuture; checked exceptions
+ * (ValidationException, NotFoundException) complete the future exceptionally.
+ * Each user gets a lane with a fixed number of in-flight calls; extra calls
+ * wait in the lane's queue instead of occupying a worker, so one busy user
+ * cannot starve the others. A lane queues at most MAX_PENDING_PER_USER
+ * calls; beyond that, calls fail with RejectedExecutionException.
+ * NOTE: Targets Java 17, so a sized platform-thread pool is used in place of
+ * virtual threads.
+ */
+public class AsyncServiceFacade implements AutoCloseable {
+
+    // A blocking service call whose checked exceptions surface through the future
+    @FunctionalInterface
+    public interface ServiceCall<T> {
+        T call() throws Exception;
+    }
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final BudgetManager budgetManager;
+    private final FinancialGoalManager financialGoalManager;
+    private final ReportGenerator reportGenerator;
+
+    public static final int MAX_PENDING_PER_USER = 1000;
+
+    private final ExecutorService executor;
+    private final int maxInFlightPerUser;
+    private final Map<UUID, UserLane> lanes = new ConcurrentHashMap<>();
+
+    private static class UserLane {
+        int running; // Guarded by ConcurrentHashMap.compute on the lane's key
+        final ArrayDeque<LaneTask<?>> pending = new ArrayDeque<>();
+    }
+
+    private class LaneTask<T> implements Runnable {
+        final UUID userId;
+        final ServiceCall<T> call;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        LaneTask(UUID userId, ServiceCall<T> call) {
+            this.userId = userId;
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                release(userId);
+            }
+        }
+    }
+
+    public AsyncServiceFacade(AccountManager accountManager, TransactionManager transactionManager,
+            BudgetManager budgetManager, FinancialGoalManager financialGoalManager, ReportGenerator reportGenerator) {
+        // Managers are in-memory today, so size for CPU work with headroom for future I/O
+        this(accountManager, transactionManager, budgetManager, financialGoalManager, reportGenerator,
+                Runtime.getRuntime().availableProcessors() * 2, 4);
+    }
+
+    public AsyncServiceFacade(AccountManager accountManager, TransactionManager transactionManager,
+            BudgetManager budgetManager, FinancialGoalManager financialGoalManager, ReportGenerator reportGenerator,
+            int workerThreads, int maxInFlightPerUser) {
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+        this.budgetManager = budgetManager;
+        this.financialGoalManager = financialGoalManager;
+        this.reportGenerator = reportGenerator;
+        this.maxInFlightPerUser = maxInFlightPerUser;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "finance-async-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Runs any service call in the given user's lane.
+     */
+    public <T> CompletableFuture<T> submit(UUID userId, ServiceCall<T> call) {
+        LaneTask<T> task = new LaneTask<>(userId, call);
+        boolean[] runNow = { false };
+        boolean[] full = { false };
+        lanes.compute(userId, (k, lane) -> {
+            if (lane == null) {
+                lane = new UserLane();
+            }
+            if (lane.running < maxInFlightPerUser) {
+                lane.running++;
+                runNow[0] = true;
+            } else if (lane.pending.size() >= MAX_PENDING_PER_USER) {
+                full[0] = true;
+            } else {
+                lane.pending.add(task);
+            }
+            return lane;
+        });
+        if (full[0]) {
+            task.future.completeExceptionally(new RejectedExecutionException(
+                    "User " + userId + " already has " + MAX_PENDING_PER_USER + " calls queued"));
+        } else if (runNow[0] && !dispatch(task)) {
+            release(userId);
+        }
+        return task.future;
+    }
+
+    // Hands the lane's slot to the next queued call, or frees it
+    private void release(UUID userId) {
+        Object[] next = { null };
+        do {
+            lanes.compute(userId, (k, lane) -> {
+                next[0] = lane.pending.poll();
+                if (next[0] == null) {
+                    lane.running--;
+                    return lane.running == 0 ? null : lane; // Drop idle lanes
+                }
+                return lane;
+            });
+            // A rejected call keeps the slot, so the loop fails the rest of the queue in turn
+        } while (next[0] != null && !dispatch((LaneTask<?>) next[0]));
+    }
+
+    // Fails the call instead when the executor refuses it (e.g. after close)
+    private boolean dispatch(LaneTask<?> task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    // --- Accounts ---
+
+    public CompletableFuture<List<Account>> getAccountList(UUID userId) {
+        return submit(userId, () -> accountManager.getAccountList(userId));
+    }
+
+    public CompletableFuture<Account> getAccount(UUID accountId, UUID userId) {
+        return submit(userId, () -> accountManager.getAccount(accountId, userId));
+    }
+
+    public CompletableFuture<Account> createAccount(UUID userId, String name, BigDecimal balance, String type) {
+        return submit(userId, () -> accountManager.createAccount(userId, name, balance, type));
+    }
+
+    public CompletableFuture<Boolean> updateAccount(UUID accountId, UUID userId, String name, String type,
+            boolean isActive) {
+        return submit(userId, () -> accountManager.updateAccount(accountId, userId, name, type, isActive));
+    }
+
+    public CompletableFuture<Boolean> deleteAccount(UUID accountId, UUID userId) {
+        return submit(userId, () -> accountManager.deleteAccount(accountId, userId));
+    }
+
+    public CompletableFuture<BigDecimal> getBalanceAsOf(UUID accountId, UUID userId, LocalDate date) {
+        return submit(userId, () -> accountManager.getBalanceAsOf(accountId, userId, date));
+    }
+
+    // --- Transactions ---
+
+    public CompletableFuture<List<Transaction>> getTransactionsByUser(UUID userId, LocalDate startDate,
+            LocalDate endDate) {
+        return submit(userId, () -> transactionManager.getTransactionsByUser(userId, startDate, endDate));
+    }
+
+    public CompletableFuture<Transaction> getTransaction(UUID transactionId, UUID userId) {
+        return submit(userId, () -> transactionManager.getTransaction(transactionId, userId));
+    }
+
+    public CompletableFuture<List<Transaction>> searchTransactions(UUID userId, String query) {
+        return submit(userId, () -> transactionManager.searchTransactions(userId, query));
+    }
+
+    public CompletableFuture<List<Transaction>> searchTransactions(UUID userId, String query, int limit) {
+        return submit(userId, () -> transactionManager.searchTransactions(userId, query, limit));
+    }
+
+    public CompletableFuture<Transaction> recordTransaction(UUID userId, UUID accountId, String categoryName,
+            String type, BigDecimal amount, LocalDate date) {
+        return submit(userId,
+                () -> transactionManager.recordTransaction(userId, accountId, categoryName, type, amount, date));
+    }
+
+    public CompletableFuture<Boolean> updateTransaction(UUID transactionId, UUID userId, UUID accountId,
+            UUID categoryId, BigDecimal amount, LocalDate date, String description) {
+        return submit(userId, () -> transactionManager.updateTransaction(transactionId, userId, accountId,
+                categoryId, amount, date, description));
+    }
+
+    public CompletableFuture<Boolean> deleteTransaction(UUID transactionId, UUID userId) {
+        return submit(userId, () -> transactionManager.deleteTransaction(transactionId, userId));
+    }
+
+    // --- Budgets ---
+
+    public CompletableFuture<List<Budget>> getBudgetList(UUID userId) {
+        return submit(userId, () -> budgetManager.getBudgetList(userId));
+    }
+
+    public CompletableFuture<UUID> createBudget(UUID userId, String name, BigDecimal amount, LocalDate startDate,
+            LocalDate endDate, List<UUID> categoryIds) {
+        return submit(userId,
+                () -> budgetManager.createBudget(userId, name, amount, startDate, endDate, categoryIds));
+    }
+
+    public CompletableFuture<Boolean> deleteBudget(UUID budgetId, UUID userId) {
+        return submit(userId, () -> budgetManager.deleteBudget(budgetId, userId));
+    }
+
+    // --- Financial goals ---
+
+    public CompletableFuture<List<FinancialGoal>> getFinancialGoalList(UUID userId) {
+        return submit(userId, () -> financialGoalManager.getFinancialGoalList(userId));
+    }
+
+    public CompletableFuture<UUID> createFinancialGoal(UUID userId, String name, BigDecimal targetAmount,
+            BigDecimal currentAmount, LocalDate deadline) {
+        return submit(userId, () -> financialGoalManager.createFinancialGoal(userId, name, targetAmount,
+                currentAmount, deadline));
+    }
+
+    public CompletableFuture<Boolean> addContribution(UUID goalId, UUID userId, BigDecimal amount) {
+        return submit(userId, () -> financialGoalManager.addContribution(goalId, userId, amount));
+    }
+
+    public CompletableFuture<Boolean> deleteFinancialGoal(UUID goalId, UUID userId) {
+        return submit(userId, () -> financialGoalManager.deleteFinancialGoal(goalId, userId));
+    }
+
+    // --- Reports ---
+
+    public CompletableFuture<Object> generateReport(UUID userId, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters) {
+        return submit(userId,
+                () -> reportGenerator.generateReport(userId, reportType, startDate, endDate, parameters));
+    }
+
+    public CompletableFuture<Object> exportReport(UUID userId, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters, String format) {
+        return submit(userId, () -> reportGenerator.exportReport(userId, reportType, startDate, endDate,
+                parameters, format));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
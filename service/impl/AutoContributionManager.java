@@ -0,0 +1,399 @@
+package service.impl;
+
+import domain.Category;
+import domain.ContributionRule;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies user-defined contribution rules ("10% of every Salary income goes to
+ * goal X") to income as it is recorded through TransactionManager.
+ *
+ * Each user's rules are compiled into an immutable dispatch table keyed by
+ * category ID and swapped in whole when a rule changes, so recording a
+ * transaction costs two map lookups and touches only the rules for its
+ * category. Matching contributions are queued and applied by one background
+ * thread, which drains the queue in batches and sums them per goal before
+ * calling FinancialGoalManager once per goal. Each sum is capped at what the
+ * goal still needs, under the goal's lock, so a goal is marked completed
+ * exactly when it reaches its target and receives nothing afterwards.
+ *
+ * Shares are taken of the income converted into the base currency, which
+ * goals are kept in (see TransactionManager.toBaseCurrency).
+ *
+ * Contributions follow the income as recorded: editing or deleting the
+ * transaction later does not take back what was already moved to the goal.
+ *
+ * A replica builds a passive instance, which only keeps the rules: the
+ * contributions themselves arrive in the leader's journal.
+ */
+public class AutoContributionManager {
+
+    // Told of every contribution applied, on the applying thread
+    @FunctionalInterface
+    public interface ContributionListener {
+        void contributionApplied(UUID userId, UUID goalId, BigDecimal amount);
+    }
+
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_CONTRIBUTION_RULE_LIST_LATENCY =
+            MetricsRegistry.methodLatency("AutoContributionManager", "getContributionRuleList");
+    private static final LatencyHistogram CREATE_CONTRIBUTION_RULE_LATENCY =
+            MetricsRegistry.methodLatency("AutoContributionManager", "createContributionRule");
+    private static final LatencyHistogram DELETE_CONTRIBUTION_RULE_LATENCY =
+            MetricsRegistry.methodLatency("AutoContributionManager", "deleteContributionRule");
+    private static final LatencyHistogram APPLY_CONTRIBUTIONS_LATENCY =
+            MetricsRegistry.methodLatency("AutoContributionManager", "applyContributions");
+
+    private static final BigDecimal MAX_PERCENTAGE = BigDecimal.valueOf(100);
+    // Most queued contributions applied per batch
+    private static final int BATCH_SIZE = 4096;
+
+    // Rules as created (UserId -> RuleId -> ContributionRule); each inner map is guarded by its own lock
+    private final Map<UUID, Map<UUID, ContributionRule>> userRules = new ConcurrentHashMap<>();
+    // Compiled rules (UserId -> CategoryId -> rules); tables are never modified once published
+    private final Map<UUID, Map<UUID, ContributionRule[]>> dispatchTables = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<PendingContribution> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong contributionsQueued = new AtomicLong();
+    private final Object progressLock = new Object();
+    private long contributionsProcessed; // Guarded by progressLock
+    private final Thread applier; // Null when passive
+    private final List<ContributionListener> contributionListeners = new CopyOnWriteArrayList<>();
+
+    private final FinancialGoalManager financialGoalManager;
+    private final CategoryManager categoryManager;
+    private final TransactionManager transactionManager;
+    private final TransactionListener listener = this::transactionRecorded;
+
+    private final LongAdder contributionsApplied = MetricsRegistry.getDefault().counter(
+            "finance_goal_auto_contributions_total", "Income contributions processed by goal rules",
+            "result=\"applied\"");
+    private final LongAdder contributionsSkipped = MetricsRegistry.getDefault().counter(
+            "finance_goal_auto_contributions_total", "Income contributions processed by goal rules",
+            "result=\"skipped\"");
+
+    // One share of one income transaction, waiting to be applied to a goal
+    private static class PendingContribution {
+        final UUID userId;
+        final UUID goalId;
+        final BigDecimal amount;
+
+        PendingContribution(UUID userId, UUID goalId, BigDecimal amount) {
+            this.userId = userId;
+            this.goalId = goalId;
+            this.amount = amount;
+        }
+    }
+
+    public AutoContributionManager(FinancialGoalManager financialGoalManager, CategoryManager categoryManager,
+            TransactionManager transactionManager) {
+        this(financialGoalManager, categoryManager, transactionManager, true);
+    }
+
+    // Passive (applyIncome false): keeps rules without applying them, as on a replica
+    AutoContributionManager(FinancialGoalManager financialGoalManager, CategoryManager categoryManager,
+            TransactionManager transactionManager, boolean applyIncome) {
+        this.financialGoalManager = financialGoalManager;
+        this.categoryManager = categoryManager;
+        this.transactionManager = transactionManager;
+        if (!applyIncome) {
+            applier = null;
+            return;
+        }
+        applier = new Thread(this::applyQueued, "finance-goal-contributions");
+        applier.setDaemon(true);
+        applier.start();
+        transactionManager.addTransactionListener(listener);
+    }
+
+    public void addContributionListener(ContributionListener contributionListener) {
+        contributionListeners.add(contributionListener);
+    }
+
+    // Installs a rule created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreContributionRule(ContributionRule rule) {
+        Map<UUID, ContributionRule> rules = userRules.computeIfAbsent(rule.getUserId(), k -> new LinkedHashMap<>());
+        synchronized (rules) {
+            rules.put(rule.getId(), rule);
+            compile(rule.getUserId(), rules);
+        }
+    }
+
+    // Removes the user's rules into the partition, for moving them to another shard
+    void detachUser(UserPartition partition) {
+        Map<UUID, ContributionRule> rules = userRules.remove(partition.userId);
+        if (rules != null) {
+            synchronized (rules) {
+                partition.contributionRules.putAll(rules);
+            }
+        }
+        dispatchTables.remove(partition.userId);
+    }
+
+    void attachUser(UserPartition partition) {
+        if (partition.contributionRules.isEmpty()) {
+            return;
+        }
+        Map<UUID, ContributionRule> rules = new LinkedHashMap<>(partition.contributionRules);
+        synchronized (rules) {
+            userRules.put(partition.userId, rules);
+            compile(partition.userId, rules);
+        }
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_goal_contribution_rules", "Stored goal contribution rules", labels,
+                () -> userRules.values().stream().mapToInt(Map::size).sum());
+        metrics.gauge("finance_goal_auto_contributions_pending", "Income contributions waiting to be applied",
+                labels, pending::size);
+    }
+
+    public List<ContributionRule> getContributionRuleList(UUID goalId, UUID userId)
+            throws NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            financialGoalManager.getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+            List<ContributionRule> result = new ArrayList<>();
+            Map<UUID, ContributionRule> rules = userRules.get(userId);
+            if (rules != null) {
+                synchronized (rules) {
+                    for (ContributionRule rule : rules.values()) {
+                        if (rule.getGoalId().equals(goalId)) {
+                            result.add(rule);
+                        }
+                    }
+                }
+            }
+            return result;
+        } finally {
+            GET_CONTRIBUTION_RULE_LIST_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Creates a rule sending a percentage of every income recorded in a
+     * category to a goal. The rules of one category may not add up to more
+     * than 100% of the income.
+     *
+     * @throws ValidationException if the category is not an income category or
+     *                             the percentage is not in (0, 100].
+     * @throws NotFoundException   if the goal, user or category is not found.
+     * @throws SecurityException   if the user does not own the goal.
+     */
+    public ContributionRule createContributionRule(UUID userId, UUID goalId, String categoryName,
+            BigDecimal percentage) throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            financialGoalManager.getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+            if (categoryName == null || categoryName.trim().isEmpty()) {
+                throw new ValidationException("Category name is required.");
+            }
+            if (percentage == null || percentage.signum() <= 0 || percentage.compareTo(MAX_PERCENTAGE) > 0) {
+                throw new ValidationException("Percentage must be greater than 0 and at most 100.");
+            }
+            Category category = categoryManager.getCategoryByName(categoryName.trim());
+            if (!category.getType().equalsIgnoreCase("income")) {
+                throw new ValidationException("Contribution rules apply to income categories only; '"
+                        + category.getName() + "' is an " + category.getType() + " category.");
+            }
+
+            Map<UUID, ContributionRule> rules = userRules.computeIfAbsent(userId, k -> new LinkedHashMap<>());
+            synchronized (rules) {
+                BigDecimal total = percentage;
+                for (ContributionRule rule : rules.values()) {
+                    if (rule.getCategoryId().equals(category.getId())) {
+                        total = total.add(rule.getPercentage());
+                    }
+                }
+                if (total.compareTo(MAX_PERCENTAGE) > 0) {
+                    throw new ValidationException("Contribution rules for '" + category.getName()
+                            + "' would add up to " + total.stripTrailingZeros().toPlainString()
+                            + "% of the income.");
+                }
+                ContributionRule rule = new ContributionRule(userId, goalId, category.getId(), percentage);
+                rules.put(rule.getId(), rule);
+                compile(userId, rules);
+                return rule;
+            }
+        } finally {
+            CREATE_CONTRIBUTION_RULE_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    public boolean deleteContributionRule(UUID ruleId, UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            Map<UUID, ContributionRule> rules = userRules.get(userId);
+            if (rules != null) {
+                synchronized (rules) {
+                    if (rules.remove(ruleId) != null) {
+                        compile(userId, rules);
+                        return true;
+                    }
+                }
+            }
+            throw new NotFoundException("Contribution rule with ID " + ruleId + " not found for user " + userId);
+        } finally {
+            DELETE_CONTRIBUTION_RULE_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Waits until every contribution queued before this call has been applied.
+     */
+    public void flush() throws InterruptedException {
+        if (applier == null) {
+            return;
+        }
+        long target = contributionsQueued.get();
+        synchronized (progressLock) {
+            while (contributionsProcessed < target && applier.isAlive()) {
+                progressLock.wait(100);
+            }
+        }
+    }
+
+    // Stops listening for income; contributions already queued are applied first
+    public void close() throws InterruptedException {
+        if (applier == null) {
+            return;
+        }
+        transactionManager.removeTransactionListener(listener);
+        flush();
+        applier.interrupt();
+        applier.join();
+    }
+
+    // Replaces the user's dispatch table; caller holds the lock on rules
+    private void compile(UUID userId, Map<UUID, ContributionRule> rules) {
+        if (rules.isEmpty()) {
+            dispatchTables.remove(userId);
+            return;
+        }
+        Map<UUID, List<ContributionRule>> byCategory = new HashMap<>();
+        for (ContributionRule rule : rules.values()) {
+            byCategory.computeIfAbsent(rule.getCategoryId(), k -> new ArrayList<>()).add(rule);
+        }
+        Map<UUID, ContributionRule[]> table = new HashMap<>();
+        for (Map.Entry<UUID, List<ContributionRule>> entry : byCategory.entrySet()) {
+            table.put(entry.getKey(), entry.getValue().toArray(new ContributionRule[0]));
+        }
+        dispatchTables.put(userId, table);
+    }
+
+    // Runs on the recording thread: look up the category's rules and queue their shares
+    private void transactionRecorded(UUID userId, Transaction transaction) {
+        Map<UUID, ContributionRule[]> table = dispatchTables.get(userId);
+        if (table == null || transaction.getAmount().signum() <= 0) { // Only income is positive
+            return;
+        }
+        ContributionRule[] rules = table.get(transaction.getCategoryId());
+        if (rules == null) {
+            return;
+        }
+        BigDecimal income;
+        try {
+            income = transactionManager.toBaseCurrency(userId, transaction); // Goals are kept in the base currency
+        } catch (ValidationException | NotFoundException | SecurityException e) {
+            contributionsSkipped.add(rules.length); // No rates for the account's currency, or the account is gone
+            return;
+        }
+        for (ContributionRule rule : rules) {
+            // Rounded down, so a rule never moves more than its percentage
+            BigDecimal amount = income.multiply(rule.getPercentage()).movePointLeft(2)
+                    .setScale(2, RoundingMode.DOWN);
+            if (amount.signum() > 0) {
+                pending.add(new PendingContribution(userId, rule.getGoalId(), amount));
+                contributionsQueued.incrementAndGet();
+            }
+        }
+    }
+
+    private void applyQueued() {
+        List<PendingContribution> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, BATCH_SIZE - 1);
+            try {
+                applyContributions(batch);
+            } finally {
+                synchronized (progressLock) {
+                    contributionsProcessed += batch.size();
+                    progressLock.notifyAll();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    // One capped contribution per goal for the whole batch
+    private void applyContributions(List<PendingContribution> batch) {
+        long startNanos = System.nanoTime();
+        try {
+            Map<UUID, PendingContribution> totals = new LinkedHashMap<>();
+            Map<UUID, Integer> counts = new HashMap<>();
+            for (PendingContribution contribution : batch) {
+                totals.merge(contribution.goalId, contribution, (a, b) ->
+                        new PendingContribution(a.userId, a.goalId, a.amount.add(b.amount)));
+                counts.merge(contribution.goalId, 1, Integer::sum);
+            }
+            for (PendingContribution total : totals.values()) {
+                int count = counts.get(total.goalId);
+                try {
+                    BigDecimal applied = financialGoalManager.addContributionUpToTarget(total.goalId, total.userId,
+                            total.amount);
+                    (applied.signum() > 0 ? contributionsApplied : contributionsSkipped).add(count);
+                    if (applied.signum() > 0) {
+                        for (ContributionListener contributionListener : contributionListeners) {
+                            contributionListener.contributionApplied(total.userId, total.goalId, applied);
+                        }
+                    }
+                } catch (NotFoundException e) {
+                    // Goal (or user) deleted: its rules can never apply again
+                    removeRulesForGoal(total.userId, total.goalId);
+                    contributionsSkipped.add(count);
+                } catch (RuntimeException e) { // Keep the applier alive for the other goals
+                    contributionsSkipped.add(count);
+                }
+            }
+        } finally {
+            APPLY_CONTRIBUTIONS_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    private void removeRulesForGoal(UUID userId, UUID goalId) {
+        Map<UUID, ContributionRule> rules = userRules.get(userId);
+        if (rules == null) {
+            return;
+        }
+        synchronized (rules) {
+            if (rules.values().removeIf(rule -> rule.getGoalId().equals(goalId))) {
+                compile(userId, rules);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Date-ordered running balance of a single account.
+ * Stores the net change per day in a treap whose nodes also carry the sum of
+ * their subtree, so both "balance as of a date" and back-dated inserts,
+ * updates and deletes cost O(log n) without replaying history.
+ */
+public class BalanceHistory {
+
+    private static class Node {
+        final long day; // LocalDate.toEpochDay()
+        final int priority;
+        BigDecimal delta; // Net change on this day
+        BigDecimal sum; // Sum of delta over this subtree
+        Node left;
+        Node right;
+
+        Node(long day, BigDecimal delta) {
+            this.day = day;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.delta = delta;
+            this.sum = delta;
+        }
+
+        void recompute() {
+            BigDecimal total = delta;
+            if (left != null) {
+                total = total.add(left.sum);
+            }
+            if (right != null) {
+                total = total.add(right.sum);
+            }
+            sum = total;
+        }
+    }
+
+    private final BigDecimal openingBalance;
+    private Node root;
+
+    public BalanceHistory(BigDecimal openingBalance) {
+        this.openingBalance = openingBalance;
+    }
+
+    public BigDecimal getOpeningBalance() {
+        return openingBalance;
+    }
+
+    // Applies a signed amount on the given date (negate it to undo a transaction)
+    public synchronized void apply(LocalDate date, BigDecimal amount) {
+        if (amount.signum() != 0) {
+            root = add(root, date.toEpochDay(), amount);
+        }
+    }
+
+    // Opening balance plus every change dated on or before the given date
+    public synchronized BigDecimal balanceAsOf(LocalDate date) {
+        long day = date.toEpochDay();
+        BigDecimal total = openingBalance;
+        Node n = root;
+        while (n != null) {
+            if (n.day <= day) {
+                total = total.add(n.delta);
+                if (n.left != null) {
+                    total = total.add(n.left.sum);
+                }
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Adds every change dated within [firstDay, firstDay + perDayCents.length)
+     * into perDayCents, in cents and indexed by day offset. Walks only the
+     * subtrees overlapping the range.
+     */
+    public synchronized void addChangesTo(long[] perDayCents, long firstDay) {
+        addChangesTo(root, perDayCents, firstDay, firstDay + perDayCents.length - 1);
+    }
+
+    private void addChangesTo(Node n, long[] perDay, long firstDay, long lastDay) {
+        while (n != null) {
+            if (n.day < firstDay) {
+                n = n.right;
+            } else if (n.day > lastDay) {
+                n = n.left;
+            } else {
+                perDay[(int) (n.day - firstDay)] += toCents(n.delta);
+                addChangesTo(n.left, perDay, firstDay, lastDay);
+                n = n.right;
+            }
+        }
+    }
+
+    static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private Node add(Node n, long day, BigDecimal amount) {
+        if (n == null) {
+            return new Node(day, amount);
+        }
+        if (day == n.day) {
+            n.delta = n.delta.add(amount);
+            if (n.delta.signum() == 0) {
+                return merge(n.left, n.right); // Day nets to zero, drop it to keep the tree small
+            }
+        } else if (day < n.day) {
+            n.left = add(n.left, day, amount);
+            if (n.left != null && n.left.priority > n.priority) {
+                n = rotateRight(n);
+            }
+        } else {
+            n.right = add(n.right, day, amount);
+            if (n.right != null && n.right.priority > n.priority) {
+                n = rotateLeft(n);
+            }
+        }
+        n.recompute();
+        return n;
+    }
+
+    private Node rotateRight(Node n) {
+        Node pivot = n.left;
+        n.left = pivot.right;
+        n.recompute();
+        pivot.right = n;
+        pivot.recompute();
+        return pivot;
+    }
+
+    private Node rotateLeft(Node n) {
+        Node pivot = n.right;
+        n.right = pivot.left;
+        n.recompute();
+        pivot.left = n;
+        pivot.recompute();
+        return pivot;
+    }
+
+    // Joins two treaps where every day in a precedes every day in b
+    private Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.recompute();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.recompute();
+        return b;
+    }
+}
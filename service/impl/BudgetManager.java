@@ -6,12 +6,16 @@ import exception.NotFoundException;
 import exception.ValidationException;
 import service.interfaces.IManageBudget;
 import service.interfaces.IManageCategory;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -24,23 +28,165 @@ import java.util.stream.Collectors;
  */
 public class BudgetManager implements IManageBudget {
 
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram ADD_USER_LATENCY = MetricsRegistry.methodLatency("BudgetManager", "addUser");
+    private static final LatencyHistogram GET_BUDGET_LIST_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "getBudgetList");
+    private static final LatencyHistogram GET_BUDGET_DETAILS_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "getBudgetDetails");
+    private static final LatencyHistogram CREATE_BUDGET_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "createBudget");
+    private static final LatencyHistogram UPDATE_BUDGET_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "updateBudget");
+    private static final LatencyHistogram DELETE_BUDGET_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "deleteBudget");
+    private static final LatencyHistogram IS_CATEGORY_USED_IN_BUDGETS_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "isCategoryUsedInBudgets");
+    private static final LatencyHistogram GET_BUDGET_SPENDING_LATENCY =
+            MetricsRegistry.methodLatency("BudgetManager", "getBudgetSpending");
+
     // In-memory storage for budgets (UserId -> BudgetId -> Budget)
     private final Map<UUID, Map<UUID, Budget>> userBudgets = new ConcurrentHashMap<>();
+    // Category ID -> budgets listing it, kept in sync below
+    private final Map<UUID, Set<Budget>> budgetsByCategory = new ConcurrentHashMap<>();
 
     // Dependencies (Inject these in a real application)
     private final IManageCategory categoryManager;
+    // Source of category totals for budget spending; null when budgets are only stored
+    private final TransactionManager transactionManager;
     // Simple user existence check (should be part of a dedicated user service)
     private final Map<UUID, Boolean> existingUsers = new ConcurrentHashMap<>(); // Should sync with other managers
 
     public BudgetManager(IManageCategory categoryManager) {
+        this(categoryManager, null);
+    }
+
+    public BudgetManager(IManageCategory categoryManager, TransactionManager transactionManager) {
         this.categoryManager = categoryManager;
+        this.transactionManager = transactionManager;
+        if (categoryManager instanceof CategoryManager) { // Budgets follow its merges and count towards its usage
+            ((CategoryManager) categoryManager).addReferenceHolder(this::reassignCategory);
+        }
         // Ideally, user existence is managed centrally
     }
 
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_budgets", "Stored budgets", labels, this::getBudgetCount);
+    }
+
+    // Budgets across all users
+    int getBudgetCount() {
+        return userBudgets.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // Installs a budget created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreBudget(Budget budget) throws NotFoundException {
+        index(budget, budget.getCategoryIds());
+        userBudgets.computeIfAbsent(budget.getUserId(), k -> new ConcurrentHashMap<>()).put(budget.getId(), budget);
+        existingUsers.put(budget.getUserId(), true);
+    }
+
+    /**
+     * Counts the budget's references to the categories and indexes it under
+     * them, all or none; fails if a category was deleted meanwhile (see
+     * CategoryManager.addBudgetReferences).
+     */
+    private void index(Budget budget, List<UUID> categoryIds) throws NotFoundException {
+        List<UUID> indexed = new ArrayList<>();
+        try {
+            for (UUID categoryId : new LinkedHashSet<>(categoryIds)) {
+                if (categoryManager instanceof CategoryManager) {
+                    ((CategoryManager) categoryManager).addBudgetReferences(categoryId, 1);
+                }
+                indexed.add(categoryId);
+                budgetsByCategory.computeIfAbsent(categoryId, k -> ConcurrentHashMap.newKeySet()).add(budget);
+            }
+        } catch (NotFoundException e) {
+            unindex(budget, indexed);
+            throw e;
+        }
+    }
+
+    private void unindex(Budget budget, List<UUID> categoryIds) {
+        for (UUID categoryId : new LinkedHashSet<>(categoryIds)) {
+            Set<Budget> budgets = budgetsByCategory.get(categoryId);
+            if (budgets != null) {
+                budgets.remove(budget);
+            }
+            if (categoryManager instanceof CategoryManager) {
+                ((CategoryManager) categoryManager).removeBudgetReferences(categoryId, 1);
+            }
+        }
+    }
+
+    /**
+     * Replaces one category with another in every budget listing it, for
+     * CategoryManager.mergeCategory; a budget listing both keeps one. Visits
+     * only those budgets.
+     *
+     * @return The number of budgets changed.
+     */
+    long reassignCategory(UUID fromId, UUID intoId) {
+        Set<Budget> budgets = budgetsByCategory.remove(fromId);
+        if (budgets == null) {
+            return 0;
+        }
+        CategoryManager categories = (CategoryManager) categoryManager; // Only a CategoryManager calls this
+        long moved = 0;
+        for (Budget budget : budgets) {
+            List<UUID> categoryIds = new ArrayList<>(budget.getCategoryIds());
+            categoryIds.remove(fromId);
+            if (categoryIds.contains(intoId)) {
+                categories.removeBudgetReferences(fromId, 1);
+            } else {
+                categoryIds.add(intoId);
+                categories.moveBudgetReferences(fromId, intoId, 1);
+                budgetsByCategory.computeIfAbsent(intoId, k -> ConcurrentHashMap.newKeySet()).add(budget);
+            }
+            budget.setCategoryIds(categoryIds);
+            moved++;
+        }
+        return moved;
+    }
+
+    // Removes the user and their budgets into the partition, for moving them to another shard
+    void detachUser(UserPartition partition) {
+        Map<UUID, Budget> budgets = userBudgets.remove(partition.userId);
+        if (budgets != null) {
+            partition.budgets.putAll(budgets);
+            // Reference counts stay as they are: shards share one CategoryManager
+            for (Budget budget : budgets.values()) {
+                for (UUID categoryId : budget.getCategoryIds()) {
+                    Set<Budget> indexed = budgetsByCategory.get(categoryId);
+                    if (indexed != null) {
+                        indexed.remove(budget);
+                    }
+                }
+            }
+        }
+        existingUsers.remove(partition.userId);
+    }
+
+    void attachUser(UserPartition partition) {
+        userBudgets.put(partition.userId, new ConcurrentHashMap<>(partition.budgets));
+        for (Budget budget : partition.budgets.values()) {
+            for (UUID categoryId : budget.getCategoryIds()) {
+                budgetsByCategory.computeIfAbsent(categoryId, k -> ConcurrentHashMap.newKeySet()).add(budget);
+            }
+        }
+        existingUsers.put(partition.userId, true);
+    }
+
     // Helper to simulate user existence (sync with other managers or use a central
     // service)
     public void addUser(UUID userId) {
-        existingUsers.put(userId, true);
+        long startNanos = System.nanoTime();
+        try {
+            existingUsers.put(userId, true);
+        } finally {
+            ADD_USER_LATENCY.recordSince(startNanos);
+        }
     }
 
     private void checkUserExists(UUID userId) throws NotFoundException {
@@ -51,131 +197,192 @@ public class BudgetManager implements IManageBudget {
 
     @Override
     public List<Budget> getBudgetList(UUID userId) throws NotFoundException {
-        checkUserExists(userId);
-        Map<UUID, Budget> budgets = userBudgets.getOrDefault(userId, new ConcurrentHashMap<>());
-        return new ArrayList<>(budgets.values());
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, Budget> budgets = userBudgets.getOrDefault(userId, new ConcurrentHashMap<>());
+            return new ArrayList<>(budgets.values());
+        } finally {
+            GET_BUDGET_LIST_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public Budget getBudgetDetails(UUID budgetId, UUID userId) throws NotFoundException, SecurityException {
-        checkUserExists(userId);
-        Map<UUID, Budget> budgets = userBudgets.get(userId);
-        if (budgets == null || !budgets.containsKey(budgetId)) {
-            throw new NotFoundException("Budget with ID " + budgetId + " not found for user " + userId);
-        }
-        // Basic check: User can only access their own budgets
-        Budget budget = budgets.get(budgetId);
-        if (!budget.getUserId().equals(userId)) {
-            // Redundant given map structure, but good practice
-            throw new SecurityException("User " + userId + " is not authorized to access budget " + budgetId);
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, Budget> budgets = userBudgets.get(userId);
+            if (budgets == null || !budgets.containsKey(budgetId)) {
+                throw new NotFoundException("Budget with ID " + budgetId + " not found for user " + userId);
+            }
+            // Basic check: User can only access their own budgets
+            Budget budget = budgets.get(budgetId);
+            if (!budget.getUserId().equals(userId)) {
+                // Redundant given map structure, but good practice
+                throw new SecurityException("User " + userId + " is not authorized to access budget " + budgetId);
+            }
+            return budget;
+        } finally {
+            GET_BUDGET_DETAILS_LATENCY.recordSince(startNanos);
         }
-        return budget;
     }
 
     @Override
     public UUID createBudget(UUID userId, String name, BigDecimal amount, LocalDate startDate, LocalDate endDate,
             List<UUID> categoryIds)
             throws ValidationException, NotFoundException, SecurityException {
-        checkUserExists(userId);
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
 
-        // Validate inputs
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Budget name cannot be empty.");
-        }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Budget amount must be positive.");
-        }
-        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
-            throw new ValidationException("Invalid budget period: Start date must be before or equal to end date.");
-        }
-        if (categoryIds == null || categoryIds.isEmpty()) {
-            throw new ValidationException("Budget must include at least one category.");
-        }
+            // Validate inputs
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Budget name cannot be empty.");
+            }
+            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Budget amount must be positive.");
+            }
+            if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+                throw new ValidationException("Invalid budget period: Start date must be before or equal to end date.");
+            }
+            if (categoryIds == null || categoryIds.isEmpty()) {
+                throw new ValidationException("Budget must include at least one category.");
+            }
 
-        // Validate categories
-        for (UUID categoryId : categoryIds) {
-            try {
-                Category category = categoryManager.getCategoryDetails(categoryId);
-                // Ensure categories are of type 'expense' for budgets (common requirement)
-                if (!category.getType().equalsIgnoreCase("expense")) {
-                    throw new ValidationException("Budget can only include expense categories. Category ID "
-                            + categoryId + " is of type " + category.getType());
+            // Validate categories
+            for (UUID categoryId : categoryIds) {
+                try {
+                    Category category = categoryManager.getCategoryDetails(categoryId);
+                    // Ensure categories are of type 'expense' for budgets (common requirement)
+                    if (!category.getType().equalsIgnoreCase("expense")) {
+                        throw new ValidationException("Budget can only include expense categories. Category ID "
+                                + categoryId + " is of type " + category.getType());
+                    }
+                    // Add authorization checks if categories are user-specific
+                } catch (NotFoundException e) {
+                    throw new NotFoundException("Category with ID " + categoryId + " not found.");
                 }
-                // Add authorization checks if categories are user-specific
-            } catch (NotFoundException e) {
-                throw new NotFoundException("Category with ID " + categoryId + " not found.");
             }
-        }
 
-        Budget newBudget = new Budget(userId, name.trim(), amount, startDate, endDate, new ArrayList<>(categoryIds)); // Store
-                                                                                                                      // a
-                                                                                                                      // copy
-        userBudgets.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newBudget.getId(), newBudget);
-        return newBudget.getId();
+            Budget newBudget = new Budget(userId, name.trim(), amount, startDate, endDate, new ArrayList<>(categoryIds)); // Store
+                                                                                                                          // a
+                                                                                                                          // copy
+            index(newBudget, newBudget.getCategoryIds());
+            userBudgets.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newBudget.getId(), newBudget);
+            return newBudget.getId();
+        } finally {
+            CREATE_BUDGET_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public boolean updateBudget(UUID budgetId, UUID userId, String name, BigDecimal amount, LocalDate startDate,
             LocalDate endDate, List<UUID> categoryIds, boolean isActive)
             throws ValidationException, NotFoundException, SecurityException {
-        Budget budget = getBudgetDetails(budgetId, userId); // Checks user, existence, auth
+        long startNanos = System.nanoTime();
+        try {
+            Budget budget = getBudgetDetails(budgetId, userId); // Checks user, existence, auth
 
-        // Validate inputs
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Budget name cannot be empty.");
-        }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Budget amount must be positive.");
-        }
-        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
-            throw new ValidationException("Invalid budget period: Start date must be before or equal to end date.");
-        }
-        if (categoryIds == null || categoryIds.isEmpty()) {
-            throw new ValidationException("Budget must include at least one category.");
-        }
+            // Validate inputs
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Budget name cannot be empty.");
+            }
+            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Budget amount must be positive.");
+            }
+            if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+                throw new ValidationException("Invalid budget period: Start date must be before or equal to end date.");
+            }
+            if (categoryIds == null || categoryIds.isEmpty()) {
+                throw new ValidationException("Budget must include at least one category.");
+            }
 
-        // Validate categories
-        for (UUID categoryId : categoryIds) {
-            try {
-                Category category = categoryManager.getCategoryDetails(categoryId);
-                if (!category.getType().equalsIgnoreCase("expense")) {
-                    throw new ValidationException("Budget can only include expense categories. Category ID "
-                            + categoryId + " is of type " + category.getType());
+            // Validate categories
+            for (UUID categoryId : categoryIds) {
+                try {
+                    Category category = categoryManager.getCategoryDetails(categoryId);
+                    if (!category.getType().equalsIgnoreCase("expense")) {
+                        throw new ValidationException("Budget can only include expense categories. Category ID "
+                                + categoryId + " is of type " + category.getType());
+                    }
+                } catch (NotFoundException e) {
+                    throw new NotFoundException("Category with ID " + categoryId + " not found.");
                 }
-            } catch (NotFoundException e) {
-                throw new NotFoundException("Category with ID " + categoryId + " not found.");
             }
-        }
 
-        budget.setName(name.trim());
-        budget.setAmount(amount);
-        budget.setStartDate(startDate);
-        budget.setEndDate(endDate);
-        budget.setCategoryIds(new ArrayList<>(categoryIds)); // Store a copy
-        budget.setActive(isActive);
+            List<UUID> addedCategoryIds = new ArrayList<>(categoryIds);
+            addedCategoryIds.removeAll(budget.getCategoryIds());
+            List<UUID> droppedCategoryIds = new ArrayList<>(budget.getCategoryIds());
+            droppedCategoryIds.removeAll(categoryIds);
+            index(budget, addedCategoryIds); // New references first, so a deleted category fails the update
+            unindex(budget, droppedCategoryIds);
+            budget.setName(name.trim());
+            budget.setAmount(amount);
+            budget.setStartDate(startDate);
+            budget.setEndDate(endDate);
+            budget.setCategoryIds(new ArrayList<>(categoryIds)); // Store a copy
+            budget.setActive(isActive);
 
-        // In-memory update is automatic
-        return true;
+            // In-memory update is automatic
+            return true;
+        } finally {
+            UPDATE_BUDGET_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public boolean deleteBudget(UUID budgetId, UUID userId) throws NotFoundException, SecurityException {
-        Budget budget = getBudgetDetails(budgetId, userId); // Checks user, existence, auth
+        long startNanos = System.nanoTime();
+        try {
+            Budget budget = getBudgetDetails(budgetId, userId); // Checks user, existence, auth
 
-        Map<UUID, Budget> budgets = userBudgets.get(userId);
-        if (budgets != null) {
-            budgets.remove(budgetId);
-            return true;
+            Map<UUID, Budget> budgets = userBudgets.get(userId);
+            if (budgets != null && budgets.remove(budgetId) != null) {
+                unindex(budget, budget.getCategoryIds());
+                return true;
+            }
+            return false; // Should not happen
+        } finally {
+            DELETE_BUDGET_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Amount spent against the budget over its period: the expenses in its
+     * categories and all their subcategories, so a budget on Food covers
+     * Groceries and Dining. Read from per-category running totals (see
+     * TransactionManager.getCombinedCategoryTotal) rather than transactions.
+     *
+     * @return The amount spent, positive; refunds filed as income are not counted.
+     * @throws ValidationException if an account's currency has no exchange rates.
+     */
+    public BigDecimal getBudgetSpending(UUID budgetId, UUID userId)
+            throws NotFoundException, SecurityException, ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            Budget budget = getBudgetDetails(budgetId, userId); // Checks user, existence, auth
+            if (transactionManager == null) {
+                throw new IllegalStateException("BudgetManager was created without a TransactionManager.");
+            }
+            return transactionManager.getCombinedCategoryTotal(userId, budget.getCategoryIds(),
+                    budget.getStartDate(), budget.getEndDate()).negate();
+        } finally {
+            GET_BUDGET_SPENDING_LATENCY.recordSince(startNanos);
         }
-        return false; // Should not happen
     }
 
     // Helper method potentially needed by ReportGenerator or other services
     public boolean isCategoryUsedInBudgets(UUID categoryId, UUID userId) {
-        Map<UUID, Budget> budgets = userBudgets.get(userId);
-        if (budgets == null)
-            return false;
-        return budgets.values().stream()
-                .anyMatch(budget -> budget.getCategoryIds().contains(categoryId));
+        long startNanos = System.nanoTime();
+        try {
+            // Only the budgets listing the category, rather than all of the user's
+            Set<Budget> budgets = budgetsByCategory.get(categoryId);
+            if (budgets == null)
+                return false;
+            return budgets.stream().anyMatch(budget -> budget.getUserId().equals(userId));
+        } finally {
+            IS_CATEGORY_USED_IN_BUDGETS_LATENCY.recordSince(startNanos);
+        }
     }
 }
@@ -5,117 +5,480 @@ import domain.Category;
 // Import exception classes
 import exception.NotFoundException;
 import exception.ValidationException;
-// Import interfaces (if used)
-// import service.interfaces.IManageCategory;
+import service.interfaces.IManageCategory;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
  * Implementation of CategoryManager using in-memory storage.
  * NOTE: Assumes categories are global.
+ *
+ * Categories form a tree (Food -> Groceries, Dining): a subcategory takes its
+ * parent's type, and its parent is fixed when it is created. Each category's
+ * path to the root is computed once, so rolling a transaction up to every
+ * enclosing category (see CategoryRollupIndex) costs one array walk.
+ *
+ * Transactions and budgets count their references to each category here as
+ * they are stored and dropped (see CategoryReferenceHolder), so checking
+ * whether a category is in use reads two counters instead of scanning every
+ * user's data.
  */
-// public class CategoryManager implements IManageCategory {
-public class CategoryManager {
+public class CategoryManager implements IManageCategory {
+
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_CATEGORY_LIST_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "getCategoryList");
+    private static final LatencyHistogram GET_CATEGORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "getCategory");
+    private static final LatencyHistogram GET_CATEGORY_DETAILS_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "getCategoryDetails");
+    private static final LatencyHistogram GET_CATEGORY_BY_NAME_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "getCategoryByName");
+    private static final LatencyHistogram CREATE_CATEGORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "createCategory");
+    private static final LatencyHistogram UPDATE_CATEGORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "updateCategory");
+    private static final LatencyHistogram DELETE_CATEGORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "deleteCategory");
+    private static final LatencyHistogram GET_SUBCATEGORIES_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "getSubcategories");
+    private static final LatencyHistogram MERGE_CATEGORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryManager", "mergeCategory");
 
     private final Map<UUID, Category> categories = new ConcurrentHashMap<>();
+    // Category ID -> the category itself, then its parent and so on up to the root. Kept after a
+    // deletion, since transactions may still refer to the category and must roll up as before.
+    private final Map<UUID, UUID[]> paths = new ConcurrentHashMap<>();
+    // Category ID -> IDs of its direct subcategories
+    private final Map<UUID, Set<UUID>> children = new ConcurrentHashMap<>();
+    // Category ID -> references to it from transactions and budgets, across every holder below
+    private final Map<UUID, Usage> usage = new ConcurrentHashMap<>();
+    // Transaction and budget managers using these categories; one per shard when shards share the manager
+    private final List<CategoryReferenceHolder> referenceHolders = new CopyOnWriteArrayList<>();
+    // Told (from, into) of each completed merge, for references that are not counted, such as category rules
+    private final List<BiConsumer<UUID, UUID>> mergeListeners = new CopyOnWriteArrayList<>();
 
-    // @Override
+    private static final class Usage {
+        final LongAdder transactions = new LongAdder();
+        final LongAdder budgets = new LongAdder();
+
+        boolean isUnused() {
+            return transactions.sum() == 0 && budgets.sum() == 0;
+        }
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_categories", "Stored categories", labels, categories::size);
+    }
+
+    @Override
     public List<Category> getCategoryList() {
-        return new ArrayList<>(categories.values());
+        long startNanos = System.nanoTime();
+        try {
+            return new ArrayList<>(categories.values());
+        } finally {
+            GET_CATEGORY_LIST_LATENCY.recordSince(startNanos);
+        }
     }
 
     // @Override
     // Renamed to getCategory to avoid conflict with getCategoryDetails from
     // interface if used
     public Category getCategory(UUID categoryId) throws NotFoundException {
-        Category category = categories.get(categoryId);
-        if (category == null) {
-            throw new NotFoundException("Category with ID " + categoryId + " not found.");
+        long startNanos = System.nanoTime();
+        try {
+            Category category = categories.get(categoryId);
+            if (category == null) {
+                throw new NotFoundException("Category with ID " + categoryId + " not found.");
+            }
+            return category;
+        } finally {
+            GET_CATEGORY_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    @Override
+    public Category getCategoryDetails(UUID categoryId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            return getCategory(categoryId);
+        } finally {
+            GET_CATEGORY_DETAILS_LATENCY.recordSince(startNanos);
         }
-        return category;
     }
 
     // Helper method to find category by name (case-insensitive)
     public Category getCategoryByName(String name) throws NotFoundException {
-        Optional<Category> found = categories.values().stream()
-                .filter(cat -> cat.getName().equalsIgnoreCase(name))
-                .findFirst();
-        if (!found.isPresent()) {
-            throw new NotFoundException("Category with name \"" + name + "\" not found.");
+        long startNanos = System.nanoTime();
+        try {
+            Optional<Category> found = categories.values().stream()
+                    .filter(cat -> cat.getName().equalsIgnoreCase(name))
+                    .findFirst();
+            if (!found.isPresent()) {
+                throw new NotFoundException("Category with name \"" + name + "\" not found.");
+            }
+            return found.get();
+        } finally {
+            GET_CATEGORY_BY_NAME_LATENCY.recordSince(startNanos);
         }
-        return found.get();
     }
 
     // @Override
     // Simplified createCategory, removing icon as it wasn't used in Main
     public Category createCategory(String name, String type) throws ValidationException {
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Category name cannot be empty.");
+        long startNanos = System.nanoTime();
+        try {
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Category name cannot be empty.");
+            }
+            if (type == null || !(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
+                throw new ValidationException("Invalid category type: " + type + ". Must be 'income' or 'expense'.");
+            }
+
+            String trimmedName = name.trim();
+            boolean exists = categories.values().stream()
+                    .anyMatch(cat -> cat.getName().equalsIgnoreCase(trimmedName) && cat.getType().equalsIgnoreCase(type));
+            if (exists) {
+                throw new ValidationException(
+                        "A category with name '" + trimmedName + "' and type '" + type + "' already exists.");
+            }
+
+            Category newCategory = new Category(trimmedName, type, ""); // Pass empty string for icon
+            add(newCategory);
+            return newCategory; // Return the created object
+        } finally {
+            CREATE_CATEGORY_LATENCY.recordSince(startNanos);
         }
-        if (type == null || !(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
-            throw new ValidationException("Invalid category type: " + type + ". Must be 'income' or 'expense'.");
+    }
+
+    /**
+     * Creates a category inside another, of the parent's type. Transactions
+     * in it also count towards the parent and every category above it, in
+     * reports and budgets alike.
+     */
+    public Category createSubcategory(UUID parentId, String name) throws ValidationException, NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            Category parent = getCategory(parentId);
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Category name cannot be empty.");
+            }
+            String trimmedName = name.trim();
+            String type = parent.getType();
+            boolean exists = categories.values().stream()
+                    .anyMatch(cat -> cat.getName().equalsIgnoreCase(trimmedName) && cat.getType().equalsIgnoreCase(type));
+            if (exists) {
+                throw new ValidationException(
+                        "A category with name '" + trimmedName + "' and type '" + type + "' already exists.");
+            }
+
+            Category newCategory = new Category(trimmedName, type, "", parentId);
+            add(newCategory);
+            return newCategory;
+        } finally {
+            CREATE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Installs a category created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreCategory(Category category) {
+        add(category);
+    }
+
+    // The path is stored before the category is visible, so anything that can find it can roll up to it
+    private void add(Category category) {
+        UUID parentId = category.getParentId();
+        UUID[] parentPath = parentId == null ? new UUID[0] : ancestorPath(parentId);
+        UUID[] path = new UUID[parentPath.length + 1];
+        path[0] = category.getId();
+        System.arraycopy(parentPath, 0, path, 1, parentPath.length);
+        paths.put(category.getId(), path);
+        if (parentId != null) {
+            children.computeIfAbsent(parentId, k -> ConcurrentHashMap.newKeySet()).add(category.getId());
+        }
+        categories.put(category.getId(), category);
+    }
+
+    /**
+     * The category's ID followed by its parent's, its grandparent's and so on
+     * up to a top-level category. Precomputed: callers must not modify it.
+     * An unknown ID is its own path.
+     */
+    UUID[] ancestorPath(UUID categoryId) {
+        UUID[] path = paths.get(categoryId);
+        return path != null ? path : new UUID[] { categoryId };
+    }
+
+    // Whether the category is the given one or lies anywhere below it
+    public boolean isWithin(UUID categoryId, UUID ancestorId) {
+        for (UUID id : ancestorPath(categoryId)) {
+            if (id.equals(ancestorId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Direct subcategories of the given category, or the top-level categories for null
+    public List<Category> getSubcategories(UUID parentId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            if (parentId == null) {
+                return categories.values().stream()
+                        .filter(cat -> cat.getParentId() == null)
+                        .collect(Collectors.toList());
+            }
+            getCategory(parentId); // Checks existence
+            List<Category> subcategories = new ArrayList<>();
+            for (UUID childId : children.getOrDefault(parentId, Set.of())) {
+                Category child = categories.get(childId);
+                if (child != null) {
+                    subcategories.add(child);
+                }
+            }
+            return subcategories;
+        } finally {
+            GET_SUBCATEGORIES_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    void addReferenceHolder(CategoryReferenceHolder holder) {
+        referenceHolders.add(holder);
+    }
+
+    void addMergeListener(BiConsumer<UUID, UUID> listener) {
+        mergeListeners.add(listener);
+    }
+
+    // Whether the category exists and is not hidden by a deletion or merge in progress; never throws
+    boolean exists(UUID categoryId) {
+        return categories.containsKey(categoryId);
+    }
+
+    /**
+     * Counts new references to the category, before they are stored. Fails,
+     * counting nothing, if the category has been deleted meanwhile: deletion
+     * hides a category before reading its counts, so either it sees these
+     * references or they see it gone.
+     */
+    void addTransactionReferences(UUID categoryId, long count) throws NotFoundException {
+        Usage categoryUsage = usage.computeIfAbsent(categoryId, k -> new Usage());
+        categoryUsage.transactions.add(count);
+        if (!categories.containsKey(categoryId)) {
+            categoryUsage.transactions.add(-count);
+            throw new NotFoundException("Category with ID " + categoryId + " not found.");
         }
+    }
+
+    void removeTransactionReferences(UUID categoryId, long count) {
+        usage.computeIfAbsent(categoryId, k -> new Usage()).transactions.add(-count);
+    }
 
-        String trimmedName = name.trim();
-        boolean exists = categories.values().stream()
-                .anyMatch(cat -> cat.getName().equalsIgnoreCase(trimmedName) && cat.getType().equalsIgnoreCase(type));
-        if (exists) {
-            throw new ValidationException(
-                    "A category with name '" + trimmedName + "' and type '" + type + "' already exists.");
+    // As addTransactionReferences
+    void addBudgetReferences(UUID categoryId, long count) throws NotFoundException {
+        Usage categoryUsage = usage.computeIfAbsent(categoryId, k -> new Usage());
+        categoryUsage.budgets.add(count);
+        if (!categories.containsKey(categoryId)) {
+            categoryUsage.budgets.add(-count);
+            throw new NotFoundException("Category with ID " + categoryId + " not found.");
         }
+    }
+
+    void removeBudgetReferences(UUID categoryId, long count) {
+        usage.computeIfAbsent(categoryId, k -> new Usage()).budgets.add(-count);
+    }
 
-        Category newCategory = new Category(trimmedName, type, ""); // Pass empty string for icon
-        categories.put(newCategory.getId(), newCategory);
-        return newCategory; // Return the created object
+    // Re-files references from one category to another: added to the second before leaving the first
+    void moveBudgetReferences(UUID fromId, UUID intoId, long count) {
+        usage.computeIfAbsent(intoId, k -> new Usage()).budgets.add(count);
+        removeBudgetReferences(fromId, count);
+    }
+
+    // Transactions filed directly under the category, across all users
+    public long getTransactionReferenceCount(UUID categoryId) {
+        Usage categoryUsage = usage.get(categoryId);
+        return categoryUsage == null ? 0 : categoryUsage.transactions.sum();
+    }
+
+    // Budgets listing the category, across all users
+    public long getBudgetReferenceCount(UUID categoryId) {
+        Usage categoryUsage = usage.get(categoryId);
+        return categoryUsage == null ? 0 : categoryUsage.budgets.sum();
+    }
+
+    private boolean hasSubcategories(UUID categoryId) {
+        Set<UUID> subcategories = children.get(categoryId);
+        return subcategories != null && !subcategories.isEmpty();
+    }
+
+    @Override
+    public UUID createCategory(String name, String type, String icon) throws ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            Category newCategory = createCategory(name, type);
+            newCategory.setIcon(icon == null ? "" : icon);
+            return newCategory.getId();
+        } finally {
+            CREATE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
     }
 
     // @Override
     // Simplified updateCategory
     public boolean updateCategory(UUID categoryId, String name, String type)
             throws ValidationException, NotFoundException {
-        Category category = getCategory(categoryId); // Use the corrected getter
+        long startNanos = System.nanoTime();
+        try {
+            Category category = getCategory(categoryId); // Use the corrected getter
 
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Category name cannot be empty.");
-        }
-        if (type == null || !(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
-            throw new ValidationException("Invalid category type: " + type + ". Must be 'income' or 'expense'.");
-        }
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Category name cannot be empty.");
+            }
+            if (type == null || !(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
+                throw new ValidationException("Invalid category type: " + type + ". Must be 'income' or 'expense'.");
+            }
 
-        String trimmedName = name.trim();
-        // Check for duplicates if name or type changed
-        if (!category.getName().equalsIgnoreCase(trimmedName) || !category.getType().equalsIgnoreCase(type)) {
-            boolean exists = categories.values().stream()
-                    .anyMatch(cat -> !cat.getId().equals(categoryId) &&
-                            cat.getName().equalsIgnoreCase(trimmedName) &&
-                            cat.getType().equalsIgnoreCase(type));
-            if (exists) {
-                throw new ValidationException(
-                        "Another category with name '" + trimmedName + "' and type '" + type + "' already exists.");
+            // Types are shared along a branch of the tree, so only a standalone category may change its own
+            if (!category.getType().equalsIgnoreCase(type)
+                    && (category.getParentId() != null || hasSubcategories(categoryId))) {
+                throw new ValidationException("Cannot change the type of category '" + category.getName()
+                        + "': it is part of a category hierarchy.");
+            }
+
+            String trimmedName = name.trim();
+            // Check for duplicates if name or type changed
+            if (!category.getName().equalsIgnoreCase(trimmedName) || !category.getType().equalsIgnoreCase(type)) {
+                boolean exists = categories.values().stream()
+                        .anyMatch(cat -> !cat.getId().equals(categoryId) &&
+                                cat.getName().equalsIgnoreCase(trimmedName) &&
+                                cat.getType().equalsIgnoreCase(type));
+                if (exists) {
+                    throw new ValidationException(
+                            "Another category with name '" + trimmedName + "' and type '" + type + "' already exists.");
+                }
             }
-        }
 
-        category.setName(trimmedName);
-        category.setType(type);
-        // category.setIcon(""); // Assuming icon is not managed here
+            category.setName(trimmedName);
+            category.setType(type);
+            // category.setIcon(""); // Assuming icon is not managed here
 
-        return true;
+            return true;
+        } finally {
+            UPDATE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
     }
 
-    // @Override
+    @Override
+    public boolean updateCategory(UUID categoryId, String name, String type, String icon)
+            throws ValidationException, NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            updateCategory(categoryId, name, type);
+            getCategory(categoryId).setIcon(icon == null ? "" : icon);
+            return true;
+        } finally {
+            UPDATE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    @Override
     public boolean deleteCategory(UUID categoryId) throws NotFoundException, ValidationException {
-        Category category = getCategory(categoryId); // Checks existence
+        long startNanos = System.nanoTime();
+        try {
+            Category category = getCategory(categoryId); // Checks existence
+
+            if (hasSubcategories(categoryId)) {
+                throw new ValidationException("Cannot delete category '" + category.getName()
+                        + "': it has subcategories.");
+            }
+
+            // Hidden before the counts are read, so a reference counted from now on fails instead
+            categories.remove(categoryId);
+            Usage categoryUsage = usage.get(categoryId);
+            if (categoryUsage != null && !categoryUsage.isUnused()) {
+                categories.put(categoryId, category);
+                throw new ValidationException("Cannot delete category '" + category.getName() + "': it is used by "
+                        + categoryUsage.transactions.sum() + " transaction(s) and " + categoryUsage.budgets.sum()
+                        + " budget(s). Merge it into another category instead.");
+            }
+            detachFromParent(category);
+            return true;
+        } finally {
+            DELETE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
+    }
 
-        // TODO: Add check if category is in use by transactions before deleting
-        // For now, allow deletion
+    private void detachFromParent(Category category) {
+        if (category.getParentId() != null) {
+            Set<UUID> siblings = children.get(category.getParentId());
+            if (siblings != null) {
+                siblings.remove(category.getId());
+            }
+        }
+    }
 
-        categories.remove(categoryId);
-        return true;
+    /**
+     * Moves every transaction and budget reference from one category to
+     * another of the same type, then deletes the first. Only the users and
+     * rows referring to the category are visited (see
+     * CategoryReferenceHolder). Budgets listing both keep one reference.
+     *
+     * @return The number of transaction and budget references moved.
+     * @throws ValidationException if the categories differ in type, are the
+     *                             same, the first has subcategories, or new
+     *                             references to it arrived during the merge
+     *                             (it is then kept, and the merge can be
+     *                             retried).
+     */
+    public long mergeCategory(UUID fromId, UUID intoId) throws NotFoundException, ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            Category from = getCategory(fromId);
+            Category into = getCategory(intoId);
+            if (fromId.equals(intoId)) {
+                throw new ValidationException("Cannot merge a category into itself.");
+            }
+            if (!from.getType().equalsIgnoreCase(into.getType())) {
+                throw new ValidationException("Cannot merge " + from.getType() + " category '" + from.getName()
+                        + "' into " + into.getType() + " category '" + into.getName() + "'.");
+            }
+            if (hasSubcategories(fromId)) {
+                throw new ValidationException("Cannot merge category '" + from.getName()
+                        + "': it has subcategories.");
+            }
+
+            // Hidden first, as in deleteCategory, so nothing new refers to it while references move
+            categories.remove(fromId);
+            long moved = 0;
+            for (CategoryReferenceHolder holder : referenceHolders) {
+                moved += holder.reassignCategory(fromId, intoId);
+            }
+            Usage categoryUsage = usage.get(fromId);
+            if (categoryUsage != null && !categoryUsage.isUnused()) {
+                categories.put(fromId, from);
+                throw new ValidationException("Category '" + from.getName()
+                        + "' received new references during the merge; retry it.");
+            }
+            detachFromParent(from);
+            for (BiConsumer<UUID, UUID> listener : mergeListeners) {
+                listener.accept(fromId, intoId);
+            }
+            return moved;
+        } finally {
+            MERGE_CATEGORY_LATENCY.recordSince(startNanos);
+        }
     }
 }
\ No newline at end of file
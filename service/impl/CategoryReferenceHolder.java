@@ -0,0 +1,25 @@
+package service.impl;
+
+import java.util.UUID;
+
+/**
+ * Something holding references to categories by ID, such as transactions or
+ * budgets, registered with CategoryManager so that merging one category into
+ * another moves its references too. Holders count their references with
+ * CategoryManager as they add and drop them, which is what lets a merge
+ * visit only the holders, users and rows that refer to the category.
+ * Category rules (see CategoryRuleManager) are not holders: a rule does not
+ * keep its category from being deleted, so rules follow merges through
+ * CategoryManager.addMergeListener and are not counted among the moved
+ * references.
+ */
+interface CategoryReferenceHolder {
+
+    /**
+     * Points every reference to fromId at intoId instead, adjusting the
+     * reference counts and any totals kept per category.
+     *
+     * @return The number of references moved.
+     */
+    long reassignCategory(UUID fromId, UUID intoId);
+}
@@ -0,0 +1,165 @@
+package service.impl;
+
+import domain.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Per-user, per-category signed totals by month and day, maintained by
+ * TransactionManager as transactions are recorded, updated and deleted.
+ * Each transaction is added to its category and to every category above it
+ * (see CategoryManager.ancestorPath), so the total of a parent category over
+ * any range reads that category's own months instead of walking its
+ * subcategories or their transactions: whole months cost one entry each and
+ * the days of the edge months at most one entry per day.
+ *
+ * Amounts are summed in each account's own currency, exactly; callers that
+ * need the base currency for users with foreign-currency accounts sum the
+ * transactions instead (see TransactionManager.getCategoryTotals).
+ */
+class CategoryRollupIndex {
+
+    // UserId -> category ID -> totals including every subcategory; each user's map is guarded by itself
+    private final Map<UUID, Map<UUID, CategoryTotals>> userTotals = new ConcurrentHashMap<>();
+
+    // Totals of one category and its subcategories for one user
+    private static final class CategoryTotals {
+        // Month index (year * 12 + month - 1) -> month's totals
+        final NavigableMap<Integer, MonthTotals> months = new TreeMap<>();
+    }
+
+    private static final class MonthTotals {
+        BigDecimal total = BigDecimal.ZERO;
+        final BigDecimal[] days = new BigDecimal[31]; // By day of month - 1; null for no transactions
+        int count; // Transactions, so a month emptied by deletions can be dropped
+
+        void add(int dayOfMonth, BigDecimal amount, int sign) {
+            BigDecimal signed = sign < 0 ? amount.negate() : amount;
+            total = total.add(signed);
+            BigDecimal day = days[dayOfMonth - 1];
+            days[dayOfMonth - 1] = day == null ? signed : day.add(signed);
+            count += sign;
+        }
+    }
+
+    void add(UUID userId, Transaction transaction, UUID[] path) {
+        Map<UUID, CategoryTotals> totals = userTotals.computeIfAbsent(userId, k -> new HashMap<>());
+        synchronized (totals) {
+            apply(totals, transaction, path, 1);
+        }
+    }
+
+    void addAll(UUID userId, Collection<Transaction> transactions, CategoryManager categoryManager) {
+        Map<UUID, CategoryTotals> totals = userTotals.computeIfAbsent(userId, k -> new HashMap<>());
+        synchronized (totals) {
+            for (Transaction transaction : transactions) {
+                apply(totals, transaction, categoryManager.ancestorPath(transaction.getCategoryId()), 1);
+            }
+        }
+    }
+
+    // Takes out a transaction added before, along the same path
+    void remove(UUID userId, Transaction transaction, UUID[] path) {
+        Map<UUID, CategoryTotals> totals = userTotals.get(userId);
+        if (totals == null) {
+            return;
+        }
+        synchronized (totals) {
+            apply(totals, transaction, path, -1);
+        }
+    }
+
+    // Re-files transactions from their categories to those intoFor gives by transaction ID, as one change
+    void move(UUID userId, Collection<Transaction> transactions, Function<UUID, UUID> intoFor,
+            CategoryManager categoryManager) {
+        Map<UUID, CategoryTotals> totals = userTotals.get(userId);
+        if (totals == null) {
+            return;
+        }
+        synchronized (totals) {
+            for (Transaction transaction : transactions) {
+                apply(totals, transaction, categoryManager.ancestorPath(transaction.getCategoryId()), -1);
+                apply(totals, transaction, categoryManager.ancestorPath(intoFor.apply(transaction.getId())), 1);
+            }
+        }
+    }
+
+    // Month indexes, in order, in which the category or its subcategories have transactions
+    List<Integer> monthsWith(UUID userId, UUID categoryId) {
+        Map<UUID, CategoryTotals> totals = userTotals.get(userId);
+        if (totals == null) {
+            return new ArrayList<>();
+        }
+        synchronized (totals) {
+            CategoryTotals category = totals.get(categoryId);
+            return category == null ? new ArrayList<>() : new ArrayList<>(category.months.keySet());
+        }
+    }
+
+    void removeUser(UUID userId) {
+        userTotals.remove(userId);
+    }
+
+    private static void apply(Map<UUID, CategoryTotals> totals, Transaction transaction, UUID[] path, int sign) {
+        LocalDate date = transaction.getDate();
+        int month = SpendingSketchIndex.monthIndex(date);
+        BigDecimal amount = transaction.getAmount();
+        for (UUID categoryId : path) {
+            CategoryTotals category = totals.computeIfAbsent(categoryId, k -> new CategoryTotals());
+            MonthTotals monthTotals = category.months.computeIfAbsent(month, k -> new MonthTotals());
+            monthTotals.add(date.getDayOfMonth(), amount, sign);
+            if (monthTotals.count == 0) {
+                category.months.remove(month);
+            }
+        }
+    }
+
+    /**
+     * Signed total of the category and all its subcategories between the
+     * given dates, inclusive; null bounds are open.
+     */
+    BigDecimal total(UUID userId, UUID categoryId, LocalDate startDate, LocalDate endDate) {
+        Map<UUID, CategoryTotals> totals = userTotals.get(userId);
+        if (totals == null) {
+            return BigDecimal.ZERO;
+        }
+        synchronized (totals) {
+            CategoryTotals category = totals.get(categoryId);
+            if (category == null) {
+                return BigDecimal.ZERO;
+            }
+            int firstMonth = startDate == null ? Integer.MIN_VALUE : SpendingSketchIndex.monthIndex(startDate);
+            int lastMonth = endDate == null ? Integer.MAX_VALUE : SpendingSketchIndex.monthIndex(endDate);
+            BigDecimal sum = BigDecimal.ZERO;
+            for (Map.Entry<Integer, MonthTotals> entry : category.months.subMap(firstMonth, true, lastMonth, true)
+                    .entrySet()) {
+                int month = entry.getKey();
+                MonthTotals monthTotals = entry.getValue();
+                int firstDay = month == firstMonth ? startDate.getDayOfMonth() : 1;
+                int lastDay = month == lastMonth ? endDate.getDayOfMonth() : 31;
+                if (firstDay == 1 && (month != lastMonth || lastDay == endDate.lengthOfMonth())) {
+                    sum = sum.add(monthTotals.total); // Whole month
+                    continue;
+                }
+                for (int day = firstDay; day <= lastDay; day++) {
+                    BigDecimal dayTotal = monthTotals.days[day - 1];
+                    if (dayTotal != null) {
+                        sum = sum.add(dayTotal);
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package service.impl;
+
+import domain.CategoryRule;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One user's category rules compiled into a single Aho-Corasick automaton,
+ * so a description is classified in one pass over its characters however
+ * many rules there are. Failure links are folded into the transition table
+ * up front, making every character one array read, and each state carries
+ * the best income and the best expense rule matching at it or at any of its
+ * suffixes. The best rule is the one with the longest pattern, so "NETFLIX
+ * DVD" beats "NETFLIX"; ties go to the rule created first.
+ *
+ * Characters are lower-cased one at a time on both sides, and characters in
+ * no pattern share one symbol, which keeps the table to states times the
+ * distinct pattern characters. Immutable once built: CategoryRuleManager
+ * builds a new one whenever the user's rules change.
+ */
+final class CategoryRuleAutomaton {
+
+    // Most transition table entries (states times symbols), about 128 MB of ints
+    static final int MAX_TABLE_ENTRIES = 1 << 25;
+
+    static final CategoryRuleAutomaton EMPTY = new CategoryRuleAutomaton(new CategoryRule[0], new boolean[0]);
+
+    private final CategoryRule[] rules; // In creation order
+    private final int[] lengths; // Pattern length by rule index
+    private final int[] asciiSymbols = new int[128]; // Lower-cased character -> symbol; 0 for none in any pattern
+    private final Map<Character, Integer> otherSymbols = new HashMap<>();
+    private final int symbolCount;
+    private final int[] next; // State * symbolCount + symbol -> next state
+    private final int[] bestIncome; // State -> best income rule index, or -1
+    private final int[] bestExpense; // State -> best expense rule index, or -1
+
+    /**
+     * @param income Whether each rule files income (otherwise expenses), by
+     *               its category's type when compiled.
+     * @throws IllegalArgumentException if the transition table would have
+     *                                  more than MAX_TABLE_ENTRIES entries.
+     */
+    CategoryRuleAutomaton(CategoryRule[] rules, boolean[] income) {
+        this.rules = rules;
+        this.lengths = new int[rules.length];
+        int symbols = 1;
+        int totalLength = 0;
+        for (int r = 0; r < rules.length; r++) {
+            String pattern = rules[r].getPattern();
+            lengths[r] = pattern.length();
+            totalLength += pattern.length();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                if (symbol(c) == 0) {
+                    if (c < 128) {
+                        asciiSymbols[c] = symbols++;
+                    } else {
+                        otherSymbols.put(c, symbols++);
+                    }
+                }
+            }
+        }
+        symbolCount = symbols;
+
+        // The trie: at most one state per pattern character, plus the root
+        int capacity = totalLength + 1;
+        if ((long) capacity * symbolCount > MAX_TABLE_ENTRIES) {
+            throw new IllegalArgumentException("Rules too large to compile: " + capacity + " states times "
+                    + symbolCount + " symbols.");
+        }
+        int[] table = new int[capacity * symbolCount];
+        Arrays.fill(table, -1);
+        int[] incomeAt = new int[capacity];
+        int[] expenseAt = new int[capacity];
+        Arrays.fill(incomeAt, -1);
+        Arrays.fill(expenseAt, -1);
+        int states = 1;
+        for (int r = 0; r < rules.length; r++) {
+            String pattern = rules[r].getPattern();
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int slot = state * symbolCount + symbol(Character.toLowerCase(pattern.charAt(i)));
+                if (table[slot] < 0) {
+                    table[slot] = states++;
+                }
+                state = table[slot];
+            }
+            if (income[r]) {
+                incomeAt[state] = better(incomeAt[state], r);
+            } else {
+                expenseAt[state] = better(expenseAt[state], r);
+            }
+        }
+
+        // Breadth first, so a state's failure target is complete before the state itself
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < symbolCount; s++) {
+            if (table[s] < 0) {
+                table[s] = 0;
+            } else {
+                fail[table[s]] = 0;
+                queue.add(table[s]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            incomeAt[state] = better(incomeAt[state], incomeAt[fail[state]]);
+            expenseAt[state] = better(expenseAt[state], expenseAt[fail[state]]);
+            for (int s = 0; s < symbolCount; s++) {
+                int slot = state * symbolCount + s;
+                int fallback = table[fail[state] * symbolCount + s];
+                if (table[slot] < 0) {
+                    table[slot] = fallback;
+                } else {
+                    fail[table[slot]] = fallback;
+                    queue.add(table[slot]);
+                }
+            }
+        }
+        next = Arrays.copyOf(table, states * symbolCount);
+        bestIncome = Arrays.copyOf(incomeAt, states);
+        bestExpense = Arrays.copyOf(expenseAt, states);
+    }
+
+    private int symbol(char c) {
+        if (c < 128) {
+            return asciiSymbols[c];
+        }
+        Integer symbol = otherSymbols.get(c);
+        return symbol == null ? 0 : symbol;
+    }
+
+    // Longer pattern first, then earlier rule; -1 is no rule
+    private int better(int a, int b) {
+        if (a < 0 || b < 0) {
+            return a < 0 ? b : a;
+        }
+        if (lengths[a] != lengths[b]) {
+            return lengths[a] > lengths[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    /**
+     * The best rule whose pattern occurs in the description, among those for
+     * the given transaction type, or null if none does.
+     */
+    CategoryRule match(String description, boolean income) {
+        if (rules.length == 0 || description == null) {
+            return null;
+        }
+        int[] best = income ? bestIncome : bestExpense;
+        int state = 0;
+        int found = -1;
+        for (int i = 0; i < description.length(); i++) {
+            state = next[state * symbolCount + symbol(Character.toLowerCase(description.charAt(i)))];
+            if (best[state] >= 0) {
+                found = better(found, best[state]);
+            }
+        }
+        return found < 0 ? null : rules[found];
+    }
+
+    int getRuleCount() {
+        return rules.length;
+    }
+
+    int getStateCount() {
+        return bestIncome.length;
+    }
+}
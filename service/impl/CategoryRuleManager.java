@@ -0,0 +1,428 @@
+package service.impl;
+
+import domain.Category;
+import domain.CategoryRule;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Files transactions by their descriptions using user-defined rules
+ * ("description contains 'NETFLIX' -> Entertainment").
+ *
+ * Each user's rules are compiled into one CategoryRuleAutomaton and swapped
+ * in whole when a rule changes, as AutoContributionManager does with its
+ * dispatch tables, so classifying a description is one pass over its
+ * characters however many rules the user has. recordTransaction classifies
+ * transactions as they are recorded, and StatementImporter classifies rows
+ * that come without a category. recategorizeHistory applies the current
+ * rules to transactions already recorded: users run in parallel on the
+ * common fork-join pool, and each user's moved transactions change in one
+ * commit together with the category totals that budgets and the
+ * category_rollup report read (see TransactionManager.recategorize).
+ *
+ * Rules follow a category merged into another; rules whose category has
+ * been deleted stop matching.
+ */
+public class CategoryRuleManager {
+
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_CATEGORY_RULE_LIST_LATENCY =
+            MetricsRegistry.methodLatency("CategoryRuleManager", "getCategoryRuleList");
+    private static final LatencyHistogram CREATE_CATEGORY_RULE_LATENCY =
+            MetricsRegistry.methodLatency("CategoryRuleManager", "createCategoryRule");
+    private static final LatencyHistogram DELETE_CATEGORY_RULE_LATENCY =
+            MetricsRegistry.methodLatency("CategoryRuleManager", "deleteCategoryRule");
+    private static final LatencyHistogram RECORD_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("CategoryRuleManager", "recordTransaction");
+    private static final LatencyHistogram RECATEGORIZE_HISTORY_LATENCY =
+            MetricsRegistry.methodLatency("CategoryRuleManager", "recategorizeHistory");
+
+    public static final int MAX_PATTERN_LENGTH = 200;
+    public static final int MAX_RULES_PER_USER = 1000;
+
+    // Rules as created (UserId -> RuleId -> CategoryRule, in creation order); each inner map is guarded by its lock
+    private final Map<UUID, Map<UUID, CategoryRule>> userRules = new ConcurrentHashMap<>();
+    // Compiled rules by user; automata are never modified once published
+    private final Map<UUID, CategoryRuleAutomaton> automata = new ConcurrentHashMap<>();
+    // UserId -> categories of the rules left out of the user's automaton, watched in case they come back
+    private final Map<UUID, Set<UUID>> missingCategories = new ConcurrentHashMap<>();
+
+    private final AccountManager accountManager;
+    private final CategoryManager categoryManager;
+    private final TransactionManager transactionManager;
+
+    private final LongAdder recordsMatched = MetricsRegistry.getDefault().counter(
+            "finance_transactions_auto_categorized_total", "Transactions recorded by description",
+            "result=\"matched\"");
+    private final LongAdder recordsUnmatched = MetricsRegistry.getDefault().counter(
+            "finance_transactions_auto_categorized_total", "Transactions recorded by description",
+            "result=\"uncategorized\"");
+    private final LongAdder recategorized = MetricsRegistry.getDefault().counter(
+            "finance_transactions_recategorized_total", "Recorded transactions moved by category rules");
+
+    public CategoryRuleManager(AccountManager accountManager, CategoryManager categoryManager,
+            TransactionManager transactionManager) {
+        this.accountManager = accountManager;
+        this.categoryManager = categoryManager;
+        this.transactionManager = transactionManager;
+        categoryManager.addMergeListener(this::reassignCategory);
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_category_rules", "Stored category rules", labels,
+                () -> userRules.values().stream().mapToInt(Map::size).sum());
+        metrics.gauge("finance_category_rule_states", "States across all compiled category rule automata", labels,
+                () -> automata.values().stream().mapToInt(CategoryRuleAutomaton::getStateCount).sum());
+    }
+
+    // Installs a rule created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreCategoryRule(CategoryRule rule) {
+        Map<UUID, CategoryRule> rules = userRules.computeIfAbsent(rule.getUserId(), k -> new LinkedHashMap<>());
+        synchronized (rules) {
+            rules.put(rule.getId(), rule);
+            compile(rule.getUserId(), rules);
+        }
+    }
+
+    // Removes the user's rules into the partition, for moving them to another shard
+    void detachUser(UserPartition partition) {
+        Map<UUID, CategoryRule> rules = userRules.remove(partition.userId);
+        if (rules != null) {
+            synchronized (rules) {
+                partition.categoryRules.putAll(rules);
+            }
+        }
+        automata.remove(partition.userId);
+        missingCategories.remove(partition.userId);
+    }
+
+    void attachUser(UserPartition partition) {
+        if (partition.categoryRules.isEmpty()) {
+            return;
+        }
+        Map<UUID, CategoryRule> rules = new LinkedHashMap<>(partition.categoryRules);
+        synchronized (rules) {
+            userRules.put(partition.userId, rules);
+            compile(partition.userId, rules);
+        }
+    }
+
+    private void checkUserExists(UUID userId) throws NotFoundException {
+        if (!accountManager.userExists(userId)) {
+            throw new NotFoundException("User with ID " + userId + " not found.");
+        }
+    }
+
+    public List<CategoryRule> getCategoryRuleList(UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, CategoryRule> rules = userRules.get(userId);
+            if (rules == null) {
+                return new ArrayList<>();
+            }
+            synchronized (rules) {
+                return new ArrayList<>(rules.values());
+            }
+        } finally {
+            GET_CATEGORY_RULE_LIST_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Creates a rule filing transactions whose description contains the
+     * pattern, ignoring case, under a category. It applies to transactions of
+     * the category's type only. When several rules match, the longest
+     * pattern wins.
+     *
+     * @throws ValidationException if the pattern is blank, too long or
+     *                             already used by another of the user's
+     *                             rules, or the user has MAX_RULES_PER_USER
+     *                             rules or rules too large to compile.
+     * @throws NotFoundException   if the user or category is not found.
+     */
+    public CategoryRule createCategoryRule(UUID userId, String pattern, String categoryName)
+            throws ValidationException, NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            if (pattern == null || pattern.trim().isEmpty()) {
+                throw new ValidationException("Pattern is required.");
+            }
+            String text = pattern.trim();
+            if (text.length() > MAX_PATTERN_LENGTH) {
+                throw new ValidationException("Pattern cannot be longer than " + MAX_PATTERN_LENGTH + " characters.");
+            }
+            if (categoryName == null || categoryName.trim().isEmpty()) {
+                throw new ValidationException("Category name is required.");
+            }
+            Category category = categoryManager.getCategoryByName(categoryName.trim());
+
+            Map<UUID, CategoryRule> rules = userRules.computeIfAbsent(userId, k -> new LinkedHashMap<>());
+            synchronized (rules) {
+                if (rules.size() >= MAX_RULES_PER_USER) {
+                    throw new ValidationException("A user can have at most " + MAX_RULES_PER_USER
+                            + " category rules.");
+                }
+                for (CategoryRule rule : rules.values()) {
+                    if (rule.getPattern().equalsIgnoreCase(text)) {
+                        throw new ValidationException("A rule for '" + rule.getPattern() + "' already exists.");
+                    }
+                }
+                CategoryRule rule = new CategoryRule(userId, text, category.getId());
+                rules.put(rule.getId(), rule);
+                try {
+                    compile(userId, rules);
+                } catch (IllegalArgumentException e) {
+                    rules.remove(rule.getId());
+                    compile(userId, rules); // Back to the automaton without it
+                    throw new ValidationException(e.getMessage());
+                }
+                return rule;
+            }
+        } finally {
+            CREATE_CATEGORY_RULE_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    public boolean deleteCategoryRule(UUID ruleId, UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            Map<UUID, CategoryRule> rules = userRules.get(userId);
+            if (rules != null) {
+                synchronized (rules) {
+                    if (rules.remove(ruleId) != null) {
+                        compile(userId, rules);
+                        return true;
+                    }
+                }
+            }
+            throw new NotFoundException("Category rule with ID " + ruleId + " not found for user " + userId);
+        } finally {
+            DELETE_CATEGORY_RULE_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * The category the user's rules pick for a description and transaction
+     * type ("income" or "expense"), or null if no rule matches.
+     */
+    public Category classify(UUID userId, String description, String type) {
+        boolean income = "income".equalsIgnoreCase(type);
+        Set<UUID> missing = missingCategories.get(userId);
+        if (missing != null && missing.stream().anyMatch(categoryManager::exists)) {
+            recompile(userId); // A category was only hidden, by a deletion or merge that was then refused
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            CategoryRuleAutomaton automaton = automata.get(userId);
+            CategoryRule rule = automaton == null ? null : automaton.match(description, income);
+            if (rule == null) {
+                return null;
+            }
+            try {
+                Category category = categoryManager.getCategory(rule.getCategoryId());
+                if (category.getType().equalsIgnoreCase(type)) {
+                    return category;
+                }
+            } catch (NotFoundException e) {
+                // Deleted since the rules were compiled
+            }
+            recompile(userId); // Leaves out rules of deleted categories and picks up changed types
+        }
+        return null;
+    }
+
+    /**
+     * Records a transaction under the category the user's rules pick for its
+     * description, or under "Uncategorized Income" or "Uncategorized Expense"
+     * (created if missing) when none matches. The description is kept as the
+     * transaction's own.
+     *
+     * @throws ValidationException if the description is blank or the
+     *                             transaction is invalid.
+     * @throws NotFoundException   if the user or account is not found.
+     * @throws SecurityException   if the user does not own the account.
+     */
+    public Transaction recordTransaction(UUID userId, UUID accountId, String description, String type,
+            BigDecimal amount, LocalDate date) throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            if (description == null || description.trim().isEmpty()) {
+                throw new ValidationException("Description is required.");
+            }
+            if (type == null || !(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
+                throw new ValidationException("Invalid transaction type: " + type + ". Must be 'income' or 'expense'.");
+            }
+            Category category = classify(userId, description, type);
+            String categoryName;
+            if (category != null) {
+                categoryName = category.getName();
+                recordsMatched.increment();
+            } else {
+                categoryName = uncategorized(type).getName();
+                recordsUnmatched.increment();
+            }
+            return transactionManager.recordTransaction(userId, accountId, categoryName, type, amount, date,
+                    description);
+        } finally {
+            RECORD_TRANSACTION_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // The catch-all category for a type, as StatementImporter files rows without one
+    private Category uncategorized(String type) throws ValidationException {
+        String name = type.equalsIgnoreCase("income") ? StatementImporter.DEFAULT_INCOME_CATEGORY
+                : StatementImporter.DEFAULT_EXPENSE_CATEGORY;
+        try {
+            return categoryManager.getCategoryByName(name);
+        } catch (NotFoundException e) {
+            try {
+                return categoryManager.createCategory(name, type.toLowerCase());
+            } catch (ValidationException alreadyCreated) {
+                try {
+                    return categoryManager.getCategoryByName(name); // Lost a race with another recording
+                } catch (NotFoundException stillMissing) {
+                    throw alreadyCreated;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the user's current rules to the transactions already recorded
+     * between the given dates, inclusive (null bounds are open): each one a
+     * rule matches moves to that rule's category, and the others stay where
+     * they are. Transactions whose category was changed meanwhile are left
+     * alone.
+     *
+     * @return The number of transactions moved.
+     * @throws NotFoundException   if the user is not found.
+     * @throws ValidationException if the start date is after the end date.
+     */
+    public long recategorizeHistory(UUID userId, LocalDate startDate, LocalDate endDate)
+            throws NotFoundException, ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            checkRange(startDate, endDate);
+            return recategorize(userId, startDate, endDate);
+        } finally {
+            RECATEGORIZE_HISTORY_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * As recategorizeHistory for one user, for every user with rules, in
+     * parallel on the common fork-join pool.
+     */
+    public long recategorizeHistory(LocalDate startDate, LocalDate endDate) throws ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            checkRange(startDate, endDate);
+            return new ArrayList<>(userRules.keySet()).parallelStream()
+                    .mapToLong(userId -> recategorize(userId, startDate, endDate))
+                    .sum();
+        } finally {
+            RECATEGORIZE_HISTORY_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    private static void checkRange(LocalDate startDate, LocalDate endDate) throws ValidationException {
+        if (startDate != null && endDate != null && startDate.isAfter(endDate)) {
+            throw new ValidationException("Start date cannot be after end date.");
+        }
+    }
+
+    private long recategorize(UUID userId, LocalDate startDate, LocalDate endDate) {
+        recompile(userId); // Up to date with deletions and type changes, so every match is current
+        CategoryRuleAutomaton automaton = automata.get(userId);
+        if (automaton == null) {
+            return 0;
+        }
+        long moved = transactionManager.recategorize(userId, startDate, endDate, transaction -> {
+            CategoryRule rule = automaton.match(transaction.getDescription(), transaction.getAmount().signum() > 0);
+            return rule == null ? null : rule.getCategoryId();
+        });
+        recategorized.add(moved);
+        return moved;
+    }
+
+    // Points the rules for one category at another, once CategoryManager.mergeCategory has merged them
+    private void reassignCategory(UUID fromId, UUID intoId) {
+        for (Map.Entry<UUID, Map<UUID, CategoryRule>> entry : userRules.entrySet()) {
+            Map<UUID, CategoryRule> rules = entry.getValue();
+            synchronized (rules) {
+                boolean changed = false;
+                for (Map.Entry<UUID, CategoryRule> ruleEntry : rules.entrySet()) {
+                    CategoryRule rule = ruleEntry.getValue();
+                    if (rule.getCategoryId().equals(fromId)) {
+                        ruleEntry.setValue(new CategoryRule(rule.getId(), rule.getUserId(), rule.getPattern(),
+                                intoId));
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    compile(entry.getKey(), rules);
+                }
+            }
+        }
+    }
+
+    private void recompile(UUID userId) {
+        Map<UUID, CategoryRule> rules = userRules.get(userId);
+        if (rules != null) {
+            synchronized (rules) {
+                compile(userId, rules);
+            }
+        }
+    }
+
+    // Replaces the user's automaton, leaving out rules whose category is gone; caller holds the lock on rules.
+    // They stay listed rather than being deleted, since a category is also hidden while a deletion checks it;
+    // classify recompiles if it comes back.
+    private void compile(UUID userId, Map<UUID, CategoryRule> rules) {
+        List<CategoryRule> live = new ArrayList<>(rules.size());
+        List<Boolean> income = new ArrayList<>(rules.size());
+        Set<UUID> missing = new HashSet<>();
+        for (CategoryRule rule : rules.values()) {
+            try {
+                Category category = categoryManager.getCategory(rule.getCategoryId());
+                live.add(rule);
+                income.add(category.getType().equalsIgnoreCase("income"));
+            } catch (NotFoundException e) {
+                missing.add(rule.getCategoryId()); // Deleted, or being deleted or merged
+            }
+        }
+        if (missing.isEmpty()) {
+            missingCategories.remove(userId);
+        } else {
+            missingCategories.put(userId, missing);
+        }
+        if (live.isEmpty()) {
+            automata.remove(userId);
+            return;
+        }
+        boolean[] incomeRules = new boolean[live.size()];
+        for (int i = 0; i < incomeRules.length; i++) {
+            incomeRules[i] = income.get(i);
+        }
+        automata.put(userId, new CategoryRuleAutomaton(live.toArray(new CategoryRule[0]), incomeRules));
+    }
+}
@@ -0,0 +1,35 @@
+package service.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one String per distinct transaction description, so the many
+ * rows sharing a merchant text or category name share one instance. Each
+ * store keeps its own pool rather than interning: descriptions are user
+ * text, and the JVM string table would hold every one of them forever.
+ * Bounded the way StatementImporter bounds its caches: once full it starts
+ * over, so a stream of unique descriptions cannot grow it without limit.
+ */
+final class DescriptionPool {
+
+    private static final int MAX_ENTRIES = 1 << 16;
+    private static final int MAX_LENGTH = 256; // Longer text is rarely repeated, so not worth keeping
+
+    private final Map<String, String> shared = new ConcurrentHashMap<>();
+
+    String share(String description) {
+        if (description == null || description.length() > MAX_LENGTH) {
+            return description;
+        }
+        String existing = shared.get(description);
+        if (existing != null) {
+            return existing;
+        }
+        if (shared.size() >= MAX_ENTRIES) {
+            shared.clear();
+        }
+        existing = shared.putIfAbsent(description, description);
+        return existing != null ? existing : description;
+    }
+}
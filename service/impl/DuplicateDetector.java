@@ -0,0 +1,393 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-account index of transaction fingerprints used to spot duplicates, e.g.
+ * when an overlapping bank statement is imported again. A fingerprint is a
+ * 64-bit hash of (date, signed amount, normalized description); two rows match
+ * if their amount and description are equal and their dates are at most
+ * toleranceDays apart.
+ *
+ * Each account keeps an exact open-addressing table of fingerprints with
+ * occurrence counts, fronted by a Bloom filter so that the common case (a new
+ * row) is answered by a few bit probes. Only transactions dated within
+ * retentionDays of the account's newest transaction are tracked, which bounds
+ * memory; older rows are never reported as duplicates.
+ *
+ * Matching is multiset-based: a statement holding two identical rows imported
+ * over a store that has one of them yields exactly one new transaction. Rows
+ * of the same import never match each other; each import gets its own tag.
+ */
+public class DuplicateDetector {
+
+    public static final int DEFAULT_TOLERANCE_DAYS = 1;
+    public static final int DEFAULT_RETENTION_DAYS = 400;
+
+    // Tag for single records outside any import
+    static final int NO_IMPORT = 0;
+
+    private static final int BLOOM_BITS_PER_ENTRY = 10; // ~1% false positives with 7 probes
+    private static final int BLOOM_PROBES = 7;
+    private static final int SWEEP_INTERVAL_DAYS = 32; // How far the cutoff may move before old entries are dropped
+
+    private final int toleranceDays;
+    private final int retentionDays;
+    private final boolean rejectSingleRecords;
+    private final Map<UUID, AccountFingerprints> accounts = new ConcurrentHashMap<>();
+    private final AtomicInteger importTags = new AtomicInteger(NO_IMPORT);
+
+    public DuplicateDetector() {
+        this(DEFAULT_TOLERANCE_DAYS, DEFAULT_RETENTION_DAYS, false);
+    }
+
+    /**
+     * @param rejectSingleRecords Whether TransactionManager.recordTransaction
+     *                            rejects duplicates too. Off by default, since
+     *                            hand-entered repeats (two coffees on one day)
+     *                            are usually genuine; imports always skip them.
+     */
+    public DuplicateDetector(int toleranceDays, int retentionDays, boolean rejectSingleRecords) {
+        if (toleranceDays < 0 || retentionDays < toleranceDays) {
+            throw new IllegalArgumentException("Tolerance must be >= 0 and retention must cover the tolerance.");
+        }
+        this.toleranceDays = toleranceDays;
+        this.retentionDays = retentionDays;
+        this.rejectSingleRecords = rejectSingleRecords;
+    }
+
+    public int getToleranceDays() {
+        return toleranceDays;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public boolean isRejectingSingleRecords() {
+        return rejectSingleRecords;
+    }
+
+    // Starts a new import; rows registered under the returned tag do not match each other
+    int newImportTag() {
+        return importTags.incrementAndGet();
+    }
+
+    /**
+     * Looks for a tracked transaction matching the row that is not yet
+     * claimed by this import. A match is claimed and true is returned; the
+     * row is then a duplicate and is not added. Otherwise the row is added.
+     */
+    boolean claimOrAdd(UUID accountId, long epochDay, BigDecimal amount, String description, int importTag) {
+        long key = rowKey(amount, description);
+        AccountFingerprints fingerprints = accounts.computeIfAbsent(accountId, k -> new AccountFingerprints());
+        synchronized (fingerprints) {
+            if (fingerprints.claim(epochDay, key, importTag)) {
+                return true;
+            }
+            fingerprints.add(epochDay, key, importTag);
+            return false;
+        }
+    }
+
+    boolean isDuplicate(UUID accountId, long epochDay, BigDecimal amount, String description) {
+        AccountFingerprints fingerprints = accounts.get(accountId);
+        if (fingerprints == null) {
+            return false;
+        }
+        long key = rowKey(amount, description);
+        synchronized (fingerprints) {
+            return fingerprints.findAvailable(epochDay, key, NO_IMPORT) >= 0;
+        }
+    }
+
+    void add(UUID accountId, long epochDay, BigDecimal amount, String description) {
+        long key = rowKey(amount, description);
+        AccountFingerprints fingerprints = accounts.computeIfAbsent(accountId, k -> new AccountFingerprints());
+        synchronized (fingerprints) {
+            fingerprints.add(epochDay, key, NO_IMPORT);
+        }
+    }
+
+    void remove(UUID accountId, long epochDay, BigDecimal amount, String description) {
+        AccountFingerprints fingerprints = accounts.get(accountId);
+        if (fingerprints == null) {
+            return;
+        }
+        long key = rowKey(amount, description);
+        synchronized (fingerprints) {
+            fingerprints.remove(epochDay, key);
+        }
+    }
+
+    void removeAccount(UUID accountId) {
+        accounts.remove(accountId);
+    }
+
+    public long getTrackedCount() {
+        long total = 0;
+        for (AccountFingerprints fingerprints : accounts.values()) {
+            synchronized (fingerprints) {
+                total += fingerprints.size;
+            }
+        }
+        return total;
+    }
+
+    // Hash of everything but the date: the amount as an exact decimal and the normalized description
+    static long rowKey(BigDecimal amount, String description) {
+        BigDecimal stripped = amount.signum() == 0 ? BigDecimal.ZERO : amount.stripTrailingZeros(); // 12.50 == 12.5
+        long unscaled = stripped.precision() <= 18 ? stripped.unscaledValue().longValue()
+                : stripped.unscaledValue().hashCode();
+        long amountHash = unscaled * 31 + stripped.scale();
+        return mix(amountHash * 0x9E3779B97F4A7C15L + descriptionHash(description));
+    }
+
+    /**
+     * Hash of the description with case, accents, spacing and punctuation
+     * ignored, so "AMZN Mktp, UK" and "amzn mktp uk" collide on purpose.
+     */
+    static long descriptionHash(String description) {
+        if (description == null) {
+            return 0;
+        }
+        String text = description;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                text = Normalizer.normalize(description, Normalizer.Form.NFD); // Splits accents off their letters
+                break;
+            }
+        }
+        long hash = 1125899906842597L;
+        boolean started = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace) {
+                    hash = 31 * hash + ' ';
+                    pendingSpace = false;
+                }
+                hash = 31 * hash + Character.toLowerCase(c);
+                started = true;
+            } else if (started && Character.getType(c) != Character.NON_SPACING_MARK) {
+                pendingSpace = true; // Runs of separators count as a single word break
+            }
+        }
+        return hash;
+    }
+
+    private static long fingerprint(long epochDay, long key) {
+        long fingerprint = mix(key ^ (epochDay * 0xC2B2AE3D27D4EB4FL));
+        return fingerprint == 0 ? 1 : fingerprint; // 0 marks an empty slot
+    }
+
+    // Finalizer of MurmurHash3 / SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /*
+     * Open-addressing table (linear probing) over parallel primitive arrays.
+     * Per entry: total count, and for the import that last touched it the
+     * count it had before that import and how many of those were claimed.
+     */
+    private class AccountFingerprints {
+        long[] keys = new long[16];
+        int[] days = new int[16];
+        int[] totals = new int[16];
+        int[] tags = new int[16];
+        int[] baseCounts = new int[16];
+        int[] claimed = new int[16];
+        int size;
+        long[] bloom = new long[4];
+        int bloomCapacity = 16;
+        long newestDay = Long.MIN_VALUE;
+        long cutoffDay = Long.MIN_VALUE; // Rows before this day are not tracked
+
+        boolean claim(long epochDay, long key, int importTag) {
+            int slot = findAvailable(epochDay, key, importTag);
+            if (slot < 0) {
+                return false;
+            }
+            if (tags[slot] != importTag) {
+                tags[slot] = importTag;
+                baseCounts[slot] = totals[slot];
+                claimed[slot] = 0;
+            }
+            claimed[slot]++;
+            return true;
+        }
+
+        // Slot of a matching entry with an unclaimed occurrence, nearest day first; -1 if none
+        int findAvailable(long epochDay, long key, int importTag) {
+            if (epochDay < cutoffDay) {
+                return -1;
+            }
+            for (int offset = 0; offset <= toleranceDays; offset++) {
+                int slot = availableSlot(epochDay - offset, key, importTag);
+                if (slot < 0 && offset > 0) {
+                    slot = availableSlot(epochDay + offset, key, importTag);
+                }
+                if (slot >= 0) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int availableSlot(long epochDay, long key, int importTag) {
+            long fingerprint = fingerprint(epochDay, key);
+            if (!bloomMightContain(fingerprint)) {
+                return -1;
+            }
+            int slot = find(fingerprint);
+            if (slot < 0) {
+                return -1;
+            }
+            if (importTag == NO_IMPORT || tags[slot] != importTag) {
+                return totals[slot] > 0 ? slot : -1;
+            }
+            return baseCounts[slot] > claimed[slot] ? slot : -1; // Only occurrences from before this import
+        }
+
+        void add(long epochDay, long key, int importTag) {
+            if (epochDay > newestDay) {
+                newestDay = epochDay;
+                if (newestDay - retentionDays > cutoffDay + SWEEP_INTERVAL_DAYS) {
+                    cutoffDay = newestDay - retentionDays;
+                    rebuild(keys.length); // Drops entries that fell out of the window
+                }
+            }
+            if (epochDay < cutoffDay) {
+                return;
+            }
+            long fingerprint = fingerprint(epochDay, key);
+            int slot = find(fingerprint);
+            if (slot < 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    rebuild(keys.length * 2);
+                }
+                slot = insert(fingerprint, (int) epochDay);
+            }
+            if (tags[slot] != importTag && importTag != NO_IMPORT) {
+                tags[slot] = importTag; // Occurrences added by this import are not claimable by it
+                baseCounts[slot] = totals[slot];
+                claimed[slot] = 0;
+            }
+            totals[slot]++;
+        }
+
+        void remove(long epochDay, long key) {
+            int slot = find(fingerprint(epochDay, key));
+            if (slot >= 0 && totals[slot] > 0) {
+                totals[slot]--; // The entry itself is dropped at the next rebuild
+                if (baseCounts[slot] > totals[slot]) {
+                    baseCounts[slot] = totals[slot];
+                }
+            }
+        }
+
+        private int find(long fingerprint) {
+            int mask = keys.length - 1;
+            for (int slot = (int) fingerprint & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == fingerprint) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(long fingerprint, int epochDay) {
+            int mask = keys.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = fingerprint;
+            days[slot] = epochDay;
+            size++;
+            if (size > bloomCapacity) {
+                rebuildBloom();
+            } else {
+                bloomAdd(fingerprint);
+            }
+            return slot;
+        }
+
+        // Re-hashes live entries (in window, count > 0) into tables of the given capacity
+        private void rebuild(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldDays = days;
+            int[] oldTotals = totals;
+            int[] oldTags = tags;
+            int[] oldBaseCounts = baseCounts;
+            int[] oldClaimed = claimed;
+            keys = new long[capacity];
+            days = new int[capacity];
+            totals = new int[capacity];
+            tags = new int[capacity];
+            baseCounts = new int[capacity];
+            claimed = new int[capacity];
+            size = 0;
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0 || oldTotals[i] == 0 || oldDays[i] < cutoffDay) {
+                    continue;
+                }
+                int slot = (int) oldKeys[i] & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                days[slot] = oldDays[i];
+                totals[slot] = oldTotals[i];
+                tags[slot] = oldTags[i];
+                baseCounts[slot] = oldBaseCounts[i];
+                claimed[slot] = oldClaimed[i];
+                size++;
+            }
+            rebuildBloom();
+        }
+
+        // Sizes the filter for twice the current entries; removed and expired keys disappear from it too
+        private void rebuildBloom() {
+            bloomCapacity = Math.max(16, size * 2);
+            long bits = Long.highestOneBit((long) bloomCapacity * BLOOM_BITS_PER_ENTRY - 1) << 1;
+            bloom = new long[(int) Math.max(1, bits >>> 6)];
+            for (long key : keys) {
+                if (key != 0) {
+                    bloomAdd(key);
+                }
+            }
+        }
+
+        private void bloomAdd(long fingerprint) {
+            long bitMask = (long) bloom.length * 64 - 1;
+            long step = (fingerprint >>> 32) | 1;
+            for (int i = 0; i < BLOOM_PROBES; i++) {
+                long bit = (fingerprint + i * step) & bitMask;
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        private boolean bloomMightContain(long fingerprint) {
+            long bitMask = (long) bloom.length * 64 - 1;
+            long step = (fingerprint >>> 32) | 1;
+            for (int i = 0; i < BLOOM_PROBES; i++) {
+                long bit = (fingerprint + i * step) & bitMask;
+                if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package service.impl;
+
+import exception.ValidationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local table of dated exchange rates into one base currency, used to convert
+ * foreign-currency accounts in reports. A rate is the value of one unit of the
+ * currency in the base currency and holds from its date until the next rate
+ * for that currency; dates before the first rate use the first rate.
+ *
+ * For conversion, each currency's rates are expanded once into a per-day
+ * array (DailyRates) covering its first to last rate date, so converting a
+ * row is an array read and a multiplication. The arrays are cached until the
+ * rates change; getVersion() tells callers holding converted values when that
+ * happened.
+ */
+public class ExchangeRateTable {
+
+    public static final String DEFAULT_BASE_CURRENCY = "USD";
+
+    private final String baseCurrency;
+    // Currency -> epoch day -> rate; guarded by this
+    private final Map<String, NavigableMap<Long, BigDecimal>> rates = new HashMap<>();
+    private final Map<String, DailyRates> dailyRatesCache = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Rates of one currency for every day from its first to its last rate
+     * date; days outside that span take the nearest end.
+     */
+    public static final class DailyRates {
+        static final DailyRates IDENTITY = new DailyRates(0, new double[] { 1.0 });
+
+        private final long firstDay;
+        private final double[] rates;
+
+        DailyRates(long firstDay, double[] rates) {
+            this.firstDay = firstDay;
+            this.rates = rates;
+        }
+
+        public double rateOn(long epochDay) {
+            long index = epochDay - firstDay;
+            return rates[index <= 0 ? 0 : (int) Math.min(index, rates.length - 1)];
+        }
+
+        public boolean isIdentity() {
+            return this == IDENTITY;
+        }
+    }
+
+    public ExchangeRateTable(String baseCurrency) {
+        try {
+            this.baseCurrency = normalizeCurrency(baseCurrency);
+        } catch (ValidationException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    // Upper-cased ISO 4217 code, validated against the JDK's currency list
+    public static String normalizeCurrency(String currency) throws ValidationException {
+        if (currency == null || currency.trim().isEmpty()) {
+            throw new ValidationException("Currency code cannot be empty.");
+        }
+        String code = currency.trim().toUpperCase(Locale.ROOT);
+        try {
+            return Currency.getInstance(code).getCurrencyCode();
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Unknown currency code: " + currency);
+        }
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    // Incremented whenever a rate is added or replaced
+    public long getVersion() {
+        return version.get();
+    }
+
+    public void setRate(String currency, LocalDate date, BigDecimal rate) throws ValidationException {
+        String code = normalizeCurrency(currency);
+        if (date == null) {
+            throw new ValidationException("Rate date is required.");
+        }
+        checkRateDate(date);
+        if (rate == null || rate.signum() <= 0) {
+            throw new ValidationException("Exchange rate must be positive.");
+        }
+        if (code.equals(baseCurrency)) {
+            throw new ValidationException("Rates for the base currency " + baseCurrency + " are always 1.");
+        }
+        synchronized (this) {
+            rates.computeIfAbsent(code, k -> new TreeMap<>()).put(date.toEpochDay(), rate);
+            dailyRatesCache.remove(code);
+        }
+        version.incrementAndGet();
+    }
+
+    // Same range as transaction dates; dailyRates spans the rate dates one slot per day
+    private static void checkRateDate(LocalDate date) throws ValidationException {
+        if (date.isBefore(TransactionManager.MIN_DATE) || date.isAfter(TransactionManager.MAX_DATE)) {
+            throw new ValidationException("Rate date " + date + " is outside " + TransactionManager.MIN_DATE
+                    + " to " + TransactionManager.MAX_DATE + ".");
+        }
+    }
+
+    /**
+     * Loads rates from a CSV file with the header "date,currency,rate" (dates
+     * as yyyy-MM-dd; blank lines and lines starting with # are skipped).
+     * Either every line is loaded or, on the first invalid line, none is.
+     *
+     * @return The number of rates loaded.
+     * @throws ValidationException naming the line number of the first invalid line.
+     */
+    public int load(Path file) throws IOException, ValidationException {
+        Map<String, NavigableMap<Long, BigDecimal>> loaded = new HashMap<>();
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    if (!trimmed.replace(" ", "").equalsIgnoreCase("date,currency,rate")) {
+                        throw new ValidationException("Line " + lineNumber
+                                + ": expected the header 'date,currency,rate'.");
+                    }
+                    continue;
+                }
+                String[] fields = trimmed.split(",");
+                if (fields.length != 3) {
+                    throw new ValidationException("Line " + lineNumber + ": expected date,currency,rate.");
+                }
+                try {
+                    String code = normalizeCurrency(fields[1]);
+                    BigDecimal rate = new BigDecimal(fields[2].trim());
+                    if (rate.signum() <= 0 || code.equals(baseCurrency)) {
+                        throw new ValidationException("rate must be positive and not for the base currency");
+                    }
+                    LocalDate date = LocalDate.parse(fields[0].trim());
+                    checkRateDate(date);
+                    loaded.computeIfAbsent(code, k -> new TreeMap<>()).put(date.toEpochDay(), rate);
+                    count++;
+                } catch (ValidationException | NumberFormatException | DateTimeParseException e) {
+                    throw new ValidationException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<String, NavigableMap<Long, BigDecimal>> entry : loaded.entrySet()) {
+                rates.computeIfAbsent(entry.getKey(), k -> new TreeMap<>()).putAll(entry.getValue());
+                dailyRatesCache.remove(entry.getKey());
+            }
+        }
+        version.incrementAndGet();
+        return count;
+    }
+
+    // Exact rate on a date, for display; reports use dailyRates
+    public BigDecimal getRate(String currency, LocalDate date) throws ValidationException {
+        String code = normalizeCurrency(currency);
+        if (code.equals(baseCurrency)) {
+            return BigDecimal.ONE;
+        }
+        synchronized (this) {
+            NavigableMap<Long, BigDecimal> currencyRates = rates.get(code);
+            if (currencyRates == null) {
+                throw missingRate(code);
+            }
+            Map.Entry<Long, BigDecimal> rate = currencyRates.floorEntry(date.toEpochDay());
+            return rate != null ? rate.getValue() : currencyRates.firstEntry().getValue();
+        }
+    }
+
+    /**
+     * Per-day rates of a currency, built on first use and cached until its
+     * rates change. The base currency gets an identity table.
+     *
+     * @throws ValidationException if there are no rates for the currency.
+     */
+    public DailyRates dailyRates(String currency) throws ValidationException {
+        if (currency.equals(baseCurrency)) {
+            return DailyRates.IDENTITY;
+        }
+        DailyRates cached = dailyRatesCache.get(currency);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (this) {
+            NavigableMap<Long, BigDecimal> currencyRates = rates.get(currency);
+            if (currencyRates == null) {
+                throw missingRate(currency);
+            }
+            long firstDay = currencyRates.firstKey();
+            double[] daily = new double[(int) (currencyRates.lastKey() - firstDay + 1)];
+            Map.Entry<Long, BigDecimal> previous = null;
+            for (Map.Entry<Long, BigDecimal> rate : currencyRates.entrySet()) {
+                if (previous != null) { // Each rate holds until the next one
+                    Arrays.fill(daily, (int) (previous.getKey() - firstDay), (int) (rate.getKey() - firstDay),
+                            previous.getValue().doubleValue());
+                }
+                previous = rate;
+            }
+            daily[daily.length - 1] = previous.getValue().doubleValue();
+            DailyRates built = new DailyRates(firstDay, daily);
+            dailyRatesCache.put(currency, built);
+            return built;
+        }
+    }
+
+    private ValidationException missingRate(String currency) {
+        return new ValidationException("No exchange rate from " + currency + " to " + baseCurrency + ".");
+    }
+}
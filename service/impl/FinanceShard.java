@@ -0,0 +1,212 @@
+package service.impl;
+
+import exception.NotFoundException;
+import metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One partition of the users served by ShardedServiceFacade: its own
+ * managers (and so its own maps and indexes), a single worker thread that
+ * runs every call for the shard's users in submission order, and its own
+ * journal. Categories and exchange rates are reference data shared by all
+ * shards.
+ *
+ * Contributions that the shard's AutoContributionManager applies in the
+ * background are journaled on the worker by journalAutoContributions, so
+ * they land in the journal right after the income that caused them.
+ *
+ * The managers are exposed for reads; writes must go through
+ * ShardedServiceFacade, which journals them, or followers diverge.
+ *
+ * The shard registers its managers' gauges labelled with its index, e.g.
+ * finance_transactions{shard="0"}; sum over the label for totals. The
+ * shared CategoryManager is registered once, by ShardedServiceFacade.
+ */
+public class FinanceShard implements AutoCloseable {
+
+    private final int index;
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final BudgetManager budgetManager;
+    private final FinancialGoalManager financialGoalManager;
+    private final ReportGenerator reportGenerator;
+    private final CategoryRuleManager categoryRuleManager;
+    private final AutoContributionManager autoContributionManager;
+    // Journal appends for contributions applied off the worker, waiting for journalAutoContributions
+    private final Queue<Runnable> appliedContributions = new ConcurrentLinkedQueue<>();
+    private final ShardJournal journal;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder journalFailures = MetricsRegistry.getDefault().counter(
+            "finance_shard_journal_failures_total", "Journal flushes that failed");
+
+    public FinanceShard(int index, CategoryManager categoryManager, ExchangeRateTable exchangeRates,
+            ShardJournal journal) {
+        this.index = index;
+        this.accountManager = new AccountManager(exchangeRates);
+        this.transactionManager = new TransactionManager(accountManager, categoryManager);
+        this.budgetManager = new BudgetManager(categoryManager, transactionManager);
+        this.financialGoalManager = new FinancialGoalManager();
+        this.reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        this.categoryRuleManager = new CategoryRuleManager(accountManager, categoryManager, transactionManager);
+        this.autoContributionManager = new AutoContributionManager(financialGoalManager, categoryManager,
+                transactionManager);
+        autoContributionManager.addContributionListener((userId, goalId, amount) -> appliedContributions.add(
+                () -> journal.append("autoContribution", userId, goalId, amount)));
+        this.journal = journal;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "finance-shard-" + index);
+            t.setDaemon(true);
+            return t;
+        }) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                if (getQueue().isEmpty()) { // Group commit: one flush per burst of calls
+                    try {
+                        journal.flush();
+                    } catch (UncheckedIOException e) {
+                        journalFailures.increment();
+                    }
+                }
+            }
+        };
+
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        String labels = "shard=\"" + index + "\"";
+        accountManager.registerGauges(metrics, labels);
+        transactionManager.registerGauges(metrics, labels);
+        budgetManager.registerGauges(metrics, labels);
+        financialGoalManager.registerGauges(metrics, labels);
+        categoryRuleManager.registerGauges(metrics, labels);
+        autoContributionManager.registerGauges(metrics, labels);
+        metrics.gauge("finance_shard_queue_depth", "Calls waiting for each shard's worker", labels,
+                () -> executor.getQueue().size());
+        metrics.gauge("finance_shard_journal_entries", "Entries appended to each shard's journal", labels,
+                journal::getSequence);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public AccountManager getAccountManager() {
+        return accountManager;
+    }
+
+    public TransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    public BudgetManager getBudgetManager() {
+        return budgetManager;
+    }
+
+    public FinancialGoalManager getFinancialGoalManager() {
+        return financialGoalManager;
+    }
+
+    public ReportGenerator getReportGenerator() {
+        return reportGenerator;
+    }
+
+    public CategoryRuleManager getCategoryRuleManager() {
+        return categoryRuleManager;
+    }
+
+    public AutoContributionManager getAutoContributionManager() {
+        return autoContributionManager;
+    }
+
+    public ShardJournal getJournal() {
+        return journal;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Set<UUID> getUserIds() {
+        return accountManager.getExistingUsers().keySet();
+    }
+
+    // Runs on the shard's worker after every call submitted before it
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Waits for the contributions queued by the calls so far and journals
+     * those applied. Must run on the shard's worker, after recording income.
+     */
+    void journalAutoContributions() throws InterruptedException {
+        autoContributionManager.flush();
+        Runnable append;
+        while ((append = appliedContributions.poll()) != null) {
+            append.run();
+        }
+    }
+
+    // Registers the user with every manager of this shard
+    void addUser(UUID userId) {
+        accountManager.addUser(userId);
+        budgetManager.addUser(userId);
+        financialGoalManager.addUser(userId);
+    }
+
+    /**
+     * Removes the user and everything they own from this shard. Must run on
+     * the shard's worker.
+     */
+    UserPartition detachUser(UUID userId) throws NotFoundException {
+        if (!accountManager.userExists(userId)) {
+            throw new NotFoundException("User with ID " + userId + " not found on shard " + index + ".");
+        }
+        UserPartition partition = new UserPartition(userId);
+        transactionManager.detachUser(partition); // First: its indexes are keyed by the user's accounts
+        accountManager.detachUser(partition);
+        budgetManager.detachUser(partition);
+        financialGoalManager.detachUser(partition);
+        categoryRuleManager.detachUser(partition);
+        autoContributionManager.detachUser(partition);
+        return partition;
+    }
+
+    // Installs a partition detached from another shard; must run on this shard's worker
+    void attachUser(UserPartition partition) {
+        accountManager.attachUser(partition);
+        transactionManager.attachUser(partition); // After accounts: converts amounts by account currency
+        budgetManager.attachUser(partition);
+        financialGoalManager.attachUser(partition);
+        categoryRuleManager.attachUser(partition);
+        autoContributionManager.attachUser(partition);
+    }
+
+    // Finishes the calls already submitted, then closes the journal
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+            autoContributionManager.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+}
@@ -4,6 +4,8 @@ import domain.FinancialGoal;
 import exception.NotFoundException;
 import exception.ValidationException;
 import service.interfaces.IManageFinancialGoal;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -22,6 +24,24 @@ import java.util.stream.Collectors;
  */
 public class FinancialGoalManager implements IManageFinancialGoal {
 
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram ADD_USER_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "addUser");
+    private static final LatencyHistogram GET_FINANCIAL_GOAL_LIST_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "getFinancialGoalList");
+    private static final LatencyHistogram GET_FINANCIAL_GOAL_DETAILS_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "getFinancialGoalDetails");
+    private static final LatencyHistogram CREATE_FINANCIAL_GOAL_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "createFinancialGoal");
+    private static final LatencyHistogram UPDATE_FINANCIAL_GOAL_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "updateFinancialGoal");
+    private static final LatencyHistogram ADD_CONTRIBUTION_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "addContribution");
+    private static final LatencyHistogram ADD_CONTRIBUTION_UP_TO_TARGET_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "addContributionUpToTarget");
+    private static final LatencyHistogram DELETE_FINANCIAL_GOAL_LATENCY =
+            MetricsRegistry.methodLatency("FinancialGoalManager", "deleteFinancialGoal");
+
     // In-memory storage for financial goals (UserId -> GoalId -> FinancialGoal)
     private final Map<UUID, Map<UUID, FinancialGoal>> userFinancialGoals = new ConcurrentHashMap<>();
 
@@ -32,10 +52,58 @@ public class FinancialGoalManager implements IManageFinancialGoal {
         // Ideally, user existence is managed centrally
     }
 
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_financial_goals", "Stored financial goals", labels, this::getFinancialGoalCount);
+    }
+
+    // Goals across all users
+    int getFinancialGoalCount() {
+        return userFinancialGoals.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // Installs a goal created elsewhere under the same ID, e.g. when a replica applies the journal
+    void restoreFinancialGoal(FinancialGoal goal) {
+        userFinancialGoals.computeIfAbsent(goal.getUserId(), k -> new ConcurrentHashMap<>())
+                .put(goal.getId(), goal);
+        existingUsers.put(goal.getUserId(), true);
+    }
+
+    // Applies an update made elsewhere with the values stored there, e.g. when a replica applies the journal
+    void restoreFinancialGoalUpdate(UUID goalId, UUID userId, String name, BigDecimal targetAmount,
+            BigDecimal currentAmount, LocalDate deadline) throws NotFoundException {
+        FinancialGoal goal = getFinancialGoalDetails(goalId, userId);
+        synchronized (goal) {
+            goal.setName(name);
+            goal.setTargetAmount(targetAmount);
+            goal.setCurrentAmount(currentAmount);
+            goal.setDeadline(deadline);
+        }
+    }
+
+    // Removes the user and their goals into the partition, for moving them to another shard
+    void detachUser(UserPartition partition) {
+        Map<UUID, FinancialGoal> goals = userFinancialGoals.remove(partition.userId);
+        if (goals != null) {
+            partition.goals.putAll(goals);
+        }
+        existingUsers.remove(partition.userId);
+    }
+
+    void attachUser(UserPartition partition) {
+        userFinancialGoals.put(partition.userId, new ConcurrentHashMap<>(partition.goals));
+        existingUsers.put(partition.userId, true);
+    }
+
     // Helper to simulate user existence (sync with other managers or use a central
     // service)
     public void addUser(UUID userId) {
-        existingUsers.put(userId, true);
+        long startNanos = System.nanoTime();
+        try {
+            existingUsers.put(userId, true);
+        } finally {
+            ADD_USER_LATENCY.recordSince(startNanos);
+        }
     }
 
     private void checkUserExists(UUID userId) throws NotFoundException {
@@ -46,122 +114,182 @@ public class FinancialGoalManager implements IManageFinancialGoal {
 
     @Override
     public List<FinancialGoal> getFinancialGoalList(UUID userId) throws NotFoundException {
-        checkUserExists(userId);
-        Map<UUID, FinancialGoal> goals = userFinancialGoals.getOrDefault(userId, new ConcurrentHashMap<>());
-        return new ArrayList<>(goals.values());
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, FinancialGoal> goals = userFinancialGoals.getOrDefault(userId, new ConcurrentHashMap<>());
+            return new ArrayList<>(goals.values());
+        } finally {
+            GET_FINANCIAL_GOAL_LIST_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public FinancialGoal getFinancialGoalDetails(UUID goalId, UUID userId) throws NotFoundException, SecurityException {
-        checkUserExists(userId);
-        Map<UUID, FinancialGoal> goals = userFinancialGoals.get(userId);
-        if (goals == null || !goals.containsKey(goalId)) {
-            throw new NotFoundException("Financial Goal with ID " + goalId + " not found for user " + userId);
-        }
-        // Basic check: User can only access their own goals
-        FinancialGoal goal = goals.get(goalId);
-        if (!goal.getUserId().equals(userId)) {
-            // Redundant given map structure, but good practice
-            throw new SecurityException("User " + userId + " is not authorized to access financial goal " + goalId);
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, FinancialGoal> goals = userFinancialGoals.get(userId);
+            if (goals == null || !goals.containsKey(goalId)) {
+                throw new NotFoundException("Financial Goal with ID " + goalId + " not found for user " + userId);
+            }
+            // Basic check: User can only access their own goals
+            FinancialGoal goal = goals.get(goalId);
+            if (!goal.getUserId().equals(userId)) {
+                // Redundant given map structure, but good practice
+                throw new SecurityException("User " + userId + " is not authorized to access financial goal " + goalId);
+            }
+            return goal;
+        } finally {
+            GET_FINANCIAL_GOAL_DETAILS_LATENCY.recordSince(startNanos);
         }
-        return goal;
     }
 
     @Override
     public UUID createFinancialGoal(UUID userId, String name, BigDecimal targetAmount, BigDecimal currentAmount,
             LocalDate deadline)
             throws ValidationException, NotFoundException {
-        checkUserExists(userId);
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
 
-        // Validate inputs
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Financial goal name cannot be empty.");
-        }
-        if (targetAmount == null || targetAmount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Target amount must be positive.");
-        }
-        if (currentAmount == null || currentAmount.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ValidationException("Current amount cannot be negative.");
-        }
-        if (currentAmount.compareTo(targetAmount) > 0) {
-            throw new ValidationException("Current amount cannot exceed target amount.");
-        }
-        if (deadline == null || deadline.isBefore(LocalDate.now())) {
-            throw new ValidationException("Deadline must be in the future.");
-        }
+            // Validate inputs
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Financial goal name cannot be empty.");
+            }
+            if (targetAmount == null || targetAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Target amount must be positive.");
+            }
+            if (currentAmount == null || currentAmount.compareTo(BigDecimal.ZERO) < 0) {
+                throw new ValidationException("Current amount cannot be negative.");
+            }
+            if (currentAmount.compareTo(targetAmount) > 0) {
+                throw new ValidationException("Current amount cannot exceed target amount.");
+            }
+            if (deadline == null || deadline.isBefore(LocalDate.now())) {
+                throw new ValidationException("Deadline must be in the future.");
+            }
 
-        FinancialGoal newGoal = new FinancialGoal(userId, name.trim(), targetAmount, currentAmount, deadline);
-        userFinancialGoals.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newGoal.getId(), newGoal);
-        return newGoal.getId();
+            FinancialGoal newGoal = new FinancialGoal(userId, name.trim(), targetAmount, currentAmount, deadline);
+            userFinancialGoals.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newGoal.getId(), newGoal);
+            return newGoal.getId();
+        } finally {
+            CREATE_FINANCIAL_GOAL_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public boolean updateFinancialGoal(UUID goalId, UUID userId, String name, BigDecimal targetAmount,
             BigDecimal currentAmount, LocalDate deadline)
             throws ValidationException, NotFoundException, SecurityException {
-        FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+        long startNanos = System.nanoTime();
+        try {
+            FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
 
-        // Validate inputs
-        if (name == null || name.trim().isEmpty()) {
-            throw new ValidationException("Financial goal name cannot be empty.");
-        }
-        if (targetAmount == null || targetAmount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Target amount must be positive.");
-        }
-        if (currentAmount == null || currentAmount.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ValidationException("Current amount cannot be negative.");
-        }
-        // Allow current amount to exceed target during update? Or cap it?
-        // Capping it for this example:
-        if (currentAmount.compareTo(targetAmount) > 0) {
-            // throw new ValidationException("Current amount cannot exceed target amount.");
-            currentAmount = targetAmount; // Cap at target amount
-        }
-        if (deadline == null || deadline.isBefore(LocalDate.now())) {
-            // Allow updating deadline to past? Maybe for marking historical goals?
-            // Keeping validation for future deadline for active goals.
-            if (!goal.isCompleted()) { // Only enforce future deadline for non-completed goals
-                throw new ValidationException("Deadline must be in the future for active goals.");
+            // Validate inputs
+            if (name == null || name.trim().isEmpty()) {
+                throw new ValidationException("Financial goal name cannot be empty.");
+            }
+            if (targetAmount == null || targetAmount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Target amount must be positive.");
+            }
+            if (currentAmount == null || currentAmount.compareTo(BigDecimal.ZERO) < 0) {
+                throw new ValidationException("Current amount cannot be negative.");
+            }
+            // Allow current amount to exceed target during update? Or cap it?
+            // Capping it for this example:
+            if (currentAmount.compareTo(targetAmount) > 0) {
+                // throw new ValidationException("Current amount cannot exceed target amount.");
+                currentAmount = targetAmount; // Cap at target amount
+            }
+            if (deadline == null || deadline.isBefore(LocalDate.now())) {
+                // Allow updating deadline to past? Maybe for marking historical goals?
+                // Keeping validation for future deadline for active goals.
+                if (!goal.isCompleted()) { // Only enforce future deadline for non-completed goals
+                    throw new ValidationException("Deadline must be in the future for active goals.");
+                }
             }
-        }
 
-        goal.setName(name.trim());
-        goal.setTargetAmount(targetAmount);
-        goal.setCurrentAmount(currentAmount); // This will also trigger re-check of completion status in the domain
-                                              // object
-        goal.setDeadline(deadline);
+            synchronized (goal) { // Contributions may be applied concurrently (see AutoContributionManager)
+                goal.setName(name.trim());
+                goal.setTargetAmount(targetAmount);
+                goal.setCurrentAmount(currentAmount); // This will also trigger re-check of completion status in the
+                                                      // domain object
+                goal.setDeadline(deadline);
+            }
 
-        // In-memory update is automatic
-        return true;
+            // In-memory update is automatic
+            return true;
+        } finally {
+            UPDATE_FINANCIAL_GOAL_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public boolean addContribution(UUID goalId, UUID userId, BigDecimal amount)
             throws ValidationException, NotFoundException, SecurityException {
-        FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+        long startNanos = System.nanoTime();
+        try {
+            FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
 
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new ValidationException("Contribution amount must be positive.");
-        }
-        if (goal.isCompleted()) {
-            throw new ValidationException("Cannot add contribution to an already completed goal.");
-        }
+            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Contribution amount must be positive.");
+            }
+            synchronized (goal) { // Check and add as one step against concurrent contributions
+                if (goal.isCompleted()) {
+                    throw new ValidationException("Cannot add contribution to an already completed goal.");
+                }
+                goal.addContribution(amount);
+            }
 
-        goal.addContribution(amount);
+            // In-memory update is automatic
+            return true;
+        } finally {
+            ADD_CONTRIBUTION_LATENCY.recordSince(startNanos);
+        }
+    }
 
-        // In-memory update is automatic
-        return true;
+    /**
+     * Adds up to the given amount to a goal, capped at what is still needed to
+     * reach its target, as used by AutoContributionManager. The completion
+     * check and the addition happen under the goal's lock, so contributions
+     * racing each other can neither overshoot the target nor reach a goal that
+     * has just been completed.
+     *
+     * @return The amount actually added; zero if the goal is already completed.
+     */
+    BigDecimal addContributionUpToTarget(UUID goalId, UUID userId, BigDecimal amount)
+            throws NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+            synchronized (goal) {
+                if (goal.isCompleted() || amount.signum() <= 0) {
+                    return BigDecimal.ZERO;
+                }
+                BigDecimal applied = amount.min(goal.getTargetAmount().subtract(goal.getCurrentAmount()));
+                goal.addContribution(applied); // Marks the goal completed once the target is reached
+                return applied;
+            }
+        } finally {
+            ADD_CONTRIBUTION_UP_TO_TARGET_LATENCY.recordSince(startNanos);
+        }
     }
 
     @Override
     public boolean deleteFinancialGoal(UUID goalId, UUID userId) throws NotFoundException, SecurityException {
-        FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
+        long startNanos = System.nanoTime();
+        try {
+            FinancialGoal goal = getFinancialGoalDetails(goalId, userId); // Checks user, existence, auth
 
-        Map<UUID, FinancialGoal> goals = userFinancialGoals.get(userId);
-        if (goals != null) {
-            goals.remove(goalId);
-            return true;
+            Map<UUID, FinancialGoal> goals = userFinancialGoals.get(userId);
+            if (goals != null) {
+                goals.remove(goalId);
+                return true;
+            }
+            return false; // Should not happen
+        } finally {
+            DELETE_FINANCIAL_GOAL_LATENCY.recordSince(startNanos);
         }
-        return false; // Should not happen
     }
 }
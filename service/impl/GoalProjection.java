@@ -0,0 +1,113 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Result of GoalProjectionEngine.projectGoal: how likely a financial goal is
+ * to be reached by its deadline, and when it is expected to complete.
+ * Completion dates are null when fewer than that share of the simulated paths
+ * reach the target before the end of the simulation horizon.
+ */
+public class GoalProjection {
+    private final UUID goalId;
+    private final BigDecimal remainingAmount;
+    private final LocalDate deadline;
+    private final double probabilityByDeadline;
+    private final LocalDate optimisticCompletionDate; // 10th percentile
+    private final LocalDate expectedCompletionDate; // Median
+    private final LocalDate pessimisticCompletionDate; // 90th percentile
+    private final LocalDate horizonEnd;
+    private final int historyMonths;
+    private final double meanMonthlyNetFlow;
+    private final double monthlyNetFlowStdDev;
+    private final int paths;
+
+    public GoalProjection(UUID goalId, BigDecimal remainingAmount, LocalDate deadline, double probabilityByDeadline,
+            LocalDate optimisticCompletionDate, LocalDate expectedCompletionDate,
+            LocalDate pessimisticCompletionDate, LocalDate horizonEnd, int historyMonths,
+            double meanMonthlyNetFlow, double monthlyNetFlowStdDev, int paths) {
+        this.goalId = goalId;
+        this.remainingAmount = remainingAmount;
+        this.deadline = deadline;
+        this.probabilityByDeadline = probabilityByDeadline;
+        this.optimisticCompletionDate = optimisticCompletionDate;
+        this.expectedCompletionDate = expectedCompletionDate;
+        this.pessimisticCompletionDate = pessimisticCompletionDate;
+        this.horizonEnd = horizonEnd;
+        this.historyMonths = historyMonths;
+        this.meanMonthlyNetFlow = meanMonthlyNetFlow;
+        this.monthlyNetFlowStdDev = monthlyNetFlowStdDev;
+        this.paths = paths;
+    }
+
+    public UUID getGoalId() {
+        return goalId;
+    }
+
+    public BigDecimal getRemainingAmount() {
+        return remainingAmount;
+    }
+
+    public LocalDate getDeadline() {
+        return deadline;
+    }
+
+    public double getProbabilityByDeadline() {
+        return probabilityByDeadline;
+    }
+
+    // On track when at least half of the simulated paths reach the target by the deadline
+    public boolean isOnTrack() {
+        return probabilityByDeadline >= 0.5;
+    }
+
+    public LocalDate getOptimisticCompletionDate() {
+        return optimisticCompletionDate;
+    }
+
+    public LocalDate getExpectedCompletionDate() {
+        return expectedCompletionDate;
+    }
+
+    public LocalDate getPessimisticCompletionDate() {
+        return pessimisticCompletionDate;
+    }
+
+    public LocalDate getHorizonEnd() {
+        return horizonEnd;
+    }
+
+    public int getHistoryMonths() {
+        return historyMonths;
+    }
+
+    public double getMeanMonthlyNetFlow() {
+        return meanMonthlyNetFlow;
+    }
+
+    public double getMonthlyNetFlowStdDev() {
+        return monthlyNetFlowStdDev;
+    }
+
+    public int getPaths() {
+        return paths;
+    }
+
+    @Override
+    public String toString() {
+        return "GoalProjection{" +
+                "goalId=" + goalId +
+                ", remainingAmount=" + remainingAmount +
+                ", deadline=" + deadline +
+                ", probabilityByDeadline=" + String.format("%.3f", probabilityByDeadline) +
+                ", completion p10/p50/p90=" + optimisticCompletionDate + "/" + expectedCompletionDate + "/"
+                + pessimisticCompletionDate +
+                ", historyMonths=" + historyMonths +
+                ", meanMonthlyNetFlow=" + String.format("%.2f", meanMonthlyNetFlow) +
+                ", monthlyNetFlowStdDev=" + String.format("%.2f", monthlyNetFlowStdDev) +
+                ", paths=" + paths +
+                '}';
+    }
+}
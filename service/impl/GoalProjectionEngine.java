@@ -0,0 +1,185 @@
+package service.impl;
+
+import domain.FinancialGoal;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Projects whether a financial goal will be reached by its deadline, using
+ * Monte Carlo simulation over the user's historical monthly net cash flow
+ * (income minus expenses, all accounts, in the base currency) from
+ * TransactionManager.
+ *
+ * Each path draws one historical month per simulated month (bootstrap), so
+ * seasonality and occasional large expenses carry over without assuming a
+ * distribution. Savings accumulate from zero and cannot drop below it: a bad
+ * month eats earlier savings, never the amount already in the goal.
+ * Paths run in chunks over primitive arrays on the common fork-join pool and
+ * are seeded from the goal and date, so repeated calls on a day agree.
+ */
+public class GoalProjectionEngine {
+
+    private static final LatencyHistogram PROJECT_GOAL_LATENCY =
+            MetricsRegistry.methodLatency("GoalProjectionEngine", "projectGoal");
+
+    public static final int DEFAULT_PATHS = 10_000;
+    public static final int DEFAULT_HISTORY_MONTHS = 24;
+    private static final int MAX_HISTORY_MONTHS = 600;
+    private static final int MAX_PATHS = 1_000_000;
+    private static final int PATHS_PER_CHUNK = 1024; // One parallel task; its arrays stay in L1/L2
+    private static final int MIN_HORIZON_MONTHS = 60;
+    private static final int MAX_HORIZON_MONTHS = 600;
+    private static final double DAYS_PER_MONTH = 365.2425 / 12;
+
+    private final FinancialGoalManager financialGoalManager;
+    private final TransactionManager transactionManager;
+
+    public GoalProjectionEngine(FinancialGoalManager financialGoalManager, TransactionManager transactionManager) {
+        this.financialGoalManager = financialGoalManager;
+        this.transactionManager = transactionManager;
+    }
+
+    public GoalProjection projectGoal(UUID goalId, UUID userId)
+            throws ValidationException, NotFoundException, SecurityException {
+        return projectGoal(goalId, userId, LocalDate.now(), DEFAULT_HISTORY_MONTHS, DEFAULT_PATHS);
+    }
+
+    /**
+     * @param asOf          Day the projection starts from; history is taken
+     *                      from the complete months before it.
+     * @param historyMonths How many complete months of history to sample, at
+     *                      most 600.
+     * @param paths         Number of simulated paths.
+     */
+    public GoalProjection projectGoal(UUID goalId, UUID userId, LocalDate asOf, int historyMonths, int paths)
+            throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            if (asOf == null) {
+                throw new ValidationException("Projection date is required.");
+            }
+            if (historyMonths < 1 || historyMonths > MAX_HISTORY_MONTHS || paths < 1 || paths > MAX_PATHS) {
+                throw new ValidationException("History months must be between 1 and " + MAX_HISTORY_MONTHS
+                        + " and paths between 1 and " + MAX_PATHS + ".");
+            }
+            FinancialGoal goal = financialGoalManager.getFinancialGoalDetails(goalId, userId); // Checks user, auth
+            BigDecimal remaining = goal.getTargetAmount().subtract(goal.getCurrentAmount()).max(BigDecimal.ZERO);
+            double[] monthlyNetFlows = monthlyNetFlows(userId, asOf, historyMonths);
+            double mean = Arrays.stream(monthlyNetFlows).average().orElse(0);
+            double variance = Arrays.stream(monthlyNetFlows).map(flow -> (flow - mean) * (flow - mean)).sum()
+                    / monthlyNetFlows.length;
+
+            if (goal.isCompleted() || remaining.signum() == 0) {
+                return new GoalProjection(goalId, BigDecimal.ZERO, goal.getDeadline(), 1.0, asOf, asOf, asOf, asOf,
+                        monthlyNetFlows.length, mean, Math.sqrt(variance), 0);
+            }
+
+            long deadlineDays = goal.getDeadline().toEpochDay() - asOf.toEpochDay();
+            int horizonMonths = (int) Math.min(MAX_HORIZON_MONTHS,
+                    Math.max(MIN_HORIZON_MONTHS, Math.ceil(3 * deadlineDays / DAYS_PER_MONTH)));
+            long seed = goalId.getMostSignificantBits() ^ goalId.getLeastSignificantBits() ^ asOf.toEpochDay();
+
+            double[] completionDays = simulate(monthlyNetFlows, remaining.doubleValue(), horizonMonths, paths, seed);
+            Arrays.sort(completionDays);
+            int reachedByDeadline = 0;
+            while (reachedByDeadline < paths && completionDays[reachedByDeadline] <= deadlineDays) {
+                reachedByDeadline++;
+            }
+
+            return new GoalProjection(goalId, remaining, goal.getDeadline(), (double) reachedByDeadline / paths,
+                    percentileDate(completionDays, 0.1, asOf), percentileDate(completionDays, 0.5, asOf),
+                    percentileDate(completionDays, 0.9, asOf), asOf.plusMonths(horizonMonths),
+                    monthlyNetFlows.length, mean, Math.sqrt(variance), paths);
+        } finally {
+            PROJECT_GOAL_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /*
+     * Net flow of each complete month in the window, oldest first, in the
+     * base currency (goals are kept in it) as the reports convert it. Months
+     * before the user's first transaction are left out so a new user's
+     * history is not diluted with empty months.
+     */
+    private double[] monthlyNetFlows(UUID userId, LocalDate asOf, int historyMonths)
+            throws ValidationException, NotFoundException {
+        LocalDate firstDay = asOf.withDayOfMonth(1).minusMonths(historyMonths);
+        LocalDate lastDay = asOf.withDayOfMonth(1).minusDays(1);
+        List<Transaction> transactions = transactionManager.getTransactionsByUser(userId, firstDay, lastDay);
+        Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = transactionManager.getDailyRatesByAccount(userId);
+
+        long firstMonth = firstDay.getYear() * 12L + firstDay.getMonthValue() - 1;
+        double[] flows = new double[historyMonths];
+        int earliest = historyMonths;
+        for (Transaction transaction : transactions) {
+            LocalDate date = transaction.getDate();
+            int month = (int) (date.getYear() * 12L + date.getMonthValue() - 1 - firstMonth);
+            ExchangeRateTable.DailyRates rates = ratesByAccount.get(transaction.getAccountId());
+            double amount = transaction.getAmount().doubleValue(); // Amounts are signed
+            flows[month] += rates == null ? amount : amount * rates.rateOn(transaction.getEpochDay());
+            earliest = Math.min(earliest, month);
+        }
+        if (earliest == historyMonths) {
+            throw new ValidationException("At least one full month of transaction history is required to project"
+                    + " a goal.");
+        }
+        return Arrays.copyOfRange(flows, earliest, historyMonths);
+    }
+
+    // Days from the start until each path reaches the target; +Infinity if it does not within the horizon
+    private static double[] simulate(double[] monthlyNetFlows, double remaining, int horizonMonths, int paths,
+            long seed) {
+        double[] completionDays = new double[paths];
+        int chunks = (paths + PATHS_PER_CHUNK - 1) / PATHS_PER_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * PATHS_PER_CHUNK;
+            int to = Math.min(paths, from + PATHS_PER_CHUNK);
+            simulateChunk(monthlyNetFlows, remaining, horizonMonths, completionDays, from, to,
+                    new SplittableRandom(seed + chunk * 0x9E3779B97F4A7C15L));
+        });
+        return completionDays;
+    }
+
+    private static void simulateChunk(double[] monthlyNetFlows, double remaining, int horizonMonths,
+            double[] completionDays, int from, int to, SplittableRandom random) {
+        int count = to - from;
+        double[] saved = new double[count];
+        boolean[] done = new boolean[count];
+        Arrays.fill(completionDays, from, to, Double.POSITIVE_INFINITY);
+        int active = count;
+        // Month-major over the whole chunk, so each step is one pass over flat arrays
+        for (int month = 0; month < horizonMonths && active > 0; month++) {
+            for (int i = 0; i < count; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                double flow = monthlyNetFlows[random.nextInt(monthlyNetFlows.length)];
+                double before = saved[i];
+                double after = Math.max(0, before + flow);
+                saved[i] = after;
+                if (after >= remaining) { // Only reachable with flow > 0; interpolate within the month
+                    completionDays[from + i] = (month + (remaining - before) / flow) * DAYS_PER_MONTH;
+                    done[i] = true;
+                    active--;
+                }
+            }
+        }
+    }
+
+    private static LocalDate percentileDate(double[] sortedDays, double percentile, LocalDate asOf) {
+        double days = sortedDays[Math.max(0, (int) Math.ceil(percentile * sortedDays.length) - 1)];
+        return Double.isInfinite(days) ? null : asOf.plusDays((long) Math.ceil(days));
+    }
+}
@@ -0,0 +1,353 @@
+package service.impl;
+
+import domain.Category;
+import metrics.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Leader side of journal replication. Every entry appended to a shard journal
+ * of the attached ShardedServiceFacade (see replicateTo) gets a position in
+ * one replication stream, and is sent over TCP to every connected follower
+ * (ReplicaNode), which applies it to its own managers and acknowledges the
+ * positions it has applied.
+ *
+ * Wire format, one line per message: the leader sends "position TAB entry"
+ * (journal line format, position 0 for the category snapshot sent on
+ * connect); a follower sends "FOLLOW TAB position" once, naming the last
+ * position it has, then "ACK TAB position" after each burst it applies.
+ * The leader answers "ERROR TAB reason" and disconnects a follower whose
+ * position it cannot serve: one behind the retained entries, or one ahead
+ * of the stream, which followed a leader since restarted.
+ *
+ * In ASYNC mode writes return as soon as the leader has applied them. In
+ * QUORUM mode ShardedServiceFacade's writes complete once enough followers
+ * have acknowledged them for a majority of clusterSize nodes, the leader
+ * included. The last retainedEntries entries are kept in memory so a
+ * follower can reconnect and catch up; one further behind must start empty.
+ */
+public class JournalReplicator implements AutoCloseable {
+
+    public enum AckMode { ASYNC, QUORUM }
+
+    public static final int DEFAULT_RETAINED_ENTRIES = 1_000_000;
+
+    private static final int SEND_BATCH = 1024;
+
+    private final AckMode ackMode;
+    private final int requiredAcks; // Followers needed, with the leader, for a majority
+    private final Duration ackTimeout;
+    private final int retainedEntries;
+    private final CategoryManager categoryManager;
+
+    // Stream entries from firstPosition on; guarded by itself, which senders wait on
+    private final List<String> stream = new ArrayList<>();
+    private long firstPosition = 1;
+    private volatile long lastPosition;
+
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    // Position -> writes waiting for a quorum to acknowledge it; guarded by itself
+    private final TreeMap<Long, List<CompletableFuture<Void>>> waiters = new TreeMap<>();
+    private volatile long quorumPosition;
+
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    private final LongAdder quorumTimeouts = MetricsRegistry.getDefault().counter(
+            "finance_replication_quorum_timeouts_total", "Writes not acknowledged by a quorum in time");
+
+    // One connected follower; its sender and reader threads share the socket
+    private final class Follower {
+        final Socket socket;
+        volatile long acknowledged; // Set only by the follower's ACKs
+
+        Follower(Socket socket) {
+            this.socket = socket;
+        }
+    }
+
+    /**
+     * @param clusterSize Nodes in the cluster, leader included; QUORUM waits
+     *                    for clusterSize / 2 followers.
+     */
+    public JournalReplicator(CategoryManager categoryManager, AckMode ackMode, int clusterSize, Duration ackTimeout) {
+        this(categoryManager, ackMode, clusterSize, ackTimeout, DEFAULT_RETAINED_ENTRIES);
+    }
+
+    public JournalReplicator(CategoryManager categoryManager, AckMode ackMode, int clusterSize, Duration ackTimeout,
+            int retainedEntries) {
+        if (clusterSize < 1) {
+            throw new IllegalArgumentException("Cluster size must be at least 1.");
+        }
+        if (retainedEntries < SEND_BATCH) {
+            throw new IllegalArgumentException("Retain at least " + SEND_BATCH + " entries.");
+        }
+        this.categoryManager = categoryManager;
+        this.ackMode = ackMode;
+        this.requiredAcks = clusterSize / 2;
+        this.ackTimeout = ackTimeout;
+        this.retainedEntries = retainedEntries;
+
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.gauge("finance_replication_followers", "Connected followers", followers::size);
+        metrics.gauge("finance_replication_lag_entries", "Entries the slowest follower has yet to acknowledge",
+                () -> lastPosition - followers.stream().mapToLong(f -> f.acknowledged).min().orElse(lastPosition));
+    }
+
+    // Listens for followers; port 0 picks a free port (see getPort)
+    public void start(InetAddress bindAddress, int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        Thread acceptor = new Thread(this::acceptFollowers, "finance-replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    // Position of the last entry published
+    public long getPosition() {
+        return lastPosition;
+    }
+
+    // Highest position a quorum of followers has acknowledged
+    public long getQuorumPosition() {
+        return ackMode == AckMode.QUORUM && requiredAcks == 0 ? lastPosition : quorumPosition;
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    // Adds a journal entry to the stream; called on the appending shard's thread
+    public void publish(String entry) {
+        synchronized (stream) {
+            stream.add(entry);
+            lastPosition++;
+            if (stream.size() > retainedEntries) { // Drop the oldest half, rather than one entry per publish
+                int dropped = stream.size() / 2;
+                stream.subList(0, dropped).clear();
+                firstPosition += dropped;
+            }
+            stream.notifyAll();
+        }
+    }
+
+    public void publishCategory(Category category) {
+        publish(categoryEntry(category));
+    }
+
+    public void publishCategoryMerge(UUID fromId, UUID intoId) {
+        publish(ShardJournal.format(0, "mergeCategory", null, fromId, intoId));
+    }
+
+    public void publishCategoryDeletion(UUID categoryId) {
+        publish(ShardJournal.format(0, "deleteCategory", null, categoryId));
+    }
+
+    private static String categoryEntry(Category category) {
+        return ShardJournal.format(0, "createCategory", null, category.getId(), category.getName(),
+                category.getType(), category.getIcon(), category.getParentId());
+    }
+
+    /**
+     * Completes once a quorum of followers has acknowledged the position, or
+     * fails with a TimeoutException after the acknowledgement timeout.
+     * Completes at once in ASYNC mode.
+     */
+    public CompletableFuture<Void> awaitAcknowledged(long position) {
+        if (ackMode == AckMode.ASYNC || position <= getQuorumPosition()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        synchronized (waiters) {
+            if (position <= quorumPosition) { // Acknowledged since the check above
+                return CompletableFuture.completedFuture(null);
+            }
+            waiters.computeIfAbsent(position, k -> new ArrayList<>()).add(waiter);
+        }
+        return waiter.orTimeout(ackTimeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((ignored, e) -> {
+            if (e != null) {
+                quorumTimeouts.increment();
+                synchronized (waiters) {
+                    List<CompletableFuture<Void>> atPosition = waiters.get(position);
+                    if (atPosition != null && atPosition.remove(waiter) && atPosition.isEmpty()) {
+                        waiters.remove(position);
+                    }
+                }
+            }
+        });
+    }
+
+    private void acceptFollowers() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread handshake = new Thread(() -> serve(socket), "finance-replication-follower");
+                handshake.setDaemon(true);
+                handshake.start();
+            } catch (IOException e) {
+                // Closed, or a failed accept that affects only that follower
+            }
+        }
+    }
+
+    // Sends the stream to one follower from the position it names; acknowledgements are read on another thread
+    private void serve(Socket socket) {
+        Follower follower = null;
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8), 1 << 16);
+            String hello = in.readLine();
+            String[] fields = hello == null ? new String[0] : hello.split("\t");
+            if (fields.length != 2 || !fields[0].equals("FOLLOW")) {
+                return;
+            }
+            long next = Long.parseLong(fields[1]) + 1;
+            if (next - 1 > lastPosition) { // Followed an earlier stream, e.g. before the leader restarted
+                out.write("ERROR\tAhead of the leader's stream; start the follower empty.\n");
+                out.flush();
+                return;
+            }
+            for (Category category : categoryManager.getCategoryList()) {
+                out.write("0\t" + categoryEntry(category) + "\n");
+            }
+            follower = new Follower(socket); // Counts toward a quorum once it acknowledges
+            followers.add(follower);
+            Follower reading = follower;
+            Thread reader = new Thread(() -> readAcknowledgements(reading, in), "finance-replication-acks");
+            reader.setDaemon(true);
+            reader.start();
+
+            List<String> batch = new ArrayList<>(SEND_BATCH);
+            while (!closed) {
+                if (next > lastPosition) {
+                    out.flush(); // Caught up: push out what is buffered, then wait for more
+                    synchronized (stream) {
+                        while (next > lastPosition && !closed) {
+                            stream.wait(1000);
+                        }
+                    }
+                    continue;
+                }
+                synchronized (stream) {
+                    if (next < firstPosition) {
+                        out.write("ERROR\tBehind the retained stream; start the follower empty.\n");
+                        out.flush();
+                        return;
+                    }
+                    int from = (int) (next - firstPosition);
+                    batch.addAll(stream.subList(from, Math.min(stream.size(), from + SEND_BATCH)));
+                }
+                for (String entry : batch) {
+                    out.write(Long.toString(next++));
+                    out.write('\t');
+                    out.write(entry);
+                    out.write('\n');
+                }
+                batch.clear();
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Follower went away or spoke out of turn; it reconnects with its last position
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (follower != null) {
+                followers.remove(follower);
+                updateQuorum();
+            }
+        }
+    }
+
+    private void readAcknowledgements(Follower follower, BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("ACK\t")) {
+                    // Never past what was published, whatever the follower claims
+                    follower.acknowledged = Math.min(Long.parseLong(line.substring(4)), lastPosition);
+                    updateQuorum();
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The sender notices the broken socket and removes the follower
+        } finally {
+            try {
+                follower.socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    // Advances the quorum position to the requiredAcks-th highest follower acknowledgement
+    private void updateQuorum() {
+        if (requiredAcks == 0) {
+            return;
+        }
+        long[] acknowledged = followers.stream().mapToLong(f -> f.acknowledged).toArray();
+        if (acknowledged.length < requiredAcks) {
+            return;
+        }
+        Arrays.sort(acknowledged);
+        long position = acknowledged[acknowledged.length - requiredAcks];
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        synchronized (waiters) {
+            if (position <= quorumPosition) {
+                return;
+            }
+            quorumPosition = position;
+            Map<Long, List<CompletableFuture<Void>>> acknowledgedWaiters = waiters.headMap(position, true);
+            for (List<CompletableFuture<Void>> atPosition : acknowledgedWaiters.values()) {
+                ready.addAll(atPosition);
+            }
+            acknowledgedWaiters.clear();
+        }
+        for (CompletableFuture<Void> waiter : ready) { // Outside the lock: completions run callers' stages
+            waiter.complete(null);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (stream) {
+            stream.notifyAll();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Follower follower : followers) {
+            follower.socket.close();
+        }
+    }
+}
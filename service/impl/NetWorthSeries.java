@@ -0,0 +1,58 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Result of the "net_worth_series" report: one point per day, week or month,
+ * each holding the combined balance of all the user's accounts at the end of
+ * that period. Kept as parallel primitive arrays for charting, with the
+ * balances in cents.
+ */
+public class NetWorthSeries {
+    private final String interval;
+    private final long[] epochDays; // Last day of each period, as LocalDate.toEpochDay()
+    private final long[] cents; // Balance at each period end, in cents
+
+    public NetWorthSeries(String interval, long[] epochDays, long[] cents) {
+        this.interval = interval;
+        this.epochDays = epochDays;
+        this.cents = cents;
+    }
+
+    public String getInterval() {
+        return interval;
+    }
+
+    public long[] getEpochDays() {
+        return epochDays;
+    }
+
+    public long[] getCents() {
+        return cents;
+    }
+
+    public BigDecimal getValue(int index) {
+        return BigDecimal.valueOf(cents[index], 2);
+    }
+
+    public int size() {
+        return cents.length;
+    }
+
+    public LocalDate getDate(int index) {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("NetWorthSeries{interval=").append(interval).append(", points=[");
+        for (int i = 0; i < cents.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getDate(i)).append('=').append(getValue(i));
+        }
+        return sb.append("]}").toString();
+    }
+}
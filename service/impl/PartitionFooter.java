@@ -0,0 +1,90 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Summary kept at the end of one user-month partition file (see
+ * PartitionStore), readable without decoding the rows: date range, row
+ * count, income and expense totals, signed totals per category ID, and a
+ * fingerprint of the rows used to skip rewriting an unchanged month.
+ */
+public class PartitionFooter {
+
+    private final YearMonth month;
+    private final LocalDate minDate;
+    private final LocalDate maxDate;
+    private final int rowCount;
+    private final BigDecimal totalIncome;
+    private final BigDecimal totalExpense;
+    private final Map<UUID, BigDecimal> categoryTotals;
+    private final long fingerprint;
+
+    public PartitionFooter(YearMonth month, LocalDate minDate, LocalDate maxDate, int rowCount,
+            BigDecimal totalIncome, BigDecimal totalExpense, Map<UUID, BigDecimal> categoryTotals, long fingerprint) {
+        this.month = month;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+        this.rowCount = rowCount;
+        this.totalIncome = totalIncome;
+        this.totalExpense = totalExpense;
+        this.categoryTotals = Collections.unmodifiableMap(categoryTotals);
+        this.fingerprint = fingerprint;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public LocalDate getMinDate() {
+        return minDate;
+    }
+
+    public LocalDate getMaxDate() {
+        return maxDate;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public BigDecimal getTotalIncome() {
+        return totalIncome;
+    }
+
+    // Positive: the sum of the expenses' absolute amounts
+    public BigDecimal getTotalExpense() {
+        return totalExpense;
+    }
+
+    // Category ID -> signed sum of its transactions' amounts
+    public Map<UUID, BigDecimal> getCategoryTotals() {
+        return categoryTotals;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // Whether every row of the partition falls within [startDate, endDate]
+    public boolean isWithin(LocalDate startDate, LocalDate endDate) {
+        return rowCount == 0 || (!minDate.isBefore(startDate) && !maxDate.isAfter(endDate));
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionFooter{" +
+                "month=" + month +
+                ", minDate=" + minDate +
+                ", maxDate=" + maxDate +
+                ", rowCount=" + rowCount +
+                ", totalIncome=" + totalIncome +
+                ", totalExpense=" + totalExpense +
+                ", categories=" + categoryTotals.size() +
+                '}';
+    }
+}
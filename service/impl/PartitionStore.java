@@ -0,0 +1,421 @@
+package service.impl;
+
+import domain.Transaction;
+import domain.TransactionType;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists transactions as one immutable, compressed file per user per month
+ * (directory/userId/yyyy-MM.txp), for persistence and archival.
+ *
+ * Rows are sorted by date and stored compactly: the date as a varint delta
+ * from the previous row, the amount as a zigzag varint of its unscaled value
+ * plus its scale, account and category IDs and descriptions as varint codes
+ * into dictionaries at the start of the file, and the transaction ID as 16
+ * raw bytes. A footer at the end (see PartitionFooter) holds the date range,
+ * totals and per-category totals, so range totals for whole months can be
+ * answered without decoding rows (see ReportGenerator). Files are written to
+ * a temporary file and moved into place, and only when a month's rows
+ * changed; footers are cached once read.
+ *
+ * Layout: MAGIC, version, row count, ID dictionary, description dictionary,
+ * rows, footer, footer length (int), MAGIC.
+ */
+public class PartitionStore {
+
+    private static final LatencyHistogram WRITE_USER_LATENCY =
+            MetricsRegistry.methodLatency("PartitionStore", "writeUser");
+    private static final LatencyHistogram READ_MONTH_LATENCY =
+            MetricsRegistry.methodLatency("PartitionStore", "readMonth");
+
+    private static final int MAGIC = 0x46545850; // "FTXP"
+    private static final byte FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".txp";
+    private static final int TYPE_EXPENSE = 1;
+    private static final int WIDE_AMOUNT = 2; // Amount written as a decimal string
+
+    private final Path directory;
+    private final Map<Path, PartitionFooter> footers = new ConcurrentHashMap<>();
+    private final DescriptionPool descriptionPool = new DescriptionPool();
+
+    public PartitionStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Path userDirectory(UUID userId) {
+        return directory.resolve(userId.toString());
+    }
+
+    private Path file(UUID userId, YearMonth month) {
+        return userDirectory(userId).resolve(month + SUFFIX);
+    }
+
+    /**
+     * Brings the user's partitions in line with a snapshot of their
+     * transactions: rewrites the months whose rows changed and deletes the
+     * files of months that no longer have any.
+     *
+     * @return The number of files written or deleted.
+     */
+    public int writeUser(TransactionSnapshot snapshot) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            UUID userId = snapshot.getUserId();
+            Map<YearMonth, List<Transaction>> byMonth = new TreeMap<>();
+            for (Transaction transaction : snapshot.getTransactions(null, null)) {
+                byMonth.computeIfAbsent(YearMonth.from(transaction.getDate()), k -> new ArrayList<>())
+                        .add(transaction);
+            }
+            Files.createDirectories(userDirectory(userId));
+            int changed = 0;
+            for (YearMonth month : getMonths(userId)) {
+                if (!byMonth.containsKey(month)) {
+                    Files.delete(file(userId, month));
+                    footers.remove(file(userId, month));
+                    changed++;
+                }
+            }
+            for (Map.Entry<YearMonth, List<Transaction>> entry : byMonth.entrySet()) {
+                List<Transaction> rows = entry.getValue();
+                PartitionFooter existing = readFooter(userId, entry.getKey());
+                if (existing != null && existing.getRowCount() == rows.size()
+                        && existing.getFingerprint() == fingerprint(rows)) {
+                    continue; // Unchanged since it was written
+                }
+                writeMonth(userId, entry.getKey(), rows);
+                changed++;
+            }
+            return changed;
+        } finally {
+            WRITE_USER_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Months with a partition file, oldest first
+    public List<YearMonth> getMonths(UUID userId) throws IOException {
+        List<YearMonth> months = new ArrayList<>();
+        Path userDirectory = userDirectory(userId);
+        if (!Files.isDirectory(userDirectory)) {
+            return months;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(userDirectory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                months.add(YearMonth.parse(name.substring(0, name.length() - SUFFIX.length())));
+            }
+        }
+        months.sort(Comparator.naturalOrder());
+        return months;
+    }
+
+    // Total size of the user's partition files, in bytes
+    public long getSizeBytes(UUID userId) throws IOException {
+        long total = 0;
+        for (YearMonth month : getMonths(userId)) {
+            total += Files.size(file(userId, month));
+        }
+        return total;
+    }
+
+    private void writeMonth(UUID userId, YearMonth month, List<Transaction> transactions) throws IOException {
+        List<Transaction> rows = new ArrayList<>(transactions);
+        rows.sort(Comparator.comparingLong(Transaction::getEpochDay));
+
+        List<UUID> ids = new ArrayList<>();
+        Map<UUID, Integer> idCodes = new HashMap<>();
+        List<String> descriptions = new ArrayList<>();
+        Map<String, Integer> descriptionCodes = new HashMap<>();
+        BigDecimal totalIncome = BigDecimal.ZERO;
+        BigDecimal totalExpense = BigDecimal.ZERO;
+        Map<UUID, BigDecimal> categoryTotals = new HashMap<>();
+        for (Transaction transaction : rows) {
+            idCodes.computeIfAbsent(transaction.getAccountId(), k -> add(ids, k));
+            idCodes.computeIfAbsent(transaction.getCategoryId(), k -> add(ids, k));
+            if (transaction.getDescription() != null) {
+                descriptionCodes.computeIfAbsent(transaction.getDescription(), k -> add(descriptions, k) + 1);
+            }
+            BigDecimal amount = transaction.getAmount();
+            if (amount.signum() > 0) {
+                totalIncome = totalIncome.add(amount);
+            } else {
+                totalExpense = totalExpense.add(amount.negate());
+            }
+            categoryTotals.merge(transaction.getCategoryId(), amount, BigDecimal::add);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows.size() * 28);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        writeVarLong(out, rows.size());
+        writeVarLong(out, ids.size());
+        for (UUID id : ids) {
+            writeUuid(out, id);
+        }
+        writeVarLong(out, descriptions.size());
+        for (String description : descriptions) {
+            byte[] utf8 = description.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, utf8.length);
+            out.write(utf8);
+        }
+        long previousDay = month.atDay(1).toEpochDay();
+        for (Transaction transaction : rows) {
+            writeVarLong(out, transaction.getEpochDay() - previousDay);
+            previousDay = transaction.getEpochDay();
+            BigDecimal amount = transaction.getAmount();
+            boolean wide = amount.unscaledValue().bitLength() >= Long.SIZE;
+            int flags = (transaction.getTransactionType() == TransactionType.EXPENSE ? TYPE_EXPENSE : 0)
+                    | (wide ? WIDE_AMOUNT : 0);
+            out.writeByte(flags);
+            if (wide) {
+                out.writeUTF(amount.toString());
+            } else {
+                writeVarLong(out, zigzag(amount.scale()));
+                writeVarLong(out, zigzag(amount.unscaledValue().longValue()));
+            }
+            writeVarLong(out, idCodes.get(transaction.getAccountId()));
+            writeVarLong(out, idCodes.get(transaction.getCategoryId()));
+            writeVarLong(out, transaction.getDescription() == null ? 0
+                    : descriptionCodes.get(transaction.getDescription()));
+            writeUuid(out, transaction.getId());
+        }
+
+        int footerStart = out.size();
+        LocalDate minDate = rows.isEmpty() ? null : rows.get(0).getDate();
+        LocalDate maxDate = rows.isEmpty() ? null : rows.get(rows.size() - 1).getDate();
+        out.writeInt(minDate == null ? 0 : (int) minDate.toEpochDay());
+        out.writeInt(maxDate == null ? 0 : (int) maxDate.toEpochDay());
+        writeVarLong(out, rows.size());
+        out.writeUTF(totalIncome.toString());
+        out.writeUTF(totalExpense.toString());
+        writeVarLong(out, categoryTotals.size());
+        for (Map.Entry<UUID, BigDecimal> total : categoryTotals.entrySet()) {
+            writeUuid(out, total.getKey());
+            out.writeUTF(total.getValue().toString());
+        }
+        long fingerprint = fingerprint(rows);
+        out.writeLong(fingerprint);
+        out.writeInt(out.size() - footerStart);
+        out.writeInt(MAGIC);
+        out.flush();
+
+        Path target = file(userId, month);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, bytes.toByteArray());
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        footers.put(target, new PartitionFooter(month, minDate, maxDate, rows.size(), totalIncome, totalExpense,
+                categoryTotals, fingerprint));
+    }
+
+    private static <T> int add(List<T> values, T value) {
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    /**
+     * Reads a month's footer, from the end of its file, without decoding its
+     * rows.
+     *
+     * @return null if the month has no partition file.
+     */
+    public PartitionFooter readFooter(UUID userId, YearMonth month) throws IOException {
+        Path file = file(userId, month);
+        PartitionFooter cached = footers.get(file);
+        if (cached != null) {
+            return cached;
+        }
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer trailer = ByteBuffer.allocate(2 * Integer.BYTES);
+            readFully(channel, trailer, channel.size() - trailer.capacity());
+            trailer.flip();
+            int footerLength = trailer.getInt();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException("Not a partition file: " + file);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(footerLength);
+            readFully(channel, footer, channel.size() - trailer.capacity() - footerLength);
+            PartitionFooter parsed = parseFooter(month, new DataInputStream(
+                    new ByteArrayInputStream(footer.array())));
+            footers.put(file, parsed);
+            return parsed;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Partition file ends early.");
+            }
+        }
+    }
+
+    private static PartitionFooter parseFooter(YearMonth month, DataInput in) throws IOException {
+        int minDay = in.readInt();
+        int maxDay = in.readInt();
+        int rowCount = (int) readVarLong(in);
+        BigDecimal totalIncome = new BigDecimal(in.readUTF());
+        BigDecimal totalExpense = new BigDecimal(in.readUTF());
+        int categories = (int) readVarLong(in);
+        Map<UUID, BigDecimal> categoryTotals = new HashMap<>();
+        for (int i = 0; i < categories; i++) {
+            categoryTotals.put(readUuid(in), new BigDecimal(in.readUTF()));
+        }
+        long fingerprint = in.readLong();
+        return new PartitionFooter(month, rowCount == 0 ? null : LocalDate.ofEpochDay(minDay),
+                rowCount == 0 ? null : LocalDate.ofEpochDay(maxDay), rowCount, totalIncome, totalExpense,
+                categoryTotals, fingerprint);
+    }
+
+    // Decodes every row of a month, in date order; empty if it has no partition file
+    public List<Transaction> readMonth(UUID userId, YearMonth month) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            Path file = file(userId, month);
+            if (!Files.exists(file)) {
+                return new ArrayList<>();
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Not a partition file, or an unsupported version: " + file);
+            }
+            int rowCount = (int) readVarLong(in);
+            UUID[] ids = new UUID[(int) readVarLong(in)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = readUuid(in);
+            }
+            String[] descriptions = new String[(int) readVarLong(in) + 1]; // Code 0 is null
+            for (int i = 1; i < descriptions.length; i++) {
+                byte[] utf8 = new byte[(int) readVarLong(in)];
+                in.readFully(utf8);
+                descriptions[i] = descriptionPool.share(new String(utf8, StandardCharsets.UTF_8));
+            }
+            List<Transaction> rows = new ArrayList<>(rowCount);
+            long day = month.atDay(1).toEpochDay();
+            for (int i = 0; i < rowCount; i++) {
+                day += readVarLong(in);
+                int flags = in.readUnsignedByte();
+                TransactionType type = (flags & TYPE_EXPENSE) != 0 ? TransactionType.EXPENSE : TransactionType.INCOME;
+                BigDecimal wideAmount = null;
+                long unscaled = 0;
+                int scale = 0;
+                if ((flags & WIDE_AMOUNT) != 0) {
+                    wideAmount = new BigDecimal(in.readUTF());
+                } else {
+                    scale = (int) unzigzag(readVarLong(in));
+                    unscaled = unzigzag(readVarLong(in));
+                }
+                UUID accountId = ids[(int) readVarLong(in)];
+                UUID categoryId = ids[(int) readVarLong(in)];
+                String description = descriptions[(int) readVarLong(in)];
+                UUID id = readUuid(in);
+                rows.add(wideAmount != null || scale != (byte) scale
+                        ? new Transaction(id, accountId, categoryId,
+                                wideAmount != null ? wideAmount : BigDecimal.valueOf(unscaled, scale),
+                                LocalDate.ofEpochDay(day), description, type)
+                        : Transaction.restore(id, accountId, categoryId, unscaled, (byte) scale, (int) day,
+                                description, type));
+            }
+            return rows;
+        } finally {
+            READ_MONTH_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Order-independent hash of a month's rows: any change to any field of any row changes it
+    private static long fingerprint(List<Transaction> rows) {
+        long sum = 0;
+        for (Transaction transaction : rows) {
+            BigDecimal amount = transaction.getAmount();
+            long h = mix(transaction.getId().getMostSignificantBits());
+            h = mix(h ^ transaction.getId().getLeastSignificantBits());
+            h = mix(h ^ amount.unscaledValue().longValue() ^ ((long) amount.scale() << 48));
+            h = mix(h ^ transaction.getEpochDay() ^ ((long) transaction.getTransactionType().ordinal() << 40));
+            h = mix(h ^ transaction.getAccountId().hashCode() ^ ((long) transaction.getCategoryId().hashCode() << 32));
+            h = mix(h ^ (transaction.getDescription() == null ? 0 : transaction.getDescription().hashCode()));
+            sum += h;
+        }
+        return sum;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in partition file.");
+    }
+
+    private static void writeUuid(DataOutput out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
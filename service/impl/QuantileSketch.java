@@ -0,0 +1,93 @@
+package service.impl;
+
+/**
+ * Mergeable quantile sketch over positive values with a relative error
+ * guarantee (the DDSketch scheme): values are counted in logarithmic buckets
+ * whose bounds grow by a factor gamma, and every quantile is answered within
+ * RELATIVE_ACCURACY of a value actually at that rank. Memory depends on the
+ * range of values, not their number (about 1,200 buckets span 0.01 to one
+ * billion). Merging adds bucket counts, so it loses nothing.
+ * Not thread-safe.
+ */
+class QuantileSketch {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private int[] counts = new int[0];
+    private int offset; // Bucket index of counts[0]
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Values must be positive
+    void add(double value) {
+        int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+        ensureCovers(index, index);
+        counts[index - offset]++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        ensureCovers(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.offset + i - offset] += other.counts[i];
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    // Value at the given quantile (0..1); NaN when empty
+    double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1)); // Zero-based rank of the wanted value
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                // Midpoint of the bucket in relative terms, clamped to what was actually seen
+                double estimate = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+                return Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return max;
+    }
+
+    private void ensureCovers(int lowIndex, int highIndex) {
+        if (counts.length == 0) {
+            counts = new int[highIndex - lowIndex + 1];
+            offset = lowIndex;
+            return;
+        }
+        int low = Math.min(lowIndex, offset);
+        int high = Math.max(highIndex, offset + counts.length - 1);
+        if (low == offset && high == offset + counts.length - 1) {
+            return;
+        }
+        // Grow with some slack on the side that overflowed, so steady growth is amortized
+        int slack = Math.max(8, counts.length / 2);
+        if (low < offset) {
+            low -= slack;
+        }
+        if (high > offset + counts.length - 1) {
+            high += slack;
+        }
+        int[] grown = new int[high - low + 1];
+        System.arraycopy(counts, 0, grown, offset - low, counts.length);
+        counts = grown;
+        offset = low;
+    }
+}
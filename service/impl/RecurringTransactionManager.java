@@ -0,0 +1,353 @@
+package service.impl;
+
+import domain.RecurringTransaction;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores recurring transaction templates and materializes their due
+ * occurrences through TransactionManager.
+ * Templates wait in a priority queue ordered by next due date, so a run only
+ * touches the templates that are actually due. Each template keeps a cursor of
+ * occurrences already recorded, so catching up after downtime (or running
+ * twice for the same day) never records an occurrence twice.
+ */
+public class RecurringTransactionManager {
+
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_RECURRING_TRANSACTION_LIST_LATENCY =
+            MetricsRegistry.methodLatency("RecurringTransactionManager", "getRecurringTransactionList");
+    private static final LatencyHistogram GET_RECURRING_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("RecurringTransactionManager", "getRecurringTransaction");
+    private static final LatencyHistogram CREATE_RECURRING_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("RecurringTransactionManager", "createRecurringTransaction");
+    private static final LatencyHistogram CANCEL_RECURRING_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("RecurringTransactionManager", "cancelRecurringTransaction");
+    private static final LatencyHistogram RUN_DUE_TRANSACTIONS_LATENCY =
+            MetricsRegistry.methodLatency("RecurringTransactionManager", "runDueTransactions");
+
+    // Number of due templates taken off the queue per batch
+    private static final int BATCH_SIZE = 1000;
+
+    // In-memory storage for templates (UserId -> TemplateId -> RecurringTransaction)
+    private final Map<UUID, Map<UUID, RecurringTransaction>> userRecurringTransactions = new ConcurrentHashMap<>();
+    // Due queue; stale entries (cancelled or already advanced templates) are skipped when polled
+    private final PriorityQueue<DueEntry> dueQueue = new PriorityQueue<>();
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+
+    private final LongAdder occurrencesRecorded = MetricsRegistry.getDefault().counter(
+            "finance_recurring_occurrences_recorded_total", "Recurring occurrences recorded as transactions");
+    private final LongAdder templatesFailed = MetricsRegistry.getDefault().counter(
+            "finance_recurring_templates_failed_total", "Recurring templates deactivated after a failed occurrence");
+    private final LongAdder occurrencesDeferred = MetricsRegistry.getDefault().counter(
+            "finance_recurring_occurrences_deferred_total", "Recurring occurrences left for the next run after a"
+                    + " passing failure");
+
+    private static class DueEntry implements Comparable<DueEntry> {
+        final long dueDay;
+        final int occurrence;
+        final RecurringTransaction template;
+
+        DueEntry(long dueDay, int occurrence, RecurringTransaction template) {
+            this.dueDay = dueDay;
+            this.occurrence = occurrence;
+            this.template = template;
+        }
+
+        @Override
+        public int compareTo(DueEntry other) {
+            return Long.compare(dueDay, other.dueDay);
+        }
+    }
+
+    public RecurringTransactionManager(AccountManager accountManager, TransactionManager transactionManager) {
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_recurring_templates", "Stored recurring transaction templates", labels,
+                () -> userRecurringTransactions.values().stream().mapToInt(Map::size).sum());
+        metrics.gauge("finance_recurring_queue_size", "Entries waiting in the recurring due queue", labels, () -> {
+            synchronized (dueQueue) {
+                return dueQueue.size();
+            }
+        });
+    }
+
+    // Rely on AccountManager for user existence check
+    private void checkUserExists(UUID userId) throws NotFoundException {
+        if (!accountManager.userExists(userId)) {
+            throw new NotFoundException("User with ID " + userId + " not found.");
+        }
+    }
+
+    public List<RecurringTransaction> getRecurringTransactionList(UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, RecurringTransaction> templates = userRecurringTransactions.getOrDefault(userId,
+                    new ConcurrentHashMap<>());
+            return new ArrayList<>(templates.values());
+        } finally {
+            GET_RECURRING_TRANSACTION_LIST_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    public RecurringTransaction getRecurringTransaction(UUID templateId, UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, RecurringTransaction> templates = userRecurringTransactions.get(userId);
+            if (templates == null || !templates.containsKey(templateId)) {
+                throw new NotFoundException("Recurring transaction with ID " + templateId + " not found for user " + userId);
+            }
+            return templates.get(templateId);
+        } finally {
+            GET_RECURRING_TRANSACTION_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    public RecurringTransaction createRecurringTransaction(UUID userId, UUID accountId, String categoryName,
+            String type, BigDecimal amount, String frequency, LocalDate startDate, LocalDate endDate)
+            throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+
+            if (accountId == null || categoryName == null || categoryName.trim().isEmpty() || type == null
+                    || amount == null || frequency == null || startDate == null) {
+                throw new ValidationException(
+                        "Account ID, category name, type, amount, frequency, and start date are required.");
+            }
+            if (!(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
+                throw new ValidationException("Invalid transaction type: " + type + ". Must be 'income' or 'expense'.");
+            }
+            String normalizedFrequency = frequency.trim().toLowerCase();
+            if (!(normalizedFrequency.equals("daily") || normalizedFrequency.equals("weekly")
+                    || normalizedFrequency.equals("monthly") || normalizedFrequency.equals("yearly"))) {
+                throw new ValidationException("Invalid frequency: " + frequency
+                        + ". Must be 'daily', 'weekly', 'monthly' or 'yearly'.");
+            }
+            if (amount.compareTo(BigDecimal.ZERO) == 0) {
+                throw new ValidationException("Transaction amount cannot be zero.");
+            }
+            if (endDate != null && endDate.isBefore(startDate)) {
+                throw new ValidationException("End date cannot be before start date.");
+            }
+            accountManager.getAccount(accountId, userId); // Checks user auth
+
+            RecurringTransaction template = new RecurringTransaction(userId, accountId, categoryName.trim(),
+                    type.toLowerCase(), amount.abs(), normalizedFrequency, startDate, endDate);
+            userRecurringTransactions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(template.getId(),
+                    template);
+            schedule(template);
+            return template;
+        } finally {
+            CREATE_RECURRING_TRANSACTION_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    public boolean cancelRecurringTransaction(UUID templateId, UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            RecurringTransaction template = getRecurringTransaction(templateId, userId);
+            synchronized (template) {
+                template.setActive(false); // Its queue entry becomes stale
+            }
+            userRecurringTransactions.get(userId).remove(templateId);
+            return true;
+        } finally {
+            CANCEL_RECURRING_TRANSACTION_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Records every occurrence due on or before asOf, including occurrences
+     * missed while the application was down, in one batch per account (see
+     * TransactionManager.recordTransactionBatch). Templates that can no
+     * longer be recorded (e.g. their account or category was deleted) are
+     * deactivated and keep the reason in lastError; those that failed for a
+     * passing reason keep it too but stay scheduled, and are retried on the
+     * next run.
+     *
+     * @return The number of transactions recorded.
+     */
+    public int runDueTransactions(LocalDate asOf) {
+        long startNanos = System.nanoTime();
+        try {
+            long asOfDay = asOf.toEpochDay();
+            int recorded = 0;
+            List<DueEntry> batch = new ArrayList<>(BATCH_SIZE);
+            List<RecurringTransaction> deferred = new ArrayList<>(); // Back on the queue once this run is done
+            while (true) {
+                batch.clear();
+                synchronized (dueQueue) {
+                    while (batch.size() < BATCH_SIZE && !dueQueue.isEmpty() && dueQueue.peek().dueDay <= asOfDay) {
+                        batch.add(dueQueue.poll());
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Map<UUID, List<DueOccurrences>> byAccount = new LinkedHashMap<>();
+                for (DueEntry entry : batch) {
+                    DueOccurrences due = collect(entry, asOf, deferred);
+                    if (due != null) {
+                        byAccount.computeIfAbsent(due.rows.get(0).getAccountId(), k -> new ArrayList<>()).add(due);
+                    }
+                }
+                for (List<DueOccurrences> account : byAccount.values()) {
+                    recorded += record(account, deferred);
+                }
+            }
+            for (RecurringTransaction template : deferred) {
+                schedule(template);
+            }
+            return recorded;
+        } finally {
+            RUN_DUE_TRANSACTIONS_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // One template's occurrences due in a run, validated but not yet recorded
+    private static class DueOccurrences {
+        final RecurringTransaction template;
+        final List<Transaction> rows = new ArrayList<>();
+
+        DueOccurrences(RecurringTransaction template) {
+            this.template = template;
+        }
+    }
+
+    // The entry's due occurrences, or null if it is stale or failed
+    private DueOccurrences collect(DueEntry entry, LocalDate asOf, List<RecurringTransaction> deferred) {
+        RecurringTransaction template = entry.template;
+        synchronized (template) {
+            if (template.getOccurrencesGenerated() != entry.occurrence || template.getNextDueDate() == null) {
+                return null; // Stale entry (the template was already advanced), or cancelled
+            }
+            DueOccurrences due = new DueOccurrences(template);
+            LocalDate end = template.getEndDate();
+            for (int n = entry.occurrence; ; n++) {
+                LocalDate date = template.getOccurrenceDate(n);
+                if (date.isAfter(asOf) || (end != null && date.isAfter(end))) {
+                    break;
+                }
+                try {
+                    due.rows.add(transactionManager.prepareTransaction(template.getUserId(),
+                            template.getAccountId(), template.getCategoryName(), template.getType(),
+                            template.getAmount(), date, null));
+                } catch (ValidationException | NotFoundException | SecurityException e) {
+                    fail(template, date, e, deferred);
+                    return null;
+                }
+            }
+            return due.rows.isEmpty() ? null : due;
+        }
+    }
+
+    /**
+     * Records one account's due occurrences as a single batch. If the batch
+     * fails, each template is retried on its own, so one template's deleted
+     * category does not hold back the others.
+     */
+    private int record(List<DueOccurrences> account, List<RecurringTransaction> deferred) {
+        UUID userId = account.get(0).template.getUserId();
+        UUID accountId = account.get(0).rows.get(0).getAccountId();
+        List<Transaction> rows = new ArrayList<>();
+        for (DueOccurrences due : account) {
+            rows.addAll(due.rows);
+        }
+        try {
+            transactionManager.recordTransactionBatch(userId, accountId, rows);
+            for (DueOccurrences due : account) {
+                advance(due);
+            }
+            return rows.size();
+        } catch (NotFoundException | SecurityException e) {
+            if (account.size() == 1) {
+                DueOccurrences due = account.get(0);
+                fail(due.template, due.rows.get(0).getDate(), e, deferred);
+                return 0;
+            }
+        }
+        int recorded = 0;
+        for (DueOccurrences due : account) {
+            recorded += record(List.of(due), deferred);
+        }
+        return recorded;
+    }
+
+    private void advance(DueOccurrences due) {
+        RecurringTransaction template = due.template;
+        synchronized (template) {
+            for (int i = 0; i < due.rows.size(); i++) {
+                template.markOccurrenceGenerated();
+            }
+            template.setLastError(null);
+        }
+        occurrencesRecorded.add(due.rows.size());
+        schedule(template);
+    }
+
+    /**
+     * Deactivates a template that failed because it can no longer be
+     * recorded: its next occurrence still does not validate, e.g. its
+     * account or category is gone. Otherwise (say its category was briefly
+     * hidden by a delete that was then refused) it stays scheduled.
+     */
+    private void fail(RecurringTransaction template, LocalDate due, Exception e, List<RecurringTransaction> deferred) {
+        boolean permanent;
+        try {
+            transactionManager.prepareTransaction(template.getUserId(), template.getAccountId(),
+                    template.getCategoryName(), template.getType(), template.getAmount(), due, null);
+            permanent = false;
+        } catch (ValidationException | NotFoundException | SecurityException stillFailing) {
+            permanent = true;
+        }
+        synchronized (template) {
+            template.setLastError(due + ": " + e.getMessage());
+            if (permanent) {
+                template.setActive(false);
+            }
+        }
+        if (permanent) {
+            templatesFailed.increment();
+        } else {
+            occurrencesDeferred.increment();
+            deferred.add(template);
+        }
+    }
+
+    private void schedule(RecurringTransaction template) {
+        DueEntry entry;
+        synchronized (template) {
+            LocalDate due = template.getNextDueDate();
+            if (due == null) {
+                return; // Schedule ended or cancelled
+            }
+            entry = new DueEntry(due.toEpochDay(), template.getOccurrencesGenerated(), template);
+        }
+        synchronized (dueQueue) {
+            dueQueue.add(entry);
+        }
+    }
+}
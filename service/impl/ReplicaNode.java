@@ -0,0 +1,348 @@
+package service.impl;
+
+import domain.Account;
+import domain.Budget;
+import domain.Category;
+import domain.CategoryRule;
+import domain.ContributionRule;
+import domain.FinancialGoal;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follower side of journal replication: connects to a JournalReplicator,
+ * applies the leader's journal entries in stream order to its own managers
+ * (one set holding every user, whatever shard they live on at the leader)
+ * and acknowledges what it has applied. Serves reads and reports only; the
+ * managers are exposed for read-only use, e.g. by a FinanceHttpServer in
+ * read-only mode.
+ *
+ * Its AutoContributionManager only keeps the rules: contributions arrive
+ * in the journal as the leader applied them.
+ *
+ * Exchange rates are not replicated; load the same rates file on every node.
+ */
+public class ReplicaNode implements AutoCloseable {
+
+    private final CategoryManager categoryManager = new CategoryManager();
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final BudgetManager budgetManager;
+    private final FinancialGoalManager financialGoalManager;
+    private final ReportGenerator reportGenerator;
+    private final CategoryRuleManager categoryRuleManager;
+    private final AutoContributionManager autoContributionManager; // Passive: contributions come journaled
+
+    private long appliedPosition; // Guarded by this
+    private volatile Socket socket;
+    private volatile String leaderError;
+
+    private final LongAdder applied = MetricsRegistry.getDefault().counter(
+            "finance_replica_entries_applied_total", "Journal entries applied by this replica");
+    private final LongAdder applyFailures = MetricsRegistry.getDefault().counter(
+            "finance_replica_apply_failures_total", "Journal entries a replica could not apply");
+
+    public ReplicaNode() {
+        this(new ExchangeRateTable(ExchangeRateTable.DEFAULT_BASE_CURRENCY));
+    }
+
+    public ReplicaNode(ExchangeRateTable exchangeRates) {
+        this.accountManager = new AccountManager(exchangeRates);
+        this.transactionManager = new TransactionManager(accountManager, categoryManager);
+        this.budgetManager = new BudgetManager(categoryManager, transactionManager);
+        this.financialGoalManager = new FinancialGoalManager();
+        this.reportGenerator = new ReportGenerator(accountManager, transactionManager);
+        this.categoryRuleManager = new CategoryRuleManager(accountManager, categoryManager, transactionManager);
+        this.autoContributionManager = new AutoContributionManager(financialGoalManager, categoryManager,
+                transactionManager, false);
+    }
+
+    // The managers' gauges, labelled to tell this node from the leader and other replicas in the process
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        categoryManager.registerGauges(metrics, labels);
+        accountManager.registerGauges(metrics, labels);
+        transactionManager.registerGauges(metrics, labels);
+        budgetManager.registerGauges(metrics, labels);
+        financialGoalManager.registerGauges(metrics, labels);
+        categoryRuleManager.registerGauges(metrics, labels);
+        autoContributionManager.registerGauges(metrics, labels);
+    }
+
+    /**
+     * Connects to the leader and follows its stream on a background thread,
+     * resuming after the last position applied. Call again to reconnect
+     * after isConnected() turns false.
+     */
+    public void connect(String host, int port) throws IOException {
+        Socket connection = new Socket(host, port);
+        connection.setTcpNoDelay(true);
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(),
+                StandardCharsets.UTF_8));
+        out.write("FOLLOW\t" + getAppliedPosition() + "\n");
+        out.flush();
+        socket = connection;
+        leaderError = null;
+        Thread follower = new Thread(() -> follow(connection, out), "finance-replica");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    private void follow(Socket connection, BufferedWriter out) {
+        try (connection) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("ERROR\t")) {
+                    leaderError = line.substring(6);
+                    return;
+                }
+                int tab = line.indexOf('\t');
+                long position = Long.parseLong(line.substring(0, tab));
+                apply(line.substring(tab + 1));
+                if (position > 0) {
+                    synchronized (this) {
+                        appliedPosition = position;
+                        notifyAll();
+                    }
+                }
+                if (!in.ready()) { // End of a burst: one acknowledgement covers all of it
+                    out.write("ACK\t" + getAppliedPosition() + "\n");
+                    out.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Connection lost; connect() resumes from the last applied position
+        } finally {
+            socket = null;
+        }
+    }
+
+    // Applies one journal entry; entries that fail are counted and skipped
+    void apply(String entry) {
+        String[] f = ShardJournal.parse(entry);
+        String operation = f[1];
+        UUID userId = f[2] == null ? null : UUID.fromString(f[2]);
+        try {
+            switch (operation) {
+                case "createCategory":
+                    // Entries written before categories had parents end at the icon
+                    UUID parentId = f.length > 7 && f[7] != null ? UUID.fromString(f[7]) : null;
+                    categoryManager.restoreCategory(new Category(UUID.fromString(f[3]), f[4], f[5], f[6], parentId));
+                    break;
+                case "deleteCategory":
+                    categoryManager.deleteCategory(UUID.fromString(f[3]));
+                    break;
+                case "mergeCategory":
+                    categoryManager.mergeCategory(UUID.fromString(f[3]), UUID.fromString(f[4]));
+                    break;
+                case "addUser":
+                    accountManager.addUser(userId);
+                    budgetManager.addUser(userId);
+                    financialGoalManager.addUser(userId);
+                    break;
+                case "createAccount":
+                    accountManager.restoreAccount(new Account(UUID.fromString(f[3]), userId, f[4],
+                            new BigDecimal(f[5]), f[6], f[7]));
+                    break;
+                case "updateAccount":
+                    accountManager.updateAccount(UUID.fromString(f[3]), userId, f[4], f[5], Boolean.parseBoolean(f[6]));
+                    break;
+                case "deleteAccount":
+                    accountManager.deleteAccount(UUID.fromString(f[3]), userId);
+                    break;
+                case "recordTransaction":
+                    transactionManager.restoreTransaction(userId, new Transaction(UUID.fromString(f[3]),
+                            UUID.fromString(f[4]), UUID.fromString(f[5]), new BigDecimal(f[7]), LocalDate.parse(f[8]),
+                            transactionManager.shareDescription(f[9]), f[6]));
+                    break;
+                case "updateTransaction":
+                    transactionManager.updateTransaction(UUID.fromString(f[3]), userId, UUID.fromString(f[4]),
+                            UUID.fromString(f[5]), new BigDecimal(f[6]), LocalDate.parse(f[7]), f[8]);
+                    break;
+                case "deleteTransaction":
+                    transactionManager.deleteTransaction(UUID.fromString(f[3]), userId);
+                    break;
+                case "createBudget":
+                    budgetManager.restoreBudget(new Budget(UUID.fromString(f[3]), userId, f[4], new BigDecimal(f[5]),
+                            LocalDate.parse(f[6]), LocalDate.parse(f[7]), parseIds(f[8])));
+                    break;
+                case "updateBudget":
+                    budgetManager.updateBudget(UUID.fromString(f[3]), userId, f[4], new BigDecimal(f[5]),
+                            LocalDate.parse(f[6]), LocalDate.parse(f[7]), parseIds(f[8]), Boolean.parseBoolean(f[9]));
+                    break;
+                case "deleteBudget":
+                    budgetManager.deleteBudget(UUID.fromString(f[3]), userId);
+                    break;
+                case "createFinancialGoal":
+                    financialGoalManager.restoreFinancialGoal(new FinancialGoal(UUID.fromString(f[3]), userId, f[4],
+                            new BigDecimal(f[5]), new BigDecimal(f[6]), LocalDate.parse(f[7])));
+                    break;
+                case "updateFinancialGoal":
+                    financialGoalManager.restoreFinancialGoalUpdate(UUID.fromString(f[3]), userId, f[4],
+                            new BigDecimal(f[5]), new BigDecimal(f[6]), LocalDate.parse(f[7]));
+                    break;
+                case "addContribution":
+                    financialGoalManager.addContribution(UUID.fromString(f[3]), userId, new BigDecimal(f[4]));
+                    break;
+                case "deleteFinancialGoal":
+                    financialGoalManager.deleteFinancialGoal(UUID.fromString(f[3]), userId);
+                    break;
+                case "autoContribution":
+                    financialGoalManager.addContributionUpToTarget(UUID.fromString(f[3]), userId, new BigDecimal(f[4]));
+                    break;
+                case "createContributionRule":
+                    autoContributionManager.restoreContributionRule(new ContributionRule(UUID.fromString(f[3]), userId,
+                            UUID.fromString(f[4]), UUID.fromString(f[5]), new BigDecimal(f[6])));
+                    break;
+                case "deleteContributionRule":
+                    autoContributionManager.deleteContributionRule(UUID.fromString(f[3]), userId);
+                    break;
+                case "createCategoryRule":
+                    categoryRuleManager.restoreCategoryRule(new CategoryRule(UUID.fromString(f[3]), userId, f[4],
+                            UUID.fromString(f[5])));
+                    break;
+                case "deleteCategoryRule":
+                    categoryRuleManager.deleteCategoryRule(UUID.fromString(f[3]), userId);
+                    break;
+                case "recategorizeHistory":
+                    categoryRuleManager.recategorizeHistory(userId, f[3] == null ? null : LocalDate.parse(f[3]),
+                            f[4] == null ? null : LocalDate.parse(f[4]));
+                    break;
+                case "moveOut":
+                case "moveIn":
+                    break; // Shard placement only matters at the leader
+                default:
+                    applyFailures.increment();
+                    return;
+            }
+            applied.increment();
+        } catch (ValidationException | NotFoundException | RuntimeException e) {
+            applyFailures.increment();
+        }
+    }
+
+    private static List<UUID> parseIds(String joined) {
+        List<UUID> ids = new ArrayList<>();
+        for (String id : joined.split(",")) {
+            ids.add(UUID.fromString(id));
+        }
+        return ids;
+    }
+
+    public synchronized long getAppliedPosition() {
+        return appliedPosition;
+    }
+
+    /**
+     * Waits until the replica has applied the given stream position, e.g.
+     * the leader's JournalReplicator.getPosition() after a write, for a read
+     * that must see that write.
+     *
+     * @return false if the timeout passed first.
+     */
+    public synchronized boolean awaitPosition(long position, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (appliedPosition < position) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    // Why the leader last refused this replica, or null
+    public String getLeaderError() {
+        return leaderError;
+    }
+
+    // --- Reads ---
+
+    public List<Account> getAccountList(UUID userId) throws NotFoundException {
+        return accountManager.getAccountList(userId);
+    }
+
+    public BigDecimal getBalanceAsOf(UUID accountId, UUID userId, LocalDate date)
+            throws ValidationException, NotFoundException {
+        return accountManager.getBalanceAsOf(accountId, userId, date);
+    }
+
+    public List<Transaction> getTransactionsByUser(UUID userId, LocalDate startDate, LocalDate endDate)
+            throws NotFoundException {
+        return transactionManager.getTransactionsByUser(userId, startDate, endDate);
+    }
+
+    public Object generateReport(UUID userId, String reportType, LocalDate startDate, LocalDate endDate,
+            Map<String, Object> parameters) throws ValidationException, NotFoundException {
+        return reportGenerator.generateReport(userId, reportType, startDate, endDate, parameters);
+    }
+
+    // Managers for read-only use: writes made through them are not replicated and make the replica diverge
+    public CategoryManager getCategoryManager() {
+        return categoryManager;
+    }
+
+    public AccountManager getAccountManager() {
+        return accountManager;
+    }
+
+    public TransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    public BudgetManager getBudgetManager() {
+        return budgetManager;
+    }
+
+    public FinancialGoalManager getFinancialGoalManager() {
+        return financialGoalManager;
+    }
+
+    public ReportGenerator getReportGenerator() {
+        return reportGenerator;
+    }
+
+    public CategoryRuleManager getCategoryRuleManager() {
+        return categoryRuleManager;
+    }
+
+    public AutoContributionManager getAutoContributionManager() {
+        return autoContributionManager;
+    }
+
+    // Drops the connection to the leader, keeping what was applied; connect() resumes after it
+    public void disconnect() throws IOException {
+        Socket connection = socket;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        disconnect();
+    }
+}
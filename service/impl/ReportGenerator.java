@@ -1,14 +1,27 @@
 package service.impl;
 
+import domain.Account;
+import domain.Category;
 import domain.Transaction;
 import exception.NotFoundException;
 import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.ReportGenerationEvent;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -20,6 +33,15 @@ import java.util.stream.Collectors;
 // If not, this class should just be ReportGenerator without implements
 public class ReportGenerator /* implements service.ReportGenerator */ {
 
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GENERATE_REPORT_LATENCY =
+            MetricsRegistry.methodLatency("ReportGenerator", "generateReport");
+    private static final LatencyHistogram EXPORT_REPORT_LATENCY =
+            MetricsRegistry.methodLatency("ReportGenerator", "exportReport");
+
+    // About a century; net_worth_series allocates a few arrays of this many days per request
+    private static final int MAX_SERIES_DAYS = 36_600;
+
     // Use the concrete classes from service.impl directly
     private final AccountManager accountManager;
     private final TransactionManager transactionManager;
@@ -42,39 +64,206 @@ public class ReportGenerator /* implements service.ReportGenerator */ {
     public Object generateReport(UUID userId, String reportType, LocalDate startDate, LocalDate endDate,
             Map<String, Object> parameters)
             throws ValidationException, NotFoundException {
-        checkUserExists(userId);
+        return generateReport(userId, null, reportType, startDate, endDate, parameters);
+    }
 
-        if (reportType == null || reportType.trim().isEmpty()) {
-            throw new ValidationException("Report type cannot be empty.");
-        }
-        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
-            throw new ValidationException("Invalid report period.");
+    /**
+     * Generates a report from a snapshot (see TransactionManager.snapshot),
+     * so that several reports, and balances read from the same snapshot,
+     * agree with each other however long they take. Applies to the reports
+     * built from transactions; net_worth_series, category_rollup and the
+     * sketch reports read their own indexes as of now.
+     */
+    public Object generateReport(TransactionSnapshot snapshot, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters)
+            throws ValidationException, NotFoundException {
+        return generateReport(snapshot.getUserId(), snapshot, reportType, startDate, endDate, parameters);
+    }
+
+    private Object generateReport(UUID userId, TransactionSnapshot snapshot, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters)
+            throws ValidationException, NotFoundException {
+        long startNanos = System.nanoTime();
+        ReportGenerationEvent reportEvent = new ReportGenerationEvent();
+        reportEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
+
+            if (reportType == null || reportType.trim().isEmpty()) {
+                throw new ValidationException("Report type cannot be empty.");
+            }
+            if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+                throw new ValidationException("Invalid report period.");
+            }
+
+            // Series reports read the per-account balance histories instead of transactions
+            if (reportType.equalsIgnoreCase("net_worth_series")) {
+                NetWorthSeries series = generateNetWorthSeries(userId, startDate, endDate, parameters);
+                reportEvent.setRecordCount(series.size());
+                succeeded = true;
+                return series;
+            }
+
+            // Rollup reports read per-category running totals instead of transactions
+            if (reportType.equalsIgnoreCase("category_rollup")) {
+                Map<String, BigDecimal> report = generateCategoryRollupReport(userId, startDate, endDate, parameters);
+                reportEvent.setRecordCount(report.size());
+                succeeded = true;
+                return report;
+            }
+
+            // Sketch reports merge per-month summaries instead of reading every transaction in range
+            String sketchReportType = reportType.toLowerCase();
+            if (sketchReportType.equals("top_merchants") || sketchReportType.equals("top_categories")
+                    || sketchReportType.equals("transaction_size_quantiles")) {
+                SpendingSketchIndex.MonthSketches summary = transactionManager.summarizeSpending(userId, startDate,
+                        endDate);
+                reportEvent.setRecordCount((int) Math.min(Integer.MAX_VALUE, summary.sizes.getCount()));
+                Object report;
+                if (sketchReportType.equals("top_merchants")) {
+                    report = generateTopSpendingReport(summary.descriptions, false, parameters);
+                } else if (sketchReportType.equals("top_categories")) {
+                    report = generateTopSpendingReport(summary.categories, true, parameters);
+                } else {
+                    report = generateTransactionSizeQuantilesReport(summary.sizes, parameters);
+                }
+                succeeded = true;
+                return report;
+            }
+
+            // Fetch relevant transactions from one consistent view, however long the report takes
+            List<Transaction> transactions;
+            if (snapshot != null) {
+                transactions = snapshot.getTransactions(startDate, endDate);
+            } else {
+                try (TransactionSnapshot own = transactionManager.snapshot(userId)) {
+                    transactions = own.getTransactions(startDate, endDate);
+                }
+            }
+            reportEvent.setRecordCount(transactions.size());
+            // Amounts in other currencies are converted into the base currency
+            Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = accountManager.getDailyRatesByAccount(userId);
+            boolean converting = ratesByAccount.values().stream().anyMatch(rates -> !rates.isIdentity());
+
+            // Generate report based on type
+            Object report;
+            switch (reportType.toLowerCase()) {
+                case "spending_by_category":
+                    report = converting ? generateSpendingByCategoryReport(transactions, ratesByAccount)
+                            : generateSpendingByCategoryReport(transactions);
+                    break;
+                case "income_vs_expense":
+                    report = converting ? generateIncomeVsExpenseReport(transactions, ratesByAccount)
+                            : generateIncomeVsExpenseReport(transactions);
+                    break;
+                // Add more report types here
+                default:
+                    throw new ValidationException("Unsupported report type: " + reportType);
+            }
+            succeeded = true;
+            return report;
+        } finally {
+            GENERATE_REPORT_LATENCY.recordSince(startNanos);
+            reportEvent.finish(userId, reportType, null, rangeDays(startDate, endDate), succeeded);
         }
+    }
+
+    /**
+     * Generates income_vs_expense or spending_by_category from a user's
+     * partition files (see PartitionStore) rather than from memory. For
+     * income_vs_expense, months lying wholly within the period are answered
+     * from their footers; only the months at its edges are decoded. Accounts
+     * in other currencies need per-row conversion, so then every month in
+     * the period is decoded.
+     */
+    public Object generateReport(PartitionStore store, UUID userId, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters)
+            throws ValidationException, NotFoundException, IOException {
+        long startNanos = System.nanoTime();
+        ReportGenerationEvent reportEvent = new ReportGenerationEvent();
+        reportEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
+            if (reportType == null || reportType.trim().isEmpty()) {
+                throw new ValidationException("Report type cannot be empty.");
+            }
+            if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+                throw new ValidationException("Invalid report period.");
+            }
+            boolean incomeVsExpense = reportType.equalsIgnoreCase("income_vs_expense");
+            if (!incomeVsExpense && !reportType.equalsIgnoreCase("spending_by_category")) {
+                throw new ValidationException("Unsupported report type for partition files: " + reportType);
+            }
+            Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = accountManager.getDailyRatesByAccount(userId);
+            boolean converting = ratesByAccount.values().stream().anyMatch(rates -> !rates.isIdentity());
 
-        // Fetch relevant transactions using TransactionManager
-        List<Transaction> transactions = transactionManager.getTransactionsByUser(userId, startDate, endDate);
+            YearMonth first = YearMonth.from(startDate);
+            YearMonth last = YearMonth.from(endDate);
+            BigDecimal footerIncome = BigDecimal.ZERO;
+            BigDecimal footerExpense = BigDecimal.ZERO;
+            int recordCount = 0;
+            List<Transaction> decoded = new ArrayList<>();
+            for (YearMonth month : store.getMonths(userId)) {
+                if (month.isBefore(first) || month.isAfter(last)) {
+                    continue;
+                }
+                PartitionFooter footer = store.readFooter(userId, month);
+                if (incomeVsExpense && !converting && footer.isWithin(startDate, endDate)) {
+                    footerIncome = footerIncome.add(footer.getTotalIncome());
+                    footerExpense = footerExpense.add(footer.getTotalExpense());
+                    recordCount += footer.getRowCount();
+                    continue;
+                }
+                for (Transaction t : store.readMonth(userId, month)) {
+                    if (!t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate)) {
+                        decoded.add(t);
+                    }
+                }
+            }
+            reportEvent.setRecordCount(recordCount + decoded.size());
 
-        // Generate report based on type
-        switch (reportType.toLowerCase()) {
-            case "spending_by_category":
-                return generateSpendingByCategoryReport(transactions);
-            case "income_vs_expense":
-                return generateIncomeVsExpenseReport(transactions);
-            // Add more report types here
-            default:
-                throw new ValidationException("Unsupported report type: " + reportType);
+            Map<String, BigDecimal> report;
+            if (!incomeVsExpense) {
+                report = converting ? generateSpendingByCategoryReport(decoded, ratesByAccount)
+                        : generateSpendingByCategoryReport(decoded);
+            } else if (converting) {
+                report = generateIncomeVsExpenseReport(decoded, ratesByAccount);
+            } else {
+                report = generateIncomeVsExpenseReport(decoded);
+                BigDecimal totalIncome = report.get("totalIncome").add(footerIncome);
+                BigDecimal totalExpense = report.get("totalExpense").add(footerExpense);
+                report.put("totalIncome", totalIncome);
+                report.put("totalExpense", totalExpense);
+                report.put("netFlow", totalIncome.subtract(totalExpense));
+            }
+            succeeded = true;
+            return report;
+        } finally {
+            GENERATE_REPORT_LATENCY.recordSince(startNanos);
+            reportEvent.finish(userId, reportType, null, rangeDays(startDate, endDate), succeeded);
         }
     }
 
     private Map<String, BigDecimal> generateSpendingByCategoryReport(List<Transaction> transactions) {
-        // Group expenses by category description (which is stored in transaction
-        // description for now)
-        return transactions.stream()
+        // Group expenses by category ID, not description: descriptions can be payee text (see
+        // CategoryRuleManager), and transactions re-filed under another category must move with it
+        Map<UUID, BigDecimal> byCategory = transactions.stream()
                 .filter(t -> t.getAmount().compareTo(BigDecimal.ZERO) < 0) // Filter for expenses (negative amounts)
                 .collect(Collectors.groupingBy(
-                        Transaction::getDescription, // Group by description (acting as category name)
+                        Transaction::getCategoryId,
                         Collectors.mapping(Transaction::getAmount,
                                 Collectors.reducing(BigDecimal.ZERO, BigDecimal::add))));
+        return byCategoryName(byCategory);
+    }
+
+    // Category totals keyed by display name; names are looked up once per category, not per transaction
+    private Map<String, BigDecimal> byCategoryName(Map<UUID, BigDecimal> totals) {
+        Map<String, BigDecimal> report = new HashMap<>();
+        totals.forEach((categoryId, total) ->
+                report.merge(transactionManager.getCategoryName(categoryId), total, BigDecimal::add));
+        return report;
     }
 
     private Map<String, BigDecimal> generateIncomeVsExpenseReport(List<Transaction> transactions) {
@@ -95,26 +284,278 @@ public class ReportGenerator /* implements service.ReportGenerator */ {
         return summary;
     }
 
+    // Same as above, with each row converted at its account's rate of the day and rounded to cents
+    private Map<String, BigDecimal> generateSpendingByCategoryReport(List<Transaction> transactions,
+            Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount) {
+        Map<UUID, long[]> centsByCategory = new HashMap<>();
+        for (Transaction t : transactions) {
+            if (t.getAmount().signum() < 0) {
+                centsByCategory.computeIfAbsent(t.getCategoryId(), k -> new long[1])[0] +=
+                        baseCents(t, ratesByAccount);
+            }
+        }
+        Map<UUID, BigDecimal> byCategory = new HashMap<>();
+        centsByCategory.forEach((categoryId, cents) -> byCategory.put(categoryId, BigDecimal.valueOf(cents[0], 2)));
+        return byCategoryName(byCategory);
+    }
+
+    private Map<String, BigDecimal> generateIncomeVsExpenseReport(List<Transaction> transactions,
+            Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount) {
+        long incomeCents = 0;
+        long expenseCents = 0;
+        for (Transaction t : transactions) {
+            long cents = baseCents(t, ratesByAccount);
+            if (cents > 0) {
+                incomeCents += cents;
+            } else {
+                expenseCents -= cents;
+            }
+        }
+        Map<String, BigDecimal> summary = new HashMap<>();
+        summary.put("totalIncome", BigDecimal.valueOf(incomeCents, 2));
+        summary.put("totalExpense", BigDecimal.valueOf(expenseCents, 2));
+        summary.put("netFlow", BigDecimal.valueOf(incomeCents - expenseCents, 2));
+        return summary;
+    }
+
+    // Signed amount in base-currency cents: one rate-array read per row, no date lookup or division
+    private static long baseCents(Transaction t, Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount) {
+        ExchangeRateTable.DailyRates rates = ratesByAccount.get(t.getAccountId());
+        double amount = t.getAmount().doubleValue();
+        if (rates != null) {
+            amount *= rates.rateOn(t.getEpochDay());
+        }
+        return Math.round(amount * 100);
+    }
+
+    // Parameter "parentId" (default none): list that category's subcategories rather than the top-level ones.
+    // Each signed total includes the category's own subcategories; transactions filed directly under the
+    // parent itself are listed under the parent's name.
+    private Map<String, BigDecimal> generateCategoryRollupReport(UUID userId, LocalDate startDate, LocalDate endDate,
+            Map<String, Object> parameters) throws ValidationException, NotFoundException {
+        Object parentParam = parameters == null ? null : parameters.get("parentId");
+        UUID parentId = null;
+        if (parentParam != null) {
+            try {
+                parentId = UUID.fromString(parentParam.toString());
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("parentId must be a category ID: " + parentParam);
+            }
+        }
+        CategoryManager categoryManager = transactionManager.getCategoryManager();
+        List<Category> categories = categoryManager.getSubcategories(parentId);
+        List<UUID> categoryIds = categories.stream().map(Category::getId).collect(Collectors.toList());
+        if (parentId != null) {
+            categoryIds.add(parentId);
+        }
+        Map<UUID, BigDecimal> totals = transactionManager.getCategoryTotals(userId, categoryIds, startDate, endDate);
+
+        Map<String, BigDecimal> report = new TreeMap<>(); // By name
+        BigDecimal direct = parentId == null ? null : totals.get(parentId);
+        for (Category category : categories) {
+            BigDecimal total = totals.get(category.getId());
+            if (direct != null) {
+                direct = direct.subtract(total);
+            }
+            if (total.signum() != 0) {
+                report.put(category.getName(), total);
+            }
+        }
+        if (direct != null && direct.signum() != 0) {
+            report.merge(categoryManager.getCategory(parentId).getName(), direct, BigDecimal::add);
+        }
+        return report;
+    }
+
+    // Parameter "limit" (default 10): how many descriptions or categories to list, by amount spent.
+    // Amounts are estimates that may exceed the true total by a small share of the period's spending.
+    private Map<String, BigDecimal> generateTopSpendingReport(SpaceSavingSketch sketch, boolean byCategory,
+            Map<String, Object> parameters) throws ValidationException {
+        int limit = 10;
+        Object limitParam = parameters == null ? null : parameters.get("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam.toString());
+            } catch (NumberFormatException e) {
+                throw new ValidationException("limit must be an integer: " + limitParam);
+            }
+            if (limit < 1 || limit > sketch.getCapacity()) {
+                throw new ValidationException("limit must be between 1 and " + sketch.getCapacity() + ".");
+            }
+        }
+        Map<String, BigDecimal> top = new LinkedHashMap<>(); // Largest first
+        for (SpaceSavingSketch.Entry entry : sketch.top(limit)) {
+            String name = byCategory ? transactionManager.getCategoryName(UUID.fromString(entry.key)) : entry.key;
+            top.merge(name, BigDecimal.valueOf(entry.weight, 2), BigDecimal::add);
+        }
+        return top;
+    }
+
+    // Parameter "quantiles": comma-separated values in [0, 1] (default 0.25,0.5,0.75,0.9,0.99).
+    // Expense sizes are within 1% of the true value at each quantile.
+    private Map<String, BigDecimal> generateTransactionSizeQuantilesReport(QuantileSketch sketch,
+            Map<String, Object> parameters) throws ValidationException {
+        String quantilesParam = "0.25,0.5,0.75,0.9,0.99";
+        if (parameters != null && parameters.get("quantiles") != null) {
+            quantilesParam = parameters.get("quantiles").toString();
+        }
+        Map<String, BigDecimal> report = new LinkedHashMap<>();
+        report.put("count", BigDecimal.valueOf(sketch.getCount()));
+        for (String part : quantilesParam.split(",")) {
+            BigDecimal quantile;
+            try {
+                quantile = new BigDecimal(part.trim());
+            } catch (NumberFormatException e) {
+                throw new ValidationException("quantiles must be numbers between 0 and 1: " + part);
+            }
+            if (quantile.signum() < 0 || quantile.compareTo(BigDecimal.ONE) > 0) {
+                throw new ValidationException("quantiles must be numbers between 0 and 1: " + part);
+            }
+            if (sketch.getCount() > 0) {
+                report.put("p" + quantile.movePointRight(2).stripTrailingZeros().toPlainString(),
+                        BigDecimal.valueOf(sketch.quantile(quantile.doubleValue())).setScale(2,
+                                RoundingMode.HALF_UP));
+            }
+        }
+        return report;
+    }
+
+    // Parameters: "interval" ("day", "week" or "month", default "day") and
+    // "maxPoints" (optional, evenly downsamples longer series; the last point is kept)
+    private NetWorthSeries generateNetWorthSeries(UUID userId, LocalDate startDate, LocalDate endDate,
+            Map<String, Object> parameters) throws ValidationException, NotFoundException {
+        String interval = "day";
+        int maxPoints = Integer.MAX_VALUE;
+        if (parameters != null) {
+            Object intervalParam = parameters.get("interval");
+            if (intervalParam != null) {
+                interval = intervalParam.toString().toLowerCase();
+            }
+            Object maxPointsParam = parameters.get("maxPoints");
+            if (maxPointsParam != null) {
+                try {
+                    maxPoints = Integer.parseInt(maxPointsParam.toString());
+                } catch (NumberFormatException e) {
+                    throw new ValidationException("maxPoints must be an integer: " + maxPointsParam);
+                }
+                if (maxPoints < 1) {
+                    throw new ValidationException("maxPoints must be positive.");
+                }
+            }
+        }
+        if (!(interval.equals("day") || interval.equals("week") || interval.equals("month"))) {
+            throw new ValidationException("Unsupported interval: " + interval + ". Must be 'day', 'week' or 'month'.");
+        }
+
+        long firstDay = startDate.toEpochDay();
+        long days = endDate.toEpochDay() - firstDay + 1;
+        if (days > MAX_SERIES_DAYS) {
+            throw new ValidationException("net_worth_series covers at most " + MAX_SERIES_DAYS + " days.");
+        }
+        long[] daily = new long[(int) days]; // Cents
+        long[] foreign = null; // Converted balances of accounts in other currencies, per day, in cents
+        long opening = 0;
+        Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = accountManager.getDailyRatesByAccount(userId);
+        // Merge every account's dated changes into one dense per-day array
+        for (Account account : accountManager.getAccountList(userId)) {
+            BalanceHistory history = accountManager.getBalanceHistory(account.getId());
+            if (history == null) {
+                continue;
+            }
+            ExchangeRateTable.DailyRates rates = ratesByAccount.get(account.getId());
+            if (rates == null || rates.isIdentity()) {
+                opening += BalanceHistory.toCents(history.balanceAsOf(startDate.minusDays(1)));
+                history.addChangesTo(daily, firstDay);
+                continue;
+            }
+            // Revalue the account's own balance at each day's rate, rather than converting its changes
+            long[] balances = new long[daily.length];
+            balances[0] = BalanceHistory.toCents(history.balanceAsOf(startDate.minusDays(1)));
+            history.addChangesTo(balances, firstDay);
+            foreign = foreign != null ? foreign : new long[daily.length];
+            long balance = 0;
+            for (int i = 0; i < balances.length; i++) {
+                balance += balances[i];
+                foreign[i] += Math.round(balance * rates.rateOn(firstDay + i));
+            }
+        }
+        daily[0] += opening;
+        for (int i = 1; i < daily.length; i++) {
+            daily[i] += daily[i - 1]; // Running total turns changes into net worth
+        }
+        if (foreign != null) {
+            for (int i = 0; i < daily.length; i++) {
+                daily[i] += foreign[i];
+            }
+        }
+
+        // Keep the last day of each period (and the final day of the range)
+        long[] pointDays = new long[daily.length];
+        long[] pointValues = new long[daily.length];
+        int points = 0;
+        for (int i = 0; i < daily.length; i++) {
+            LocalDate day = LocalDate.ofEpochDay(firstDay + i);
+            boolean periodEnd = interval.equals("day")
+                    || (interval.equals("week") && day.getDayOfWeek() == DayOfWeek.SUNDAY)
+                    || (interval.equals("month") && day.getDayOfMonth() == day.lengthOfMonth());
+            if (periodEnd || i == daily.length - 1) {
+                pointDays[points] = firstDay + i;
+                pointValues[points] = daily[i];
+                points++;
+            }
+        }
+
+        // Downsample by a fixed stride so long ranges stay chartable
+        int stride = points <= maxPoints ? 1 : (points + maxPoints - 1) / maxPoints;
+        int kept = 0;
+        for (int i = 0; i < points; i += stride) {
+            int source = Math.min(i + stride - 1, points - 1); // Last point of each stride window
+            pointDays[kept] = pointDays[source];
+            pointValues[kept] = pointValues[source];
+            kept++;
+        }
+        return new NetWorthSeries(interval, Arrays.copyOf(pointDays, kept), Arrays.copyOf(pointValues, kept));
+    }
+
     // Export functionality might be better in a separate service
     // Method signature might need to match an interface if one exists
     // @Override
     public Object exportReport(UUID userId, String reportType, LocalDate startDate, LocalDate endDate,
             Map<String, Object> parameters, String format)
             throws ValidationException, NotFoundException, Exception {
-        checkUserExists(userId);
+        long startNanos = System.nanoTime();
+        ReportGenerationEvent reportEvent = new ReportGenerationEvent();
+        reportEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
 
-        if (format == null || !(format.equalsIgnoreCase("CSV") || format.equalsIgnoreCase("PDF"))) {
-            throw new ValidationException("Unsupported export format: " + format + ". Supported formats: CSV, PDF");
-        }
+            if (format == null || !(format.equalsIgnoreCase("CSV") || format.equalsIgnoreCase("PDF"))) {
+                throw new ValidationException("Unsupported export format: " + format + ". Supported formats: CSV, PDF");
+            }
+
+            Object reportData = generateReport(userId, reportType, startDate, endDate, parameters);
 
-        Object reportData = generateReport(userId, reportType, startDate, endDate, parameters);
+            // Placeholder for export logic
+            if (format.equalsIgnoreCase("CSV")) {
+                succeeded = true;
+                return "CSV Export for " + reportType + ": " + reportData.toString();
+            } else { // PDF
+                byte[] pdfContent = ("PDF Report: " + reportType + "\nData: " + reportData.toString()).getBytes();
+                succeeded = true;
+                return pdfContent;
+            }
+        } finally {
+            EXPORT_REPORT_LATENCY.recordSince(startNanos);
+            reportEvent.finish(userId, reportType, format, rangeDays(startDate, endDate), succeeded);
+        }
+    }
 
-        // Placeholder for export logic
-        if (format.equalsIgnoreCase("CSV")) {
-            return "CSV Export for " + reportType + ": " + reportData.toString();
-        } else { // PDF
-            byte[] pdfContent = ("PDF Report: " + reportType + "\nData: " + reportData.toString()).getBytes();
-            return pdfContent;
+    // Inclusive length of the report period in days, 0 when the period is invalid
+    private static long rangeDays(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            return 0;
         }
+        return endDate.toEpochDay() - startDate.toEpochDay() + 1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+package service.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only log of the mutations applied by one shard. Only the shard's
+ * worker thread appends, so entries need no locking and are in the order the
+ * shard applied them; the worker flushes once its queue runs empty, so a
+ * burst of writes costs one flush.
+ *
+ * Each entry is one line of tab-separated fields: sequence number, operation,
+ * user ID, then the operation's arguments and the IDs it generated. Tabs,
+ * newlines and backslashes in values are escaped, and null is written as \N
+ * (see parse). Without a file or listeners the journal only counts entries.
+ */
+public class ShardJournal implements AutoCloseable {
+
+    // Receives each entry, without its line break, on the shard's thread as it is appended
+    @FunctionalInterface
+    public interface Listener {
+        void entryAppended(String entry);
+    }
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long sequence;
+
+    // Counts entries without keeping them
+    public ShardJournal() {
+        this.file = null;
+        this.writer = null;
+    }
+
+    // Appends to the file, continuing the sequence of the entries already in it
+    public ShardJournal(Path file) throws IOException {
+        long existing = 0;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                while (reader.readLine() != null) {
+                    existing++;
+                }
+            }
+        }
+        this.file = file;
+        this.sequence = existing;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends one entry. Must be called from the owning shard's thread, after
+     * the mutation succeeded.
+     *
+     * @return The entry's sequence number, starting at 1.
+     */
+    public long append(String operation, UUID userId, Object... fields) {
+        long next = sequence + 1;
+        if (writer != null || !listeners.isEmpty()) {
+            String entry = format(next, operation, userId, fields);
+            if (writer != null) {
+                try {
+                    writer.write(entry);
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not append to journal " + file, e);
+                }
+            }
+            for (Listener listener : listeners) {
+                listener.entryAppended(entry);
+            }
+        }
+        sequence = next;
+        return next;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // One entry in the journal's line format, without the line break
+    public static String format(long sequence, String operation, UUID userId, Object... fields) {
+        StringBuilder line = new StringBuilder(128);
+        line.append(sequence).append('\t').append(operation).append('\t');
+        escape(line, userId);
+        for (Object field : fields) {
+            line.append('\t');
+            escape(line, field);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Splits an entry back into its fields: sequence, operation, user ID and
+     * the operation's fields, unescaped, with \N as null.
+     */
+    public static String[] parse(String entry) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean isNull = false;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c == '\t') {
+                fields.add(isNull ? null : field.toString());
+                field.setLength(0);
+                isNull = false;
+            } else if (c == '\\' && i + 1 < entry.length()) {
+                char escaped = entry.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        field.append('\t');
+                        break;
+                    case 'n':
+                        field.append('\n');
+                        break;
+                    case 'r':
+                        field.append('\r');
+                        break;
+                    case 'N':
+                        isNull = true;
+                        break;
+                    default:
+                        field.append(escaped);
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(isNull ? null : field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static void escape(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("\\N");
+            return;
+        }
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    // Sequence number of the last entry appended; 0 if none
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Null when the journal only counts entries
+    public Path getFile() {
+        return file;
+    }
+
+    public void flush() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not flush journal " + file, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
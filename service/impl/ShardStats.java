@@ -0,0 +1,53 @@
+package service.impl;
+
+/**
+ * Load of one shard at a point in time, as reported by
+ * ShardedServiceFacade.getShardStats().
+ */
+public class ShardStats {
+
+    private final int shard;
+    private final int users;
+    private final int transactions;
+    private final int queueDepth;
+    private final long journalSequence;
+
+    public ShardStats(int shard, int users, int transactions, int queueDepth, long journalSequence) {
+        this.shard = shard;
+        this.users = users;
+        this.transactions = transactions;
+        this.queueDepth = queueDepth;
+        this.journalSequence = journalSequence;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getTransactions() {
+        return transactions;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardStats{" +
+                "shard=" + shard +
+                ", users=" + users +
+                ", transactions=" + transactions +
+                ", queueDepth=" + queueDepth +
+                ", journalSequence=" + journalSequence +
+                '}';
+    }
+}
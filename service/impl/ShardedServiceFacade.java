@@ -0,0 +1,600 @@
+package service.impl;
+
+import domain.Account;
+import domain.Budget;
+import domain.Category;
+import domain.CategoryRule;
+import domain.ContributionRule;
+import domain.FinancialGoal;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Partitions users across independent FinanceShards. A user lives on exactly
+ * one shard, chosen by hashing the user ID unless the user has been moved;
+ * every call for the user runs on that shard's worker, in submission order,
+ * and every mutation is appended to that shard's journal. Shards share no
+ * maps, locks or threads, so writes and long reports for users on different
+ * shards never contend.
+ *
+ * moveUser() and rebalance() relocate users between shards. While a user is
+ * being moved their new calls wait and then run on the new shard; calls
+ * submitted earlier finish on the old shard first.
+ *
+ * With replicateTo(), the journals are streamed to follower nodes (see
+ * JournalReplicator and ReplicaNode). Every write must go through this
+ * class to be journaled: the shards' managers are exposed for reads only.
+ */
+public class ShardedServiceFacade implements AutoCloseable {
+
+    // A service call run against the shard that owns the user
+    @FunctionalInterface
+    public interface ShardCall<T> {
+        T call(FinanceShard shard) throws Exception;
+    }
+
+    // Placement of a user off their hash shard, or of a user being moved (moving != null)
+    private static final class Route {
+        final int shard;
+        final CompletableFuture<Void> moving;
+
+        Route(int shard, CompletableFuture<Void> moving) {
+            this.shard = shard;
+            this.moving = moving;
+        }
+    }
+
+    private final FinanceShard[] shards;
+    private final CategoryManager categoryManager;
+    private final Map<UUID, Route> routes = new ConcurrentHashMap<>();
+    private final Object moveLock = new Object(); // One move at a time
+    private volatile JournalReplicator replicator;
+
+    // Shards whose journals only count entries
+    public ShardedServiceFacade(int shardCount, CategoryManager categoryManager, ExchangeRateTable exchangeRates) {
+        this.categoryManager = categoryManager;
+        this.shards = new FinanceShard[checkShardCount(shardCount)];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new FinanceShard(i, categoryManager, exchangeRates, new ShardJournal());
+        }
+        categoryManager.registerGauges(MetricsRegistry.getDefault(), "");
+    }
+
+    // Shard i journals to shard-i.journal in the directory
+    public ShardedServiceFacade(int shardCount, CategoryManager categoryManager, ExchangeRateTable exchangeRates,
+            Path journalDirectory) throws IOException {
+        this.categoryManager = categoryManager;
+        this.shards = new FinanceShard[checkShardCount(shardCount)];
+        Files.createDirectories(journalDirectory);
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new FinanceShard(i, categoryManager, exchangeRates,
+                    new ShardJournal(journalDirectory.resolve("shard-" + i + ".journal")));
+        }
+        categoryManager.registerGauges(MetricsRegistry.getDefault(), "");
+    }
+
+    private static int checkShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1.");
+        }
+        return shardCount;
+    }
+
+    public CategoryManager getCategoryManager() {
+        return categoryManager;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public FinanceShard getShard(int index) {
+        return shards[index];
+    }
+
+    // Index of the shard that owns (or, mid-move, still owns) the user
+    public int shardOf(UUID userId) {
+        Route route = routes.get(userId);
+        return route != null ? route.shard : homeShard(userId);
+    }
+
+    private int homeShard(UUID userId) {
+        return Math.floorMod(userId.hashCode(), shards.length);
+    }
+
+    /**
+     * Runs any service call on the shard that owns the user. Checked
+     * exceptions complete the future exceptionally.
+     */
+    public <T> CompletableFuture<T> submit(UUID userId, ShardCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        dispatch(userId, call, future);
+        return future;
+    }
+
+    private <T> void dispatch(UUID userId, ShardCall<T> call, CompletableFuture<T> future) {
+        // Routed under the user's map entry, so a move either sees this call queued ahead of it or holds it back
+        routes.compute(userId, (k, route) -> {
+            if (route != null && route.moving != null) {
+                route.moving.whenComplete((ignored, e) -> dispatch(userId, call, future));
+                return route;
+            }
+            FinanceShard shard = shards[route != null ? route.shard : homeShard(userId)];
+            try {
+                shard.execute(() -> {
+                    try {
+                        future.complete(call.call(shard));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return route;
+        });
+    }
+
+    /**
+     * Like submit, for calls that change state: with a replicator in QUORUM
+     * mode the future completes once a majority of the cluster has applied
+     * the change. If that times out the future fails with a TimeoutException,
+     * but the change stays applied here.
+     */
+    private <T> CompletableFuture<T> mutate(UUID userId, ShardCall<T> call) {
+        CompletableFuture<T> applied = submit(userId, call);
+        JournalReplicator replicator = this.replicator;
+        if (replicator == null || replicator.getAckMode() == JournalReplicator.AckMode.ASYNC) {
+            return applied;
+        }
+        // Read after the call, so the position covers its journal entries
+        return applied.thenCompose(result -> replicator.awaitAcknowledged(replicator.getPosition())
+                .thenApply(acknowledged -> result));
+    }
+
+    /**
+     * Streams every shard's journal to the replicator's followers from now
+     * on. Call before the first write, so followers see complete history.
+     */
+    public void replicateTo(JournalReplicator replicator) {
+        for (FinanceShard shard : shards) {
+            shard.getJournal().addListener(replicator::publish);
+        }
+        this.replicator = replicator;
+    }
+
+    // Categories are shared by every shard, so their changes go to the replicator directly
+    public Category createCategory(String name, String type) throws ValidationException {
+        return publish(categoryManager.createCategory(name, type));
+    }
+
+    public Category createSubcategory(UUID parentId, String name) throws ValidationException, NotFoundException {
+        return publish(categoryManager.createSubcategory(parentId, name));
+    }
+
+    public boolean updateCategory(UUID categoryId, String name, String type, String icon)
+            throws ValidationException, NotFoundException {
+        boolean updated = categoryManager.updateCategory(categoryId, name, type, icon);
+        publish(categoryManager.getCategory(categoryId)); // Followers replace their copy
+        return updated;
+    }
+
+    public boolean deleteCategory(UUID categoryId) throws ValidationException, NotFoundException {
+        boolean deleted = categoryManager.deleteCategory(categoryId);
+        JournalReplicator replicator = this.replicator;
+        if (replicator != null) {
+            replicator.publishCategoryDeletion(categoryId);
+        }
+        return deleted;
+    }
+
+    /**
+     * Merges one category into another across every shard (see
+     * CategoryManager.mergeCategory). Runs on the calling thread, alongside
+     * the shards' own work.
+     */
+    public long mergeCategory(UUID fromId, UUID intoId) throws ValidationException, NotFoundException {
+        long moved = categoryManager.mergeCategory(fromId, intoId);
+        JournalReplicator replicator = this.replicator;
+        if (replicator != null) {
+            replicator.publishCategoryMerge(fromId, intoId);
+        }
+        return moved;
+    }
+
+    private Category publish(Category category) {
+        JournalReplicator replicator = this.replicator;
+        if (replicator != null) {
+            replicator.publishCategory(category);
+        }
+        return category;
+    }
+
+    // --- Users and accounts ---
+
+    public CompletableFuture<Void> addUser(UUID userId) {
+        return mutate(userId, shard -> {
+            shard.addUser(userId);
+            shard.getJournal().append("addUser", userId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Account>> getAccountList(UUID userId) {
+        return submit(userId, shard -> shard.getAccountManager().getAccountList(userId));
+    }
+
+    public CompletableFuture<Account> createAccount(UUID userId, String name, BigDecimal balance, String type,
+            String currency) {
+        return mutate(userId, shard -> {
+            Account account = shard.getAccountManager().createAccount(userId, name, balance, type, currency);
+            shard.getJournal().append("createAccount", userId, account.getId(), name, balance, type,
+                    account.getCurrency());
+            return account;
+        });
+    }
+
+    public CompletableFuture<Boolean> updateAccount(UUID accountId, UUID userId, String name, String type,
+            boolean isActive) {
+        return mutate(userId, shard -> {
+            boolean updated = shard.getAccountManager().updateAccount(accountId, userId, name, type, isActive);
+            shard.getJournal().append("updateAccount", userId, accountId, name, type, isActive);
+            return updated;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteAccount(UUID accountId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getAccountManager().deleteAccount(accountId, userId);
+            shard.getJournal().append("deleteAccount", userId, accountId);
+            return deleted;
+        });
+    }
+
+    // --- Transactions ---
+
+    public CompletableFuture<List<Transaction>> getTransactionsByUser(UUID userId, LocalDate startDate,
+            LocalDate endDate) {
+        return submit(userId,
+                shard -> shard.getTransactionManager().getTransactionsByUser(userId, startDate, endDate));
+    }
+
+    public CompletableFuture<Transaction> recordTransaction(UUID userId, UUID accountId, String categoryName,
+            String type, BigDecimal amount, LocalDate date) {
+        return mutate(userId, shard -> {
+            Transaction transaction = shard.getTransactionManager().recordTransaction(userId, accountId,
+                    categoryName, type, amount, date);
+            shard.getJournal().append("recordTransaction", userId, transaction.getId(), accountId,
+                    transaction.getCategoryId(), transaction.getType(), transaction.getAmount(), date,
+                    transaction.getDescription());
+            shard.journalAutoContributions(); // After the income, so followers apply them in that order
+            return transaction;
+        });
+    }
+
+    public CompletableFuture<Boolean> updateTransaction(UUID transactionId, UUID userId, UUID accountId,
+            UUID categoryId, BigDecimal amount, LocalDate date, String description) {
+        return mutate(userId, shard -> {
+            boolean updated = shard.getTransactionManager().updateTransaction(transactionId, userId, accountId,
+                    categoryId, amount, date, description);
+            shard.getJournal().append("updateTransaction", userId, transactionId, accountId, categoryId, amount,
+                    date, description);
+            return updated;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteTransaction(UUID transactionId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getTransactionManager().deleteTransaction(transactionId, userId);
+            shard.getJournal().append("deleteTransaction", userId, transactionId);
+            return deleted;
+        });
+    }
+
+    // --- Budgets and goals ---
+
+    public CompletableFuture<UUID> createBudget(UUID userId, String name, BigDecimal amount, LocalDate startDate,
+            LocalDate endDate, List<UUID> categoryIds) {
+        return mutate(userId, shard -> {
+            UUID budgetId = shard.getBudgetManager().createBudget(userId, name, amount, startDate, endDate,
+                    categoryIds);
+            Budget budget = shard.getBudgetManager().getBudgetDetails(budgetId, userId); // As stored, name trimmed
+            shard.getJournal().append("createBudget", userId, budgetId, budget.getName(), budget.getAmount(),
+                    budget.getStartDate(), budget.getEndDate(), joinIds(budget.getCategoryIds()));
+            return budgetId;
+        });
+    }
+
+    public CompletableFuture<Boolean> updateBudget(UUID budgetId, UUID userId, String name, BigDecimal amount,
+            LocalDate startDate, LocalDate endDate, List<UUID> categoryIds, boolean isActive) {
+        return mutate(userId, shard -> {
+            boolean updated = shard.getBudgetManager().updateBudget(budgetId, userId, name, amount, startDate,
+                    endDate, categoryIds, isActive);
+            Budget budget = shard.getBudgetManager().getBudgetDetails(budgetId, userId);
+            shard.getJournal().append("updateBudget", userId, budgetId, budget.getName(), budget.getAmount(),
+                    budget.getStartDate(), budget.getEndDate(), joinIds(budget.getCategoryIds()), budget.isActive());
+            return updated;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteBudget(UUID budgetId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getBudgetManager().deleteBudget(budgetId, userId);
+            shard.getJournal().append("deleteBudget", userId, budgetId);
+            return deleted;
+        });
+    }
+
+    public CompletableFuture<UUID> createFinancialGoal(UUID userId, String name, BigDecimal targetAmount,
+            BigDecimal currentAmount, LocalDate deadline) {
+        return mutate(userId, shard -> {
+            UUID goalId = shard.getFinancialGoalManager().createFinancialGoal(userId, name, targetAmount,
+                    currentAmount, deadline);
+            FinancialGoal goal = shard.getFinancialGoalManager().getFinancialGoalDetails(goalId, userId);
+            shard.getJournal().append("createFinancialGoal", userId, goalId, goal.getName(),
+                    goal.getTargetAmount(), goal.getCurrentAmount(), goal.getDeadline());
+            return goalId;
+        });
+    }
+
+    // Journals the goal as stored, so followers need not repeat validation that depends on today's date
+    public CompletableFuture<Boolean> updateFinancialGoal(UUID goalId, UUID userId, String name,
+            BigDecimal targetAmount, BigDecimal currentAmount, LocalDate deadline) {
+        return mutate(userId, shard -> {
+            boolean updated = shard.getFinancialGoalManager().updateFinancialGoal(goalId, userId, name,
+                    targetAmount, currentAmount, deadline);
+            FinancialGoal goal = shard.getFinancialGoalManager().getFinancialGoalDetails(goalId, userId);
+            shard.getJournal().append("updateFinancialGoal", userId, goalId, goal.getName(),
+                    goal.getTargetAmount(), goal.getCurrentAmount(), goal.getDeadline());
+            return updated;
+        });
+    }
+
+    public CompletableFuture<Boolean> addContribution(UUID goalId, UUID userId, BigDecimal amount) {
+        return mutate(userId, shard -> {
+            boolean added = shard.getFinancialGoalManager().addContribution(goalId, userId, amount);
+            shard.getJournal().append("addContribution", userId, goalId, amount);
+            return added;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteFinancialGoal(UUID goalId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getFinancialGoalManager().deleteFinancialGoal(goalId, userId);
+            shard.getJournal().append("deleteFinancialGoal", userId, goalId);
+            return deleted;
+        });
+    }
+
+    public CompletableFuture<ContributionRule> createContributionRule(UUID userId, UUID goalId,
+            String categoryName, BigDecimal percentage) {
+        return mutate(userId, shard -> {
+            ContributionRule rule = shard.getAutoContributionManager().createContributionRule(userId, goalId,
+                    categoryName, percentage);
+            shard.getJournal().append("createContributionRule", userId, rule.getId(), goalId, rule.getCategoryId(),
+                    rule.getPercentage());
+            return rule;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteContributionRule(UUID ruleId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getAutoContributionManager().deleteContributionRule(ruleId, userId);
+            shard.getJournal().append("deleteContributionRule", userId, ruleId);
+            return deleted;
+        });
+    }
+
+    // --- Category rules ---
+
+    public CompletableFuture<CategoryRule> createCategoryRule(UUID userId, String pattern, String categoryName) {
+        return mutate(userId, shard -> {
+            CategoryRule rule = shard.getCategoryRuleManager().createCategoryRule(userId, pattern, categoryName);
+            shard.getJournal().append("createCategoryRule", userId, rule.getId(), rule.getPattern(),
+                    rule.getCategoryId());
+            return rule;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteCategoryRule(UUID ruleId, UUID userId) {
+        return mutate(userId, shard -> {
+            boolean deleted = shard.getCategoryRuleManager().deleteCategoryRule(ruleId, userId);
+            shard.getJournal().append("deleteCategoryRule", userId, ruleId);
+            return deleted;
+        });
+    }
+
+    // Followers rerun it against the same rules and transactions, so they move the same ones
+    public CompletableFuture<Long> recategorizeHistory(UUID userId, LocalDate startDate, LocalDate endDate) {
+        return mutate(userId, shard -> {
+            long moved = shard.getCategoryRuleManager().recategorizeHistory(userId, startDate, endDate);
+            shard.getJournal().append("recategorizeHistory", userId, startDate, endDate);
+            return moved;
+        });
+    }
+
+    // Comma-separated, as journal entries carry ID lists
+    private static String joinIds(List<UUID> ids) {
+        StringBuilder joined = new StringBuilder();
+        for (UUID id : ids) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(id);
+        }
+        return joined.toString();
+    }
+
+    // --- Reports ---
+
+    public CompletableFuture<Object> generateReport(UUID userId, String reportType, LocalDate startDate,
+            LocalDate endDate, Map<String, Object> parameters) {
+        return submit(userId, shard -> shard.getReportGenerator().generateReport(userId, reportType, startDate,
+                endDate, parameters));
+    }
+
+    // --- Rebalancing ---
+
+    public List<ShardStats> getShardStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (FinanceShard shard : shards) {
+            stats.add(new ShardStats(shard.getIndex(), shard.getAccountManager().getUserCount(),
+                    shard.getTransactionManager().getTransactionCount(), shard.getQueueDepth(),
+                    shard.getJournal().getSequence()));
+        }
+        return stats;
+    }
+
+    /**
+     * Moves a user and everything they own to another shard. Waits for the
+     * user's calls already queued on the old shard; calls made meanwhile run
+     * on the new shard once the move is done. Both journals record the move.
+     *
+     * @return false if the user is already on that shard.
+     * @throws NotFoundException if the user does not exist.
+     */
+    public boolean moveUser(UUID userId, int targetShard) throws NotFoundException, InterruptedException {
+        if (targetShard < 0 || targetShard >= shards.length) {
+            throw new IllegalArgumentException("No shard " + targetShard + "; there are " + shards.length + ".");
+        }
+        synchronized (moveLock) {
+            CompletableFuture<Void> moving = new CompletableFuture<>();
+            int[] source = { 0 };
+            routes.compute(userId, (k, route) -> {
+                source[0] = route != null ? route.shard : homeShard(userId);
+                return new Route(source[0], moving);
+            });
+            int owner = source[0];
+            try {
+                if (owner == targetShard) {
+                    return false;
+                }
+                FinanceShard from = shards[owner];
+                FinanceShard to = shards[targetShard];
+                UserPartition partition = await(from.submit(() -> {
+                    UserPartition detached = from.detachUser(userId);
+                    from.getJournal().append("moveOut", userId, targetShard);
+                    return detached;
+                }));
+                try {
+                    await(to.submit(() -> {
+                        to.attachUser(partition);
+                        to.getJournal().append("moveIn", userId, from.getIndex(), partition.accounts.size(),
+                                partition.transactions.size());
+                        return null;
+                    }));
+                } catch (RuntimeException | InterruptedException e) {
+                    from.submit(() -> { // Put the user back rather than lose them
+                        from.attachUser(partition);
+                        from.getJournal().append("moveIn", userId, targetShard, partition.accounts.size(),
+                                partition.transactions.size());
+                        return null;
+                    });
+                    throw e;
+                }
+                owner = targetShard;
+                return true;
+            } finally {
+                int shard = owner;
+                routes.compute(userId, (k, route) -> shard == homeShard(userId) ? null : new Route(shard, null));
+                moving.complete(null);
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws NotFoundException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NotFoundException) {
+                throw (NotFoundException) e.getCause();
+            }
+            throw new IllegalStateException("Moving a user failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Moves users from the most to the least loaded shard, weighing each user
+     * by their transactions, until no shard holds more than (1 + tolerance)
+     * times the average load or no single move would narrow the gap.
+     *
+     * @return The number of users moved.
+     */
+    public int rebalance(double tolerance) throws InterruptedException {
+        long[] loads = new long[shards.length];
+        List<Map<UUID, Integer>> weights = new ArrayList<>(shards.length);
+        long total = 0;
+        for (FinanceShard shard : shards) {
+            Map<UUID, Integer> userWeights = new HashMap<>();
+            for (UUID userId : shard.getUserIds()) {
+                int weight = shard.getTransactionManager().getTransactionCount(userId) + 1; // Users cost even empty
+                userWeights.put(userId, weight);
+                loads[shard.getIndex()] += weight;
+            }
+            weights.add(userWeights);
+            total += loads[shard.getIndex()];
+        }
+        double limit = (double) total / shards.length * (1 + tolerance);
+        int moved = 0;
+        while (true) {
+            int heaviest = 0;
+            int lightest = 0;
+            for (int i = 1; i < shards.length; i++) {
+                heaviest = loads[i] > loads[heaviest] ? i : heaviest;
+                lightest = loads[i] < loads[lightest] ? i : lightest;
+            }
+            if (loads[heaviest] <= limit) {
+                return moved;
+            }
+            // Largest user that still narrows the gap between the two shards
+            long gap = loads[heaviest] - loads[lightest];
+            UUID candidate = null;
+            int candidateWeight = 0;
+            for (Map.Entry<UUID, Integer> entry : weights.get(heaviest).entrySet()) {
+                int weight = entry.getValue();
+                if (weight < gap && weight > candidateWeight) {
+                    candidate = entry.getKey();
+                    candidateWeight = weight;
+                }
+            }
+            if (candidate == null) {
+                return moved;
+            }
+            try {
+                moveUser(candidate, lightest);
+                moved++;
+            } catch (NotFoundException e) {
+                // Removed since the loads were read; just skip the user
+            }
+            weights.get(heaviest).remove(candidate);
+            weights.get(lightest).put(candidate, candidateWeight);
+            loads[heaviest] -= candidateWeight;
+            loads[lightest] += candidateWeight;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FinanceShard shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted top-k sketch (Space-Saving) that keeps at most capacity keys.
+ * A new key arriving when the sketch is full takes over the smallest
+ * counter, inheriting its count as possible overestimate, so any key whose
+ * true weight exceeds total / capacity is guaranteed to be present and no
+ * estimate is more than total / capacity too high. Two sketches merge by
+ * adding counts, charging each key absent from a full sketch that sketch's
+ * smallest count (the mergeable summaries construction).
+ * Not thread-safe.
+ */
+class SpaceSavingSketch {
+
+    // Weight estimate of one key; the true weight is in [weight - error, weight]
+    static final class Entry {
+        final String key;
+        long weight;
+        long error;
+
+        Entry(String key, long weight, long error) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+
+    SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+        this.entries = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key, long weight) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.weight += weight;
+        } else if (entries.size() < capacity) {
+            entries.put(key, new Entry(key, weight, 0));
+        } else {
+            Entry smallest = smallest();
+            entries.remove(smallest.key);
+            entries.put(key, new Entry(key, smallest.weight + weight, smallest.weight));
+        }
+    }
+
+    void merge(SpaceSavingSketch other) {
+        long ownFloor = entries.size() < capacity ? 0 : smallest().weight;
+        long otherFloor = other.entries.size() < other.capacity ? 0 : other.smallest().weight;
+        Map<String, Entry> merged = new HashMap<>(entries.size() + other.entries.size());
+        for (Entry entry : entries.values()) {
+            Entry match = other.entries.get(entry.key);
+            merged.put(entry.key, match != null
+                    ? new Entry(entry.key, entry.weight + match.weight, entry.error + match.error)
+                    : new Entry(entry.key, entry.weight + otherFloor, entry.error + otherFloor));
+        }
+        for (Entry entry : other.entries.values()) {
+            if (!merged.containsKey(entry.key)) {
+                merged.put(entry.key, new Entry(entry.key, entry.weight + ownFloor, entry.error + ownFloor));
+            }
+        }
+        entries.clear();
+        List<Entry> ranked = rank(merged.values());
+        for (Entry entry : ranked.subList(0, Math.min(capacity, ranked.size()))) {
+            entries.put(entry.key, entry);
+        }
+    }
+
+    // Heaviest keys first, at most limit of them
+    List<Entry> top(int limit) {
+        List<Entry> ranked = rank(entries.values());
+        return ranked.subList(0, Math.min(limit, ranked.size()));
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private Entry smallest() {
+        Entry smallest = null;
+        for (Entry entry : entries.values()) {
+            if (smallest == null || entry.weight < smallest.weight) {
+                smallest = entry;
+            }
+        }
+        return smallest;
+    }
+
+    private static List<Entry> rank(Iterable<Entry> entries) {
+        List<Entry> ranked = new ArrayList<>();
+        for (Entry entry : entries) {
+            ranked.add(entry);
+        }
+        ranked.sort((a, b) -> Long.compare(b.weight, a.weight));
+        return ranked;
+    }
+}
@@ -0,0 +1,82 @@
+package service.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * An expense flagged by SpendingAnomalyDetector: far above what the user
+ * usually spends in its category.
+ */
+public class SpendingAnomaly {
+    private final UUID transactionId;
+    private final UUID userId;
+    private final UUID accountId;
+    private final UUID categoryId;
+    private final String description;
+    private final LocalDate date;
+    private final BigDecimal amount; // Absolute amount of the expense, in the base currency
+    private final BigDecimal typicalAmount; // Geometric mean of the category's recent expenses, likewise
+    private final double score; // Standard deviations above the mean, on a log scale
+
+    public SpendingAnomaly(UUID transactionId, UUID userId, UUID accountId, UUID categoryId, String description,
+            LocalDate date, BigDecimal amount, BigDecimal typicalAmount, double score) {
+        this.transactionId = transactionId;
+        this.userId = userId;
+        this.accountId = accountId;
+        this.categoryId = categoryId;
+        this.description = description;
+        this.date = date;
+        this.amount = amount;
+        this.typicalAmount = typicalAmount;
+        this.score = score;
+    }
+
+    public UUID getTransactionId() {
+        return transactionId;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public UUID getCategoryId() {
+        return categoryId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getTypicalAmount() {
+        return typicalAmount;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "SpendingAnomaly{" +
+                "transactionId=" + transactionId +
+                ", description='" + description + '\'' +
+                ", date=" + date +
+                ", amount=" + amount +
+                ", typicalAmount=" + typicalAmount +
+                ", score=" + String.format("%.2f", score) +
+                '}';
+    }
+}
@@ -0,0 +1,195 @@
+package service.impl;
+
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.SpendingAnomalyEvent;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flags unusual expenses (a grocery charge five times the user's norm) as
+ * they are recorded through TransactionManager, including statement imports.
+ *
+ * Keeps streaming statistics of log(amount) per user and category: a running
+ * mean and variance updated in O(1) per expense with Welford's recurrence,
+ * which turns into an exponentially weighted one after the first window of
+ * expenses so the norm follows gradual changes. Memory is constant per
+ * (user, category) and history is never rescanned. Working on the log scale
+ * suits amounts, which are skewed and vary by multiples rather than offsets.
+ * Amounts are converted into the base currency first (see
+ * TransactionManager.toBaseCurrency), so accounts in different currencies
+ * share one norm per category; anomalies report them in it too.
+ *
+ * An expense is flagged once a category has enough history and the amount is
+ * both at least threshold standard deviations above the typical (geometric
+ * mean) amount and at least twice that amount. Flagged expenses are emitted as JFR
+ * finance.SpendingAnomaly events and kept in a short per-user list.
+ * Updating or deleting a transaction does not revise the statistics.
+ */
+public class SpendingAnomalyDetector {
+
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_RECENT_ANOMALIES_LATENCY =
+            MetricsRegistry.methodLatency("SpendingAnomalyDetector", "getRecentAnomalies");
+
+    public static final double DEFAULT_THRESHOLD = 3.5;
+    public static final int DEFAULT_MIN_SAMPLES = 10;
+    public static final int DEFAULT_WINDOW = 100;
+    // Never flag less than twice the typical amount, however regular the category
+    private static final double LOG_MIN_RATIO = Math.log(2.0);
+    // Floor for the standard deviation, so a fixed monthly bill does not make every change an anomaly
+    private static final double MIN_STD_DEV = 0.1;
+    private static final int RECENT_ANOMALIES_PER_USER = 100;
+
+    private final double threshold;
+    private final int minSamples;
+    private final int window;
+
+    // UserId -> state; statistics per category live inside
+    private final Map<UUID, UserStatistics> userStatistics = new ConcurrentHashMap<>();
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final TransactionListener listener = this::transactionRecorded;
+
+    private final LongAdder anomaliesDetected = MetricsRegistry.getDefault().counter(
+            "finance_spending_anomalies_total", "Expenses flagged as unusual for their category");
+
+    // Running statistics of log(amount) for one user and category
+    private static final class CategoryStatistics {
+        long count;
+        double mean;
+        double variance;
+    }
+
+    private static final class UserStatistics {
+        final Map<UUID, CategoryStatistics> byCategory = new ConcurrentHashMap<>();
+        final ArrayDeque<SpendingAnomaly> recentAnomalies = new ArrayDeque<>(); // Guarded by itself, newest last
+    }
+
+    public SpendingAnomalyDetector(AccountManager accountManager, TransactionManager transactionManager) {
+        this(accountManager, transactionManager, DEFAULT_THRESHOLD, DEFAULT_MIN_SAMPLES, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param threshold  Standard deviations above the mean (log scale) at which
+     *                   an expense is flagged.
+     * @param minSamples Expenses a category needs before anything is flagged.
+     * @param window     Number of expenses after which older ones start to
+     *                   fade out of the statistics.
+     */
+    public SpendingAnomalyDetector(AccountManager accountManager, TransactionManager transactionManager,
+            double threshold, int minSamples, int window) {
+        if (!(threshold > 0) || minSamples < 2 || window < 1) {
+            throw new IllegalArgumentException("Threshold must be positive, minSamples at least 2 and window"
+                    + " at least 1.");
+        }
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+        this.threshold = threshold;
+        this.minSamples = minSamples;
+        this.window = window;
+        transactionManager.addTransactionListener(listener);
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_spending_statistics_keys", "User and category pairs with spending statistics",
+                labels, () -> userStatistics.values().stream().mapToInt(stats -> stats.byCategory.size()).sum());
+    }
+
+    // Most recent anomalies first
+    public List<SpendingAnomaly> getRecentAnomalies(UUID userId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            if (!accountManager.userExists(userId)) {
+                throw new NotFoundException("User with ID " + userId + " not found.");
+            }
+            UserStatistics statistics = userStatistics.get(userId);
+            List<SpendingAnomaly> result = new ArrayList<>();
+            if (statistics != null) {
+                synchronized (statistics.recentAnomalies) {
+                    Iterator<SpendingAnomaly> newestFirst = statistics.recentAnomalies.descendingIterator();
+                    while (newestFirst.hasNext()) {
+                        result.add(newestFirst.next());
+                    }
+                }
+            }
+            return result;
+        } finally {
+            GET_RECENT_ANOMALIES_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // Stops scoring new transactions; statistics and anomalies found so far are kept
+    public void close() {
+        transactionManager.removeTransactionListener(listener);
+    }
+
+    // Runs on the recording thread: score the expense, then fold it into the statistics
+    private void transactionRecorded(UUID userId, Transaction transaction) {
+        if (transaction.getAmount().signum() >= 0) { // Only expenses are negative
+            return;
+        }
+        BigDecimal baseAmount;
+        try {
+            // One norm per category across accounts, so amounts are compared in the base currency
+            baseAmount = transactionManager.toBaseCurrency(userId, transaction).negate();
+        } catch (ValidationException | NotFoundException | SecurityException e) {
+            return; // No rates for the account's currency yet, or the account is gone: nothing to compare
+        }
+        if (baseAmount.signum() <= 0) {
+            return; // Rounds to nothing in the base currency
+        }
+        double amount = baseAmount.doubleValue();
+        double x = Math.log(amount);
+        UserStatistics user = userStatistics.computeIfAbsent(userId, k -> new UserStatistics());
+        CategoryStatistics stats = user.byCategory.computeIfAbsent(transaction.getCategoryId(),
+                k -> new CategoryStatistics());
+
+        double score;
+        double typicalLog;
+        synchronized (stats) {
+            typicalLog = stats.mean;
+            score = stats.count < minSamples ? 0
+                    : (x - stats.mean) / Math.max(MIN_STD_DEV, Math.sqrt(stats.variance));
+            // Welford's update with weight 1/count, i.e. exponentially weighted once count passes the window
+            stats.count++;
+            double alpha = 1.0 / Math.min(stats.count, window);
+            double delta = x - stats.mean;
+            double increment = alpha * delta;
+            stats.mean += increment;
+            stats.variance = (1 - alpha) * (stats.variance + delta * increment);
+        }
+
+        if (score >= threshold && x - typicalLog >= LOG_MIN_RATIO) {
+            report(user, new SpendingAnomaly(transaction.getId(), userId, transaction.getAccountId(),
+                    transaction.getCategoryId(), transaction.getDescription(), transaction.getDate(),
+                    baseAmount, BigDecimal.valueOf(Math.exp(typicalLog)).setScale(2, RoundingMode.HALF_UP), score));
+        }
+    }
+
+    private void report(UserStatistics user, SpendingAnomaly anomaly) {
+        anomaliesDetected.increment();
+        SpendingAnomalyEvent.emit(anomaly.getUserId(), anomaly.getTransactionId(), anomaly.getCategoryId(),
+                anomaly.getAmount().doubleValue(), anomaly.getTypicalAmount().doubleValue(), anomaly.getScore());
+        synchronized (user.recentAnomalies) {
+            if (user.recentAnomalies.size() == RECENT_ANOMALIES_PER_USER) {
+                user.recentAnomalies.removeFirst();
+            }
+            user.recentAnomalies.addLast(anomaly);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package service.impl;
+
+import domain.Transaction;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Per-user, per-calendar-month sketches of expenses, maintained by
+ * TransactionManager as transactions are recorded: top descriptions and top
+ * categories by amount spent (SpaceSavingSketch) and the distribution of
+ * expense sizes (QuantileSketch). A report over any range merges one sketch
+ * set per month instead of sorting the transactions in it. Amounts are
+ * converted into the base currency (see ExchangeRateTable) on the way in;
+ * months built with older exchange rates count as stale.
+ *
+ * Sketches cannot forget a value, so updating or deleting a transaction marks
+ * its month stale; a stale month is rebuilt from the user's transactions the
+ * next time a report needs it. A month only partly inside a range is merged
+ * whole when all its expenses fall inside the range (typically the current
+ * month of a range ending today); otherwise it is summarized from the
+ * transactions of the days in range. The transactions are read outside the
+ * lock, so a rebuilt month is only kept if nothing was added to or changed
+ * in it meanwhile; otherwise the rebuild may have missed that transaction or
+ * counted it twice, and the month stays stale.
+ */
+class SpendingSketchIndex {
+
+    // Keys tracked per sketch; top-N lists are reliable well below this
+    static final int TOP_CAPACITY = 100;
+
+    // UserId -> month index (year * 12 + month - 1) -> sketches; each user's map is guarded by itself
+    private final Map<UUID, Map<Integer, MonthSketches>> userMonths = new ConcurrentHashMap<>();
+
+    // Expense sketches for one user and month (or part of a month)
+    static final class MonthSketches {
+        final SpaceSavingSketch descriptions = new SpaceSavingSketch(TOP_CAPACITY);
+        final SpaceSavingSketch categories = new SpaceSavingSketch(TOP_CAPACITY); // Keyed by category ID
+        final QuantileSketch sizes = new QuantileSketch();
+        long firstDay = Long.MAX_VALUE; // Epoch days of the earliest and latest expense
+        long lastDay = Long.MIN_VALUE;
+        final long ratesVersion; // ExchangeRateTable version the amounts were converted with
+        boolean stale;
+        int changes; // Transactions added or invalidated since built, to spot those racing a rebuild
+
+        MonthSketches(long ratesVersion) {
+            this.ratesVersion = ratesVersion;
+        }
+
+        // baseAmount is the signed amount in the base currency, NaN if it could not be converted
+        void add(Transaction transaction, double baseAmount) {
+            if (!(baseAmount < 0)) { // Only expenses are negative
+                return;
+            }
+            long cents = Math.round(-baseAmount * 100);
+            descriptions.add(String.valueOf(transaction.getDescription()), cents);
+            categories.add(String.valueOf(transaction.getCategoryId()), cents);
+            sizes.add(-baseAmount);
+            long day = transaction.getEpochDay();
+            firstDay = Math.min(firstDay, day);
+            lastDay = Math.max(lastDay, day);
+        }
+
+        void merge(MonthSketches other) {
+            descriptions.merge(other.descriptions);
+            categories.merge(other.categories);
+            sizes.merge(other.sizes);
+        }
+    }
+
+    static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    // ratesVersion must be read before converting, so a rate change in between leaves the month stale
+    void add(UUID userId, Transaction transaction, double baseAmount, long ratesVersion) {
+        Map<Integer, MonthSketches> months = userMonths.computeIfAbsent(userId, k -> new HashMap<>());
+        synchronized (months) {
+            MonthSketches sketches = months.computeIfAbsent(monthIndex(transaction.getDate()),
+                    k -> new MonthSketches(ratesVersion));
+            sketches.add(transaction, baseAmount);
+            sketches.changes++;
+        }
+    }
+
+    void addAll(UUID userId, Collection<Transaction> transactions, ToDoubleFunction<Transaction> baseAmount,
+            long ratesVersion) {
+        Map<Integer, MonthSketches> months = userMonths.computeIfAbsent(userId, k -> new HashMap<>());
+        synchronized (months) {
+            for (Transaction transaction : transactions) {
+                MonthSketches sketches = months.computeIfAbsent(monthIndex(transaction.getDate()),
+                        k -> new MonthSketches(ratesVersion));
+                sketches.add(transaction, baseAmount.applyAsDouble(transaction));
+                sketches.changes++;
+            }
+        }
+    }
+
+    void removeUser(UUID userId) {
+        userMonths.remove(userId);
+    }
+
+    // Called when a transaction on this date was updated or deleted
+    void invalidate(UUID userId, LocalDate date) {
+        Map<Integer, MonthSketches> months = userMonths.get(userId);
+        if (months == null) {
+            return;
+        }
+        synchronized (months) {
+            MonthSketches sketches = months.get(monthIndex(date));
+            if (sketches != null) {
+                sketches.stale = true;
+                sketches.changes++;
+            }
+        }
+    }
+
+    /**
+     * Merged sketches of the user's expenses from startDate to endDate
+     * (inclusive). Reads the user's transactions, in one pass and without
+     * holding the lock, only when a month in range is stale or has expenses
+     * outside the range.
+     *
+     * @param transactions The user's current transactions, read after the
+     *                     months to rebuild are chosen.
+     * @param baseAmount   Converts a transaction into the base currency with
+     *                     the rates of ratesVersion.
+     */
+    MonthSketches summarize(UUID userId, LocalDate startDate, LocalDate endDate,
+            Supplier<? extends Collection<Transaction>> transactions, ToDoubleFunction<Transaction> baseAmount,
+            long ratesVersion) {
+        int firstMonth = monthIndex(startDate);
+        int lastMonth = monthIndex(endDate);
+        long startDay = startDate.toEpochDay();
+        long endDay = endDate.toEpochDay();
+        MonthSketches summary = new MonthSketches(ratesVersion);
+        Map<Integer, MonthSketches> months = userMonths.computeIfAbsent(userId, k -> new HashMap<>());
+        Map<Integer, MonthSketches> rebuilt = new HashMap<>();
+        Map<Integer, MonthSketches> replaced = new HashMap<>(); // The sketches each rebuilt month replaces
+        Map<Integer, Integer> changesSeen = new HashMap<>(); // Their change count when chosen
+        Set<Integer> scanned = new HashSet<>(); // Months summarized from transactions in range
+        synchronized (months) {
+            for (Map.Entry<Integer, MonthSketches> entry : months.entrySet()) {
+                int month = entry.getKey();
+                MonthSketches sketches = entry.getValue();
+                if (month < firstMonth || month > lastMonth) {
+                    continue;
+                }
+                if (sketches.stale || sketches.ratesVersion != ratesVersion) {
+                    rebuilt.put(month, new MonthSketches(ratesVersion));
+                    replaced.put(month, sketches);
+                    changesSeen.put(month, sketches.changes);
+                    scanned.add(month);
+                } else if (sketches.firstDay >= startDay && sketches.lastDay <= endDay) {
+                    summary.merge(sketches);
+                } else {
+                    scanned.add(month);
+                }
+            }
+        }
+        if (scanned.isEmpty()) {
+            return summary;
+        }
+        for (Transaction transaction : transactions.get()) {
+            LocalDate date = transaction.getDate();
+            int month = monthIndex(date);
+            if (!scanned.contains(month)) {
+                continue;
+            }
+            double amount = baseAmount.applyAsDouble(transaction);
+            MonthSketches target = rebuilt.get(month);
+            if (target != null) {
+                target.add(transaction, amount);
+            }
+            long day = date.toEpochDay();
+            if (day >= startDay && day <= endDay) {
+                summary.add(transaction, amount);
+            }
+        }
+        synchronized (months) {
+            for (Map.Entry<Integer, MonthSketches> entry : rebuilt.entrySet()) {
+                int month = entry.getKey();
+                MonthSketches old = replaced.get(month);
+                if (months.get(month) == old && old.changes == changesSeen.get(month)) {
+                    months.put(month, entry.getValue());
+                }
+            }
+        }
+        return summary;
+    }
+}
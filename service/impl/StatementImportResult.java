@@ -0,0 +1,87 @@
+package service.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a StatementImporter run: row counts plus the rows that were
+ * rejected. Only the first rejected rows are kept in detail so that a badly
+ * formatted file cannot exhaust memory; getRowsFailed() is always exact.
+ * Duplicates of already stored transactions are counted, not reported as errors.
+ */
+public class StatementImportResult {
+
+    // A rejected row; line is the 1-based line of the file where the row starts
+    public static class RowError {
+        private final int line;
+        private final String message;
+
+        public RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    private final long rowsImported;
+    private final long rowsDuplicate;
+    private final long rowsFailed;
+    private final List<RowError> errors;
+    private final long elapsedMillis;
+
+    public StatementImportResult(long rowsImported, long rowsDuplicate, long rowsFailed, List<RowError> errors,
+            long elapsedMillis) {
+        this.rowsImported = rowsImported;
+        this.rowsDuplicate = rowsDuplicate;
+        this.rowsFailed = rowsFailed;
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRowsRead() {
+        return rowsImported + rowsDuplicate + rowsFailed;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getRowsDuplicate() {
+        return rowsDuplicate;
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementImportResult{" +
+                "rowsImported=" + rowsImported +
+                ", rowsDuplicate=" + rowsDuplicate +
+                ", rowsFailed=" + rowsFailed +
+                ", elapsedMillis=" + elapsedMillis +
+                ", errors=" + errors +
+                '}';
+    }
+}
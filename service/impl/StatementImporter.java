@@ -0,0 +1,702 @@
+package service.impl;
+
+import domain.Category;
+import domain.Transaction;
+import exception.NotFoundException;
+import exception.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Imports a bank statement file (CSV or OFX) as transactions of one account.
+ * The import is a three-stage pipeline joined by bounded queues: a parser
+ * thread reads the file through a FileChannel in 1 MiB chunks and splits it
+ * into rows, a validator thread checks each row and resolves its category via
+ * CategoryManager, and the calling thread applies the valid rows to
+ * TransactionManager in batches. A full queue blocks the stage feeding it, so
+ * memory stays bounded by the queue sizes whatever the file size.
+ * Invalid rows are skipped and reported by line number; rows that duplicate a
+ * transaction already stored (see DuplicateDetector) are skipped and counted,
+ * so importing an overlapping statement again is safe.
+ *
+ * CSV files need a header row with at least "date" and "amount" columns;
+ * "category", "type" and "description" (or "memo", "payee", "name") are
+ * optional. Without a type column the sign of the amount decides between
+ * income and expense. Dates are yyyy-MM-dd or yyyyMMdd.
+ * OFX files carry no categories, so their rows (like CSV rows with an empty
+ * category) go to the category the user's rules pick for their description
+ * when a CategoryRuleManager is given, and otherwise to "Uncategorized
+ * Income" / "Uncategorized Expense", which are created on first use.
+ */
+public class StatementImporter {
+
+    private static final LatencyHistogram IMPORT_STATEMENT_LATENCY =
+            MetricsRegistry.methodLatency("StatementImporter", "importStatement");
+
+    public static final String DEFAULT_INCOME_CATEGORY = "Uncategorized Income";
+    public static final String DEFAULT_EXPENSE_CATEGORY = "Uncategorized Expense";
+
+    private static final int CHUNK_SIZE = 1 << 20; // Also the longest record (CSV row or OFX tag and value)
+    private static final int BATCH_SIZE = 4096; // Rows per queue element
+    private static final int QUEUE_CAPACITY = 8; // Batches buffered between two stages
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_CACHED_VALUES = 1 << 16;
+
+    private final AccountManager accountManager;
+    private final CategoryManager categoryManager;
+    private final TransactionManager transactionManager;
+    private final CategoryRuleManager categoryRules; // Files rows without a category; null for none
+
+    private final LongAdder rowsImported = MetricsRegistry.getDefault().counter("finance_import_rows_total",
+            "Statement rows processed by the importer", "result=\"imported\"");
+    private final LongAdder rowsFailed = MetricsRegistry.getDefault().counter("finance_import_rows_total",
+            "Statement rows processed by the importer", "result=\"failed\"");
+    private final LongAdder rowsDuplicate = MetricsRegistry.getDefault().counter("finance_import_rows_total",
+            "Statement rows processed by the importer", "result=\"duplicate\"");
+
+    public StatementImporter(AccountManager accountManager, CategoryManager categoryManager,
+            TransactionManager transactionManager) {
+        this(accountManager, categoryManager, transactionManager, null);
+    }
+
+    public StatementImporter(AccountManager accountManager, CategoryManager categoryManager,
+            TransactionManager transactionManager, CategoryRuleManager categoryRules) {
+        this.accountManager = accountManager;
+        this.categoryManager = categoryManager;
+        this.transactionManager = transactionManager;
+        this.categoryRules = categoryRules;
+    }
+
+    // A parsed but not yet validated row; fields are null when the file does not provide them
+    private static class RawRow {
+        int line;
+        String date;
+        String amount;
+        String type;
+        String category;
+        String description;
+    }
+
+    // Marks the end of a stage's output; compared by identity
+    private static final List<Object> END = Collections.emptyList();
+
+    /**
+     * Imports a statement, picking the format from the file extension
+     * (.ofx and .qfx are OFX, anything else is CSV).
+     */
+    public StatementImportResult importStatement(UUID userId, UUID accountId, Path file)
+            throws ValidationException, NotFoundException, SecurityException, IOException {
+        String fileName = file == null ? "" : file.getFileName().toString().toLowerCase();
+        String format = fileName.endsWith(".ofx") || fileName.endsWith(".qfx") ? "ofx" : "csv";
+        return importStatement(userId, accountId, file, format);
+    }
+
+    /**
+     * Imports a statement in the given format ("csv" or "ofx").
+     * Rows applied before a read error stay recorded; the error is rethrown.
+     */
+    public StatementImportResult importStatement(UUID userId, UUID accountId, Path file, String format)
+            throws ValidationException, NotFoundException, SecurityException, IOException {
+        long startNanos = System.nanoTime();
+        try {
+            if (!accountManager.userExists(userId)) {
+                throw new NotFoundException("User with ID " + userId + " not found.");
+            }
+            if (accountId == null || file == null || format == null) {
+                throw new ValidationException("Account ID, file, and format are required.");
+            }
+            StatementParser parser;
+            if (format.equalsIgnoreCase("csv")) {
+                parser = new CsvParser();
+            } else if (format.equalsIgnoreCase("ofx")) {
+                parser = new OfxParser();
+            } else {
+                throw new ValidationException("Unsupported statement format: " + format + ". Must be 'csv' or 'ofx'.");
+            }
+            accountManager.getAccount(accountId, userId); // Checks user auth
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return new ImportRun(userId, accountId, channel, parser).run(startNanos);
+            }
+        } finally {
+            IMPORT_STATEMENT_LATENCY.recordSince(startNanos);
+        }
+    }
+
+    // State of one import: the two background stages plus the apply loop on the calling thread
+    private class ImportRun {
+        final UUID userId;
+        final UUID accountId;
+        final FileChannel channel;
+        final StatementParser parser;
+
+        final BlockingQueue<List<RawRow>> rawRows = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final BlockingQueue<List<Transaction>> validRows = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        // Written by the validator, read by the caller after join()
+        final List<StatementImportResult.RowError> errors = new ArrayList<>();
+        long failed;
+        long imported;
+        long duplicates;
+        final int importTag = transactionManager.newImportTag();
+        volatile Exception failure; // First error that stopped a stage
+
+        // Validator-only lookups. Statements repeat the same payees and dates,
+        // so sharing those objects keeps a large import's retained heap down.
+        final Map<String, Category> categories = new HashMap<>();
+        final Set<String> missingCategories = new HashSet<>();
+        final Map<String, LocalDate> dates = new HashMap<>();
+
+        ImportRun(UUID userId, UUID accountId, FileChannel channel, StatementParser parser) {
+            this.userId = userId;
+            this.accountId = accountId;
+            this.channel = channel;
+            this.parser = parser;
+        }
+
+        @SuppressWarnings("unchecked")
+        StatementImportResult run(long startNanos)
+                throws ValidationException, NotFoundException, SecurityException, IOException {
+            Thread parseStage = startStage("finance-import-parse", this::parse);
+            Thread validateStage = startStage("finance-import-validate", this::validate);
+            try {
+                while (true) {
+                    List<Transaction> batch = validRows.take();
+                    if (batch == (Object) END) {
+                        break;
+                    }
+                    int stored = transactionManager.recordTransactionBatch(userId, accountId, batch, importTag);
+                    imported += stored;
+                    duplicates += batch.size() - stored;
+                    rowsImported.add(stored);
+                    rowsDuplicate.add(batch.size() - stored);
+                }
+                validateStage.join();
+                parseStage.interrupt(); // Unblocks the parser if the validator stopped early
+                parseStage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Statement import interrupted");
+            } finally {
+                // Stops the stages early if applying failed; a no-op once they have finished
+                parseStage.interrupt();
+                validateStage.interrupt();
+            }
+
+            Exception stageFailure = failure;
+            if (stageFailure instanceof ValidationException) {
+                throw (ValidationException) stageFailure;
+            } else if (stageFailure instanceof IOException) {
+                throw (IOException) stageFailure;
+            } else if (stageFailure != null) {
+                throw new IOException("Statement import failed", stageFailure);
+            }
+            return new StatementImportResult(imported, duplicates, failed, errors,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        }
+
+        private Thread startStage(String name, Runnable body) {
+            Thread thread = new Thread(body, name);
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+
+        // Stage 1: read the file in chunks and hand rows downstream in batches
+        @SuppressWarnings("unchecked")
+        private void parse() {
+            try {
+                List<RawRow> batch = new ArrayList<>(BATCH_SIZE);
+                RowSink sink = row -> {
+                    batch.add(row);
+                    if (batch.size() == BATCH_SIZE) {
+                        rawRows.put(new ArrayList<>(batch));
+                        batch.clear();
+                    }
+                };
+                byte[] buffer = new byte[CHUNK_SIZE]; // Never grown, so memory stays bounded
+                int start = 0;
+                int limit = 0;
+                boolean eof = false;
+                boolean first = true;
+                while (!eof) {
+                    if (start > 0) { // Keep the unfinished row at the front of the buffer
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        limit -= start;
+                        start = 0;
+                    }
+                    if (limit == buffer.length) { // One unfinished record fills the buffer
+                        throw new ValidationException("Line " + parser.line + ": record longer than "
+                                + CHUNK_SIZE + " bytes (unterminated quote or missing line breaks?)");
+                    }
+                    int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        limit += read;
+                    }
+                    if (first && limit >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB
+                            && (buffer[2] & 0xFF) == 0xBF) {
+                        start = 3; // UTF-8 byte order mark
+                    }
+                    first = first && limit < 3 && !eof;
+                    start = parser.parse(buffer, start, limit, eof, sink);
+                }
+                if (!batch.isEmpty()) {
+                    rawRows.put(new ArrayList<>(batch));
+                }
+            } catch (InterruptedException e) {
+                return; // Import aborted by the apply stage
+            } catch (Exception e) {
+                failure = e;
+            }
+            try {
+                rawRows.put((List<RawRow>) (List<?>) END);
+            } catch (InterruptedException e) {
+                // Import aborted by the apply stage
+            }
+        }
+
+        // Stage 2: validate rows and resolve categories, keeping per-row errors
+        @SuppressWarnings("unchecked")
+        private void validate() {
+            try {
+                while (true) {
+                    List<RawRow> rows = rawRows.take();
+                    if (rows == (Object) END) {
+                        break;
+                    }
+                    List<Transaction> valid = new ArrayList<>(rows.size());
+                    for (RawRow row : rows) {
+                        try {
+                            valid.add(toTransaction(row));
+                        } catch (ValidationException e) {
+                            failed++;
+                            rowsFailed.increment();
+                            if (errors.size() < MAX_REPORTED_ERRORS) {
+                                errors.add(new StatementImportResult.RowError(row.line, e.getMessage()));
+                            }
+                        }
+                    }
+                    if (!valid.isEmpty()) {
+                        validRows.put(valid);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return; // Import aborted by the apply stage
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            try {
+                validRows.put((List<Transaction>) (List<?>) END);
+            } catch (InterruptedException e) {
+                // Import aborted by the apply stage
+            }
+        }
+
+        private Transaction toTransaction(RawRow row) throws ValidationException {
+            if (row.date == null || row.date.isEmpty() || row.amount == null || row.amount.isEmpty()) {
+                throw new ValidationException("Date and amount are required.");
+            }
+            LocalDate date = dates.get(row.date);
+            if (date == null) {
+                date = parseDate(row.date);
+                TransactionManager.checkDate(date);
+                dates.put(cacheable(dates, row.date), date);
+            }
+            BigDecimal amount;
+            try {
+                amount = new BigDecimal(row.amount);
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Invalid amount: " + row.amount);
+            }
+            if (amount.signum() == 0) {
+                throw new ValidationException("Transaction amount cannot be zero.");
+            }
+
+            String type;
+            if (row.type == null || row.type.isEmpty()) {
+                type = amount.signum() > 0 ? "income" : "expense";
+            } else if (row.type.equalsIgnoreCase("income") || row.type.equalsIgnoreCase("expense")) {
+                type = row.type.toLowerCase();
+            } else {
+                throw new ValidationException("Invalid transaction type: " + row.type
+                        + ". Must be 'income' or 'expense'.");
+            }
+            BigDecimal signedAmount = type.equals("income") ? amount.abs() : amount.abs().negate();
+
+            boolean uncategorized = row.category == null || row.category.isEmpty();
+            Category category = uncategorized && categoryRules != null
+                    ? categoryRules.classify(userId, row.description, type) : null;
+            String categoryName;
+            if (category != null) {
+                categoryName = category.getName();
+            } else {
+                categoryName = uncategorized
+                        ? (type.equals("income") ? DEFAULT_INCOME_CATEGORY : DEFAULT_EXPENSE_CATEGORY)
+                        : row.category;
+                category = resolveCategory(categoryName, type, uncategorized);
+            }
+            if (!category.getType().equalsIgnoreCase(type)) {
+                throw new ValidationException(
+                        "Transaction type '" + type + "' does not match category type '" + category.getType() + "'.");
+            }
+
+            String description = row.description == null || row.description.isEmpty() ? categoryName
+                    : row.description;
+            return new Transaction(accountId, category.getId(), signedAmount, date,
+                    transactionManager.shareDescription(description), type);
+        }
+
+        // Looks each distinct name up once; CategoryManager scans all categories per lookup
+        private Category resolveCategory(String name, String type, boolean createIfMissing)
+                throws ValidationException {
+            String key = name.toLowerCase();
+            Category category = categories.get(key);
+            if (category != null) {
+                return category;
+            }
+            if (missingCategories.contains(key)) {
+                throw new ValidationException("Category with name \"" + name + "\" not found.");
+            }
+            try {
+                category = categoryManager.getCategoryByName(name);
+            } catch (NotFoundException e) {
+                if (!createIfMissing) {
+                    missingCategories.add(key);
+                    throw new ValidationException(e.getMessage());
+                }
+                try {
+                    category = categoryManager.createCategory(name, type);
+                } catch (ValidationException alreadyCreated) {
+                    try {
+                        category = categoryManager.getCategoryByName(name); // Lost a race with another import
+                    } catch (NotFoundException stillMissing) {
+                        throw alreadyCreated;
+                    }
+                }
+            }
+            categories.put(key, category);
+            return category;
+        }
+    }
+
+    // Bounds a dedup cache: once full it starts over, so a file of unique values cannot grow it forever
+    private static String cacheable(Map<String, ?> cache, String key) {
+        if (cache.size() >= MAX_CACHED_VALUES) {
+            cache.clear();
+        }
+        return key;
+    }
+
+    // Accepts yyyy-MM-dd, or yyyyMMdd optionally followed by a time as in OFX (e.g. 20240131120000[-5:EST])
+    private static LocalDate parseDate(String value) throws ValidationException {
+        try {
+            if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+                return LocalDate.of(digits(value, 0, 4), digits(value, 5, 7), digits(value, 8, 10));
+            }
+            if (value.length() >= 8) {
+                return LocalDate.of(digits(value, 0, 4), digits(value, 4, 6), digits(value, 6, 8));
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            // Reported below
+        }
+        throw new ValidationException("Invalid date: " + value + ". Expected yyyy-MM-dd or yyyyMMdd.");
+    }
+
+    private static int digits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface RowSink {
+        void accept(RawRow row) throws InterruptedException;
+    }
+
+    private abstract static class StatementParser {
+        int line = 1; // Line of the file at the current parse position
+
+        /**
+         * Emits every complete row in buffer[start, limit) and returns the
+         * position after the last one; an unfinished row is left for the next
+         * call, when more of the file has been read. At eof everything is consumed.
+         */
+        abstract int parse(byte[] buffer, int start, int limit, boolean eof, RowSink sink)
+                throws ValidationException, InterruptedException;
+
+        static String decode(byte[] buffer, int from, int to) {
+            while (from < to && (buffer[from] == ' ' || buffer[from] == '\t')) {
+                from++;
+            }
+            while (to > from && (buffer[to - 1] == ' ' || buffer[to - 1] == '\t' || buffer[to - 1] == '\r')) {
+                to--;
+            }
+            return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+        }
+    }
+
+    // RFC 4180 CSV: comma separated, fields optionally quoted, "" escapes a quote inside quotes
+    private static class CsvParser extends StatementParser {
+        private int dateColumn = -1;
+        private int amountColumn = -1;
+        private int typeColumn = -1;
+        private int categoryColumn = -1;
+        private int descriptionColumn = -1;
+        private boolean headerRead;
+        private final List<String> fields = new ArrayList<>();
+
+        @Override
+        int parse(byte[] buffer, int start, int limit, boolean eof, RowSink sink)
+                throws ValidationException, InterruptedException {
+            int pos = start;
+            while (pos < limit) {
+                int recordLine = line;
+                int next = splitRecord(buffer, pos, limit, eof);
+                if (next < 0) {
+                    return pos; // Record continues in the next chunk
+                }
+                pos = next;
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue; // Blank line
+                }
+                if (!headerRead) {
+                    readHeader(recordLine);
+                    continue;
+                }
+                RawRow row = new RawRow();
+                row.line = recordLine;
+                row.date = field(dateColumn);
+                row.amount = field(amountColumn);
+                row.type = field(typeColumn);
+                row.category = field(categoryColumn);
+                row.description = field(descriptionColumn);
+                sink.accept(row);
+            }
+            if (eof && !headerRead) {
+                throw new ValidationException("The CSV file is empty; a header row is required.");
+            }
+            return pos;
+        }
+
+        private String field(int column) {
+            return column >= 0 && column < fields.size() ? fields.get(column) : null;
+        }
+
+        private void readHeader(int headerLine) throws ValidationException {
+            for (int i = 0; i < fields.size(); i++) {
+                switch (fields.get(i).toLowerCase()) {
+                    case "date":
+                        dateColumn = i;
+                        break;
+                    case "amount":
+                        amountColumn = i;
+                        break;
+                    case "type":
+                        typeColumn = i;
+                        break;
+                    case "category":
+                        categoryColumn = i;
+                        break;
+                    case "description":
+                    case "memo":
+                    case "payee":
+                    case "name":
+                        if (descriptionColumn < 0) {
+                            descriptionColumn = i;
+                        }
+                        break;
+                    default:
+                        // Extra columns (balance, reference, ...) are ignored
+                }
+            }
+            if (dateColumn < 0 || amountColumn < 0) {
+                throw new ValidationException("CSV header on line " + headerLine
+                        + " must contain 'date' and 'amount' columns, found: " + fields);
+            }
+            headerRead = true;
+        }
+
+        // Splits one record into fields; returns the position after it, or -1 if it is not complete yet
+        private int splitRecord(byte[] buffer, int pos, int limit, boolean eof) {
+            fields.clear();
+            int fieldStart = pos;
+            boolean quoted = false;
+            boolean inQuotes = false;
+            boolean escapedQuote = false;
+            int newlines = 0;
+            int i = pos;
+            while (true) {
+                if (i >= limit) {
+                    if (!eof) {
+                        return -1;
+                    }
+                    addField(buffer, fieldStart, limit, quoted, escapedQuote); // Last record without a newline
+                    line += newlines + 1;
+                    return limit;
+                }
+                byte b = buffer[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        if (i + 1 >= limit && !eof) {
+                            return -1; // Cannot tell "" from a closing quote yet
+                        }
+                        if (i + 1 < limit && buffer[i + 1] == '"') {
+                            escapedQuote = true;
+                            i += 2;
+                            continue;
+                        }
+                        inQuotes = false;
+                    } else if (b == '\n') {
+                        newlines++;
+                    }
+                    i++;
+                } else if (b == '"' && i == fieldStart) {
+                    quoted = true;
+                    inQuotes = true;
+                    i++;
+                } else if (b == ',') {
+                    addField(buffer, fieldStart, i, quoted, escapedQuote);
+                    fieldStart = i + 1;
+                    quoted = false;
+                    escapedQuote = false;
+                    i++;
+                } else if (b == '\n') {
+                    addField(buffer, fieldStart, i, quoted, escapedQuote);
+                    line += newlines + 1;
+                    return i + 1;
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        private void addField(byte[] buffer, int from, int to, boolean quoted, boolean escapedQuote) {
+            if (!quoted) {
+                fields.add(decode(buffer, from, to));
+                return;
+            }
+            int end = to;
+            while (end > from + 1 && buffer[end - 1] != '"') {
+                end--; // Skip a trailing \r or stray characters after the closing quote
+            }
+            String value = end > from + 1 ? new String(buffer, from + 1, end - from - 2, StandardCharsets.UTF_8)
+                    : new String(buffer, from + 1, to - from - 1, StandardCharsets.UTF_8); // Unterminated quote
+            fields.add(escapedQuote ? value.replace("\"\"", "\"") : value);
+        }
+    }
+
+    /*
+     * OFX 1.x (SGML, closing tags optional) and 2.x (XML). Only the
+     * <STMTTRN> elements matter: DTPOSTED, TRNAMT, NAME and MEMO.
+     */
+    private static class OfxParser extends StatementParser {
+        private RawRow current;
+
+        @Override
+        int parse(byte[] buffer, int start, int limit, boolean eof, RowSink sink) throws InterruptedException {
+            int pos = start;
+            while (pos < limit) {
+                int open = indexOf(buffer, (byte) '<', pos, limit);
+                if (open < 0) {
+                    countLines(buffer, pos, limit);
+                    return limit; // Header lines or whitespace
+                }
+                int close = indexOf(buffer, (byte) '>', open, limit);
+                int valueEnd = close < 0 ? -1 : indexOf(buffer, (byte) '<', close, limit);
+                if (valueEnd < 0) {
+                    if (!eof) {
+                        return pos; // Tag or its value continues in the next chunk
+                    }
+                    valueEnd = limit;
+                    if (close < 0) {
+                        return limit;
+                    }
+                }
+                countLines(buffer, pos, open);
+                int tagLine = line;
+                String tag = new String(buffer, open + 1, close - open - 1, StandardCharsets.US_ASCII)
+                        .trim().toUpperCase();
+                String value = decode(buffer, close + 1, valueEnd).trim();
+                countLines(buffer, open, valueEnd);
+                pos = valueEnd;
+
+                if (tag.equals("STMTTRN")) {
+                    current = new RawRow();
+                    current.line = tagLine;
+                } else if (tag.equals("/STMTTRN")) {
+                    if (current != null) {
+                        sink.accept(current);
+                        current = null;
+                    }
+                } else if (current != null) {
+                    switch (tag) {
+                        case "DTPOSTED":
+                            current.date = value;
+                            break;
+                        case "TRNAMT":
+                            current.amount = value;
+                            break;
+                        case "NAME":
+                            current.description = value;
+                            break;
+                        case "MEMO":
+                            if (current.description == null || current.description.isEmpty()) {
+                                current.description = value;
+                            }
+                            break;
+                        default:
+                            // FITID, TRNTYPE, CHECKNUM, ... are not needed
+                    }
+                }
+            }
+            return pos;
+        }
+
+        private void countLines(byte[] buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == '\n') {
+                    line++;
+                }
+            }
+        }
+
+        private static int indexOf(byte[] buffer, byte target, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer[i] == target) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
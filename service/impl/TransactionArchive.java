@@ -0,0 +1,222 @@
+package service.impl;
+
+import domain.Transaction;
+import domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One user's cold transactions, held off the Java heap in a direct
+ * ByteBuffer of fixed-size records sorted by date, so that years of history
+ * cost the garbage collector nothing and a date-range read touches only the
+ * rows in range. Lookups by ID go through an open-addressing hash index,
+ * also off heap. Account and category IDs and descriptions are stored as
+ * codes into small on-heap dictionaries.
+ *
+ * An archive is immutable apart from deletions, which are recorded with the
+ * ledger version that made them so older snapshots still see the row;
+ * deleted rows are dropped when the archive is next rebuilt (see build).
+ * Rows are decoded into short-lived Transaction objects as they are read.
+ */
+final class TransactionArchive {
+
+    // Record layout, in bytes
+    private static final int ID_MOST = 0;
+    private static final int ID_LEAST = 8;
+    private static final int UNSCALED_AMOUNT = 16;
+    private static final int EPOCH_DAY = 24;
+    private static final int ACCOUNT = 28;
+    private static final int CATEGORY = 32;
+    private static final int DESCRIPTION = 36;
+    private static final int AMOUNT_SCALE = 40;
+    private static final int TYPE = 41;
+    private static final int RECORD_BYTES = 44;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    static final TransactionArchive EMPTY = new TransactionArchive(ByteBuffer.allocateDirect(0),
+            ByteBuffer.allocateDirect(Integer.BYTES), 0, new UUID[0], new String[0]);
+
+    private final ByteBuffer records;
+    private final ByteBuffer index; // Slots of row + 1 (0 = empty), by ID hash, linear probing
+    private final int indexMask;
+    private final int size;
+    private final UUID[] ids; // Account and category IDs by code
+    private final String[] descriptions;
+    // Row -> ledger version that deleted it
+    private final Map<Integer, Long> deletedAt = new ConcurrentHashMap<>();
+
+    private TransactionArchive(ByteBuffer records, ByteBuffer index, int size, UUID[] ids, String[] descriptions) {
+        this.records = records;
+        this.index = index;
+        this.indexMask = index.capacity() / Integer.BYTES - 1;
+        this.size = size;
+        this.ids = ids;
+        this.descriptions = descriptions;
+    }
+
+    // Whether the transaction can be archived: its amount must fit an unscaled long and a byte scale
+    static boolean fits(Transaction transaction) {
+        BigDecimal amount = transaction.getAmount();
+        return amount.unscaledValue().bitLength() < Long.SIZE && amount.scale() == (byte) amount.scale();
+    }
+
+    /**
+     * A new archive holding the rows of this one not yet deleted plus the
+     * given transactions (which must fit), sorted by date. Dictionaries only
+     * grow, so existing rows are copied as they are.
+     */
+    TransactionArchive build(List<Transaction> added) {
+        List<Transaction> sorted = new ArrayList<>(added);
+        sorted.sort(Comparator.comparingLong(Transaction::getEpochDay));
+
+        List<UUID> newIds = new ArrayList<>(Arrays.asList(ids));
+        Map<UUID, Integer> idCodes = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            idCodes.put(ids[i], i);
+        }
+        List<String> newDescriptions = new ArrayList<>(Arrays.asList(descriptions));
+        Map<String, Integer> descriptionCodes = new HashMap<>();
+        for (int i = 0; i < descriptions.length; i++) {
+            descriptionCodes.put(descriptions[i], i);
+        }
+
+        int newSize = size - deletedAt.size() + sorted.size();
+        ByteBuffer out = ByteBuffer.allocateDirect(newSize * RECORD_BYTES);
+        int row = 0;
+        int next = 0;
+        for (Transaction transaction : sorted) {
+            // Existing rows dated up to this one first, keeping the order stable
+            while (row < size && day(row) <= transaction.getEpochDay()) {
+                next = copyRow(row++, out, next);
+            }
+            int at = next++ * RECORD_BYTES;
+            BigDecimal amount = transaction.getAmount();
+            out.putLong(at + ID_MOST, transaction.getId().getMostSignificantBits());
+            out.putLong(at + ID_LEAST, transaction.getId().getLeastSignificantBits());
+            out.putLong(at + UNSCALED_AMOUNT, amount.unscaledValue().longValue());
+            out.putInt(at + EPOCH_DAY, (int) transaction.getEpochDay());
+            out.putInt(at + ACCOUNT, code(idCodes, newIds, transaction.getAccountId()));
+            out.putInt(at + CATEGORY, code(idCodes, newIds, transaction.getCategoryId()));
+            out.putInt(at + DESCRIPTION, code(descriptionCodes, newDescriptions, transaction.getDescription()));
+            out.put(at + AMOUNT_SCALE, (byte) amount.scale());
+            out.put(at + TYPE, (byte) transaction.getTransactionType().ordinal());
+        }
+        while (row < size) {
+            next = copyRow(row++, out, next);
+        }
+
+        ByteBuffer newIndex = ByteBuffer.allocateDirect(Integer.highestOneBit(Math.max(1, newSize) * 2) * 2
+                * Integer.BYTES);
+        int mask = newIndex.capacity() / Integer.BYTES - 1;
+        for (int r = 0; r < newSize; r++) {
+            int slot = hash(out.getLong(r * RECORD_BYTES + ID_MOST), out.getLong(r * RECORD_BYTES + ID_LEAST)) & mask;
+            while (newIndex.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newIndex.putInt(slot * Integer.BYTES, r + 1);
+        }
+        return new TransactionArchive(out, newIndex, newSize, newIds.toArray(new UUID[0]),
+                newDescriptions.toArray(new String[0]));
+    }
+
+    private int copyRow(int row, ByteBuffer out, int next) {
+        if (deletedAt.containsKey(row)) {
+            return next;
+        }
+        out.put(next * RECORD_BYTES, records, row * RECORD_BYTES, RECORD_BYTES);
+        return next + 1;
+    }
+
+    private static <T> int code(Map<T, Integer> codes, List<T> values, T value) {
+        return codes.computeIfAbsent(value, k -> {
+            values.add(k);
+            return values.size() - 1;
+        });
+    }
+
+    private static int hash(long most, long least) {
+        long h = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Rows not deleted
+    int liveSize() {
+        return size - deletedAt.size();
+    }
+
+    long offHeapBytes() {
+        return records.capacity() + (long) index.capacity();
+    }
+
+    private long day(int row) {
+        return records.getInt(row * RECORD_BYTES + EPOCH_DAY);
+    }
+
+    // Row holding the transaction, or -1
+    int find(UUID transactionId) {
+        long most = transactionId.getMostSignificantBits();
+        long least = transactionId.getLeastSignificantBits();
+        int slot = hash(most, least) & indexMask;
+        int entry;
+        while ((entry = index.getInt(slot * Integer.BYTES)) != 0) {
+            int at = (entry - 1) * RECORD_BYTES;
+            if (records.getLong(at + ID_MOST) == most && records.getLong(at + ID_LEAST) == least) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    // Whether a snapshot at the given version sees the row
+    boolean isVisible(int row, long version) {
+        Long deleted = deletedAt.get(row);
+        return deleted == null || deleted > version;
+    }
+
+    void markDeleted(int row, long version) {
+        deletedAt.putIfAbsent(row, version);
+    }
+
+    // First row dated on or after the given day
+    int firstRowFrom(long firstDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (day(mid) < firstDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Whether the row is dated after the given day; rows are in date order
+    boolean isAfter(int row, long lastDay) {
+        return day(row) > lastDay;
+    }
+
+    Transaction decode(int row) {
+        int at = row * RECORD_BYTES;
+        return Transaction.restore(new UUID(records.getLong(at + ID_MOST), records.getLong(at + ID_LEAST)),
+                ids[records.getInt(at + ACCOUNT)], ids[records.getInt(at + CATEGORY)],
+                records.getLong(at + UNSCALED_AMOUNT), records.get(at + AMOUNT_SCALE), records.getInt(at + EPOCH_DAY),
+                descriptions[records.getInt(at + DESCRIPTION)], TYPES[records.get(at + TYPE)]);
+    }
+}
@@ -0,0 +1,15 @@
+package service.impl;
+
+import domain.Transaction;
+
+import java.util.UUID;
+
+/**
+ * Notified by TransactionManager after a transaction has been stored, from
+ * both recordTransaction and statement imports. Called on the recording
+ * thread, so implementations must be quick and hand slow work elsewhere.
+ */
+public interface TransactionListener {
+
+    void transactionRecorded(UUID userId, Transaction transaction);
+}
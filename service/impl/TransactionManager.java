@@ -10,30 +10,139 @@ import exception.ValidationException;
 // Import implementation classes directly
 import service.impl.AccountManager;
 import service.impl.CategoryManager;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.TransactionIngestEvent;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Implementation of TransactionManager using in-memory storage.
  */
 public class TransactionManager {
 
-    private final Map<UUID, Map<UUID, Transaction>> userTransactions = new ConcurrentHashMap<>();
+    // Per-method latency histograms, exported by metrics.MetricsRegistry
+    private static final LatencyHistogram GET_TRANSACTIONS_BY_USER_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "getTransactionsByUser");
+    private static final LatencyHistogram GET_TRANSACTIONS_BY_ACCOUNT_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "getTransactionsByAccount");
+    private static final LatencyHistogram GET_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "getTransaction");
+    private static final LatencyHistogram SEARCH_TRANSACTIONS_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "searchTransactions");
+    private static final LatencyHistogram RECORD_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "recordTransaction");
+    private static final LatencyHistogram RECORD_TRANSACTION_BATCH_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "recordTransactionBatch");
+    private static final LatencyHistogram UPDATE_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "updateTransaction");
+    private static final LatencyHistogram DELETE_TRANSACTION_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "deleteTransaction");
+    private static final LatencyHistogram ARCHIVE_COLD_TRANSACTIONS_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "archiveColdTransactions");
+    private static final LatencyHistogram GET_CATEGORY_TOTALS_LATENCY =
+            MetricsRegistry.methodLatency("TransactionManager", "getCategoryTotals");
+
+    public static final int DEFAULT_ARCHIVE_AFTER_DAYS = 90;
+    // Range of transaction dates accepted; Transaction keeps the date as an int epoch day
+    public static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+    public static final int DEFAULT_SEARCH_LIMIT = 100;
+    public static final int MAX_SEARCH_LIMIT = 1000;
+
+    // Per-user multi-versioned transactions; reports read them through snapshots (see UserLedger)
+    private final Map<UUID, UserLedger> userLedgers = new ConcurrentHashMap<>();
+    // Per-user inverted index over descriptions, kept in sync below
+    private final TransactionSearchIndex searchIndex = new TransactionSearchIndex();
+    // Per-user, per-month expense sketches for top-N and quantile reports, kept in sync below
+    private final SpendingSketchIndex spendingSketches = new SpendingSketchIndex();
+    // Per-user totals of every category including its subcategories, kept in sync below
+    private final CategoryRollupIndex categoryRollups = new CategoryRollupIndex();
+    // One String per distinct description across the stored transactions
+    private final DescriptionPool descriptionPool = new DescriptionPool();
+    private final ExchangeRateTable exchangeRates;
+    // Per-account fingerprints of recent transactions, kept in sync below
+    private final DuplicateDetector duplicateDetector;
+    // Notified of every stored transaction; registration is rare, notification is per transaction
+    private final List<TransactionListener> listeners = new CopyOnWriteArrayList<>();
+    // Transactions older than this move off the heap when archiveColdTransactions runs
+    private volatile int archiveAfterDays = DEFAULT_ARCHIVE_AFTER_DAYS;
 
     // Dependencies (Use concrete implementation classes)
     private final AccountManager accountManager;
     private final CategoryManager categoryManager;
 
+    private final LongAdder duplicatesSkipped = MetricsRegistry.getDefault().counter(
+            "finance_duplicate_transactions_total", "Transactions skipped or rejected as duplicates");
+    private final LongAdder listenerFailures = MetricsRegistry.getDefault().counter(
+            "finance_transaction_listener_failures_total", "Transaction listener calls that threw an exception");
+
     public TransactionManager(AccountManager accountManager, CategoryManager categoryManager) {
+        this(accountManager, categoryManager, new DuplicateDetector());
+    }
+
+    public TransactionManager(AccountManager accountManager, CategoryManager categoryManager,
+            DuplicateDetector duplicateDetector) {
         this.accountManager = accountManager;
         this.categoryManager = categoryManager;
+        this.duplicateDetector = duplicateDetector;
+        this.exchangeRates = accountManager.getExchangeRateTable();
+        categoryManager.addReferenceHolder(this::reassignCategory);
+    }
+
+    // See AccountManager.registerGauges
+    public void registerGauges(MetricsRegistry metrics, String labels) {
+        metrics.gauge("finance_transactions", "Stored transactions", labels, this::getTransactionCount);
+        metrics.gauge("finance_transactions_per_user_max", "Transactions held by the largest user", labels,
+                () -> userLedgers.values().stream().mapToInt(UserLedger::size).max().orElse(0));
+        metrics.gauge("finance_transactions_archived", "Transactions held in the off-heap archive", labels,
+                () -> userLedgers.values().stream().mapToLong(UserLedger::getArchivedCount).sum());
+        metrics.gauge("finance_transaction_archive_bytes", "Off-heap bytes held by transaction archives", labels,
+                () -> userLedgers.values().stream().mapToLong(UserLedger::getArchiveBytes).sum());
+        metrics.gauge("finance_duplicate_index_entries", "Fingerprints tracked for duplicate detection", labels,
+                duplicateDetector::getTrackedCount);
+    }
+
+    public void addTransactionListener(TransactionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTransactionListener(TransactionListener listener) {
+        listeners.remove(listener);
+    }
+
+    // A failing listener must not fail a transaction that is already stored
+    private void notifyListeners(UUID userId, Transaction transaction) {
+        for (TransactionListener listener : listeners) {
+            try {
+                listener.transactionRecorded(userId, transaction);
+            } catch (RuntimeException e) {
+                listenerFailures.increment();
+            }
+        }
+    }
+
+    static void checkDate(LocalDate date) throws ValidationException {
+        if (date.isBefore(MIN_DATE) || date.isAfter(MAX_DATE)) {
+            throw new ValidationException("Transaction date " + date + " is outside " + MIN_DATE + " to "
+                    + MAX_DATE + ".");
+        }
     }
 
     // Rely on AccountManager for user existence check
@@ -45,52 +154,205 @@ public class TransactionManager {
 
     public List<Transaction> getTransactionsByUser(UUID userId, LocalDate startDate, LocalDate endDate)
             throws NotFoundException {
-        checkUserExists(userId);
-        Map<UUID, Transaction> transactions = userTransactions.getOrDefault(userId, new ConcurrentHashMap<>());
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            UserLedger ledger = userLedgers.get(userId);
+            if (ledger == null) {
+                return new ArrayList<>();
+            }
+            // A range within the recent past skips the archive's older rows by binary search
+            return ledger.current(startDate == null ? Long.MIN_VALUE : startDate.toEpochDay(),
+                    endDate == null ? Long.MAX_VALUE : endDate.toEpochDay());
+        } finally {
+            GET_TRANSACTIONS_BY_USER_LATENCY.recordSince(startNanos);
+        }
+    }
 
-        Stream<Transaction> stream = transactions.values().stream();
+    public List<Transaction> getTransactionsByAccount(UUID accountId) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            Account account = accountManager.getAccount(accountId);
+            UUID userId = account.getUserId();
+            checkUserExists(userId);
+
+            return currentTransactions(userId).stream()
+                    .filter(t -> t.getAccountId().equals(accountId))
+                    .collect(Collectors.toList());
+        } finally {
+            GET_TRANSACTIONS_BY_ACCOUNT_LATENCY.recordSince(startNanos);
+        }
+    }
 
-        if (startDate != null) {
-            stream = stream.filter(t -> !t.getDate().isBefore(startDate));
+    public Transaction getTransaction(UUID transactionId, UUID userId) throws NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            UserLedger ledger = userLedgers.get(userId);
+            Transaction transaction = ledger == null ? null : ledger.get(transactionId);
+            if (transaction == null) {
+                throw new NotFoundException("Transaction with ID " + transactionId + " not found for user " + userId);
+            }
+            // Assuming the map structure inherently enforces security (user can only access
+            // their map)
+            return transaction;
+        } finally {
+            GET_TRANSACTION_LATENCY.recordSince(startNanos);
         }
-        if (endDate != null) {
-            stream = stream.filter(t -> !t.getDate().isAfter(endDate));
+    }
+
+    // Full-text search over descriptions; every query word is matched as a prefix
+    public List<Transaction> searchTransactions(UUID userId, String query) throws NotFoundException {
+        return search(userId, query, DEFAULT_SEARCH_LIMIT);
+    }
+
+    // Returns at most limit matches, newest first
+    public List<Transaction> searchTransactions(UUID userId, String query, int limit)
+            throws NotFoundException, ValidationException {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new ValidationException("Search limit must be between 1 and " + MAX_SEARCH_LIMIT + ".");
         }
+        return search(userId, query, limit);
+    }
 
-        return stream.collect(Collectors.toList());
+    private List<Transaction> search(UUID userId, String query, int limit) throws NotFoundException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            UserLedger ledger = userLedgers.get(userId);
+            if (ledger == null) {
+                return new ArrayList<>();
+            }
+            // Keep only the newest limit matches: the heap's head is the oldest one kept
+            Comparator<Transaction> byDate = Comparator.comparing(Transaction::getDate);
+            PriorityQueue<Transaction> newest = new PriorityQueue<>(byDate);
+            for (UUID transactionId : searchIndex.search(userId, query)) {
+                Transaction transaction = ledger.get(transactionId);
+                if (transaction == null) { // May have been deleted since the lookup
+                    continue;
+                }
+                if (newest.size() < limit) {
+                    newest.add(transaction);
+                } else if (byDate.compare(transaction, newest.peek()) > 0) {
+                    newest.poll();
+                    newest.add(transaction);
+                }
+            }
+            List<Transaction> results = new ArrayList<>(newest);
+            results.sort(byDate.reversed()); // Newest first
+            return results;
+        } finally {
+            SEARCH_TRANSACTIONS_LATENCY.recordSince(startNanos);
+        }
     }
 
-    public List<Transaction> getTransactionsByAccount(UUID accountId) throws NotFoundException {
-        Account account = accountManager.getAccount(accountId);
-        UUID userId = account.getUserId();
+    /**
+     * Opens a consistent point-in-time view of the user's transactions, for
+     * reports that must agree with themselves while writes continue. Close it
+     * when done.
+     */
+    public TransactionSnapshot snapshot(UUID userId) throws NotFoundException {
         checkUserExists(userId);
+        UserLedger ledger = userLedgers.get(userId);
+        // A user without transactions gets a view of an empty ledger that is not kept
+        return new TransactionSnapshot(userId, ledger != null ? ledger : new UserLedger(), accountManager);
+    }
 
-        Map<UUID, Transaction> transactions = userTransactions.getOrDefault(userId, new ConcurrentHashMap<>());
-        return transactions.values().stream()
-                .filter(t -> t.getAccountId().equals(accountId))
-                .collect(Collectors.toList());
+    private UserLedger ledger(UUID userId) {
+        return userLedgers.computeIfAbsent(userId, k -> new UserLedger());
     }
 
-    public Transaction getTransaction(UUID transactionId, UUID userId) throws NotFoundException, SecurityException {
-        checkUserExists(userId);
-        Map<UUID, Transaction> transactions = userTransactions.get(userId);
-        if (transactions == null || !transactions.containsKey(transactionId)) {
-            throw new NotFoundException("Transaction with ID " + transactionId + " not found for user " + userId);
+    public int getArchiveAfterDays() {
+        return archiveAfterDays;
+    }
+
+    public void setArchiveAfterDays(int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException("Archive age cannot be negative.");
+        }
+        archiveAfterDays = days;
+    }
+
+    /**
+     * Moves every user's transactions dated more than the archive age before
+     * asOf into their off-heap archive (see UserLedger), and compacts rows
+     * deleted from it since. Reads are unaffected apart from where rows come
+     * from. Users with a snapshot open are skipped until the next run.
+     *
+     * @return The number of transactions moved off the heap.
+     */
+    public int archiveColdTransactions(LocalDate asOf) {
+        long startNanos = System.nanoTime();
+        try {
+            long cutoffDay = asOf.toEpochDay() - archiveAfterDays;
+            int archived = 0;
+            for (UserLedger ledger : userLedgers.values()) {
+                archived += Math.max(0, ledger.archiveBefore(cutoffDay));
+            }
+            return archived;
+        } finally {
+            ARCHIVE_COLD_TRANSACTIONS_LATENCY.recordSince(startNanos);
         }
-        // Assuming the map structure inherently enforces security (user can only access
-        // their map)
-        return transactions.get(transactionId);
+    }
+
+    // The user's transactions as of the latest commit
+    private List<Transaction> currentTransactions(UUID userId) {
+        UserLedger ledger = userLedgers.get(userId);
+        return ledger == null ? new ArrayList<>() : ledger.current();
     }
 
     public Transaction recordTransaction(UUID userId, UUID accountId, String categoryName, String type,
             BigDecimal amount, LocalDate date)
             throws ValidationException, NotFoundException, SecurityException {
+        return recordTransaction(userId, accountId, categoryName, type, amount, date, null);
+    }
+
+    /**
+     * Records a transaction with its own description, e.g. the payee text a
+     * CategoryRuleManager classified it by; a null or blank description
+     * falls back to the category name.
+     */
+    public Transaction recordTransaction(UUID userId, UUID accountId, String categoryName, String type,
+            BigDecimal amount, LocalDate date, String description)
+            throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        TransactionIngestEvent ingestEvent = new TransactionIngestEvent();
+        ingestEvent.begin();
+        boolean succeeded = false;
+        try {
+            Transaction newTransaction = prepareTransaction(userId, accountId, categoryName, type, amount, date,
+                    description);
+            if (duplicateDetector.isRejectingSingleRecords() && duplicateDetector.isDuplicate(accountId,
+                    newTransaction.getEpochDay(), newTransaction.getAmount(), newTransaction.getDescription())) {
+                duplicatesSkipped.increment();
+                throw new ValidationException("Possible duplicate: a matching " + type.toLowerCase() + " of "
+                        + amount.abs() + " for '" + newTransaction.getDescription() + "' was already recorded within "
+                        + duplicateDetector.getToleranceDays() + " day(s) of " + date + ".");
+            }
+            store(userId, accountManager.getAccount(accountId, userId), newTransaction);
+
+            succeeded = true;
+            return newTransaction;
+        } finally {
+            RECORD_TRANSACTION_LATENCY.recordSince(startNanos);
+            ingestEvent.finish(userId, "record", 1, succeeded);
+        }
+    }
+
+    /**
+     * Validates a transaction the way recordTransaction does and builds it
+     * without storing it, e.g. for recordTransactionBatch.
+     */
+    Transaction prepareTransaction(UUID userId, UUID accountId, String categoryName, String type,
+            BigDecimal amount, LocalDate date, String description)
+            throws ValidationException, NotFoundException, SecurityException {
         checkUserExists(userId);
 
         if (accountId == null || categoryName == null || categoryName.trim().isEmpty() || type == null
                 || type.trim().isEmpty() || amount == null || date == null) {
             throw new ValidationException("Account ID, category name, type, amount, and date are required.");
         }
+        checkDate(date);
         if (!(type.equalsIgnoreCase("income") || type.equalsIgnoreCase("expense"))) {
             throw new ValidationException("Invalid transaction type: " + type + ". Must be 'income' or 'expense'.");
         }
@@ -108,71 +370,564 @@ public class TransactionManager {
         }
 
         BigDecimal signedAmount = type.equalsIgnoreCase("income") ? absAmount : absAmount.negate();
-
-        Transaction newTransaction = new Transaction(accountId, category.getId(), signedAmount, date, categoryName,
+        String text = description == null || description.trim().isEmpty() ? categoryName : description.trim();
+        // The account's and category's own ID instances, shared by all their transactions
+        return new Transaction(account.getId(), category.getId(), signedAmount, date, descriptionPool.share(text),
                 type);
-        userTransactions.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(newTransaction.getId(),
-                newTransaction);
+    }
 
-        account.updateBalance(signedAmount);
-        // TODO: Persist account change if using a DB
+    // The shared instance of a description, for transactions built outside this class (e.g. on a replica)
+    String shareDescription(String description) {
+        return descriptionPool.share(description);
+    }
 
-        return newTransaction;
+    /**
+     * Stores a transaction recorded elsewhere under the same ID, e.g. when a
+     * replica applies the journal. It was validated where it was recorded, so
+     * only the account's ownership is checked, and duplicate detection does
+     * not reject it.
+     */
+    void restoreTransaction(UUID userId, Transaction transaction) throws NotFoundException, SecurityException {
+        checkUserExists(userId);
+        store(userId, accountManager.getAccount(transaction.getAccountId(), userId), transaction);
     }
 
-    public boolean updateTransaction(UUID transactionId, UUID userId, UUID accountId, UUID categoryId,
-            BigDecimal amount, LocalDate date, String description)
-            throws ValidationException, NotFoundException, SecurityException {
+    // Adds a validated transaction to the store, its indexes and its account's balance
+    private void store(UUID userId, Account account, Transaction transaction) throws NotFoundException {
+        categoryManager.addTransactionReferences(transaction.getCategoryId(), 1); // Fails if deleted meanwhile
+        ledger(userId).put(transaction);
+        searchIndex.add(userId, transaction.getId(), transaction.getDescription());
+        long ratesVersion = exchangeRates.getVersion();
+        spendingSketches.add(userId, transaction, baseAmount(account, transaction), ratesVersion);
+        duplicateDetector.add(account.getId(), transaction.getEpochDay(), transaction.getAmount(),
+                transaction.getDescription());
+        categoryRollups.add(userId, transaction, categoryManager.ancestorPath(transaction.getCategoryId()));
+
+        account.updateBalance(transaction.getAmount());
+        accountManager.recordBalanceChange(account.getId(), transaction.getDate(), transaction.getAmount());
+        // TODO: Persist account change if using a DB
+        notifyListeners(userId, transaction);
+    }
+
+    // Merged expense sketches for a report period, in the base currency (see SpendingSketchIndex)
+    SpendingSketchIndex.MonthSketches summarizeSpending(UUID userId, LocalDate startDate, LocalDate endDate)
+            throws NotFoundException, ValidationException {
         checkUserExists(userId);
-        Transaction existingTransaction = getTransaction(transactionId, userId);
+        long ratesVersion = exchangeRates.getVersion();
+        Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = accountManager.getDailyRatesByAccount(userId);
+        return spendingSketches.summarize(userId, startDate, endDate, () -> currentTransactions(userId),
+                transaction -> {
+                    ExchangeRateTable.DailyRates rates = ratesByAccount.get(transaction.getAccountId());
+                    double amount = transaction.getAmount().doubleValue();
+                    return rates == null ? amount : amount * rates.rateOn(transaction.getEpochDay());
+                }, ratesVersion);
+    }
 
-        if (accountId == null || categoryId == null || amount == null || date == null || description == null) {
-            throw new ValidationException("All transaction fields are required for update.");
+    /**
+     * Signed totals of each given category including all its subcategories
+     * (see CategoryManager) between the given dates, inclusive, in the base
+     * currency. Read from per-category running totals, so a parent costs the
+     * same as a leaf; users with accounts in other currencies have their
+     * transactions in range converted and summed instead.
+     *
+     * @throws ValidationException if an account's currency has no exchange rates.
+     */
+    public Map<UUID, BigDecimal> getCategoryTotals(UUID userId, Collection<UUID> categoryIds, LocalDate startDate,
+            LocalDate endDate) throws NotFoundException, ValidationException {
+        long startNanos = System.nanoTime();
+        try {
+            checkUserExists(userId);
+            Map<UUID, BigDecimal> totals = new HashMap<>();
+            Map<UUID, ExchangeRateTable.DailyRates> ratesByAccount = accountManager.getDailyRatesByAccount(userId);
+            if (ratesByAccount.values().stream().allMatch(ExchangeRateTable.DailyRates::isIdentity)) {
+                for (UUID categoryId : categoryIds) {
+                    totals.put(categoryId, categoryRollups.total(userId, categoryId, startDate, endDate));
+                }
+                return totals;
+            }
+            // Rounded to cents per row, as the converted reports are
+            Map<UUID, long[]> cents = new HashMap<>();
+            for (UUID categoryId : categoryIds) {
+                cents.put(categoryId, new long[1]);
+            }
+            UserLedger ledger = userLedgers.get(userId);
+            List<Transaction> transactions = ledger == null ? new ArrayList<>()
+                    : ledger.current(startDate == null ? Long.MIN_VALUE : startDate.toEpochDay(),
+                            endDate == null ? Long.MAX_VALUE : endDate.toEpochDay());
+            for (Transaction transaction : transactions) {
+                ExchangeRateTable.DailyRates rates = ratesByAccount.get(transaction.getAccountId());
+                double amount = transaction.getAmount().doubleValue();
+                long rowCents = Math.round((rates == null ? amount : amount * rates.rateOn(transaction.getEpochDay()))
+                        * 100);
+                for (UUID categoryId : categoryManager.ancestorPath(transaction.getCategoryId())) {
+                    long[] sum = cents.get(categoryId);
+                    if (sum != null) {
+                        sum[0] += rowCents;
+                    }
+                }
+            }
+            cents.forEach((categoryId, sum) -> totals.put(categoryId, BigDecimal.valueOf(sum[0], 2)));
+            return totals;
+        } finally {
+            GET_CATEGORY_TOTALS_LATENCY.recordSince(startNanos);
         }
-        BigDecimal absAmount = amount.abs();
-        if (absAmount.compareTo(BigDecimal.ZERO) == 0) {
-            throw new ValidationException("Transaction amount cannot be zero.");
+    }
+
+    /**
+     * Signed total of every transaction within any of the given categories or
+     * their subcategories, each counted once even when one listed category
+     * lies within another; as getCategoryTotals otherwise.
+     */
+    public BigDecimal getCombinedCategoryTotal(UUID userId, Collection<UUID> categoryIds, LocalDate startDate,
+            LocalDate endDate) throws NotFoundException, ValidationException {
+        List<UUID> outermost = new ArrayList<>();
+        for (UUID categoryId : categoryIds) {
+            UUID[] path = categoryManager.ancestorPath(categoryId);
+            boolean covered = false;
+            for (int i = 1; i < path.length && !covered; i++) {
+                covered = categoryIds.contains(path[i]);
+            }
+            if (!covered && !outermost.contains(categoryId)) {
+                outermost.add(categoryId);
+            }
         }
+        return getCategoryTotals(userId, outermost, startDate, endDate).values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
 
-        Account newAccount = accountManager.getAccount(accountId, userId);
-        Category newCategory = categoryManager.getCategory(categoryId); // Assuming getCategory(UUID) exists
+    // Per-day rates into the base currency for each of the user's accounts (see AccountManager)
+    Map<UUID, ExchangeRateTable.DailyRates> getDailyRatesByAccount(UUID userId)
+            throws NotFoundException, ValidationException {
+        return accountManager.getDailyRatesByAccount(userId);
+    }
 
-        BigDecimal newSignedAmount = existingTransaction.getType().equalsIgnoreCase("income") ? absAmount
-                : absAmount.negate();
+    /**
+     * A transaction's signed amount in the base currency, at its account's
+     * rate on its date and rounded to cents as the converted reports are;
+     * exact when the account is in the base currency.
+     *
+     * @throws ValidationException if the account's currency has no rates.
+     */
+    BigDecimal toBaseCurrency(UUID userId, Transaction transaction)
+            throws NotFoundException, SecurityException, ValidationException {
+        Account account = accountManager.getAccount(transaction.getAccountId(), userId);
+        ExchangeRateTable.DailyRates rates = exchangeRates.dailyRates(account.getCurrency());
+        if (rates.isIdentity()) {
+            return transaction.getAmount();
+        }
+        return BigDecimal.valueOf(Math.round(transaction.getAmount().doubleValue()
+                * rates.rateOn(transaction.getEpochDay()) * 100), 2);
+    }
 
-        if (!newCategory.getType().equalsIgnoreCase(existingTransaction.getType())) {
-            throw new ValidationException("Update Error: New category type '" + newCategory.getType()
-                    + "' does not match existing transaction type '" + existingTransaction.getType()
-                    + "'. Type change not supported here.");
+    // Signed amount in the base currency; NaN while the account's currency has no rates
+    private double baseAmount(Account account, Transaction transaction) {
+        try {
+            return transaction.getAmount().doubleValue() * exchangeRates.dailyRates(account.getCurrency())
+                    .rateOn(transaction.getEpochDay());
+        } catch (ValidationException e) {
+            return Double.NaN;
         }
+    }
 
-        Account oldAccount = accountManager.getAccount(existingTransaction.getAccountId(), userId);
-        oldAccount.updateBalance(existingTransaction.getAmount().negate());
-        newAccount.updateBalance(newSignedAmount);
-        // TODO: Persist account changes
+    /**
+     * Files every transaction in one category under another, for
+     * CategoryManager.mergeCategory. Visits only the users with transactions
+     * in the category and, for each, the months holding them (see
+     * CategoryRollupIndex); each user's rows move in one commit, so
+     * snapshots see all of them moved or none.
+     *
+     * @return The number of transactions moved.
+     */
+    long reassignCategory(UUID fromId, UUID intoId) {
+        long moved = 0;
+        for (Map.Entry<UUID, UserLedger> entry : userLedgers.entrySet()) {
+            UUID userId = entry.getKey();
+            List<Integer> months = categoryRollups.monthsWith(userId, fromId);
+            if (months.isEmpty()) {
+                continue;
+            }
+            List<Transaction> found = new ArrayList<>();
+            int i = 0;
+            while (i < months.size()) {
+                int first = months.get(i);
+                int last = first;
+                while (i + 1 < months.size() && months.get(i + 1) == last + 1) { // One read per run of months
+                    last = months.get(++i);
+                }
+                i++;
+                LocalDate firstDay = LocalDate.of(first / 12, first % 12 + 1, 1);
+                LocalDate lastDay = LocalDate.of(last / 12, last % 12 + 1, 1).plusMonths(1).minusDays(1);
+                for (Transaction transaction : entry.getValue().current(firstDay.toEpochDay(), lastDay.toEpochDay())) {
+                    if (transaction.getCategoryId().equals(fromId)) {
+                        found.add(transaction);
+                    }
+                }
+            }
+            moved += refile(userId, entry.getValue(), found, transactionId -> intoId);
+        }
+        return moved;
+    }
 
-        existingTransaction.setAccountId(accountId);
-        existingTransaction.setCategoryId(categoryId);
-        existingTransaction.setAmount(newSignedAmount);
-        existingTransaction.setDate(date);
-        existingTransaction.setDescription(description);
+    /**
+     * Files the user's transactions between the given dates, inclusive (null
+     * bounds are open), under the category categoryFor picks for each, for
+     * CategoryRuleManager; null leaves a transaction where it is. Rows are
+     * classified in parallel on the common fork-join pool and move in one
+     * commit. Listeners are not notified: the transactions are not new.
+     *
+     * @return The number of transactions moved.
+     */
+    long recategorize(UUID userId, LocalDate startDate, LocalDate endDate, Function<Transaction, UUID> categoryFor) {
+        UserLedger ledger = userLedgers.get(userId);
+        if (ledger == null) {
+            return 0;
+        }
+        List<Transaction> transactions = ledger.current(startDate == null ? Long.MIN_VALUE : startDate.toEpochDay(),
+                endDate == null ? Long.MAX_VALUE : endDate.toEpochDay());
+        Map<UUID, UUID> targets = transactions.parallelStream().collect(HashMap::new, (map, transaction) -> {
+            UUID intoId = categoryFor.apply(transaction);
+            if (intoId != null && !intoId.equals(transaction.getCategoryId())) {
+                map.put(transaction.getId(), intoId);
+            }
+        }, Map::putAll);
+        if (targets.isEmpty()) {
+            return 0;
+        }
+        List<Transaction> found = new ArrayList<>(targets.size());
+        for (Transaction transaction : transactions) {
+            if (targets.containsKey(transaction.getId())) {
+                found.add(transaction);
+            }
+        }
+        return refile(userId, ledger, found, targets::get);
+    }
+
+    // Moves transactions read from the ledger to new categories in one commit, keeping every index in step
+    private int refile(UUID userId, UserLedger ledger, List<Transaction> found, Function<UUID, UUID> intoFor) {
+        // Counted into the new categories first, as in store, so none lands in a category deleted meanwhile
+        Map<UUID, Long> counted = new HashMap<>();
+        for (Transaction transaction : found) {
+            counted.merge(intoFor.apply(transaction.getId()), 1L, Long::sum);
+        }
+        for (Map.Entry<UUID, Long> entry : new ArrayList<>(counted.entrySet())) {
+            try {
+                categoryManager.addTransactionReferences(entry.getKey(), entry.getValue());
+            } catch (NotFoundException e) {
+                counted.remove(entry.getKey());
+            }
+        }
+        List<Transaction> movable = new ArrayList<>(found.size());
+        for (Transaction transaction : found) {
+            if (counted.containsKey(intoFor.apply(transaction.getId()))) {
+                movable.add(transaction);
+            }
+        }
 
-        return true;
+        List<Transaction> moved = ledger.recategorize(movable, intoFor);
+        categoryRollups.move(userId, moved, intoFor, categoryManager);
+        Set<LocalDate> staleMonths = new HashSet<>();
+        for (Transaction transaction : moved) {
+            categoryManager.removeTransactionReferences(transaction.getCategoryId(), 1);
+            counted.merge(intoFor.apply(transaction.getId()), -1L, Long::sum);
+            staleMonths.add(transaction.getDate().withDayOfMonth(1));
+        }
+        for (Map.Entry<UUID, Long> entry : counted.entrySet()) {
+            if (entry.getValue() > 0) { // Rows changed since they were read stay where they are
+                categoryManager.removeTransactionReferences(entry.getKey(), entry.getValue());
+            }
+        }
+        for (LocalDate month : staleMonths) {
+            spendingSketches.invalidate(userId, month); // Top categories are keyed by ID
+        }
+        return moved.size();
     }
 
-    public boolean deleteTransaction(UUID transactionId, UUID userId) throws NotFoundException, SecurityException {
-        checkUserExists(userId);
-        Transaction transactionToDelete = getTransaction(transactionId, userId);
+    CategoryManager getCategoryManager() {
+        return categoryManager;
+    }
 
-        Account account = accountManager.getAccount(transactionToDelete.getAccountId(), userId);
-        account.updateBalance(transactionToDelete.getAmount().negate());
-        // TODO: Persist account change
+    // Display name of a category, or its ID if it has been deleted since
+    String getCategoryName(UUID categoryId) {
+        try {
+            return categoryManager.getCategory(categoryId).getName();
+        } catch (NotFoundException e) {
+            return String.valueOf(categoryId);
+        }
+    }
+
+    // Transactions across all users
+    int getTransactionCount() {
+        return userLedgers.values().stream().mapToInt(UserLedger::size).sum();
+    }
 
-        Map<UUID, Transaction> transactions = userTransactions.get(userId);
-        if (transactions != null) {
-            transactions.remove(transactionId);
+    int getTransactionCount(UUID userId) {
+        UserLedger ledger = userLedgers.get(userId);
+        return ledger == null ? 0 : ledger.size();
+    }
+
+    /**
+     * Removes the user's transactions into the partition, along with their
+     * search, sketch and duplicate index entries, for moving the user to
+     * another shard. Call before AccountManager.detachUser. Category
+     * reference counts stay as they are: shards share one CategoryManager.
+     */
+    void detachUser(UserPartition partition) {
+        UUID userId = partition.userId;
+        UserLedger ledger = userLedgers.remove(userId);
+        if (ledger != null) {
+            for (Transaction transaction : ledger.current()) {
+                partition.transactions.put(transaction.getId(), transaction);
+                duplicateDetector.removeAccount(transaction.getAccountId()); // Accounts never span users
+            }
+        }
+        searchIndex.removeUser(userId);
+        spendingSketches.removeUser(userId);
+        categoryRollups.removeUser(userId);
+    }
+
+    /**
+     * Installs a partition's transactions and rebuilds their index entries.
+     * Listeners are not notified: the transactions are not new. Call after
+     * AccountManager.attachUser.
+     */
+    void attachUser(UserPartition partition) {
+        UUID userId = partition.userId;
+        List<Transaction> transactions = new ArrayList<>(partition.transactions.values());
+        UserLedger ledger = new UserLedger();
+        ledger.putAll(transactions);
+        userLedgers.put(userId, ledger);
+        searchIndex.addAll(userId, transactions);
+        spendingSketches.addAll(userId, transactions, transaction -> {
+            Account account = partition.accounts.get(transaction.getAccountId());
+            return account != null ? baseAmount(account, transaction) : Double.NaN;
+        }, exchangeRates.getVersion());
+        categoryRollups.addAll(userId, transactions, categoryManager);
+        for (Transaction transaction : transactions) {
+            duplicateDetector.add(transaction.getAccountId(), transaction.getEpochDay(),
+                    transaction.getAmount(), transaction.getDescription());
+        }
+    }
+
+    // Starts an import whose rows are checked for duplicates against what was stored before it
+    int newImportTag() {
+        return duplicateDetector.newImportTag();
+    }
+
+    /**
+     * Stores a batch of transactions for one account in a single pass, as used
+     * by StatementImporter. Rows must already be validated: signed amount
+     * matching the type, and a category ID of the same type. Rows matching a
+     * transaction stored before the import (see DuplicateDetector) are skipped.
+     * The account balance is updated once and the balance history once per
+     * distinct date.
+     *
+     * @param importTag From newImportTag, or DuplicateDetector.NO_IMPORT to
+     *                  store every row.
+     * @return The number of transactions stored; the rest were duplicates.
+     */
+    int recordTransactionBatch(UUID userId, UUID accountId, List<Transaction> batch, int importTag)
+            throws NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        TransactionIngestEvent ingestEvent = new TransactionIngestEvent();
+        ingestEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
+            Account account = accountManager.getAccount(accountId, userId); // Checks user auth
+
+            // Before the detector sees any row, so a category deleted meanwhile leaves no fingerprints behind
+            countCategoryReferences(batch);
+            List<Transaction> stored = new ArrayList<>(batch.size());
+            Map<UUID, Long> skippedByCategory = new HashMap<>();
+            Map<LocalDate, BigDecimal> changesByDate = new HashMap<>();
+            BigDecimal total = BigDecimal.ZERO;
+            for (Transaction transaction : batch) {
+                if (importTag == DuplicateDetector.NO_IMPORT) {
+                    duplicateDetector.add(accountId, transaction.getEpochDay(), transaction.getAmount(),
+                            transaction.getDescription());
+                } else if (duplicateDetector.claimOrAdd(accountId, transaction.getEpochDay(),
+                        transaction.getAmount(), transaction.getDescription(), importTag)) {
+                    duplicatesSkipped.increment();
+                    skippedByCategory.merge(transaction.getCategoryId(), 1L, Long::sum);
+                    continue;
+                }
+                stored.add(transaction);
+                changesByDate.merge(transaction.getDate(), transaction.getAmount(), BigDecimal::add);
+                total = total.add(transaction.getAmount());
+            }
+            for (Map.Entry<UUID, Long> skipped : skippedByCategory.entrySet()) {
+                categoryManager.removeTransactionReferences(skipped.getKey(), skipped.getValue());
+            }
+            ledger(userId).putAll(stored); // One commit: snapshots see all of the batch or none of it
+            searchIndex.addAll(userId, stored);
+            long ratesVersion = exchangeRates.getVersion();
+            spendingSketches.addAll(userId, stored, transaction -> baseAmount(account, transaction), ratesVersion);
+            categoryRollups.addAll(userId, stored, categoryManager);
+
+            account.updateBalance(total);
+            for (Map.Entry<LocalDate, BigDecimal> change : changesByDate.entrySet()) {
+                accountManager.recordBalanceChange(accountId, change.getKey(), change.getValue());
+            }
+            // TODO: Persist account change if using a DB
+            if (!listeners.isEmpty()) {
+                for (Transaction transaction : stored) {
+                    notifyListeners(userId, transaction);
+                }
+            }
+
+            succeeded = true;
+            return stored.size();
+        } finally {
+            RECORD_TRANSACTION_BATCH_LATENCY.recordSince(startNanos);
+            ingestEvent.finish(userId, importTag == DuplicateDetector.NO_IMPORT ? "record" : "import", batch.size(),
+                    succeeded);
+        }
+    }
+
+    /**
+     * Stores a batch the same way without skipping any row as a duplicate,
+     * for rows that are meant to repeat, e.g. the due occurrences of
+     * recurring templates. Rows should come from prepareTransaction.
+     */
+    int recordTransactionBatch(UUID userId, UUID accountId, List<Transaction> batch)
+            throws NotFoundException, SecurityException {
+        return recordTransactionBatch(userId, accountId, batch, DuplicateDetector.NO_IMPORT);
+    }
+
+    // Counts a batch's references to its categories, all or none of them
+    private void countCategoryReferences(List<Transaction> batch) throws NotFoundException {
+        Map<UUID, Long> counts = batch.stream()
+                .collect(Collectors.groupingBy(Transaction::getCategoryId, Collectors.counting()));
+        List<UUID> counted = new ArrayList<>();
+        try {
+            for (Map.Entry<UUID, Long> count : counts.entrySet()) {
+                categoryManager.addTransactionReferences(count.getKey(), count.getValue());
+                counted.add(count.getKey());
+            }
+        } catch (NotFoundException e) {
+            for (UUID categoryId : counted) {
+                categoryManager.removeTransactionReferences(categoryId, counts.get(categoryId));
+            }
+            throw e;
+        }
+    }
+
+    public boolean updateTransaction(UUID transactionId, UUID userId, UUID accountId, UUID categoryId,
+            BigDecimal amount, LocalDate date, String description)
+            throws ValidationException, NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        TransactionIngestEvent ingestEvent = new TransactionIngestEvent();
+        ingestEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
+            Transaction existingTransaction = getTransaction(transactionId, userId);
+
+            if (accountId == null || categoryId == null || amount == null || date == null || description == null) {
+                throw new ValidationException("All transaction fields are required for update.");
+            }
+            checkDate(date);
+            BigDecimal absAmount = amount.abs();
+            if (absAmount.compareTo(BigDecimal.ZERO) == 0) {
+                throw new ValidationException("Transaction amount cannot be zero.");
+            }
+
+            Account newAccount = accountManager.getAccount(accountId, userId);
+            Category newCategory = categoryManager.getCategory(categoryId); // Assuming getCategory(UUID) exists
+
+            BigDecimal newSignedAmount = existingTransaction.getType().equalsIgnoreCase("income") ? absAmount
+                    : absAmount.negate();
+
+            if (!newCategory.getType().equalsIgnoreCase(existingTransaction.getType())) {
+                throw new ValidationException("Update Error: New category type '" + newCategory.getType()
+                        + "' does not match existing transaction type '" + existingTransaction.getType()
+                        + "'. Type change not supported here.");
+            }
+
+            // A new version under the same ID, so snapshots taken before it keep the old one
+            Transaction updatedTransaction = new Transaction(transactionId, newAccount.getId(), newCategory.getId(),
+                    newSignedAmount, date, descriptionPool.share(description),
+                    existingTransaction.getTransactionType());
+            Account oldAccount;
+            boolean recategorized;
+            while (true) {
+                oldAccount = accountManager.getAccount(existingTransaction.getAccountId(), userId);
+                recategorized = !newCategory.getId().equals(existingTransaction.getCategoryId());
+                if (recategorized) {
+                    categoryManager.addTransactionReferences(newCategory.getId(), 1); // Fails if deleted meanwhile
+                }
+                // Only if it is still the version read, so the changes below undo what it actually replaced
+                if (ledger(userId).replace(existingTransaction, updatedTransaction)) {
+                    break;
+                }
+                if (recategorized) {
+                    categoryManager.removeTransactionReferences(newCategory.getId(), 1);
+                }
+                // Changed meanwhile, e.g. moved by a category merge: redo the counts against that version
+                existingTransaction = getTransaction(transactionId, userId);
+            }
+            oldAccount.updateBalance(existingTransaction.getAmount().negate());
+            newAccount.updateBalance(newSignedAmount);
+            accountManager.recordBalanceChange(oldAccount.getId(), existingTransaction.getDate(),
+                    existingTransaction.getAmount().negate());
+            accountManager.recordBalanceChange(accountId, date, newSignedAmount);
+            // TODO: Persist account changes
+
+            searchIndex.update(userId, transactionId, existingTransaction.getDescription(), description);
+            spendingSketches.invalidate(userId, existingTransaction.getDate());
+            spendingSketches.invalidate(userId, date);
+            duplicateDetector.remove(existingTransaction.getAccountId(), existingTransaction.getEpochDay(),
+                    existingTransaction.getAmount(), existingTransaction.getDescription());
+            duplicateDetector.add(accountId, date.toEpochDay(), newSignedAmount, description);
+            categoryRollups.remove(userId, existingTransaction,
+                    categoryManager.ancestorPath(existingTransaction.getCategoryId()));
+            categoryRollups.add(userId, updatedTransaction, categoryManager.ancestorPath(newCategory.getId()));
+            if (recategorized) {
+                categoryManager.removeTransactionReferences(existingTransaction.getCategoryId(), 1);
+            }
+
+            succeeded = true;
             return true;
+        } finally {
+            UPDATE_TRANSACTION_LATENCY.recordSince(startNanos);
+            ingestEvent.finish(userId, "update", 1, succeeded);
+        }
+    }
+
+    public boolean deleteTransaction(UUID transactionId, UUID userId) throws NotFoundException, SecurityException {
+        long startNanos = System.nanoTime();
+        TransactionIngestEvent ingestEvent = new TransactionIngestEvent();
+        ingestEvent.begin();
+        boolean succeeded = false;
+        try {
+            checkUserExists(userId);
+            Transaction transactionToDelete = getTransaction(transactionId, userId);
+
+            Account account = accountManager.getAccount(transactionToDelete.getAccountId(), userId);
+            UserLedger ledger = userLedgers.get(userId);
+            // Whatever version the delete actually removed, so a racing update or delete is never reversed twice
+            Transaction deleted = ledger == null ? null : ledger.remove(transactionId);
+            if (deleted != null) {
+                if (!deleted.getAccountId().equals(account.getId())) {
+                    account = accountManager.getAccount(deleted.getAccountId(), userId);
+                }
+                account.updateBalance(deleted.getAmount().negate());
+                accountManager.recordBalanceChange(account.getId(), deleted.getDate(), deleted.getAmount().negate());
+                // TODO: Persist account change
+
+                searchIndex.remove(userId, transactionId, deleted.getDescription());
+                spendingSketches.invalidate(userId, deleted.getDate());
+                duplicateDetector.remove(deleted.getAccountId(), deleted.getEpochDay(), deleted.getAmount(),
+                        deleted.getDescription());
+                categoryRollups.remove(userId, deleted, categoryManager.ancestorPath(deleted.getCategoryId()));
+                categoryManager.removeTransactionReferences(deleted.getCategoryId(), 1);
+                succeeded = true;
+                return true;
+            }
+            return false;
+        } finally {
+            DELETE_TRANSACTION_LATENCY.recordSince(startNanos);
+            ingestEvent.finish(userId, "delete", 1, succeeded);
         }
-        return false;
     }
 }
\ No newline at end of file
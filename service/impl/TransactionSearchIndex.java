@@ -0,0 +1,184 @@
+package service.impl;
+
+import domain.Transaction;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over transaction descriptions, scoped per user.
+ * Maintained incrementally by TransactionManager on record, update and delete.
+ * Every query token is matched as a prefix ("rent mar" finds "Rent March"),
+ * and all query tokens must match (AND semantics).
+ */
+public class TransactionSearchIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // UserId -> that user's term dictionary
+    private final Map<UUID, UserIndex> userIndexes = new ConcurrentHashMap<>();
+
+    // Sorted term -> transaction IDs; sorted so prefix queries are a range scan
+    private static class UserIndex {
+        private final NavigableMap<String, Set<UUID>> postings = new TreeMap<>();
+    }
+
+    // Splits text into lower-cased, accent-free, de-duplicated tokens
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = text;
+        if (!isAscii(text)) { // ASCII has nothing to decompose, so skip the costly normalization
+            normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+            normalized = COMBINING_MARKS.matcher(normalized).replaceAll("");
+        }
+        normalized = normalized.toLowerCase(Locale.ROOT);
+        for (String token : TOKEN_SEPARATORS.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(UUID userId, UUID transactionId, String description) {
+        Set<String> tokens = tokenize(description);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        UserIndex index = userIndexes.computeIfAbsent(userId, k -> new UserIndex());
+        synchronized (index) {
+            for (String token : tokens) {
+                index.postings.computeIfAbsent(token, k -> new HashSet<>()).add(transactionId);
+            }
+        }
+    }
+
+    // Bulk variant of add() for imports: one lock acquisition, and repeated descriptions are tokenized once
+    public void addAll(UUID userId, List<Transaction> transactions) {
+        Map<String, Set<String>> tokenCache = new HashMap<>();
+        UserIndex index = userIndexes.computeIfAbsent(userId, k -> new UserIndex());
+        synchronized (index) {
+            for (Transaction transaction : transactions) {
+                String description = transaction.getDescription();
+                Set<String> tokens = description == null ? Collections.emptySet()
+                        : tokenCache.computeIfAbsent(description, TransactionSearchIndex::tokenize);
+                for (String token : tokens) {
+                    index.postings.computeIfAbsent(token, k -> new HashSet<>()).add(transaction.getId());
+                }
+            }
+        }
+    }
+
+    // Drops the user's whole dictionary, e.g. when the user moves to another shard
+    public void removeUser(UUID userId) {
+        userIndexes.remove(userId);
+    }
+
+    public void remove(UUID userId, UUID transactionId, String description) {
+        UserIndex index = userIndexes.get(userId);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            for (String token : tokenize(description)) {
+                Set<UUID> ids = index.postings.get(token);
+                if (ids != null) {
+                    ids.remove(transactionId);
+                    if (ids.isEmpty()) {
+                        index.postings.remove(token); // Keep the dictionary free of dead terms
+                    }
+                }
+            }
+        }
+    }
+
+    public void update(UUID userId, UUID transactionId, String oldDescription, String newDescription) {
+        if (oldDescription != null && oldDescription.equals(newDescription)) {
+            return;
+        }
+        remove(userId, transactionId, oldDescription);
+        add(userId, transactionId, newDescription);
+    }
+
+    /**
+     * Returns the IDs of the user's transactions whose description contains a
+     * token starting with every token of the query. An empty query matches nothing.
+     */
+    public Set<UUID> search(UUID userId, String query) {
+        Set<String> queryTokens = tokenize(query);
+        UserIndex index = userIndexes.get(userId);
+        if (queryTokens.isEmpty() || index == null) {
+            return Collections.emptySet();
+        }
+        synchronized (index) {
+            List<List<Set<UUID>>> matches = new ArrayList<>();
+            for (String token : queryTokens) {
+                List<Set<UUID>> postingLists = new ArrayList<>(
+                        index.postings.subMap(token, true, token + Character.MAX_VALUE, false).values());
+                if (postingLists.isEmpty()) {
+                    return Collections.emptySet(); // One token without matches empties the AND
+                }
+                matches.add(postingLists);
+            }
+            // Drive the intersection from the most selective token; the posting
+            // sets of the other tokens are probed in place instead of being unioned
+            matches.sort((a, b) -> Integer.compare(totalSize(a), totalSize(b)));
+            Set<UUID> result = new HashSet<>();
+            for (Set<UUID> ids : matches.get(0)) {
+                for (UUID id : ids) {
+                    boolean inAll = true;
+                    for (int i = 1; i < matches.size() && inAll; i++) {
+                        inAll = containsAny(matches.get(i), id);
+                    }
+                    if (inAll) {
+                        result.add(id);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static int totalSize(List<Set<UUID>> postingLists) {
+        int total = 0;
+        for (Set<UUID> ids : postingLists) {
+            total += ids.size();
+        }
+        return total;
+    }
+
+    private static boolean containsAny(List<Set<UUID>> postingLists, UUID id) {
+        for (Set<UUID> ids : postingLists) {
+            if (ids.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
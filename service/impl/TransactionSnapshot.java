@@ -0,0 +1,75 @@
+package service.impl;
+
+import domain.Transaction;
+import exception.NotFoundException;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A consistent, point-in-time view of one user's transactions, from
+ * TransactionManager.snapshot. Every read sees exactly the writes committed
+ * before the snapshot was taken, however long the reads take and whatever
+ * writers do meanwhile; writers are never blocked by it. Close it when done,
+ * so the versions it pins can be dropped.
+ */
+public class TransactionSnapshot implements AutoCloseable {
+
+    private final UUID userId;
+    private final UserLedger ledger;
+    private final long version;
+    private final AccountManager accountManager;
+    private boolean closed;
+
+    TransactionSnapshot(UUID userId, UserLedger ledger, AccountManager accountManager) {
+        this.userId = userId;
+        this.ledger = ledger;
+        this.accountManager = accountManager;
+        this.version = ledger.openSnapshot();
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    // The user's commit count when the snapshot was taken
+    public long getVersion() {
+        return version;
+    }
+
+    // Transactions dated within [startDate, endDate]; a null bound is open
+    public List<Transaction> getTransactions(LocalDate startDate, LocalDate endDate) {
+        long first = startDate == null ? Long.MIN_VALUE : startDate.toEpochDay();
+        long last = endDate == null ? Long.MAX_VALUE : endDate.toEpochDay();
+        List<Transaction> transactions = new ArrayList<>();
+        ledger.forEachVisible(version, first, last, transactions::add);
+        return transactions;
+    }
+
+    // The account's opening balance plus its transactions in this snapshot
+    public BigDecimal getBalance(UUID accountId) throws NotFoundException, SecurityException {
+        accountManager.getAccount(accountId, userId); // Checks ownership
+        BalanceHistory history = accountManager.getBalanceHistory(accountId);
+        if (history == null) {
+            throw new NotFoundException("Account with ID " + accountId + " not found.");
+        }
+        BigDecimal[] balance = { history.getOpeningBalance() };
+        ledger.forEachVisible(version, Long.MIN_VALUE, Long.MAX_VALUE, t -> {
+            if (t.getAccountId().equals(accountId)) {
+                balance[0] = balance[0].add(t.getAmount());
+            }
+        });
+        return balance[0];
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            ledger.closeSnapshot(version);
+        }
+    }
+}
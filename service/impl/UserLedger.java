@@ -0,0 +1,318 @@
+package service.impl;
+
+import domain.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One user's transactions, multi-versioned so that a report can read a
+ * consistent point-in-time view (TransactionSnapshot) while writers carry on.
+ *
+ * Every write commits under the next version number: an insert adds a
+ * version, an update adds a version that links to the one it replaces, and a
+ * delete stamps the current version as deleted. Transactions are never
+ * changed in place. Writers hold the ledger's lock only to install versions;
+ * readers never take it except to open or close a snapshot. Superseded
+ * versions are kept only while an open snapshot may still need them: with no
+ * snapshot open, updates and deletes drop them at once, and otherwise they
+ * are pruned when the oldest snapshot closes.
+ *
+ * Transactions dated before a cutoff can be moved to an off-heap
+ * TransactionArchive (see archiveBefore); reads merge both tiers. An
+ * archived transaction that is updated moves back to the heap as its new
+ * version.
+ */
+class UserLedger {
+
+    static final long LIVE = Long.MAX_VALUE;
+
+    // One version of a transaction, visible to snapshots from created until deleted (exclusive)
+    static final class Version {
+        final Transaction transaction;
+        final long created;
+        volatile long deleted = LIVE;
+        volatile Version previous; // The version this one replaced, while a snapshot may need it
+
+        Version(Transaction transaction, long created, Version previous) {
+            this.transaction = transaction;
+            this.created = created;
+            this.previous = previous;
+        }
+    }
+
+    private final Map<UUID, Version> latest = new ConcurrentHashMap<>();
+    private volatile TransactionArchive archive = TransactionArchive.EMPTY; // Replaced under the lock
+    private volatile long committed;
+    private volatile int liveCount;
+    // Open snapshot version -> how many are open at it; guarded by this
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+    // Transactions holding versions kept for open snapshots; guarded by this
+    private final List<UUID> retained = new ArrayList<>();
+
+    long getVersion() {
+        return committed;
+    }
+
+    int size() {
+        return liveCount;
+    }
+
+    int getArchivedCount() {
+        return archive.liveSize();
+    }
+
+    long getArchiveBytes() {
+        return archive.offHeapBytes();
+    }
+
+    // Current version of a transaction, or null if there is none or it was deleted
+    Transaction get(UUID transactionId) {
+        Version version = latest.get(transactionId);
+        if (version != null) {
+            return version.deleted == LIVE ? version.transaction : null;
+        }
+        TransactionArchive cold = archive; // Archived rows leave the map only after the archive holding them is published
+        int row = cold.find(transactionId);
+        return row >= 0 && cold.isVisible(row, LIVE - 1) ? cold.decode(row) : null;
+    }
+
+    // Transactions dated within [firstDay, lastDay] as of the latest commit, read as a snapshot so both tiers agree
+    List<Transaction> current(long firstDay, long lastDay) {
+        List<Transaction> transactions = new ArrayList<>();
+        long version = openSnapshot();
+        try {
+            forEachVisible(version, firstDay, lastDay, transactions::add);
+        } finally {
+            closeSnapshot(version);
+        }
+        return transactions;
+    }
+
+    List<Transaction> current() {
+        return current(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Inserts or replaces a transaction (matched by ID) as one commit
+    synchronized void put(Transaction transaction) {
+        long version = committed + 1;
+        install(transaction, version);
+        committed = version;
+    }
+
+    // Inserts or replaces several transactions as one commit, so snapshots see all or none of them
+    synchronized void putAll(Collection<Transaction> transactions) {
+        long version = committed + 1;
+        for (Transaction transaction : transactions) {
+            install(transaction, version);
+        }
+        committed = version;
+    }
+
+    /**
+     * Files each of the given transactions under the category intoFor gives
+     * for its ID, as one commit, if it is still in the category it was in
+     * when the caller read it. Checked under the lock writers hold, so an
+     * update made since then is never overwritten.
+     *
+     * @return The moved transactions as they were before the move.
+     */
+    synchronized List<Transaction> recategorize(Collection<Transaction> seen, Function<UUID, UUID> intoFor) {
+        List<Transaction> moved = new ArrayList<>();
+        long version = committed + 1;
+        for (Transaction read : seen) {
+            Transaction transaction = get(read.getId());
+            if (transaction != null && transaction.getCategoryId().equals(read.getCategoryId())) {
+                install(transaction.withCategoryId(intoFor.apply(transaction.getId())), version);
+                moved.add(transaction);
+            }
+        }
+        if (!moved.isEmpty()) {
+            committed = version;
+        }
+        return moved;
+    }
+
+    /**
+     * Replaces a transaction with its updated version as one commit, if it
+     * is still the version the caller read. Checked under the lock writers
+     * hold, like recategorize, so an update racing a delete or another
+     * update never brings back or overwrites what that write did.
+     *
+     * @return Whether it was replaced; false if it was deleted or changed since the caller read it.
+     */
+    synchronized boolean replace(Transaction expected, Transaction updated) {
+        Transaction current = get(expected.getId());
+        if (current == null || !sameVersion(current, expected)) {
+            return false;
+        }
+        long version = committed + 1;
+        install(updated, version);
+        committed = version;
+        return true;
+    }
+
+    // Field by field, since archived rows are decoded into a new instance on every read
+    private static boolean sameVersion(Transaction a, Transaction b) {
+        return a == b || (a.getAccountId().equals(b.getAccountId()) && a.getCategoryId().equals(b.getCategoryId())
+                && a.getAmount().equals(b.getAmount()) && a.getEpochDay() == b.getEpochDay()
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && a.getTransactionType() == b.getTransactionType());
+    }
+
+    private void install(Transaction transaction, long version) {
+        Version old = latest.get(transaction.getId());
+        boolean keepOld = old != null && !openSnapshots.isEmpty();
+        latest.put(transaction.getId(), new Version(transaction, version, keepOld ? old : null));
+        if (old != null && old.deleted == LIVE) {
+            old.deleted = version;
+        } else if (!markArchivedDeleted(transaction.getId(), version)) {
+            liveCount++;
+        }
+        if (keepOld) {
+            retained.add(transaction.getId());
+        }
+    }
+
+    // Deletes a transaction as one commit; returns it, or null if there was none
+    synchronized Transaction remove(UUID transactionId) {
+        Version current = latest.get(transactionId);
+        if (current == null) {
+            Transaction archived = get(transactionId);
+            if (archived != null) {
+                long version = committed + 1;
+                markArchivedDeleted(transactionId, version);
+                liveCount--;
+                committed = version;
+            }
+            return archived;
+        }
+        if (current.deleted != LIVE) {
+            return null;
+        }
+        long version = committed + 1;
+        if (openSnapshots.isEmpty()) {
+            latest.remove(transactionId);
+        } else {
+            current.deleted = version; // Older snapshots still see it
+            retained.add(transactionId);
+        }
+        liveCount--;
+        committed = version;
+        return current.transaction;
+    }
+
+    // Marks an archived transaction as replaced or deleted by the given version; false if it is not archived
+    private boolean markArchivedDeleted(UUID transactionId, long version) {
+        int row = archive.find(transactionId);
+        if (row < 0 || !archive.isVisible(row, LIVE - 1)) {
+            return false;
+        }
+        archive.markDeleted(row, version);
+        return true;
+    }
+
+    /**
+     * Moves current transactions dated before the cutoff day into a rebuilt
+     * archive, dropping archived rows deleted since the last rebuild. Skipped
+     * while a snapshot is open, since it may need versions the rebuild would
+     * drop; call again later.
+     *
+     * @return The number of transactions moved off the heap, or -1 if skipped.
+     */
+    synchronized int archiveBefore(long cutoffDay) {
+        if (!openSnapshots.isEmpty()) {
+            return -1;
+        }
+        List<Transaction> cold = new ArrayList<>();
+        for (Version version : latest.values()) {
+            Transaction transaction = version.transaction;
+            if (transaction.getEpochDay() < cutoffDay && TransactionArchive.fits(transaction)) {
+                cold.add(transaction); // No snapshot open, so this is the only version and it is live
+            }
+        }
+        if (cold.isEmpty() && archive.liveSize() == archive.size()) {
+            return 0;
+        }
+        archive = archive.build(cold); // Published before removal, so get() finds each row in one tier or the other
+        for (Transaction transaction : cold) {
+            latest.remove(transaction.getId());
+        }
+        return cold.size();
+    }
+
+    synchronized long openSnapshot() {
+        openSnapshots.merge(committed, 1, Integer::sum);
+        return committed;
+    }
+
+    synchronized void closeSnapshot(long version) {
+        long oldest = openSnapshots.firstKey();
+        openSnapshots.computeIfPresent(version, (k, count) -> count == 1 ? null : count - 1);
+        if (version == oldest && !openSnapshots.containsKey(version)) {
+            prune(openSnapshots.isEmpty() ? LIVE : openSnapshots.firstKey());
+        }
+    }
+
+    // Drops versions no snapshot at or after the given version can see
+    private void prune(long oldestOpen) {
+        for (Iterator<UUID> ids = retained.iterator(); ids.hasNext();) {
+            UUID transactionId = ids.next();
+            Version version = latest.get(transactionId);
+            if (version == null) {
+                ids.remove();
+                continue;
+            }
+            if (version.deleted != LIVE && version.deleted <= oldestOpen) {
+                latest.remove(transactionId); // Deleted before every open snapshot
+                ids.remove();
+                continue;
+            }
+            // Keep the newest version the oldest snapshot sees; everything older is unreachable
+            while (version != null && version.created > oldestOpen) {
+                version = version.previous;
+            }
+            if (version != null) {
+                version.previous = null;
+            }
+            if (latest.get(transactionId).previous == null) {
+                ids.remove();
+            }
+        }
+    }
+
+    /**
+     * Calls the action for every transaction dated within [firstDay, lastDay]
+     * as of the given committed version: the heap tier first, then the
+     * archive's rows in range, found by binary search.
+     */
+    void forEachVisible(long snapshotVersion, long firstDay, long lastDay, Consumer<Transaction> action) {
+        TransactionArchive cold = archive; // Rebuilt only while no snapshot is open
+        for (Version head : latest.values()) {
+            Version version = head;
+            while (version != null && version.created > snapshotVersion) {
+                version = version.previous;
+            }
+            if (version != null && version.deleted > snapshotVersion) {
+                long day = version.transaction.getEpochDay();
+                if (day >= firstDay && day <= lastDay) {
+                    action.accept(version.transaction);
+                }
+            }
+        }
+        for (int row = cold.firstRowFrom(firstDay); row < cold.size() && !cold.isAfter(row, lastDay); row++) {
+            if (cold.isVisible(row, snapshotVersion)) {
+                action.accept(cold.decode(row));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package service.impl;
+
+import domain.Account;
+import domain.Budget;
+import domain.CategoryRule;
+import domain.ContributionRule;
+import domain.FinancialGoal;
+import domain.Transaction;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Everything one user owns in a shard's managers, detached from one shard and
+ * attached to another when ShardedServiceFacade moves the user. The domain
+ * objects move as they are, so their IDs and any references held by callers
+ * stay valid.
+ */
+class UserPartition {
+
+    final UUID userId;
+    final Map<UUID, Account> accounts = new HashMap<>();
+    final Map<UUID, BalanceHistory> balanceHistories = new HashMap<>();
+    final Map<UUID, Transaction> transactions = new HashMap<>();
+    final Map<UUID, Budget> budgets = new HashMap<>();
+    final Map<UUID, FinancialGoal> goals = new HashMap<>();
+    final Map<UUID, CategoryRule> categoryRules = new LinkedHashMap<>(); // In creation order
+    final Map<UUID, ContributionRule> contributionRules = new LinkedHashMap<>();
+
+    UserPartition(UUID userId) {
+        this.userId = userId;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPartition{" +
+                "userId=" + userId +
+                ", accounts=" + accounts.size() +
+                ", transactions=" + transactions.size() +
+                ", budgets=" + budgets.size() +
+                ", goals=" + goals.size() +
+                '}';
+    }
+}